@@ -196,9 +196,12 @@ public class Binding extends QmfAgentData
     public Map<String, Object> mapEncode()
     {
         // Statistics 
-        setValue("msgMatched", _binding.getMatches());
+        boolean changed = updateValue("msgMatched", _binding.getMatches());
 
-        update(); // TODO only set update if a statistic has actually changed value.
+        if (changed)
+        {
+            update();
+        }
         return super.mapEncode();
     }
 }
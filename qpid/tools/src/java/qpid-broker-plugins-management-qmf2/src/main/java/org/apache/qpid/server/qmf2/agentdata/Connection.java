@@ -179,14 +179,17 @@ public class Connection extends QmfAgentData
     {
         // Statistics
         // closing Not implemented in Java Broker
-        setValue("framesFromClient", 0); // framesFromClient Not implemented in Java Broker
-        setValue("framesToClient", 0); // framesToClient Not implemented in Java Broker
-        setValue("bytesFromClient", _connection.getBytesIn());
-        setValue("bytesToClient", _connection.getBytesOut()); 
-        setValue("msgsFromClient", _connection.getMessagesIn());
-        setValue("msgsToClient", _connection.getMessagesOut());
-
-        update(); // TODO only set update if statistics change.
+        boolean changed = updateValue("framesFromClient", 0); // framesFromClient Not implemented in Java Broker
+        changed |= updateValue("framesToClient", 0); // framesToClient Not implemented in Java Broker
+        changed |= updateValue("bytesFromClient", _connection.getBytesIn());
+        changed |= updateValue("bytesToClient", _connection.getBytesOut()); 
+        changed |= updateValue("msgsFromClient", _connection.getMessagesIn());
+        changed |= updateValue("msgsToClient", _connection.getMessagesOut());
+
+        if (changed)
+        {
+            update();
+        }
         return super.mapEncode();
     }
 }
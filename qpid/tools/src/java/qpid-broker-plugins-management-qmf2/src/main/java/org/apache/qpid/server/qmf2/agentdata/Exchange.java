@@ -223,7 +223,7 @@ public class Exchange extends QmfAgentData
         long byteDrops = _exchange.getBytesDropped();
         long byteRoutes = byteReceives - byteDrops;
 
-        setValue("producerCount", _exchange.getPublishers().size());
+        boolean changed = updateValue("producerCount", _exchange.getPublishers().size());
 
         // We have to modify the value of bindingCount for Exchange because the QmfManagementAgent "hides" the
         // QMF Objects that relate to its own AMQP Connection/Queues/Bindings so the bindingCount for default direct
@@ -241,16 +241,19 @@ public class Exchange extends QmfAgentData
         {
             bindingCount -= 1;
         }
-        setValue("bindingCount", bindingCount);
+        changed |= updateValue("bindingCount", bindingCount);
 
-        setValue("msgReceives", msgReceives);
-        setValue("msgDrops", msgDrops);
-        setValue("msgRoutes", msgRoutes);
-        setValue("byteReceives", byteReceives);
-        setValue("byteDrops", byteDrops);
-        setValue("byteRoutes", byteRoutes);
+        changed |= updateValue("msgReceives", msgReceives);
+        changed |= updateValue("msgDrops", msgDrops);
+        changed |= updateValue("msgRoutes", msgRoutes);
+        changed |= updateValue("byteReceives", byteReceives);
+        changed |= updateValue("byteDrops", byteDrops);
+        changed |= updateValue("byteRoutes", byteRoutes);
 
-        update(); // TODO only set update if a statistic has actually changed value.
+        if (changed)
+        {
+            update();
+        }
         return super.mapEncode();
     }
 }
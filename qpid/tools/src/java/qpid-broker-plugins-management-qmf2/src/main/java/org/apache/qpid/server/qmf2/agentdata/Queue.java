@@ -246,6 +246,7 @@ public class Queue extends QmfAgentData
         // Set the altExchange reference if an alternateExchange exists and hasn't already been set.
         // Not sure how to set this closer to the Constructor. At the moment the _alternateExchangeName gets set
         // too late to populate the "altEx" property of the queueDeclareEvent.
+        boolean changed = false;
         if (_alternateExchange == null)
         {
             Exchange altEx = _queue.getAlternateExchange();
@@ -254,24 +255,25 @@ public class Queue extends QmfAgentData
                 _alternateExchangeName = _vhostName + altEx.getName();
                 _alternateExchange = new ObjectId("", "org.apache.qpid.broker:exchange:" + _alternateExchangeName, 0);
                 setRefValue("altExchange", _alternateExchange);
+                changed = true;
             }
         }
 
         // Statistics
-        setValue("msgTotalEnqueues", _queue.getTotalEnqueuedMessages());
-        setValue("msgTotalDequeues", _queue.getTotalDequeuedMessages());
+        changed |= updateValue("msgTotalEnqueues", _queue.getTotalEnqueuedMessages());
+        changed |= updateValue("msgTotalDequeues", _queue.getTotalDequeuedMessages());
         // msgTxnEnqueues not implemented in Java Broker
         // msgTxnDequeues not implemented in Java Broker
-        setValue("msgPersistEnqueues", _queue.getPersistentEnqueuedMessages());
-        setValue("msgPersistDequeues", _queue.getPersistentDequeuedMessages());
-        setValue("msgDepth", _queue.getQueueDepthMessages());
-        setValue("byteDepth", _queue.getQueueDepthBytes());
-        setValue("byteTotalEnqueues", _queue.getTotalEnqueuedBytes());
-        setValue("byteTotalDequeues", _queue.getTotalDequeuedBytes());
+        changed |= updateValue("msgPersistEnqueues", _queue.getPersistentEnqueuedMessages());
+        changed |= updateValue("msgPersistDequeues", _queue.getPersistentDequeuedMessages());
+        changed |= updateValue("msgDepth", _queue.getQueueDepthMessages());
+        changed |= updateValue("byteDepth", _queue.getQueueDepthBytes());
+        changed |= updateValue("byteTotalEnqueues", _queue.getTotalEnqueuedBytes());
+        changed |= updateValue("byteTotalDequeues", _queue.getTotalDequeuedBytes());
         // byteTxnEnqueues not implemented in Java Broker
         // byteTxnDequeues not implemented in Java Broker
-        setValue("bytePersistEnqueues", _queue.getPersistentEnqueuedBytes());
-        setValue("bytePersistDequeues", _queue.getPersistentDequeuedBytes());
+        changed |= updateValue("bytePersistEnqueues", _queue.getPersistentEnqueuedBytes());
+        changed |= updateValue("bytePersistDequeues", _queue.getPersistentDequeuedBytes());
 
         // Flow-to-disk Statistics not implemented in Java Broker
         // releases & acquires not implemented in Java Broker
@@ -283,15 +285,18 @@ public class Queue extends QmfAgentData
         // discardsPurge not implemented in Java Broker
         // reroutes not implemented in Java Broker
 
-        setValue("consumerCount", _queue.getConsumerCount());
-        setValue("bindingCount", _queue.getBindingCount());
-        setValue("unackedMessages", _queue.getUnacknowledgedMessages());
+        changed |= updateValue("consumerCount", _queue.getConsumerCount());
+        changed |= updateValue("bindingCount", _queue.getBindingCount());
+        changed |= updateValue("unackedMessages", _queue.getUnacknowledgedMessages());
 
-        setValue("messageLatency", "Not yet implemented");
+        changed |= updateValue("messageLatency", "Not yet implemented");
         // flowStopped not implemented in Java Broker
         // flowStoppedCount not implemented in Java Broker
 
-        update(); // TODO only update if statistics have actually changed.
+        if (changed)
+        {
+            update();
+        }
         return super.mapEncode();
     }
 }
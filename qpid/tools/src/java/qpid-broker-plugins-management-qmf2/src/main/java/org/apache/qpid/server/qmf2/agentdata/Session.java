@@ -105,12 +105,14 @@ public class Session extends QmfAgentData
     public Map<String, Object> mapEncode()
     {
         // Statistics
-        setValue("unackedMessages", _session.getUnacknowledgedMessages());
-        setValue("TxnStarts", _session.getLocalTransactionBegins());
-        setValue("TxnRejects", _session.getLocalTransactionRollbacks());
-
-        update(); // TODO Only Update if statistics have changes.
+        boolean changed = updateValue("unackedMessages", _session.getUnacknowledgedMessages());
+        changed |= updateValue("TxnStarts", _session.getLocalTransactionBegins());
+        changed |= updateValue("TxnRejects", _session.getLocalTransactionRollbacks());
 
+        if (changed)
+        {
+            update();
+        }
         return super.mapEncode();
     }
 }
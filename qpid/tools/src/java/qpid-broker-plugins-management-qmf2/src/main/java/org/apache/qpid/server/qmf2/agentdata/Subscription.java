@@ -201,11 +201,14 @@ public class Subscription extends QmfAgentData
     public Map<String, Object> mapEncode()
     {
         // Statistics 
-        setValue("delivered", _subscription.getMessagesOut());
+        boolean changed = updateValue("delivered", _subscription.getMessagesOut());
 
-        setValue("exclusive", _exclusive);
+        changed |= updateValue("exclusive", _exclusive);
 
-        update(); // TODO Only Update if statistics have changes.
+        if (changed)
+        {
+            update();
+        }
         return super.mapEncode();
     }
 }
@@ -0,0 +1,108 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// JMS Imports
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+// Misc Imports
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Qpid Imports
+import org.apache.qpid.client.message.AMQMessageDelegateFactory;
+import org.apache.qpid.client.message.JMSBytesMessage;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.AMQPMessage;
+
+/**
+ * Measures the amqp/list codec used for _query_response and _data_indication messages, decoding a List of queue
+ * objects with AMQPMessage.getList() and encoding one with AMQPMessage.setList().
+ * <p>
+ * The Messages are plain Qpid client 0-10 BytesMessages that have never been near a broker.
+ *
+ * @author Fraser Adams
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AMQPMessageBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int objects;
+
+    private List<Map> _list;
+    private Message _message;
+
+    /**
+     * Create an amqp/list encoded BytesMessage.
+     * @return an amqp/list encoded BytesMessage.
+     */
+    private static Message createListMessage()
+    {
+        Message message = new JMSBytesMessage(AMQMessageDelegateFactory.FACTORY_0_10);
+        AMQPMessage.setContentType(message, "amqp/list");
+        return message;
+    }
+
+    @Setup
+    public void setup() throws JMSException
+    {
+        _list = BenchmarkData.queueObjects(objects);
+        _message = createListMessage();
+        AMQPMessage.setList(_message, _list);
+        ((BytesMessage)_message).reset(); // Make the Message readable, as it would be when it has been received.
+    }
+
+    @Benchmark
+    public List<Map> getList() throws JMSException
+    {
+        return AMQPMessage.getList(_message);
+    }
+
+    @Benchmark
+    public Message setList() throws JMSException
+    {
+        Message message = createListMessage();
+        AMQPMessage.setList(message, _list);
+        return message;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.agent.Agent;
+import org.apache.qpid.qmf2.agent.QmfAgentData;
+import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+import org.apache.qpid.qmf2.common.QmfType;
+import org.apache.qpid.qmf2.common.SchemaObjectClass;
+import org.apache.qpid.qmf2.common.SchemaProperty;
+
+/**
+ * Measures agent.Agent.evaluateQuery(), which is used to answer _query_request messages and to evaluate
+ * Subscriptions, over Agents holding increasing numbers of queue objects.
+ * <p>
+ * The Agent is never given a Connection, evaluateQuery() only needs the objects that have been added to it.
+ *
+ * @author Fraser Adams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class AgentQueryBenchmark
+{
+    @Param({"1000", "10000", "100000"})
+    public int objects;
+
+    private Agent _agent;
+    private QmfQuery _classQuery;
+    private QmfQuery _objectIdQuery;
+    private QmfQuery _namePredicateQuery;
+    private QmfQuery _rangePredicateQuery;
+
+    @Setup
+    public void setup() throws QmfException
+    {
+        _agent = new Agent(null);
+        _agent.setVendor("apache.org");
+        _agent.setProduct("qmf2-benchmark");
+
+        SchemaObjectClass queueSchema = new SchemaObjectClass(BenchmarkData.PACKAGE_NAME, BenchmarkData.CLASS_NAME);
+        queueSchema.addProperty(new SchemaProperty("name", QmfType.TYPE_STRING));
+        queueSchema.addProperty(new SchemaProperty("msgDepth", QmfType.TYPE_INT));
+        queueSchema.setIdNames("name");
+        _agent.registerObjectClass(queueSchema);
+
+        QmfAgentData middle = null;
+        for (int i = 0; i < objects; i++)
+        {
+            QmfAgentData queue = new QmfAgentData(queueSchema);
+            for (Map.Entry<String, Object> entry : BenchmarkData.queueValues(i).entrySet())
+            {
+                queue.setValue(entry.getKey(), entry.getValue());
+            }
+            _agent.addObject(queue);
+            if (i == objects/2)
+            {
+                middle = queue;
+            }
+        }
+
+        _classQuery = new QmfQuery(QmfQueryTarget.OBJECT, queueSchema.getClassId());
+        _objectIdQuery = new QmfQuery(QmfQueryTarget.OBJECT, middle.getObjectId());
+        _namePredicateQuery = new QmfQuery(QmfQueryTarget.OBJECT,
+                                           "['eq', 'name', ['quote', '" + BenchmarkData.queueName(objects/2) + "']]");
+        _rangePredicateQuery = new QmfQuery(QmfQueryTarget.OBJECT, "['ge', 'msgDepth', 990]");
+    }
+
+    @Benchmark
+    public List<QmfAgentData> queryByClass()
+    {
+        return _agent.evaluateQuery(_classQuery);
+    }
+
+    @Benchmark
+    public List<QmfAgentData> queryByObjectId()
+    {
+        return _agent.evaluateQuery(_objectIdQuery);
+    }
+
+    @Benchmark
+    public List<QmfAgentData> queryByNamePredicate()
+    {
+        return _agent.evaluateQuery(_namePredicateQuery);
+    }
+
+    @Benchmark
+    public List<QmfAgentData> queryByRangePredicate()
+    {
+        return _agent.evaluateQuery(_rangePredicateQuery);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+
+/**
+ * Creates the data used by the benchmarks. The objects are modelled on the broker ManagementAgent's queue objects
+ * as these are the objects that most QMF2 applications deal with in the largest numbers.
+ *
+ * @author Fraser Adams
+ */
+final class BenchmarkData
+{
+    static final String AGENT_NAME = "apache.org:qpidd:benchmark";
+    static final String PACKAGE_NAME = "org.apache.qpid.broker";
+    static final String CLASS_NAME = "queue";
+    static final SchemaClassId QUEUE_CLASS = new SchemaClassId(PACKAGE_NAME, CLASS_NAME, "_data");
+
+    /**
+     * Make constructor private as this class provides a set of static helper methods and doesn't need instantiated.
+     */
+    private BenchmarkData()
+    {
+    }
+
+    /**
+     * Return the name of the queue with the specified index.
+     * @param index the index of the queue.
+     * @return the name of the queue with the specified index.
+     */
+    static String queueName(final int index)
+    {
+        return "queue-" + index;
+    }
+
+    /**
+     * Create the property values of a queue.
+     * @param index the index of the queue, used to vary the values between queues.
+     * @return the property values of a queue.
+     */
+    static Map<String, Object> queueValues(final int index)
+    {
+        Map<String, Object> arguments = new HashMap<String, Object>();
+        arguments.put("qpid.max_count", 10000l);
+        arguments.put("qpid.policy_type", "ring");
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", queueName(index));
+        values.put("vhostRef", new ObjectId(AGENT_NAME, "org.apache.qpid.broker:vhost:vhost", 1).mapEncode());
+        values.put("durable", (index & 1) == 0);
+        values.put("autoDelete", false);
+        values.put("exclusive", false);
+        values.put("arguments", arguments);
+        values.put("consumerCount", index % 5);
+        values.put("bindingCount", 1 + index % 3);
+        values.put("msgDepth", (long)(index % 1000));
+        values.put("byteDepth", (long)(index % 1000)*1024l);
+        values.put("msgTotalEnqueues", index*100l);
+        values.put("msgTotalDequeues", index*100l - index % 1000);
+        values.put("byteTotalEnqueues", index*102400l);
+        values.put("byteTotalDequeues", index*102400l - (index % 1000)*1024l);
+        values.put("msgPersistEnqueues", 0l);
+        values.put("msgPersistDequeues", 0l);
+        values.put("releases", 0l);
+        values.put("acquires", index*100l);
+        values.put("discardsRing", 0l);
+        values.put("flowStopped", false);
+        values.put("flowStoppedCount", 0l);
+        values.put("unackedMessages", (long)(index % 10));
+        values.put("messageLatencyAvg", 0.5d + index % 7);
+        return values;
+    }
+
+    /**
+     * Create a queue encoded as it is in a _query_response or _data_indication.
+     * @param index the index of the queue.
+     * @return a queue encoded as it is in a _query_response or _data_indication.
+     */
+    static Map<String, Object> queueObject(final int index)
+    {
+        long now = System.currentTimeMillis()*1000000l;
+        Map<String, Object> object = new HashMap<String, Object>();
+        object.put("_values", queueValues(index));
+        object.put("_schema_id", QUEUE_CLASS.mapEncode());
+        object.put("_object_id", new ObjectId(AGENT_NAME, PACKAGE_NAME + ":" + CLASS_NAME + ":" + queueName(index), 1).mapEncode());
+        object.put("_update_ts", now);
+        object.put("_create_ts", now);
+        object.put("_delete_ts", 0l);
+        return object;
+    }
+
+    /**
+     * Create a List of queues encoded as they are in a _query_response or _data_indication.
+     * @param count the number of queues.
+     * @return a List of queues encoded as they are in a _query_response or _data_indication.
+     */
+    static List<Map> queueObjects(final int count)
+    {
+        List<Map> objects = new ArrayList<Map>(count);
+        for (int i = 0; i < count; i++)
+        {
+            objects.add(queueObject(i));
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+
+// REST API Imports
+import org.apache.qpid.restapi.JSON;
+
+/**
+ * Measures the encoding by the REST API of the results of a getObjects() call, a List of QmfConsoleData, and of
+ * the equivalent List of plain Maps.
+ *
+ * @author Fraser Adams
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int objects;
+
+    private List<QmfConsoleData> _consoleData;
+    private List<Map<String, Object>> _maps;
+
+    @Setup
+    public void setup()
+    {
+        _consoleData = new ArrayList<QmfConsoleData>(objects);
+        _maps = new ArrayList<Map<String, Object>>(objects);
+        for (int i = 0; i < objects; i++)
+        {
+            _consoleData.add(new QmfConsoleData(BenchmarkData.queueObject(i), null));
+            _maps.add(BenchmarkData.queueValues(i));
+        }
+    }
+
+    @Benchmark
+    public String fromQmfConsoleDataList()
+    {
+        return JSON.fromObject(_consoleData);
+    }
+
+    @Benchmark
+    public String fromMapList()
+    {
+        return JSON.fromObject(_maps);
+    }
+}
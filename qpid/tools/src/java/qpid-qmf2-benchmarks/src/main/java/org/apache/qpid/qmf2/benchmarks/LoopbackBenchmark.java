@@ -0,0 +1,216 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.agent.Agent;
+import org.apache.qpid.qmf2.agent.MethodCallParams;
+import org.apache.qpid.qmf2.agent.MethodCallWorkItem;
+import org.apache.qpid.qmf2.agent.QmfAgentData;
+import org.apache.qpid.qmf2.common.QmfData;
+import org.apache.qpid.qmf2.common.QmfEventListener;
+import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+import org.apache.qpid.qmf2.common.QmfType;
+import org.apache.qpid.qmf2.common.SchemaMethod;
+import org.apache.qpid.qmf2.common.SchemaObjectClass;
+import org.apache.qpid.qmf2.common.SchemaProperty;
+import org.apache.qpid.qmf2.common.WorkItem;
+import org.apache.qpid.qmf2.console.Console;
+import org.apache.qpid.qmf2.console.MethodResult;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+import org.apache.qpid.qmf2.loopback.LoopbackBroker;
+
+/**
+ * Measures end to end exchanges between a Console and an agent.Agent connected via the in-process
+ * org.apache.qpid.qmf2.loopback transport, so the results include the QMF2 request and response encoding,
+ * decoding and dispatch but no network or broker.
+ * <p>
+ * The Agent sets its product to "qpidd" as Console.addConnection() waits for the broker Agent, and Console side
+ * subscription emulation (which relies on the unsolicited data indications pushed by a real broker) is disabled so
+ * that subscriptions are handled by the Agent.
+ * <ul>
+ * <li>discovery creates a new Console, which broadcasts an Agent locate request and waits for the Agent's response,
+ * then destroys it.</li>
+ * <li>getObjects queries all of the Agent's queue objects.</li>
+ * <li>invokeMethod invokes an echo method on one of the queue objects.</li>
+ * <li>subscriptionIndication updates a queue object and waits until the change has reached the Console via the
+ * Console's subscription.</li>
+ * </ul>
+ *
+ * @author Fraser Adams
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Ddisable_subscription_emulation=true"})
+public class LoopbackBenchmark
+{
+    @Param({"100", "1000"})
+    public int objects;
+
+    private final AtomicInteger _consoleCount = new AtomicInteger();
+    private final Semaphore _indications = new Semaphore(0);
+    private LoopbackBroker _broker;
+    private Agent _agent;
+    private Console _console;
+    private List<QmfAgentData> _queues;
+    private QmfAgentData _updated;
+    private QmfConsoleData _target;
+    private QmfData _echoArgs;
+    private long _depth = 0;
+
+    /**
+     * Answers the echo method by returning the arguments it was invoked with.
+     */
+    private final QmfEventListener _agentListener = new QmfEventListener()
+    {
+        public void onEvent(final WorkItem wi)
+        {
+            if (wi.getType() == WorkItem.WorkItemType.METHOD_CALL)
+            {
+                MethodCallWorkItem item = (MethodCallWorkItem)wi;
+                MethodCallParams params = item.getMethodCallParams();
+                _agent.methodResponse(params.getName(), item.getHandle(), params.getArgs(), null);
+            }
+        }
+    };
+
+    /**
+     * Signals the arrival of each subscription indication.
+     */
+    private final QmfEventListener _consoleListener = new QmfEventListener()
+    {
+        public void onEvent(final WorkItem wi)
+        {
+            if (wi.getType() == WorkItem.WorkItemType.SUBSCRIPTION_INDICATION)
+            {
+                _indications.release();
+            }
+        }
+    };
+
+    @Setup
+    public void setup() throws QmfException
+    {
+        _broker = new LoopbackBroker();
+
+        _agent = new Agent(_agentListener);
+        _agent.setVendor("apache.org");
+        _agent.setProduct("qpidd");
+
+        SchemaObjectClass queueSchema = new SchemaObjectClass(BenchmarkData.PACKAGE_NAME, BenchmarkData.CLASS_NAME);
+        queueSchema.addProperty(new SchemaProperty("name", QmfType.TYPE_STRING));
+        queueSchema.addProperty(new SchemaProperty("msgDepth", QmfType.TYPE_INT));
+        queueSchema.setIdNames("name");
+        SchemaMethod echoMethod = new SchemaMethod("echo", "Echo Arguments");
+        echoMethod.addArgument(new SchemaProperty("message", QmfType.TYPE_STRING, "{dir:INOUT}"));
+        queueSchema.addMethod(echoMethod);
+        _agent.registerObjectClass(queueSchema);
+
+        _queues = new ArrayList<QmfAgentData>(objects);
+        for (int i = 0; i < objects; i++)
+        {
+            QmfAgentData queue = new QmfAgentData(queueSchema);
+            for (Map.Entry<String, Object> entry : BenchmarkData.queueValues(i).entrySet())
+            {
+                queue.setValue(entry.getKey(), entry.getValue());
+            }
+            _agent.addObject(queue);
+            _queues.add(queue);
+        }
+        _updated = _queues.get(objects/2);
+        _agent.setConnection(_broker.createConnection());
+
+        _console = new Console("loopback-benchmark", null, _consoleListener, null);
+        _console.addConnection(_broker.createConnection());
+
+        _target = _console.getObjects(BenchmarkData.CLASS_NAME).get(0);
+        _echoArgs = new QmfData();
+        _echoArgs.setValue("message", "Hello QMF2");
+
+        _console.createSubscription(_console.findAgent(_agent.getName()),
+                                    new QmfQuery(QmfQueryTarget.OBJECT, queueSchema.getClassId()),
+                                    "loopback-benchmark");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        _console.destroy();
+        _agent.destroy();
+    }
+
+    @Benchmark
+    public Console discovery() throws QmfException
+    {
+        Console console = new Console("loopback-discovery-" + _consoleCount.incrementAndGet(), null, null, null);
+        console.addConnection(_broker.createConnection());
+        console.destroy();
+        return console;
+    }
+
+    @Benchmark
+    public List<QmfConsoleData> getObjects()
+    {
+        return _console.getObjects(BenchmarkData.CLASS_NAME);
+    }
+
+    @Benchmark
+    public MethodResult invokeMethod() throws QmfException
+    {
+        return _target.invokeMethod("echo", _echoArgs);
+    }
+
+    @Benchmark
+    public boolean subscriptionIndication() throws InterruptedException
+    {
+        _indications.drainPermits();
+        _updated.setValue("msgDepth", ++_depth);
+        _updated.publish();
+        return _indications.tryAcquire(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfData;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+
+/**
+ * Measures the construction of QmfData and QmfConsoleData from the Maps decoded from a Message, and the cost of
+ * the property accessors that applications call most, such as the getLongValue() calls made for every statistic
+ * of every object by tools like qpid-queue-stats.
+ * <p>
+ * QmfData holds the decoded Map as it is, whereas QmfConsoleData holds its values in a compact form keyed by its
+ * SchemaClassId, so the two are measured separately.
+ *
+ * @author Fraser Adams
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QmfDataBenchmark
+{
+    private Map<String, Object> _values;
+    private Map<String, Object> _object;
+    private QmfData _data;
+    private QmfConsoleData _consoleData;
+
+    @Setup
+    public void setup()
+    {
+        _values = BenchmarkData.queueValues(42);
+        _object = BenchmarkData.queueObject(42);
+        _data = new QmfData(BenchmarkData.queueValues(42));
+        _consoleData = new QmfConsoleData(BenchmarkData.queueObject(42), null);
+    }
+
+    @Benchmark
+    public QmfData constructQmfData()
+    {
+        return new QmfData(_values);
+    }
+
+    @Benchmark
+    public QmfConsoleData constructQmfConsoleData()
+    {
+        return new QmfConsoleData(_object, null);
+    }
+
+    @Benchmark
+    public void qmfDataAccessors(final Blackhole blackhole)
+    {
+        blackhole.consume(_data.getStringValue("name"));
+        blackhole.consume(_data.getLongValue("msgDepth"));
+        blackhole.consume(_data.getLongValue("consumerCount"));
+        blackhole.consume(_data.getBooleanValue("durable"));
+        blackhole.consume(_data.getDoubleValue("messageLatencyAvg"));
+    }
+
+    @Benchmark
+    public void qmfConsoleDataAccessors(final Blackhole blackhole)
+    {
+        blackhole.consume(_consoleData.getStringValue("name"));
+        blackhole.consume(_consoleData.getLongValue("msgDepth"));
+        blackhole.consume(_consoleData.getLongValue("consumerCount"));
+        blackhole.consume(_consoleData.getBooleanValue("durable"));
+        blackhole.consume(_consoleData.getDoubleValue("messageLatencyAvg"));
+    }
+
+    @Benchmark
+    public Object qmfConsoleDataGetValue()
+    {
+        return _consoleData.getValue("msgTotalEnqueues");
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfData;
+import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+
+/**
+ * Measures QmfQuery.evaluate() of a single queue object for each of the BooleanExpression types, both for a
+ * QmfData holding the decoded Map and for a QmfConsoleData.
+ *
+ * @author Fraser Adams
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QmfQueryBenchmark
+{
+    private static final Map<String, String> PREDICATES = new HashMap<String, String>();
+    static
+    {
+        PREDICATES.put("eq", "['eq', 'name', ['quote', 'queue-42']]");
+        PREDICATES.put("ne", "['ne', 'name', ['quote', 'queue-43']]");
+        PREDICATES.put("lt", "['lt', 'msgDepth', 100]");
+        PREDICATES.put("le", "['le', 'msgDepth', 42]");
+        PREDICATES.put("gt", "['gt', 'msgDepth', 10]");
+        PREDICATES.put("ge", "['ge', 'msgDepth', 42]");
+        PREDICATES.put("re_match", "['re_match', 'name', ['quote', '^queue-4']]");
+        PREDICATES.put("exists", "['exists', 'msgDepth']");
+        PREDICATES.put("true", "['true']");
+        PREDICATES.put("false", "['false']");
+    }
+
+    @Param({"eq", "ne", "lt", "le", "gt", "ge", "re_match", "exists", "true", "false"})
+    public String operator;
+
+    private QmfQuery _query;
+    private QmfData _data;
+    private QmfConsoleData _consoleData;
+
+    @Setup
+    public void setup() throws QmfException
+    {
+        _query = new QmfQuery(QmfQueryTarget.OBJECT, PREDICATES.get(operator));
+        _data = new QmfData(BenchmarkData.queueValues(42));
+        _consoleData = new QmfConsoleData(BenchmarkData.queueObject(42), null);
+    }
+
+    @Benchmark
+    public boolean evaluateQmfData()
+    {
+        return _query.evaluate(_data);
+    }
+
+    @Benchmark
+    public boolean evaluateQmfConsoleData()
+    {
+        return _query.evaluate(_consoleData);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.Connection;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process message router that lets a Console and any number of Agents in the same JVM talk QMF to each
+ * other without a broker, for example:
+ * <pre>
+ * LoopbackBroker broker = new LoopbackBroker();
+ *
+ * Agent agent = new Agent(handler);
+ * agent.setVendor("apache.org"); agent.setProduct("qpidd");
+ * agent.setConnection(broker.createConnection());
+ *
+ * Console console = new Console(listener);
+ * console.addConnection(broker.createConnection());
+ * </pre>
+ * Note that Console.addConnection() waits for the broker Agent (vendor "apache.org" product "qpidd") to respond,
+ * so one of the Agents needs to pretend to be the broker. The Console emulates subscriptions to the broker Agent
+ * using the data indications that a real broker pushes unsolicited, which an agent.Agent doesn't do, so setting
+ * the disable_subscription_emulation system property lets the Agent handle the subscriptions itself.
+ * <p>
+ * The Connections implement just enough of JMS for the Console and Agent classes: non-transacted Sessions, Map,
+ * Bytes and plain Messages, MessageProducers and MessageConsumers (with either a MessageListener or receive()) on
+ * Destinations created from Qpid Address Strings via Session.createQueue() or Session.createTopic(). Selectors,
+ * durable subscriptions, browsers and temporary destinations are not supported.
+ * <p>
+ * The node of an Address names an exchange and the subject is a routing key, the "qpid.subject" property of a
+ * Message overrides the subject of the Destination it is sent to, as it does with the Qpid client. Every exchange
+ * behaves like an AMQP topic exchange, a MessageConsumer's subject is a binding key in which "*" matches exactly one
+ * word and "#" matches zero or more words, and a MessageConsumer without a subject receives everything sent to its
+ * exchange. A binding key without wildcards only matches an identical routing key, so the direct exchanges used by
+ * QMF (qmf.default.direct) behave as they do on a real broker.
+ * <p>
+ * Each matching MessageConsumer receives its own copy of a Message, see LoopbackMessage. MessageListeners are
+ * invoked serially on a dispatcher thread belonging to the Session that created the MessageConsumer, so as with a
+ * real JMS provider a slow listener holds up the other listeners of its Session but not those of other Sessions.
+ * Messages that don't match any MessageConsumer are discarded.
+ *
+ * @author Fraser Adams
+ */
+public final class LoopbackBroker
+{
+    private static final Logger _log = LoggerFactory.getLogger(LoopbackBroker.class);
+
+    /**
+     * Binds a MessageConsumer to an exchange with a (possibly wildcarded) binding key.
+     */
+    private static final class Binding
+    {
+        private final LoopbackConsumer _consumer;
+        private final String _node;
+        private final String _key;
+        private final String[] _words;
+
+        /**
+         * Construct a Binding for the specified MessageConsumer.
+         * @param consumer the MessageConsumer.
+         */
+        public Binding(final LoopbackConsumer consumer)
+        {
+            LoopbackDestination destination = consumer.getLoopbackDestination();
+            _consumer = consumer;
+            _node = destination.getNode();
+            _key = destination.getSubject();
+
+            // The binding key only gets split into words if it contains wildcards.
+            _words = (_key == null || (_key.indexOf('*') == -1 && _key.indexOf('#') == -1)) ? null : _key.split("\\.", -1);
+        }
+
+        /**
+         * Check whether a Message sent to the specified exchange with the specified routing key matches this Binding.
+         * @param node the name of the exchange.
+         * @param subject the routing key.
+         * @return true if the Message matches this Binding.
+         */
+        public boolean matches(final String node, final String subject)
+        {
+            if (!_node.equals(node))
+            {
+                return false;
+            }
+            else if (_key == null)
+            {
+                return true;
+            }
+            else if (_words == null)
+            {
+                return _key.equals(subject);
+            }
+            else
+            {
+                return matches(_words, 0, subject.split("\\.", -1), 0);
+            }
+        }
+
+        /**
+         * Match the words of a routing key against the words of a wildcarded binding key.
+         */
+        private static boolean matches(final String[] pattern, int p, final String[] words, int w)
+        {
+            while (p < pattern.length)
+            {
+                if (pattern[p].equals("#"))
+                {
+                    // Try matching the rest of the pattern against each possible remainder of the routing key.
+                    for (int i = w; i <= words.length; i++)
+                    {
+                        if (matches(pattern, p + 1, words, i))
+                        {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                else if (w == words.length || !(pattern[p].equals("*") || pattern[p].equals(words[w])))
+                {
+                    return false;
+                }
+                p++;
+                w++;
+            }
+            return w == words.length;
+        }
+    }
+
+    private final List<Binding> _bindings = new CopyOnWriteArrayList<Binding>();
+    private final AtomicLong _messageIds = new AtomicLong();
+
+    /**
+     * Create a Connection to this LoopbackBroker.
+     * @return a new Connection to this LoopbackBroker.
+     */
+    public Connection createConnection()
+    {
+        return createConnection(null);
+    }
+
+    /**
+     * Create a Connection to this LoopbackBroker for the specified user. Messages sent on the Connection are
+     * delivered with the JMSXUserID property set to the user name, as if the broker had authenticated the user,
+     * so Agents see the user name as the "_user_id" of method requests.
+     * @param userName the user name of the Connection, may be null.
+     * @return a new Connection to this LoopbackBroker.
+     */
+    public Connection createConnection(final String userName)
+    {
+        return new LoopbackConnection(this, userName);
+    }
+
+    /**
+     * Return a new unique JMSMessageID.
+     * @return a new unique JMSMessageID.
+     */
+    String nextMessageId()
+    {
+        return "ID:loopback-" + _messageIds.incrementAndGet();
+    }
+
+    /**
+     * Start routing Messages to the specified MessageConsumer.
+     * @param consumer the MessageConsumer.
+     */
+    void bind(final LoopbackConsumer consumer)
+    {
+        _bindings.add(new Binding(consumer));
+    }
+
+    /**
+     * Stop routing Messages to the specified MessageConsumer.
+     * @param consumer the MessageConsumer.
+     */
+    void unbind(final LoopbackConsumer consumer)
+    {
+        for (Binding binding : _bindings)
+        {
+            if (binding._consumer == consumer)
+            {
+                _bindings.remove(binding);
+            }
+        }
+    }
+
+    /**
+     * Deliver a copy of a Message to every MessageConsumer with a Binding that matches the Message.
+     * @param destination the Destination that the Message was sent to.
+     * @param message the Message.
+     * @param userId the user name of the sending Connection, may be null.
+     */
+    void route(final LoopbackDestination destination, final LoopbackMessage message, final String userId)
+    {
+        String subject = message.getSubject();
+        if (subject == null)
+        {
+            subject = destination.getTopicName();
+        }
+
+        boolean routed = false;
+        for (Binding binding : _bindings)
+        {
+            if (binding.matches(destination.getNode(), subject))
+            {
+                binding._consumer.deliver(message.copy(userId));
+                routed = true;
+            }
+        }
+
+        if (!routed && _log.isDebugEnabled())
+        {
+            _log.debug("Discarding Message sent to {} with subject {}, there are no matching consumers",
+                       destination.getNode(), subject);
+        }
+    }
+}
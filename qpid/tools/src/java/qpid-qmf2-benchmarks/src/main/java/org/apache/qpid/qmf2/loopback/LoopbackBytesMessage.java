@@ -0,0 +1,483 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageEOFException;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageNotReadableException;
+import javax.jms.MessageNotWriteableException;
+
+// Misc Imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A JMS BytesMessage created by a Session of the loopback transport, the Content-Type is initially
+ * "application/octet-stream". QMF uses BytesMessages with a Content-Type of "amqp/list" to carry encoded Lists.
+ * <p>
+ * The body is written to a growable buffer, when the Message is sent the bytes written so far become the body of
+ * the copy delivered to each MessageConsumer. The delivered copies share the (never modified) body bytes and are
+ * in read only mode.
+ *
+ * @author Fraser Adams
+ */
+public final class LoopbackBytesMessage extends LoopbackMessage implements BytesMessage
+{
+    private ByteArrayOutputStream _buffer;
+    private DataOutputStream _out;
+    private byte[] _body;
+    private DataInputStream _in;
+
+    /**
+     * Construct an empty LoopbackBytesMessage in write only mode. Applications should use Session.createBytesMessage().
+     */
+    LoopbackBytesMessage()
+    {
+        super("application/octet-stream");
+        clearBody();
+    }
+
+    @Override
+    LoopbackMessage copy(final String userId)
+    {
+        LoopbackBytesMessage copy = copyHeaders(new LoopbackBytesMessage(), userId);
+        copy.setBody(_out == null ? _body : _buffer.toByteArray());
+        return copy;
+    }
+
+    /**
+     * Put the Message into read only mode with the specified body.
+     * @param body the body of the Message.
+     */
+    private void setBody(final byte[] body)
+    {
+        _buffer = null;
+        _out = null;
+        _body = body;
+        _in = new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Return the DataInputStream used to read the body, checking that the Message is in read only mode.
+     */
+    private DataInputStream in() throws JMSException
+    {
+        if (_in == null)
+        {
+            throw new MessageNotReadableException("BytesMessage is in write only mode");
+        }
+        return _in;
+    }
+
+    /**
+     * Return the DataOutputStream used to write the body, checking that the Message is in write only mode.
+     */
+    private DataOutputStream out() throws JMSException
+    {
+        if (_out == null)
+        {
+            throw new MessageNotWriteableException("BytesMessage is in read only mode");
+        }
+        return _out;
+    }
+
+    /**
+     * Map the IOException thrown by a DataInputStream or DataOutputStream to the appropriate JMSException.
+     */
+    private static JMSException toJMSException(final IOException ioe)
+    {
+        if (ioe instanceof EOFException)
+        {
+            return new MessageEOFException("Unexpected end of BytesMessage");
+        }
+        JMSException jmse = new JMSException(ioe.getMessage());
+        jmse.setLinkedException(ioe);
+        return jmse;
+    }
+
+    @Override
+    public void clearBody()
+    {
+        _buffer = new ByteArrayOutputStream();
+        _out = new DataOutputStream(_buffer);
+        _body = null;
+        _in = null;
+    }
+
+    public void reset()
+    {
+        if (_out != null)
+        {
+            setBody(_buffer.toByteArray());
+        }
+        else
+        {
+            setBody(_body);
+        }
+    }
+
+    public long getBodyLength() throws JMSException
+    {
+        in();
+        return _body.length;
+    }
+
+    public boolean readBoolean() throws JMSException
+    {
+        try
+        {
+            return in().readBoolean();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public byte readByte() throws JMSException
+    {
+        try
+        {
+            return in().readByte();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public int readUnsignedByte() throws JMSException
+    {
+        try
+        {
+            return in().readUnsignedByte();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public short readShort() throws JMSException
+    {
+        try
+        {
+            return in().readShort();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public int readUnsignedShort() throws JMSException
+    {
+        try
+        {
+            return in().readUnsignedShort();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public char readChar() throws JMSException
+    {
+        try
+        {
+            return in().readChar();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public int readInt() throws JMSException
+    {
+        try
+        {
+            return in().readInt();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public long readLong() throws JMSException
+    {
+        try
+        {
+            return in().readLong();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public float readFloat() throws JMSException
+    {
+        try
+        {
+            return in().readFloat();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public double readDouble() throws JMSException
+    {
+        try
+        {
+            return in().readDouble();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public String readUTF() throws JMSException
+    {
+        try
+        {
+            return in().readUTF();
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public int readBytes(final byte[] value) throws JMSException
+    {
+        return readBytes(value, value.length);
+    }
+
+    public int readBytes(final byte[] value, final int length) throws JMSException
+    {
+        try
+        {
+            DataInputStream in = in();
+            int available = in.available();
+            if (available == 0)
+            {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, value.length), available);
+            in.readFully(value, 0, count);
+            return count;
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeBoolean(final boolean value) throws JMSException
+    {
+        try
+        {
+            out().writeBoolean(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeByte(final byte value) throws JMSException
+    {
+        try
+        {
+            out().writeByte(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeShort(final short value) throws JMSException
+    {
+        try
+        {
+            out().writeShort(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeChar(final char value) throws JMSException
+    {
+        try
+        {
+            out().writeChar(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeInt(final int value) throws JMSException
+    {
+        try
+        {
+            out().writeInt(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeLong(final long value) throws JMSException
+    {
+        try
+        {
+            out().writeLong(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeFloat(final float value) throws JMSException
+    {
+        try
+        {
+            out().writeFloat(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeDouble(final double value) throws JMSException
+    {
+        try
+        {
+            out().writeDouble(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeUTF(final String value) throws JMSException
+    {
+        try
+        {
+            out().writeUTF(value);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeBytes(final byte[] value) throws JMSException
+    {
+        writeBytes(value, 0, value.length);
+    }
+
+    public void writeBytes(final byte[] value, final int offset, final int length) throws JMSException
+    {
+        try
+        {
+            out().write(value, offset, length);
+        }
+        catch (IOException ioe)
+        {
+            throw toJMSException(ioe);
+        }
+    }
+
+    public void writeObject(final Object value) throws JMSException
+    {
+        if (value == null)
+        {
+            throw new NullPointerException("Can't write a null Object to a BytesMessage");
+        }
+        else if (value instanceof Boolean)
+        {
+            writeBoolean((Boolean)value);
+        }
+        else if (value instanceof Byte)
+        {
+            writeByte((Byte)value);
+        }
+        else if (value instanceof Short)
+        {
+            writeShort((Short)value);
+        }
+        else if (value instanceof Character)
+        {
+            writeChar((Character)value);
+        }
+        else if (value instanceof Integer)
+        {
+            writeInt((Integer)value);
+        }
+        else if (value instanceof Long)
+        {
+            writeLong((Long)value);
+        }
+        else if (value instanceof Float)
+        {
+            writeFloat((Float)value);
+        }
+        else if (value instanceof Double)
+        {
+            writeDouble((Double)value);
+        }
+        else if (value instanceof String)
+        {
+            writeUTF((String)value);
+        }
+        else if (value instanceof byte[])
+        {
+            writeBytes((byte[])value);
+        }
+        else
+        {
+            throw new MessageFormatException("Can't write " + value.getClass().getName() + " to a BytesMessage");
+        }
+    }
+}
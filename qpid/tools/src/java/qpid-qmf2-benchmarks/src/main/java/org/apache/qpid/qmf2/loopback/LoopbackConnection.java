@@ -0,0 +1,263 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.Connection;
+import javax.jms.ConnectionConsumer;
+import javax.jms.ConnectionMetaData;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * A JMS Connection to a LoopbackBroker, created by LoopbackBroker.createConnection().
+ * <p>
+ * Messages may be sent as soon as a Session has been created, but MessageListeners aren't invoked until the
+ * Connection has been started. stop() suspends delivery to MessageListeners, but doesn't wait for a listener that
+ * is currently running to return.
+ *
+ * @author Fraser Adams
+ */
+final class LoopbackConnection implements Connection
+{
+    /**
+     * The ConnectionMetaData of the loopback transport.
+     */
+    private static final ConnectionMetaData META_DATA = new ConnectionMetaData()
+    {
+        public String getJMSVersion()
+        {
+            return "1.1";
+        }
+
+        public int getJMSMajorVersion()
+        {
+            return 1;
+        }
+
+        public int getJMSMinorVersion()
+        {
+            return 1;
+        }
+
+        public String getJMSProviderName()
+        {
+            return "Apache Qpid QMF2 Loopback";
+        }
+
+        public String getProviderVersion()
+        {
+            return "1.0";
+        }
+
+        public int getProviderMajorVersion()
+        {
+            return 1;
+        }
+
+        public int getProviderMinorVersion()
+        {
+            return 0;
+        }
+
+        public Enumeration getJMSXPropertyNames()
+        {
+            return Collections.enumeration(Collections.singletonList("JMSXUserID"));
+        }
+    };
+
+    private final LoopbackBroker _broker;
+    private final String _userName;
+    private final List<LoopbackSession> _sessions = new ArrayList<LoopbackSession>();
+    private String _clientId;
+    private ExceptionListener _exceptionListener;
+    private boolean _started = false;
+    private boolean _closed = false;
+
+    /**
+     * Construct a LoopbackConnection.
+     * @param broker the LoopbackBroker that the Connection routes Messages via.
+     * @param userName the user name of the Connection, may be null.
+     */
+    LoopbackConnection(final LoopbackBroker broker, final String userName)
+    {
+        _broker = broker;
+        _userName = userName;
+    }
+
+    /**
+     * Return the LoopbackBroker that the Connection routes Messages via.
+     * @return the LoopbackBroker that the Connection routes Messages via.
+     */
+    LoopbackBroker getBroker()
+    {
+        return _broker;
+    }
+
+    /**
+     * Return the user name of the Connection.
+     * @return the user name of the Connection, may be null.
+     */
+    String getUserName()
+    {
+        return _userName;
+    }
+
+    /**
+     * Block the calling Session dispatcher thread until the Connection has been started.
+     * @param session the Session whose dispatcher thread is calling.
+     * @return false if the Connection or the Session has been closed.
+     */
+    synchronized boolean awaitStarted(final LoopbackSession session)
+    {
+        while (!_started && !_closed && !session.isClosed())
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                return false;
+            }
+        }
+        return !_closed && !session.isClosed();
+    }
+
+    /**
+     * Throw IllegalStateException if the Connection has been closed.
+     */
+    private void checkNotClosed() throws JMSException
+    {
+        if (_closed)
+        {
+            throw new IllegalStateException("Connection is closed");
+        }
+    }
+
+    /**
+     * Remove a closed Session, waking its dispatcher thread if it is waiting for the Connection to be started.
+     * @param session the Session that has been closed.
+     */
+    synchronized void removeSession(final LoopbackSession session)
+    {
+        _sessions.remove(session);
+        notifyAll();
+    }
+
+    public synchronized Session createSession(final boolean transacted, final int acknowledgeMode) throws JMSException
+    {
+        checkNotClosed();
+        if (transacted)
+        {
+            throw new JMSException("Transacted Sessions are not supported by the loopback transport");
+        }
+
+        LoopbackSession session = new LoopbackSession(this, acknowledgeMode);
+        _sessions.add(session);
+        return session;
+    }
+
+    public synchronized String getClientID()
+    {
+        return _clientId;
+    }
+
+    public synchronized void setClientID(final String clientId) throws JMSException
+    {
+        checkNotClosed();
+        _clientId = clientId;
+    }
+
+    public ConnectionMetaData getMetaData()
+    {
+        return META_DATA;
+    }
+
+    public synchronized ExceptionListener getExceptionListener()
+    {
+        return _exceptionListener;
+    }
+
+    public synchronized void setExceptionListener(final ExceptionListener listener)
+    {
+        // Nothing can go wrong with an in-process Connection, so the ExceptionListener never gets called.
+        _exceptionListener = listener;
+    }
+
+    public synchronized void start() throws JMSException
+    {
+        checkNotClosed();
+        _started = true;
+        notifyAll();
+    }
+
+    public synchronized void stop() throws JMSException
+    {
+        checkNotClosed();
+        _started = false;
+    }
+
+    public void close() throws JMSException
+    {
+        List<LoopbackSession> sessions;
+        synchronized (this)
+        {
+            if (_closed)
+            {
+                return;
+            }
+            _closed = true;
+            notifyAll();
+            sessions = new ArrayList<LoopbackSession>(_sessions);
+        }
+
+        for (LoopbackSession session : sessions)
+        {
+            session.close();
+        }
+    }
+
+    public ConnectionConsumer createConnectionConsumer(final Destination destination, final String selector,
+                                                       final ServerSessionPool pool, final int maxMessages)
+        throws JMSException
+    {
+        throw new JMSException("ConnectionConsumers are not supported by the loopback transport");
+    }
+
+    public ConnectionConsumer createDurableConnectionConsumer(final Topic topic, final String name,
+                                                              final String selector, final ServerSessionPool pool,
+                                                              final int maxMessages) throws JMSException
+    {
+        throw new JMSException("ConnectionConsumers are not supported by the loopback transport");
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+
+// Misc Imports
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JMS MessageConsumer of the loopback transport.
+ * <p>
+ * Each MessageConsumer has its own subscription queue. Messages routed to a MessageConsumer that has a
+ * MessageListener are handed to its Session's dispatcher thread, otherwise they wait on the subscription queue
+ * until they are retrieved via receive(). Messages already waiting when a MessageListener is set are handed to the
+ * dispatcher thread at that point.
+ *
+ * @author Fraser Adams
+ */
+final class LoopbackConsumer implements MessageConsumer
+{
+    /**
+     * Placed on the subscription queue to wake any thread blocked in receive() when the MessageConsumer is closed.
+     */
+    private static final LoopbackMessage CLOSED = new LoopbackMessage();
+
+    private final LoopbackSession _session;
+    private final LoopbackDestination _destination;
+    private final BlockingQueue<LoopbackMessage> _messages = new LinkedBlockingQueue<LoopbackMessage>();
+    private volatile MessageListener _listener;
+    private volatile boolean _closed = false;
+
+    /**
+     * Construct a LoopbackConsumer. The caller binds it to the LoopbackBroker.
+     * @param session the Session that created the MessageConsumer.
+     * @param destination the Destination the MessageConsumer receives from.
+     */
+    LoopbackConsumer(final LoopbackSession session, final LoopbackDestination destination)
+    {
+        _session = session;
+        _destination = destination;
+    }
+
+    /**
+     * Return the Destination the MessageConsumer receives from.
+     * @return the Destination the MessageConsumer receives from.
+     */
+    LoopbackDestination getLoopbackDestination()
+    {
+        return _destination;
+    }
+
+    /**
+     * Return true if the MessageConsumer has been closed.
+     * @return true if the MessageConsumer has been closed.
+     */
+    boolean isClosed()
+    {
+        return _closed;
+    }
+
+    /**
+     * Deliver a Message that the LoopbackBroker has routed to this MessageConsumer.
+     * @param message the Message.
+     */
+    synchronized void deliver(final LoopbackMessage message)
+    {
+        if (_closed)
+        {
+            return;
+        }
+
+        if (_listener == null)
+        {
+            _messages.offer(message);
+        }
+        else
+        {
+            _session.dispatch(this, message);
+        }
+    }
+
+    /**
+     * Throw IllegalStateException if the MessageConsumer has been closed.
+     */
+    private void checkNotClosed() throws JMSException
+    {
+        if (_closed)
+        {
+            throw new IllegalStateException("MessageConsumer is closed");
+        }
+    }
+
+    public String getMessageSelector()
+    {
+        return null;
+    }
+
+    public MessageListener getMessageListener()
+    {
+        return _listener;
+    }
+
+    public synchronized void setMessageListener(final MessageListener listener) throws JMSException
+    {
+        checkNotClosed();
+        _listener = listener;
+        if (_listener != null)
+        {
+            LoopbackMessage message = null;
+            while ((message = _messages.poll()) != null)
+            {
+                _session.dispatch(this, message);
+            }
+        }
+    }
+
+    public Message receive() throws JMSException
+    {
+        return receive(0);
+    }
+
+    public Message receive(final long timeout) throws JMSException
+    {
+        checkNotClosed();
+        try
+        {
+            LoopbackMessage message = timeout == 0 ? _messages.take() : _messages.poll(timeout, TimeUnit.MILLISECONDS);
+            if (message == CLOSED)
+            {
+                _messages.offer(CLOSED); // Wake any other thread blocked in receive().
+                return null;
+            }
+            return message;
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public Message receiveNoWait() throws JMSException
+    {
+        checkNotClosed();
+        LoopbackMessage message = _messages.poll();
+        if (message == CLOSED)
+        {
+            _messages.offer(CLOSED);
+            return null;
+        }
+        return message;
+    }
+
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (_closed)
+            {
+                return;
+            }
+            _closed = true;
+        }
+
+        _session.removeConsumer(this);
+        _messages.clear();
+        _messages.offer(CLOSED);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.InvalidDestinationException;
+import javax.jms.Queue;
+import javax.jms.Topic;
+
+/**
+ * A Destination of the loopback transport, created from a Qpid Address String of the form
+ * <pre>
+ * &lt;node&gt;[/&lt;subject&gt;][; &lt;options&gt;]
+ * </pre>
+ * for example "qmf.default.direct/broker" or "qmf.default.topic/agent.ind.#; {link: {name: 'console-event'}}".
+ * <p>
+ * The node names an exchange of the LoopbackBroker and the subject is used as the routing key when sending, or as the
+ * binding key when receiving. The options are ignored, every MessageConsumer has its own subscription queue.
+ * <p>
+ * As with the Qpid client's AMQAnyDestination, getTopicName() returns the subject (which is how
+ * org.apache.qpid.qmf2.common.Handle gets the routing key of a replyTo) and toString() returns the quoted node
+ * followed by the quoted subject.
+ *
+ * @author Fraser Adams
+ */
+final class LoopbackDestination implements Queue, Topic
+{
+    private final String _node;
+    private final String _subject;
+
+    /**
+     * Construct a LoopbackDestination.
+     * @param node the name of the exchange.
+     * @param subject the routing or binding key, may be null.
+     */
+    private LoopbackDestination(final String node, final String subject)
+    {
+        _node = node;
+        _subject = subject;
+    }
+
+    /**
+     * Create a LoopbackDestination from a Qpid Address String.
+     * @param address the Address String.
+     * @return the LoopbackDestination for the Address.
+     */
+    static LoopbackDestination parse(final String address) throws InvalidDestinationException
+    {
+        if (address == null)
+        {
+            throw new InvalidDestinationException("Address must not be null");
+        }
+
+        String name = address;
+        int options = name.indexOf(';');
+        if (options != -1)
+        {
+            name = name.substring(0, options);
+        }
+
+        String node = name;
+        String subject = null;
+        int slash = name.indexOf('/');
+        if (slash != -1)
+        {
+            node = name.substring(0, slash);
+            subject = unquote(name.substring(slash + 1));
+            if (subject.length() == 0)
+            {
+                subject = null;
+            }
+        }
+
+        node = unquote(node);
+        if (node.length() == 0)
+        {
+            throw new InvalidDestinationException("Invalid Address " + address);
+        }
+
+        return new LoopbackDestination(node, subject);
+    }
+
+    /**
+     * Remove surrounding white space and quotes from part of an Address String.
+     */
+    private static String unquote(final String value)
+    {
+        String result = value.trim();
+        int length = result.length();
+        if (length > 1 && (result.charAt(0) == '\'' || result.charAt(0) == '"') &&
+            result.charAt(length - 1) == result.charAt(0))
+        {
+            result = result.substring(1, length - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Return the name of the exchange.
+     * @return the name of the exchange.
+     */
+    String getNode()
+    {
+        return _node;
+    }
+
+    /**
+     * Return the routing or binding key.
+     * @return the routing or binding key, or null if the Address had no subject.
+     */
+    String getSubject()
+    {
+        return _subject;
+    }
+
+    public String getQueueName()
+    {
+        return _node;
+    }
+
+    public String getTopicName()
+    {
+        return _subject == null ? "" : _subject;
+    }
+
+    @Override
+    public boolean equals(final Object rhs)
+    {
+        if (rhs instanceof LoopbackDestination)
+        {
+            LoopbackDestination destination = (LoopbackDestination)rhs;
+            return _node.equals(destination._node) &&
+                   (_subject == null ? destination._subject == null : _subject.equals(destination._subject));
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _node.hashCode()*31 + (_subject == null ? 0 : _subject.hashCode());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "'" + _node + "'/'" + getTopicName() + "'";
+    }
+}
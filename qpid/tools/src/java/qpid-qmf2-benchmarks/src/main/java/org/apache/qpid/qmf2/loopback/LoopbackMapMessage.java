@@ -0,0 +1,278 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageNotWriteableException;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JMS MapMessage created by a Session of the loopback transport, the Content-Type is "amqp/map".
+ * <p>
+ * As with the Qpid client, values may be java.util.Map and java.util.List as well as the types that JMS allows,
+ * which is how QMF encodes nested structures such as ObjectIds and the values of QmfData. The copy delivered to
+ * each MessageConsumer has its own copies of any Maps, Lists and byte arrays, so neither the sender nor the
+ * receivers can see each other's modifications, just as if the Message had been encoded and sent via a broker.
+ *
+ * @author Fraser Adams
+ */
+public final class LoopbackMapMessage extends LoopbackMessage implements MapMessage
+{
+    private Map<String, Object> _body = new LinkedHashMap<String, Object>();
+    private boolean _bodyReadOnly;
+
+    /**
+     * Construct an empty LoopbackMapMessage. Applications should use Session.createMapMessage().
+     */
+    LoopbackMapMessage()
+    {
+        super("amqp/map");
+    }
+
+    @Override
+    LoopbackMessage copy(final String userId)
+    {
+        LoopbackMapMessage copy = copyHeaders(new LoopbackMapMessage(), userId);
+        copy._body = copyMap(_body);
+        copy._bodyReadOnly = true;
+        return copy;
+    }
+
+    /**
+     * Copy a Map value, copying any nested Maps, Lists or byte arrays.
+     * @param map the Map to copy.
+     * @return the copy of the Map.
+     */
+    private static Map<String, Object> copyMap(final Map<?, ?> map)
+    {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>(map.size()*4/3 + 1);
+        for (Map.Entry<?, ?> entry : map.entrySet())
+        {
+            copy.put((String)entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy a value, the wrapper types, Strings and UUIDs are immutable so only Maps, Lists and byte arrays get copied.
+     * @param value the value to copy.
+     * @return the copy of the value.
+     */
+    private static Object copyValue(final Object value)
+    {
+        if (value instanceof Map)
+        {
+            return copyMap((Map)value);
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List)value;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object item : list)
+            {
+                copy.add(copyValue(item));
+            }
+            return copy;
+        }
+        else if (value instanceof byte[])
+        {
+            return ((byte[])value).clone();
+        }
+        else
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Check that the body may be written.
+     */
+    private void checkWriteable() throws JMSException
+    {
+        if (_bodyReadOnly)
+        {
+            throw new MessageNotWriteableException("The body of a received MapMessage is read only");
+        }
+    }
+
+    @Override
+    public void clearBody()
+    {
+        _body = new LinkedHashMap<String, Object>();
+        _bodyReadOnly = false;
+    }
+
+    public boolean getBoolean(final String name) throws JMSException
+    {
+        return toBoolean(_body.get(name));
+    }
+
+    public byte getByte(final String name) throws JMSException
+    {
+        return toByte(_body.get(name));
+    }
+
+    public short getShort(final String name) throws JMSException
+    {
+        return toShort(_body.get(name));
+    }
+
+    public char getChar(final String name) throws JMSException
+    {
+        Object value = _body.get(name);
+        if (value instanceof Character)
+        {
+            return (Character)value;
+        }
+        else if (value == null)
+        {
+            throw new NullPointerException("No char value named " + name);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to char");
+    }
+
+    public int getInt(final String name) throws JMSException
+    {
+        return toInt(_body.get(name));
+    }
+
+    public long getLong(final String name) throws JMSException
+    {
+        return toLong(_body.get(name));
+    }
+
+    public float getFloat(final String name) throws JMSException
+    {
+        return toFloat(_body.get(name));
+    }
+
+    public double getDouble(final String name) throws JMSException
+    {
+        return toDouble(_body.get(name));
+    }
+
+    public String getString(final String name) throws JMSException
+    {
+        return LoopbackMessage.toString(_body.get(name));
+    }
+
+    public byte[] getBytes(final String name) throws JMSException
+    {
+        Object value = _body.get(name);
+        if (value == null || value instanceof byte[])
+        {
+            return (byte[])value;
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to byte[]");
+    }
+
+    public Object getObject(final String name)
+    {
+        return _body.get(name);
+    }
+
+    public Enumeration getMapNames()
+    {
+        return Collections.enumeration(new ArrayList<String>(_body.keySet()));
+    }
+
+    public void setBoolean(final String name, final boolean value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setByte(final String name, final byte value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setShort(final String name, final short value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setChar(final String name, final char value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setInt(final String name, final int value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setLong(final String name, final long value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setFloat(final String name, final float value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setDouble(final String name, final double value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setString(final String name, final String value) throws JMSException
+    {
+        setObject(name, value);
+    }
+
+    public void setBytes(final String name, final byte[] value) throws JMSException
+    {
+        setObject(name, value == null ? null : value.clone());
+    }
+
+    public void setBytes(final String name, final byte[] value, final int offset, final int length) throws JMSException
+    {
+        byte[] bytes = new byte[length];
+        System.arraycopy(value, offset, bytes, 0, length);
+        setObject(name, bytes);
+    }
+
+    public void setObject(final String name, final Object value) throws JMSException
+    {
+        checkWriteable();
+        if (name == null || name.length() == 0)
+        {
+            throw new IllegalArgumentException("MapMessage names must not be null or empty");
+        }
+        _body.put(name, value);
+    }
+
+    public boolean itemExists(final String name)
+    {
+        return _body.containsKey(name);
+    }
+}
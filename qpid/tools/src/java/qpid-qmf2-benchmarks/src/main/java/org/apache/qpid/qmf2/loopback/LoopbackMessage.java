@@ -0,0 +1,539 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageNotWriteableException;
+
+// Misc Imports
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ContentTypeMessage;
+
+/**
+ * A JMS Message created by a Session of the loopback transport.
+ * <p>
+ * As well as the usual JMS headers and properties a LoopbackMessage carries the AMQP Content-Type, which is exposed
+ * via the ContentTypeMessage interface so that org.apache.qpid.qmf2.common.AMQPMessage can treat it in the same way
+ * as the Qpid client's AbstractJMSMessage.
+ * <p>
+ * When a Message is sent the LoopbackBroker delivers a copy to each matching MessageConsumer. As with a received
+ * Message from a real broker, the properties (and for LoopbackMapMessage and LoopbackBytesMessage the body) of the
+ * delivered copy are read only until clearProperties() or clearBody() are called.
+ * <p>
+ * The JMSXUserID property is set on delivered copies when the sending Connection was created with a user name.
+ * As with the Qpid client it is available via getStringProperty() but is not included in getPropertyNames().
+ *
+ * @author Fraser Adams
+ */
+public class LoopbackMessage implements ContentTypeMessage
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String _messageId;
+    private long _timestamp;
+    private String _correlationId;
+    private Destination _replyTo;
+    private Destination _destination;
+    private int _deliveryMode = DEFAULT_DELIVERY_MODE;
+    private boolean _redelivered;
+    private String _type;
+    private long _expiration;
+    private int _priority = DEFAULT_PRIORITY;
+    private String _contentType;
+    private String _userId;
+    private Map<String, Object> _properties = new LinkedHashMap<String, Object>();
+    private boolean _propertiesReadOnly;
+
+    /**
+     * Construct a LoopbackMessage with the specified Content-Type.
+     * @param contentType the AMQP Content-Type of the Message.
+     */
+    LoopbackMessage(final String contentType)
+    {
+        _contentType = contentType;
+    }
+
+    /**
+     * Construct an empty LoopbackMessage. Applications should use Session.createMessage().
+     */
+    LoopbackMessage()
+    {
+        this("");
+    }
+
+    /**
+     * Copy the headers and properties of this Message to the copy that is about to be delivered.
+     * @param copy the Message being delivered.
+     * @param userId the user name of the sending Connection, may be null.
+     * @return the copy.
+     */
+    final <T extends LoopbackMessage> T copyHeaders(final T copy, final String userId)
+    {
+        LoopbackMessage message = copy;
+        message._messageId = _messageId;
+        message._timestamp = _timestamp;
+        message._correlationId = _correlationId;
+        message._replyTo = _replyTo;
+        message._destination = _destination;
+        message._deliveryMode = _deliveryMode;
+        message._type = _type;
+        message._expiration = _expiration;
+        message._priority = _priority;
+        message._contentType = _contentType;
+        message._userId = userId;
+        message._properties = new LinkedHashMap<String, Object>(_properties); // Property values are immutable.
+        message._propertiesReadOnly = true;
+        return copy;
+    }
+
+    /**
+     * Create the copy of this Message that the LoopbackBroker delivers to a MessageConsumer.
+     * @param userId the user name of the sending Connection, may be null.
+     * @return the copy of this Message.
+     */
+    LoopbackMessage copy(final String userId)
+    {
+        return copyHeaders(new LoopbackMessage(), userId);
+    }
+
+    /**
+     * Return the value of the "qpid.subject" property, which the Qpid client uses to override the subject of the
+     * Destination that the Message is sent to.
+     * @return the value of the "qpid.subject" property or null if it isn't set.
+     */
+    final String getSubject()
+    {
+        Object subject = _properties.get("qpid.subject");
+        return subject == null ? null : subject.toString();
+    }
+
+    /**
+     * Return the AMQP Content-Type of the Message.
+     * @return the AMQP Content-Type of the Message e.g. amqp/list, amqp/map etc.
+     */
+    public final String getContentType()
+    {
+        return _contentType;
+    }
+
+    /**
+     * Set the AMQP Content-Type of the Message.
+     * @param contentType the AMQP Content-Type of the Message e.g. amqp/list, amqp/map etc.
+     */
+    public final void setContentType(final String contentType)
+    {
+        _contentType = contentType == null ? "" : contentType;
+    }
+
+    // ******************************************* JMS Headers *******************************************
+
+    public final String getJMSMessageID()
+    {
+        return _messageId;
+    }
+
+    public final void setJMSMessageID(final String id)
+    {
+        _messageId = id;
+    }
+
+    public final long getJMSTimestamp()
+    {
+        return _timestamp;
+    }
+
+    public final void setJMSTimestamp(final long timestamp)
+    {
+        _timestamp = timestamp;
+    }
+
+    public final byte[] getJMSCorrelationIDAsBytes()
+    {
+        return _correlationId == null ? null : _correlationId.getBytes(UTF8);
+    }
+
+    public final void setJMSCorrelationIDAsBytes(final byte[] correlationId)
+    {
+        _correlationId = correlationId == null ? null : new String(correlationId, UTF8);
+    }
+
+    public final void setJMSCorrelationID(final String correlationId)
+    {
+        _correlationId = correlationId;
+    }
+
+    public final String getJMSCorrelationID()
+    {
+        return _correlationId;
+    }
+
+    public final Destination getJMSReplyTo()
+    {
+        return _replyTo;
+    }
+
+    public final void setJMSReplyTo(final Destination replyTo)
+    {
+        _replyTo = replyTo;
+    }
+
+    public final Destination getJMSDestination()
+    {
+        return _destination;
+    }
+
+    public final void setJMSDestination(final Destination destination)
+    {
+        _destination = destination;
+    }
+
+    public final int getJMSDeliveryMode()
+    {
+        return _deliveryMode;
+    }
+
+    public final void setJMSDeliveryMode(final int deliveryMode)
+    {
+        _deliveryMode = deliveryMode;
+    }
+
+    public final boolean getJMSRedelivered()
+    {
+        return _redelivered;
+    }
+
+    public final void setJMSRedelivered(final boolean redelivered)
+    {
+        _redelivered = redelivered;
+    }
+
+    public final String getJMSType()
+    {
+        return _type;
+    }
+
+    public final void setJMSType(final String type)
+    {
+        _type = type;
+    }
+
+    public final long getJMSExpiration()
+    {
+        return _expiration;
+    }
+
+    public final void setJMSExpiration(final long expiration)
+    {
+        _expiration = expiration;
+    }
+
+    public final int getJMSPriority()
+    {
+        return _priority;
+    }
+
+    public final void setJMSPriority(final int priority)
+    {
+        _priority = priority;
+    }
+
+    // ***************************************** JMS Properties ******************************************
+
+    public final void clearProperties()
+    {
+        _properties = new LinkedHashMap<String, Object>();
+        _propertiesReadOnly = false;
+    }
+
+    public final boolean propertyExists(final String name)
+    {
+        return _properties.containsKey(name) || ("JMSXUserID".equals(name) && _userId != null);
+    }
+
+    public final boolean getBooleanProperty(final String name) throws JMSException
+    {
+        return toBoolean(getObjectProperty(name));
+    }
+
+    public final byte getByteProperty(final String name) throws JMSException
+    {
+        return toByte(getObjectProperty(name));
+    }
+
+    public final short getShortProperty(final String name) throws JMSException
+    {
+        return toShort(getObjectProperty(name));
+    }
+
+    public final int getIntProperty(final String name) throws JMSException
+    {
+        return toInt(getObjectProperty(name));
+    }
+
+    public final long getLongProperty(final String name) throws JMSException
+    {
+        return toLong(getObjectProperty(name));
+    }
+
+    public final float getFloatProperty(final String name) throws JMSException
+    {
+        return toFloat(getObjectProperty(name));
+    }
+
+    public final double getDoubleProperty(final String name) throws JMSException
+    {
+        return toDouble(getObjectProperty(name));
+    }
+
+    public final String getStringProperty(final String name) throws JMSException
+    {
+        return toString(getObjectProperty(name));
+    }
+
+    public final Object getObjectProperty(final String name)
+    {
+        if ("JMSXUserID".equals(name) && _userId != null)
+        {
+            return _userId;
+        }
+        return _properties.get(name);
+    }
+
+    public final Enumeration getPropertyNames()
+    {
+        return Collections.enumeration(new ArrayList<String>(_properties.keySet()));
+    }
+
+    public final void setBooleanProperty(final String name, final boolean value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setByteProperty(final String name, final byte value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setShortProperty(final String name, final short value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setIntProperty(final String name, final int value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setLongProperty(final String name, final long value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setFloatProperty(final String name, final float value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setDoubleProperty(final String name, final double value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setStringProperty(final String name, final String value) throws JMSException
+    {
+        setObjectProperty(name, value);
+    }
+
+    public final void setObjectProperty(final String name, final Object value) throws JMSException
+    {
+        if (_propertiesReadOnly)
+        {
+            throw new MessageNotWriteableException("The properties of a received Message are read only");
+        }
+
+        if (name == null || name.length() == 0)
+        {
+            throw new IllegalArgumentException("Property names must not be null or empty");
+        }
+
+        if (value != null && !(value instanceof Boolean || value instanceof Byte || value instanceof Short ||
+            value instanceof Integer || value instanceof Long || value instanceof Float || value instanceof Double ||
+            value instanceof String))
+        {
+            throw new MessageFormatException("Invalid type " + value.getClass().getName() + " for property " + name);
+        }
+
+        _properties.put(name, value);
+    }
+
+    public void acknowledge()
+    {
+        // Messages are delivered in memory, there's nothing to acknowledge.
+    }
+
+    public void clearBody() throws JMSException
+    {
+    }
+
+    // ************************ Conversions between the types of properties and MapMessage values ************************
+
+    /**
+     * Convert a property or MapMessage value to boolean as per the JMS type conversion table.
+     */
+    static boolean toBoolean(final Object value) throws JMSException
+    {
+        if (value instanceof Boolean)
+        {
+            return (Boolean)value;
+        }
+        else if (value == null || value instanceof String)
+        {
+            return Boolean.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to boolean");
+    }
+
+    /**
+     * Convert a property or MapMessage value to byte as per the JMS type conversion table.
+     */
+    static byte toByte(final Object value) throws JMSException
+    {
+        if (value instanceof Byte)
+        {
+            return (Byte)value;
+        }
+        else if (value == null || value instanceof String)
+        {
+            return Byte.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to byte");
+    }
+
+    /**
+     * Convert a property or MapMessage value to short as per the JMS type conversion table.
+     */
+    static short toShort(final Object value) throws JMSException
+    {
+        if (value instanceof Short || value instanceof Byte)
+        {
+            return ((Number)value).shortValue();
+        }
+        else if (value == null || value instanceof String)
+        {
+            return Short.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to short");
+    }
+
+    /**
+     * Convert a property or MapMessage value to int as per the JMS type conversion table.
+     */
+    static int toInt(final Object value) throws JMSException
+    {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            return ((Number)value).intValue();
+        }
+        else if (value == null || value instanceof String)
+        {
+            return Integer.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to int");
+    }
+
+    /**
+     * Convert a property or MapMessage value to long as per the JMS type conversion table.
+     */
+    static long toLong(final Object value) throws JMSException
+    {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            return ((Number)value).longValue();
+        }
+        else if (value == null || value instanceof String)
+        {
+            return Long.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to long");
+    }
+
+    /**
+     * Convert a property or MapMessage value to float as per the JMS type conversion table.
+     */
+    static float toFloat(final Object value) throws JMSException
+    {
+        if (value instanceof Float)
+        {
+            return (Float)value;
+        }
+        else if (value == null || value instanceof String)
+        {
+            if (value == null)
+            { // Float.valueOf(null) throws NullPointerException rather than the NumberFormatException JMS requires.
+                throw new NumberFormatException("null");
+            }
+            return Float.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to float");
+    }
+
+    /**
+     * Convert a property or MapMessage value to double as per the JMS type conversion table.
+     */
+    static double toDouble(final Object value) throws JMSException
+    {
+        if (value instanceof Double || value instanceof Float)
+        {
+            return ((Number)value).doubleValue();
+        }
+        else if (value == null || value instanceof String)
+        {
+            if (value == null)
+            { // Double.valueOf(null) throws NullPointerException rather than the NumberFormatException JMS requires.
+                throw new NumberFormatException("null");
+            }
+            return Double.valueOf((String)value);
+        }
+        throw new MessageFormatException("Can't convert " + value.getClass().getName() + " to double");
+    }
+
+    /**
+     * Convert a property or MapMessage value to String as per the JMS type conversion table.
+     */
+    static String toString(final Object value) throws JMSException
+    {
+        if (value instanceof byte[])
+        {
+            throw new MessageFormatException("Can't convert byte[] to String");
+        }
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.InvalidDestinationException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageProducer;
+
+/**
+ * A JMS MessageProducer of the loopback transport. Sending a Message routes it synchronously via the LoopbackBroker,
+ * so by the time send() returns a copy of the Message is waiting for each matching MessageConsumer.
+ * <p>
+ * As with the Qpid client a MessageProducer created with a Destination may also send to other Destinations.
+ *
+ * @author Fraser Adams
+ */
+final class LoopbackProducer implements MessageProducer
+{
+    private final LoopbackSession _session;
+    private final LoopbackDestination _destination;
+    private boolean _disableMessageId = false;
+    private boolean _disableMessageTimestamp = false;
+    private int _deliveryMode = Message.DEFAULT_DELIVERY_MODE;
+    private int _priority = Message.DEFAULT_PRIORITY;
+    private long _timeToLive = Message.DEFAULT_TIME_TO_LIVE;
+    private volatile boolean _closed = false;
+
+    /**
+     * Construct a LoopbackProducer.
+     * @param session the Session that created the MessageProducer.
+     * @param destination the default Destination of the MessageProducer, may be null.
+     */
+    LoopbackProducer(final LoopbackSession session, final LoopbackDestination destination)
+    {
+        _session = session;
+        _destination = destination;
+    }
+
+    /**
+     * Throw IllegalStateException if the MessageProducer has been closed.
+     */
+    private void checkNotClosed() throws JMSException
+    {
+        if (_closed)
+        {
+            throw new IllegalStateException("MessageProducer is closed");
+        }
+    }
+
+    public void setDisableMessageID(final boolean value)
+    {
+        _disableMessageId = value;
+    }
+
+    public boolean getDisableMessageID()
+    {
+        return _disableMessageId;
+    }
+
+    public void setDisableMessageTimestamp(final boolean value)
+    {
+        _disableMessageTimestamp = value;
+    }
+
+    public boolean getDisableMessageTimestamp()
+    {
+        return _disableMessageTimestamp;
+    }
+
+    public void setDeliveryMode(final int deliveryMode)
+    {
+        _deliveryMode = deliveryMode;
+    }
+
+    public int getDeliveryMode()
+    {
+        return _deliveryMode;
+    }
+
+    public void setPriority(final int priority)
+    {
+        _priority = priority;
+    }
+
+    public int getPriority()
+    {
+        return _priority;
+    }
+
+    public void setTimeToLive(final long timeToLive)
+    {
+        _timeToLive = timeToLive;
+    }
+
+    public long getTimeToLive()
+    {
+        return _timeToLive;
+    }
+
+    public Destination getDestination()
+    {
+        return _destination;
+    }
+
+    public void close()
+    {
+        _closed = true;
+    }
+
+    public void send(final Message message) throws JMSException
+    {
+        send(_destination, message, _deliveryMode, _priority, _timeToLive);
+    }
+
+    public void send(final Message message, final int deliveryMode, final int priority, final long timeToLive)
+        throws JMSException
+    {
+        send(_destination, message, deliveryMode, priority, timeToLive);
+    }
+
+    public void send(final Destination destination, final Message message) throws JMSException
+    {
+        send(destination, message, _deliveryMode, _priority, _timeToLive);
+    }
+
+    public void send(final Destination destination, final Message message, final int deliveryMode,
+                     final int priority, final long timeToLive) throws JMSException
+    {
+        checkNotClosed();
+        if (destination == null)
+        {
+            throw new UnsupportedOperationException("The MessageProducer has no Destination");
+        }
+        else if (!(destination instanceof LoopbackDestination))
+        {
+            throw new InvalidDestinationException("Destination " + destination + " wasn't created by the loopback transport");
+        }
+        else if (!(message instanceof LoopbackMessage))
+        {
+            throw new MessageFormatException("Message wasn't created by the loopback transport");
+        }
+
+        long now = (_disableMessageTimestamp && timeToLive == 0) ? 0l : System.currentTimeMillis();
+        LoopbackMessage msg = (LoopbackMessage)message;
+        msg.setJMSDestination(destination);
+        msg.setJMSDeliveryMode(deliveryMode);
+        msg.setJMSPriority(priority);
+        msg.setJMSExpiration(timeToLive == 0 ? 0l : now + timeToLive);
+        msg.setJMSTimestamp(_disableMessageTimestamp ? 0l : now);
+        msg.setJMSMessageID(_disableMessageId ? null : _session.getBroker().nextMessageId());
+
+        _session.send((LoopbackDestination)destination, msg);
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.loopback;
+
+// JMS Imports
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.InvalidDestinationException;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.jms.TopicSubscriber;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-transacted JMS Session of the loopback transport.
+ * <p>
+ * Each Session has a daemon dispatcher thread that invokes the MessageListeners of the Session's MessageConsumers
+ * one Message at a time, in the order the Messages were routed to them, once the Connection has been started.
+ * Messages are delivered in memory, so the acknowledge mode has no effect.
+ *
+ * @author Fraser Adams
+ */
+final class LoopbackSession implements Session
+{
+    private static final Logger _log = LoggerFactory.getLogger(LoopbackSession.class);
+
+    private static final AtomicInteger _count = new AtomicInteger();
+
+    /**
+     * A Message waiting to be passed to the MessageListener of a MessageConsumer.
+     */
+    private static final class Delivery
+    {
+        private final LoopbackConsumer _consumer;
+        private final LoopbackMessage _message;
+
+        public Delivery(final LoopbackConsumer consumer, final LoopbackMessage message)
+        {
+            _consumer = consumer;
+            _message = message;
+        }
+    }
+
+    /**
+     * Placed on the dispatch queue to stop the dispatcher thread when the Session is closed.
+     */
+    private static final Delivery CLOSED = new Delivery(null, null);
+
+    private final LoopbackConnection _connection;
+    private final int _acknowledgeMode;
+    private final List<LoopbackConsumer> _consumers = new CopyOnWriteArrayList<LoopbackConsumer>();
+    private final BlockingQueue<Delivery> _deliveries = new LinkedBlockingQueue<Delivery>();
+    private final Thread _dispatcher;
+    private volatile boolean _closed = false;
+
+    /**
+     * Construct a LoopbackSession and start its dispatcher thread.
+     * @param connection the Connection that created the Session.
+     * @param acknowledgeMode the acknowledge mode of the Session.
+     */
+    LoopbackSession(final LoopbackConnection connection, final int acknowledgeMode)
+    {
+        _connection = connection;
+        _acknowledgeMode = acknowledgeMode;
+        _dispatcher = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                dispatch();
+            }
+        }, "qmf2-loopback-session-" + _count.incrementAndGet());
+        _dispatcher.setDaemon(true);
+        _dispatcher.start();
+    }
+
+    /**
+     * The body of the dispatcher thread, invokes MessageListeners until the Session is closed.
+     */
+    private void dispatch()
+    {
+        try
+        {
+            while (true)
+            {
+                Delivery delivery = _deliveries.take();
+                if (delivery == CLOSED || !_connection.awaitStarted(this))
+                {
+                    return;
+                }
+
+                if (delivery._consumer.isClosed())
+                {
+                    continue;
+                }
+
+                MessageListener listener = delivery._consumer.getMessageListener();
+                if (listener != null)
+                {
+                    try
+                    {
+                        listener.onMessage(delivery._message);
+                    }
+                    catch (RuntimeException re)
+                    {
+                        _log.info("RuntimeException {} caught in dispatch()", re.getMessage());
+                    }
+                }
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            // Just exit the dispatcher thread.
+        }
+    }
+
+    /**
+     * Queue a Message for delivery to the MessageListener of the specified MessageConsumer.
+     * @param consumer the MessageConsumer.
+     * @param message the Message.
+     */
+    void dispatch(final LoopbackConsumer consumer, final LoopbackMessage message)
+    {
+        if (!_closed)
+        {
+            _deliveries.offer(new Delivery(consumer, message));
+        }
+    }
+
+    /**
+     * Return the LoopbackBroker that the Session's Connection routes Messages via.
+     * @return the LoopbackBroker that the Session's Connection routes Messages via.
+     */
+    LoopbackBroker getBroker()
+    {
+        return _connection.getBroker();
+    }
+
+    /**
+     * Route a Message sent by one of the Session's MessageProducers.
+     * @param destination the Destination the Message is sent to.
+     * @param message the Message.
+     */
+    void send(final LoopbackDestination destination, final LoopbackMessage message) throws JMSException
+    {
+        checkNotClosed();
+        _connection.getBroker().route(destination, message, _connection.getUserName());
+    }
+
+    /**
+     * Return true if the Session has been closed.
+     * @return true if the Session has been closed.
+     */
+    boolean isClosed()
+    {
+        return _closed;
+    }
+
+    /**
+     * Unbind a closed MessageConsumer.
+     * @param consumer the MessageConsumer that has been closed.
+     */
+    void removeConsumer(final LoopbackConsumer consumer)
+    {
+        _consumers.remove(consumer);
+        _connection.getBroker().unbind(consumer);
+    }
+
+    /**
+     * Throw IllegalStateException if the Session has been closed.
+     */
+    private void checkNotClosed() throws JMSException
+    {
+        if (_closed)
+        {
+            throw new IllegalStateException("Session is closed");
+        }
+    }
+
+    /**
+     * Return the LoopbackDestination for a Destination passed by the application.
+     */
+    private static LoopbackDestination toLoopbackDestination(final Destination destination) throws JMSException
+    {
+        if (destination == null || destination instanceof LoopbackDestination)
+        {
+            return (LoopbackDestination)destination;
+        }
+        throw new InvalidDestinationException("Destination " + destination + " wasn't created by the loopback transport");
+    }
+
+    public BytesMessage createBytesMessage() throws JMSException
+    {
+        checkNotClosed();
+        return new LoopbackBytesMessage();
+    }
+
+    public MapMessage createMapMessage() throws JMSException
+    {
+        checkNotClosed();
+        return new LoopbackMapMessage();
+    }
+
+    public Message createMessage() throws JMSException
+    {
+        checkNotClosed();
+        return new LoopbackMessage();
+    }
+
+    public ObjectMessage createObjectMessage() throws JMSException
+    {
+        throw new JMSException("ObjectMessages are not supported by the loopback transport");
+    }
+
+    public ObjectMessage createObjectMessage(final Serializable object) throws JMSException
+    {
+        throw new JMSException("ObjectMessages are not supported by the loopback transport");
+    }
+
+    public StreamMessage createStreamMessage() throws JMSException
+    {
+        throw new JMSException("StreamMessages are not supported by the loopback transport");
+    }
+
+    public TextMessage createTextMessage() throws JMSException
+    {
+        throw new JMSException("TextMessages are not supported by the loopback transport");
+    }
+
+    public TextMessage createTextMessage(final String text) throws JMSException
+    {
+        throw new JMSException("TextMessages are not supported by the loopback transport");
+    }
+
+    public boolean getTransacted()
+    {
+        return false;
+    }
+
+    public int getAcknowledgeMode()
+    {
+        return _acknowledgeMode;
+    }
+
+    public void commit() throws JMSException
+    {
+        throw new IllegalStateException("Session is not transacted");
+    }
+
+    public void rollback() throws JMSException
+    {
+        throw new IllegalStateException("Session is not transacted");
+    }
+
+    /**
+     * Close the Session, closing its MessageConsumers. Unless called from a MessageListener of this Session this
+     * waits for the MessageListener that is currently running, if any, to return.
+     */
+    public void close()
+    {
+        if (_closed)
+        {
+            return;
+        }
+        _closed = true;
+
+        for (LoopbackConsumer consumer : _consumers)
+        {
+            consumer.close();
+        }
+
+        _deliveries.clear();
+        _deliveries.offer(CLOSED);
+        _connection.removeSession(this);
+
+        if (Thread.currentThread() != _dispatcher)
+        {
+            try
+            {
+                _dispatcher.join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void recover() throws JMSException
+    {
+        checkNotClosed();
+    }
+
+    public MessageListener getMessageListener() throws JMSException
+    {
+        throw new JMSException("Session MessageListeners are not supported by the loopback transport");
+    }
+
+    public void setMessageListener(final MessageListener listener) throws JMSException
+    {
+        throw new JMSException("Session MessageListeners are not supported by the loopback transport");
+    }
+
+    /**
+     * Only used by application servers, which aren't supported by the loopback transport.
+     */
+    public void run()
+    {
+        throw new UnsupportedOperationException("Session.run() is not supported by the loopback transport");
+    }
+
+    public MessageProducer createProducer(final Destination destination) throws JMSException
+    {
+        checkNotClosed();
+        return new LoopbackProducer(this, toLoopbackDestination(destination));
+    }
+
+    public MessageConsumer createConsumer(final Destination destination) throws JMSException
+    {
+        checkNotClosed();
+        if (destination == null)
+        {
+            throw new InvalidDestinationException("Destination must not be null");
+        }
+
+        LoopbackConsumer consumer = new LoopbackConsumer(this, toLoopbackDestination(destination));
+        _consumers.add(consumer);
+        _connection.getBroker().bind(consumer);
+        return consumer;
+    }
+
+    public MessageConsumer createConsumer(final Destination destination, final String selector) throws JMSException
+    {
+        return createConsumer(destination, selector, false);
+    }
+
+    public MessageConsumer createConsumer(final Destination destination, final String selector, final boolean noLocal)
+        throws JMSException
+    {
+        if (selector != null && selector.trim().length() > 0)
+        {
+            throw new JMSException("Message selectors are not supported by the loopback transport");
+        }
+        return createConsumer(destination);
+    }
+
+    public Queue createQueue(final String address) throws JMSException
+    {
+        checkNotClosed();
+        return LoopbackDestination.parse(address);
+    }
+
+    public Topic createTopic(final String address) throws JMSException
+    {
+        checkNotClosed();
+        return LoopbackDestination.parse(address);
+    }
+
+    public TopicSubscriber createDurableSubscriber(final Topic topic, final String name) throws JMSException
+    {
+        throw new JMSException("Durable subscriptions are not supported by the loopback transport");
+    }
+
+    public TopicSubscriber createDurableSubscriber(final Topic topic, final String name, final String selector,
+                                                   final boolean noLocal) throws JMSException
+    {
+        throw new JMSException("Durable subscriptions are not supported by the loopback transport");
+    }
+
+    public QueueBrowser createBrowser(final Queue queue) throws JMSException
+    {
+        throw new JMSException("QueueBrowsers are not supported by the loopback transport");
+    }
+
+    public QueueBrowser createBrowser(final Queue queue, final String selector) throws JMSException
+    {
+        throw new JMSException("QueueBrowsers are not supported by the loopback transport");
+    }
+
+    public TemporaryQueue createTemporaryQueue() throws JMSException
+    {
+        throw new JMSException("Temporary destinations are not supported by the loopback transport");
+    }
+
+    public TemporaryTopic createTemporaryTopic() throws JMSException
+    {
+        throw new JMSException("Temporary destinations are not supported by the loopback transport");
+    }
+
+    public void unsubscribe(final String name) throws JMSException
+    {
+        throw new JMSException("Durable subscriptions are not supported by the loopback transport");
+    }
+}
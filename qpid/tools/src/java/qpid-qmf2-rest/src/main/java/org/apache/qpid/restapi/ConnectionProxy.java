@@ -53,7 +53,8 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
 {
     private static final Logger _log = LoggerFactory.getLogger(ConnectionProxy.class);
 
-    private static final int MAX_WORKITEM_QUEUE_SIZE = 20; // Maximum number of items allowed on WorkItem queue.
+    // Maximum number of items allowed on WorkItem queue, the oldest items are discarded when it is full.
+    private static final String WORKITEM_QUEUE_OPTIONS = "{workQueueCapacity: 20, workQueueOverflow: 'drop_oldest'}";
 
     // Connections expire after 20 minutes of no use.
     private static final int TIMEOUT_THRESHOLD = (20*60000)/ConnectionStore.PING_PERIOD; 
@@ -87,8 +88,8 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
                 // N.B. creating a Console with a notifier causes the internal WorkQueue to get populated, so care must
                 // be taken to manage its size. In a normal Console application the application would only declare this
                 // if there was an intention to retrieve work items, but in a fairly general REST API we can't guarantee
-                // that clients will. ConsoleLease acts to make the WorkQueue "circular" by deleting items from the
-                // front of the WorkQueue if it exceeds a particular size.
+                // that clients will. The WorkQueue is bounded with the drop_oldest policy to make it "circular", so
+                // items are deleted from the front of the WorkQueue if it exceeds a particular size.
                 if (_disableEvents)
                 {
                     _console = new Console(_name, null, null, null);
@@ -97,7 +98,7 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
                 else
                 {
                     BlockingNotifier notifier = new BlockingNotifier();
-                    _console = new Console(_name, null, notifier, null);
+                    _console = new Console(_name, null, notifier, WORKITEM_QUEUE_OPTIONS);
                 }
                 _console.addConnection(_connection);
                 _connected = true;
@@ -182,9 +183,9 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
     /**
      * This method is called periodically by {@link org.apache.qpid.restapi.ConnectionStore} to carry out a number
      * of housekeeping tasks. It checks if the Qpid Connection is still connected and if not it attempts to reconnect
-     * it also checks whether the Connection "lease" has run out and if it has it tidies up the Connection. Finally
-     * it restricts the size of the QMF2 WorkItem queue as the REST API has no control over whether a client is or
-     * is not interested in being notified of QMF2 Events.
+     * it also checks whether the Connection "lease" has run out and if it has it tidies up the Connection. N.B. the
+     * size of the QMF2 WorkItem queue, which needs to be restricted as the REST API has no control over whether a
+     * client is or is not interested in being notified of QMF2 Events, is bounded by the Console itself.
      */
     public void run()
     {
@@ -192,11 +193,6 @@ public final class ConnectionProxy extends TimerTask implements ExceptionListene
         {
             //System.out.println("ConnectionProxy name: " + _name + ", thread: " + Thread.currentThread().getId() + ", WorkItem count = " + _console.getWorkitemCount());
 
-            while (_console.getWorkitemCount() > MAX_WORKITEM_QUEUE_SIZE)
-            {
-                _console.getNextWorkitem();
-            }
-
             _expireCount--;
             //System.out.println("ConnectionProxy name: " + _name + ", thread: " + Thread.currentThread().getId() + ", expireCount = " + _expireCount);
             if (_expireCount == 0)
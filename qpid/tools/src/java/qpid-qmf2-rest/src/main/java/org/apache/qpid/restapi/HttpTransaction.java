@@ -22,6 +22,7 @@ package org.apache.qpid.restapi;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * An HttpTransaction encapsulates an HTTP request received and a response to be generated in one HTTP request/response
@@ -90,6 +91,18 @@ public interface HttpTransaction
      */
     public void sendResponse(final int status, final String mimeType, final InputStream is) throws IOException;
 
+    /**
+     * Send the HTTP response headers back to the client and return a stream to which the response content may then
+     * be written, using chunked transfer encoding so the content length needn't be known in advance. This allows
+     * large responses to be written as they are generated rather than being built in memory first.
+     * <p>
+     * The caller must close the returned OutputStream, which completes the response.
+     * @param status the HTTP status code e.g. 200 for OK.
+     * @param mimeType the mimeType of the response content e.g. text/plain, text/xml, image/jpeg etc.
+     * @return the OutputStream to which the content of the response should be written.
+     */
+    public OutputStream getResponseStream(final int status, final String mimeType) throws IOException;
+
     /**
      * Returns the Internet Protocol (IP) address of the client or last proxy that sent the request.
      * @return the Internet Protocol (IP) address of the client or last proxy that sent the request.
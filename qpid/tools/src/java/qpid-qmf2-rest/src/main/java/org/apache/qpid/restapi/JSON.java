@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.restapi;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -62,10 +63,104 @@ public final class JSON
      * @return the JSON String encoding.
      */
     public final static String fromObject(final Object item)
+    {
+        StringBuilder buffer = new StringBuilder(512);
+        try
+        {
+            writeObject(buffer, item);
+        }
+        catch (IOException ioe)
+        { // Can't happen, StringBuilder.append() doesn't throw IOException.
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Serialise a Map to JSON.
+     * @param m the Map that we wish to serialise to JSON.
+     * @return the JSON String encoding.
+     */
+    public final static String fromMap(final Map m)
+    {
+        StringBuilder buffer = new StringBuilder(512);
+        try
+        {
+            writeMap(buffer, m);
+        }
+        catch (IOException ioe)
+        { // Can't happen, StringBuilder.append() doesn't throw IOException.
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Serialise a List to JSON.
+     * @param list the List that we wish to serialise to JSON.
+     * @return the JSON String encoding.
+     */
+    public final static String fromList(final List list)
+    {
+        StringBuilder buffer = new StringBuilder(512);
+        try
+        {
+            writeList(buffer, list);
+        }
+        catch (IOException ioe)
+        { // Can't happen, StringBuilder.append() doesn't throw IOException.
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Serialise a QmfData Object to JSON. If the Object is a QmfConsoleData we serialise the ObjectId as a String
+     * which is the same encoding used for the various "ref" properies in fromObject().
+     * @param data the QmfData that we wish to serialise to JSON.
+     * @return the JSON String encoding.
+     */
+    public final static String fromQmfData(final QmfData data)
+    {
+        StringBuilder buffer = new StringBuilder(512);
+        try
+        {
+            writeQmfData(buffer, data);
+        }
+        catch (IOException ioe)
+        { // Can't happen, StringBuilder.append() doesn't throw IOException.
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Serialise a WorkItem Object to JSON.
+     * @param data the WorkItem that we wish to serialise to JSON.
+     * @return the JSON String encoding.
+     */
+    public final static String fromWorkItem(final WorkItem data)
+    {
+        StringBuilder buffer = new StringBuilder(512);
+        try
+        {
+            writeWorkItem(buffer, data);
+        }
+        catch (IOException ioe)
+        { // Can't happen, StringBuilder.append() doesn't throw IOException.
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Serialise an Object to JSON, writing the encoding to the specified Appendable as it goes rather than building
+     * a String. This produces exactly the same encoding as fromObject() but, when the Appendable is a Writer wrapping
+     * an HTTP response stream, lets large results such as a getObjects() response on a broker with many thousands
+     * of queues be sent without ever holding the whole document in memory.
+     * @param out the Appendable (e.g. a Writer) that the JSON encoding is written to.
+     * @param item the Object that we wish to serialise to JSON.
+     */
+    public final static void writeObject(final Appendable out, final Object item) throws IOException
     {
         if (item == null)
         {
-            return "";
+            return;
         }
         else
         {
@@ -74,156 +169,162 @@ public final class JSON
                 Map map = (Map)item;
                 if (map.containsKey("_object_name"))
                 { // Serialise "ref" properties as String versions of ObjectId to match encoding used in fromQmfData()
-                    return "\"" + new ObjectId(map) + "\"";
+                    writeString(out, new ObjectId(map).toString());
                 }
                 else
                 {
-                    return fromMap(map);
+                    writeMap(out, map);
                 }
             }
             else if (item instanceof List)
             {
-                return fromList((List)item);
+                writeList(out, (List)item);
             }
             else if (item instanceof QmfData)
             {
-                return fromQmfData((QmfData)item);
+                writeQmfData(out, (QmfData)item);
             }
             else if (item instanceof WorkItem)
             {
-                return fromWorkItem((WorkItem)item);
+                writeWorkItem(out, (WorkItem)item);
             }
             else if (item instanceof String)
             {
-                return "\"" + item + "\"";
+                writeString(out, (String)item);
             }
             else if (item instanceof byte[])
             {
-                return "\"" + new String((byte[])item) + "\"";
+                writeString(out, new String((byte[])item));
             }
             else if (item instanceof UUID)
             {
-                return "\"" + item.toString() + "\"";
+                writeString(out, item.toString());
             }
             else
             {
-                return item.toString();
+                out.append(item.toString());
             }
         }
     }
 
     /**
-     * Encode the Map contents so we can use the same code for fromMap and fromQmfData as the latter also needs
-     * to encode _object_id and _schema_id. This returns a String that needs to be topped and tailed with braces.
+     * Write a quoted String.
+     * @param out the Appendable that the String is written to.
+     * @param value the String that we wish to write.
+     */
+    private final static void writeString(final Appendable out, final String value) throws IOException
+    {
+        out.append('"').append(value).append('"');
+    }
+
+    /**
+     * Encode the Map contents so we can use the same code for writeMap and writeQmfData as the latter also needs
+     * to encode _object_id and _schema_id. The caller needs to top and tail the contents with braces.
+     * @param out the Appendable that the JSON encoding is written to.
      * @param m the Map that we wish to serialise to JSON.
-     * @return the String encoding of the contents.
      */
     @SuppressWarnings("unchecked")
-    private final static String encodeMapContents(final Map m)
+    private final static void writeMapContents(final Appendable out, final Map m) throws IOException
     {
         Map<String, Object> map = (Map<String, Object>)m;
-        StringBuilder buffer = new StringBuilder(512);
         int size = map.size();
         int count = 1;
         for (Map.Entry<String, Object> entry : map.entrySet())
         {
-            String key = (String)entry.getKey();
-            buffer.append("\"" + key + "\":");
-
-            Object value = entry.getValue();
-            buffer.append(fromObject(value));
+            writeString(out, entry.getKey());
+            out.append(':');
+            writeObject(out, entry.getValue());
             if (count++ < size)
             {
-                buffer.append(",");
+                out.append(',');
             }
         }
-        return buffer.toString();
     }
 
     /**
-     * Serialise a Map to JSON.
+     * Serialise a Map to JSON, writing the encoding to the specified Appendable.
+     * @param out the Appendable that the JSON encoding is written to.
      * @param m the Map that we wish to serialise to JSON.
-     * @return the JSON String encoding.
      */
-    @SuppressWarnings("unchecked")
-    public final static String fromMap(final Map m)
+    public final static void writeMap(final Appendable out, final Map m) throws IOException
     {
-        return "{" + encodeMapContents(m) + "}";
+        out.append('{');
+        writeMapContents(out, m);
+        out.append('}');
     }
 
     /**
-     * Serialise a List to JSON.
+     * Serialise a List to JSON, writing the encoding to the specified Appendable.
+     * @param out the Appendable that the JSON encoding is written to.
      * @param list the List that we wish to serialise to JSON.
-     * @return the JSON String encoding.
      */
-    public final static String fromList(final List list)
+    public final static void writeList(final Appendable out, final List list) throws IOException
     {
-        StringBuilder buffer = new StringBuilder(512);
-        buffer.append("[");
+        out.append('[');
         int size = list.size();
         int count = 1;
         for (Object item : list)
         {
-            buffer.append(fromObject(item));
+            writeObject(out, item);
             if (count++ < size)
             {
-                buffer.append(",");
+                out.append(',');
             }
         }
-        buffer.append("]");
-        return buffer.toString();
+        out.append(']');
     }
 
     /**
-     * Serialise a QmfData Object to JSON. If the Object is a QmfConsoleData we serialise the ObjectId as a String
-     * which is the same encoding used for the various "ref" properies in fromObject().
+     * Serialise a QmfData Object to JSON, writing the encoding to the specified Appendable. If the Object is a
+     * QmfConsoleData we serialise the ObjectId as a String which is the same encoding used for the various "ref"
+     * properies in writeObject().
+     * @param out the Appendable that the JSON encoding is written to.
      * @param data the QmfData that we wish to serialise to JSON.
-     * @return the JSON String encoding.
      */
-    public final static String fromQmfData(final QmfData data)
+    public final static void writeQmfData(final Appendable out, final QmfData data) throws IOException
     {
-        String consoleDataInfo = "";
-
+        out.append('{');
         if (data instanceof QmfConsoleData)
         {
             QmfConsoleData consoleData = (QmfConsoleData)data;
             SchemaClassId sid = consoleData.getSchemaClassId();
             long[] ts = consoleData.getTimestamps();
 
-            String objectId = "\"_object_id\":\"" + consoleData.getObjectId().toString() + "\",";
-            String schemaId = "\"_schema_id\":{" + 
-                "\"_package_name\":\"" + sid.getPackageName() +
-                "\",\"_class_name\":\"" + sid.getClassName() +
-                "\",\"_type\":\"" + sid.getType() +
-                "\",\"_hash\":\"" + sid.getHashString() +
-            "\"},";
-
-            String timestamps = "\"_update_ts\":" + ts[0] + "," +
-                                "\"_create_ts\":" + ts[1] + "," +
-                                "\"_delete_ts\":" + ts[2] + ",";
+            out.append("\"_object_id\":\"").append(consoleData.getObjectId().toString()).append("\",");
+            out.append("\"_schema_id\":{")
+               .append("\"_package_name\":\"").append(sid.getPackageName())
+               .append("\",\"_class_name\":\"").append(sid.getClassName())
+               .append("\",\"_type\":\"").append(sid.getType())
+               .append("\",\"_hash\":\"").append(String.valueOf(sid.getHashString()))
+               .append("\"},");
 
-            consoleDataInfo = objectId + schemaId + timestamps;
+            out.append("\"_update_ts\":").append(String.valueOf(ts[0])).append(',')
+               .append("\"_create_ts\":").append(String.valueOf(ts[1])).append(',')
+               .append("\"_delete_ts\":").append(String.valueOf(ts[2])).append(',');
         }
-
-        return "{" + consoleDataInfo + encodeMapContents(data.mapEncode()) + "}";
+        writeMapContents(out, data.mapEncode());
+        out.append('}');
     }
 
     /**
-     * Serialise a WorkItem Object to JSON.
+     * Serialise a WorkItem Object to JSON, writing the encoding to the specified Appendable.
+     * @param out the Appendable that the JSON encoding is written to.
      * @param data the WorkItem that we wish to serialise to JSON.
-     * @return the JSON String encoding.
      */
-    public final static String fromWorkItem(final WorkItem data)
+    public final static void writeWorkItem(final Appendable out, final WorkItem data) throws IOException
     {
         // TODO There are a couple of WorkItem types that won't serialise correctly - SubscriptionIndicationWorkItem
         // and MethodCallWorkItem. Their params require a custom serialiser - though they probably won't be used
         // from a REST API so they've been parked for now.
-        String type = "\"_type\":\"" + data.getType() + "\",";
+        out.append('{').append("\"_type\":\"").append(String.valueOf(data.getType())).append("\",");
         Handle handle = data.getHandle();
-        String handleString = handle == null ? "" : "\"_handle\":\"" + handle.getCorrelationId() + "\",";
-        String params = "\"_params\":" + fromObject(data.getParams());
-
-        return "{" + type + handleString + params + "}";
+        if (handle != null)
+        {
+            out.append("\"_handle\":\"").append(handle.getCorrelationId()).append("\",");
+        }
+        out.append("\"_params\":");
+        writeObject(out, data.getParams());
+        out.append('}');
     }
 
     /**
@@ -25,17 +25,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 // Misc Imports
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.console.Agent;
 import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.console.MethodResult;
@@ -46,6 +52,7 @@ import static java.net.HttpURLConnection.HTTP_BAD_METHOD;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import static java.net.HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
 
 
@@ -98,6 +105,10 @@ import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
  *      This is the REST equivalent of Console.getObjects(className) which searches across all packages and all Agents 
  *      for the specified className.
  *
+ *      The results of objects queries are shared between clients for two seconds, so any number of clients polling
+ *      the same query cause at most one query to the broker in that period. The response carries an ETag header and
+ *      a request whose If-None-Match header matches it receives a 304 Not Modified response with no content.
+ *
  * GET: &lt;host&gt;:&lt;port&gt;/qpid/connection/&lt;name&gt;/console/objects/&lt;packageName&gt;/&lt;className&gt;
  *      !!not yet implemented!!
  *      This method retrieves (as a JSON string) the list of QmfConsoleData objects with the specified 
@@ -168,6 +179,25 @@ import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
  *      This method retrieves (as a JSON string) the next pending work item from this Console (N.B. this method
  *      blocks until a WorkItem is available so should only be called asynchronously e.g. via AJAX).
  *      This is the REST equivalent of Console.getNextWorkitem().
+ *
+ * GET: &lt;host&gt;:&lt;port&gt;/qpid/connection/&lt;name&gt;/console/workItems
+ * GET: &lt;host&gt;:&lt;port&gt;/qpid/connection/&lt;name&gt;/console/workItems/&lt;timeout&gt;
+ * 
+ *      This method retrieves (as a JSON string) a list of up to 100 pending work items from this Console. If none
+ *      are pending it blocks for up to &lt;timeout&gt; seconds (default 30, maximum 60) for one to arrive and
+ *      returns an empty list if none does. This "long-poll" allows clients to receive work items as they arrive
+ *      with a single outstanding request rather than repeatedly polling nextWorkItem.
+ *      This is the REST equivalent of Console.drainWorkitems(items, max, timeout).
+ *
+ * GET: &lt;host&gt;:&lt;port&gt;/qpid/connection/&lt;name&gt;/console/events
+ * 
+ *      This method returns a text/event-stream (Server-Sent Events) that pushes each work item from this Console
+ *      as a JSON string in the data field of an event as soon as it arrives, so it may be consumed in a browser
+ *      using EventSource. A comment is sent every 15 seconds when the stream is idle to keep it alive, the stream
+ *      stays open until the client closes it or the Qpid Connection is lost or deleted.
+ *
+ *      N.B. work items are removed from the Console by whichever of nextWorkItem, workItems or events retrieves
+ *      them, so each should only be used by one client of a given Qpid Connection at a time.
  * </pre>
  * @author Fraser Adams
  */
@@ -175,7 +205,21 @@ public final class QpidServer implements Server
 {
     private static final Logger _log = LoggerFactory.getLogger(QpidServer.class);
 
+    // The maximum number of WorkItems returned by a single console/workItems request or sent in one events batch.
+    private static final int MAX_WORKITEM_BATCH = 100;
+
+    // The default and maximum time in seconds that a console/workItems request waits for WorkItems to arrive.
+    private static final int DEFAULT_WORKITEM_TIMEOUT = 30;
+    private static final int MAX_WORKITEM_TIMEOUT = 60;
+
+    // The period in seconds after which a keepalive comment is sent on an idle console/events stream.
+    private static final int EVENT_KEEPALIVE_PERIOD = 15;
+
+    // The time in milliseconds for which the result of a console/objects query is shared between clients.
+    private static final long OBJECTS_CACHE_TTL = 2000l;
+
     private ConnectionStore _connections = new ConnectionStore();
+    private QueryCache _objectsCache = new QueryCache(OBJECTS_CACHE_TTL);
     private String _defaultBroker = null;
 
     public QpidServer(final String broker)
@@ -183,23 +227,169 @@ public final class QpidServer implements Server
         _defaultBroker = broker;
     }
 
+    /**
+     * Send an Object serialised as JSON back to the client. The JSON is written straight to the response stream as
+     * it is encoded, so the memory needed doesn't grow with the size of the response as it would if the whole
+     * document were built as a String first, which matters for getObjects() on brokers with many queues.
+     * @param tx the HttpTransaction to send the response on.
+     * @param item the Object to serialise, see JSON.writeObject().
+     */
+    private void sendJSONResponse(final HttpTransaction tx, final Object item) throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(tx.getResponseStream(HTTP_OK, "application/json")));
+        try
+        {
+            JSON.writeObject(writer, item);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Handle a "/qpid/connection/<connectionName>/console/workItems" or
+     * "/qpid/connection/<connectionName>/console/workItems/<timeout>" request. This is a "long-poll" that returns
+     * the pending WorkItems as soon as there are any, blocking for up to timeout seconds if there aren't.
+     */
+    private void sendWorkItemsResponse(final HttpTransaction tx, final Console console, final String timeoutString)
+        throws IOException
+    {
+        int timeout = DEFAULT_WORKITEM_TIMEOUT;
+        if (timeoutString.length() > 0)
+        {
+            try
+            {
+                timeout = Math.min(Math.max(Integer.parseInt(timeoutString), 0), MAX_WORKITEM_TIMEOUT);
+            }
+            catch (NumberFormatException nfe)
+            {
+                tx.sendResponse(HTTP_NOT_FOUND, "text/plain", "404 Invalid timeout for workItems GET request.");
+                return;
+            }
+        }
+
+        List<WorkItem> items = new ArrayList<WorkItem>();
+        console.drainWorkitems(items, MAX_WORKITEM_BATCH, timeout);
+        sendJSONResponse(tx, items);
+    }
+
+    /**
+     * Handle a "/qpid/connection/<connectionName>/console/events" request by sending the Console's WorkItems to the
+     * client as Server-Sent Events as they arrive. This only returns once the client closes the stream (which we
+     * notice when the next write fails) or the ConnectionProxy is disconnected or removed from the ConnectionStore.
+     * The Console is retrieved from the ConnectionProxy for each batch as reconnecting creates a new Console.
+     */
+    private void sendEventStream(final HttpTransaction tx, final String connectionName,
+                                 final ConnectionProxy connection) throws IOException
+    {
+        tx.setHeader("Cache-Control", "no-cache");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(tx.getResponseStream(HTTP_OK, "text/event-stream")));
+        try
+        {
+            List<WorkItem> items = new ArrayList<WorkItem>(MAX_WORKITEM_BATCH);
+            while (_connections.get(connectionName) == connection && connection.isConnected())
+            {
+                items.clear();
+                if (connection.getConsole().drainWorkitems(items, MAX_WORKITEM_BATCH, EVENT_KEEPALIVE_PERIOD) == 0)
+                {
+                    writer.write(": keepalive\n\n");
+                }
+                else
+                {
+                    for (WorkItem item : items)
+                    { // An event's data can't contain a bare newline, so any in the JSON start a new data line.
+                        writer.write("data: ");
+                        writer.write(JSON.fromWorkItem(item).replace("\n", "\ndata: "));
+                        writer.write("\n\n");
+                    }
+                }
+                writer.flush();
+            }
+        }
+        catch (IOException ioe)
+        { // The client has closed the stream.
+            _log.debug("IOException {} caught in sendEventStream()", ioe.getMessage());
+        }
+        finally
+        {
+            try
+            {
+                writer.close();
+            }
+            catch (IOException ioe)
+            { // Ignore, the client has already gone.
+            }
+        }
+    }
+
+    /**
+     * Send the Result of a getObjects() query, which is obtained from the QueryCache so that clients asking the same
+     * question within OBJECTS_CACHE_TTL of each other share a single query. The response carries the ETag of the
+     * Result and if the client already has that version (i.e. sent it in If-None-Match) a 304 Not Modified is sent
+     * instead of the objects.
+     * @param tx the HttpTransaction to send the response on.
+     * @param key identifies the query in the QueryCache.
+     * @param console the Console to perform the query with.
+     * @param query performs the query if there is no suitable cached Result.
+     */
+    private void sendCachedObjectsResponse(final HttpTransaction tx, final String key, final Console console,
+                                           final Callable<List<QmfConsoleData>> query) throws IOException
+    {
+        QueryCache.Result result = _objectsCache.get(key, console, query);
+        String etag = result.getETag();
+        tx.setHeader("ETag", etag);
+        tx.setHeader("Cache-Control", "no-cache"); // Allow caching by clients, but they must always revalidate.
+
+        String ifNoneMatch = tx.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+        {
+            for (String tag : ifNoneMatch.split(","))
+            {
+                tag = tag.trim();
+                if (tag.equals(etag) || tag.equals("W/" + etag) || tag.equals("*"))
+                {
+                    tx.sendResponse(HTTP_NOT_MODIFIED, "application/json", (String)null);
+                    return;
+                }
+            }
+        }
+
+        sendJSONResponse(tx, result.getObjects());
+    }
+
     /**
      * Handle a "/qpid/connection/<connectionName>/console/objects" or 
      * "/qpid/connection/<connectionName>/console/objects/" request,
      * in other words a request for information about an object resource specified by the remaining path.
      * Only the GET method is valid for this resource and it is in effect the REST mapping for Console.getObjects().
      */
-    private void sendGetObjectsResponse(final HttpTransaction tx, final Console console, final String path) throws IOException
+    private void sendGetObjectsResponse(final HttpTransaction tx, final String connectionName, final Console console,
+                                        final String path) throws IOException
     {
-        String[] params = path.split("/");
+        final String[] params = path.split("/");
         if (params.length == 1)
         { // With one parameter we call getObjects(className)
-            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getObjects(params[0])));
+            sendCachedObjectsResponse(tx, connectionName + "/" + params[0], console,
+                                      new Callable<List<QmfConsoleData>>()
+            {
+                public List<QmfConsoleData> call()
+                {
+                    return console.getObjects(params[0]);
+                }
+            });
         }
         else if (params.length == 2)
         { // With two parameters we call getObjects(packageName, className)
             //System.out.println("params = " + params[0] + ", " + params[1]);
-            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getObjects(params[0], params[1])));
+            sendCachedObjectsResponse(tx, connectionName + "/" + params[0] + "/" + params[1], console,
+                                      new Callable<List<QmfConsoleData>>()
+            {
+                public List<QmfConsoleData> call()
+                {
+                    return console.getObjects(params[0], params[1]);
+                }
+            });
         }
         else if (params.length == 3)
         { // TODO With three parameters we call getObjects(packageName, className, agent)
@@ -231,7 +421,7 @@ public final class QpidServer implements Server
             String user = tx.getPrincipal(); // Using the principal lets different users use the default connection.
             if (path.length() == 0)
             { // handle "/qpid/connection/" request with unspecified connection (returns list of available connections).
-                tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(_connections.getAll(user)));   
+                sendJSONResponse(tx, _connections.getAll(user));   
             }
             else
             { // if path.length() > 0 we're dealing with a specified Connection so extract the name and look it up.
@@ -290,19 +480,19 @@ public final class QpidServer implements Server
                         if (path.startsWith("console/objects/"))
                         { // Get information about specified objects.
                             path = path.substring(16);
-                            sendGetObjectsResponse(tx, console, path);
+                            sendGetObjectsResponse(tx, connectionName, console, path);
                         }
                         else if (path.startsWith("console/objects") && path.length() == 15)
                         {  // If objects is unspecified treat as a synonym for classes.
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getClasses()));
+                            sendJSONResponse(tx, console.getClasses());
                         }
                         else if (path.startsWith("console/address/"))
                         { // Get the Console AMQP Address
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getAddress()));
+                            sendJSONResponse(tx, console.getAddress());
                         }
                         else if (path.startsWith("console/address") && path.length() == 15)
                         { // Get the Console AMQP Address
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getAddress()));
+                            sendJSONResponse(tx, console.getAddress());
                         }
                         else if (path.startsWith("console/workItemCount/"))
                         { // Returns the count of pending WorkItems that can be retrieved.
@@ -314,15 +504,31 @@ public final class QpidServer implements Server
                         }
                         else if (path.startsWith("console/nextWorkItem/"))
                         { // Obtains the next pending work item, or null if none available.
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getNextWorkitem()));
+                            sendJSONResponse(tx, console.getNextWorkitem());
                         }
                         else if (path.startsWith("console/nextWorkItem") && path.length() == 20)
                         { // Obtains the next pending work item, or null if none available.
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getNextWorkitem()));
+                            sendJSONResponse(tx, console.getNextWorkitem());
+                        }
+                        else if (path.startsWith("console/workItems/"))
+                        { // Obtains a batch of pending work items, waiting for the specified timeout if none available.
+                            sendWorkItemsResponse(tx, console, path.substring(18));
+                        }
+                        else if (path.startsWith("console/workItems") && path.length() == 17)
+                        { // Obtains a batch of pending work items, waiting for the default timeout if none available.
+                            sendWorkItemsResponse(tx, console, "");
+                        }
+                        else if (path.startsWith("console/events/"))
+                        { // Streams work items to the client as Server-Sent Events.
+                            sendEventStream(tx, connectionName, connection);
+                        }
+                        else if (path.startsWith("console/events") && path.length() == 14)
+                        { // Streams work items to the client as Server-Sent Events.
+                            sendEventStream(tx, connectionName, connection);
                         }
                         else if (path.startsWith("console/agents") && path.length() == 14)
                         { // Get information about all available Agents.
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getAgents()));
+                            sendJSONResponse(tx, console.getAgents());
                         }
                         else if (path.startsWith("console/agent/"))
                         { // Get information about a specified Agent.
@@ -333,12 +539,12 @@ public final class QpidServer implements Server
                             }
                             else
                             {
-                                tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(agent));
+                                sendJSONResponse(tx, agent);
                             }
                         }
                         else if (path.startsWith("console/agent") && path.length() == 13)
                         { // If agent is unspecified treat as a synonym for agents.
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getAgents()));
+                            sendJSONResponse(tx, console.getAgents());
                         }
                         else if (path.startsWith("console/classes/"))
                         { // Get information about the classes for a specified Agent
@@ -349,7 +555,7 @@ public final class QpidServer implements Server
                         }
                         else if (path.startsWith("console/classes") && path.length() == 15)
                         { // Get information about all the classes for all Agents
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getClasses()));
+                            sendJSONResponse(tx, console.getClasses());
                         }
                         else if (path.startsWith("console/packages/"))
                         { // Get information about the packages for a specified Agent
@@ -383,12 +589,12 @@ public final class QpidServer implements Server
                                 // Not that in a departure from the QMF2 API this returns the QmfConsoleData object
                                 // rather than a list of size one. Perhaps the APIs should be completely consistent
                                 // but this response seems more convenient.
-                                tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(objects.get(0)));
+                                sendJSONResponse(tx, objects.get(0));
                             }
                         }
                         else if (path.startsWith("console/packages") && path.length() == 16)
                         { // Get information about all the packages for all Agents
-                            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(console.getPackages()));
+                            sendJSONResponse(tx, console.getPackages());
                         }
                         else
                         {
@@ -401,7 +607,7 @@ public final class QpidServer implements Server
         else if (path.startsWith("/qpid/connection"))
         { // handle "/qpid/connection" request with unspecified connection (returns list of available connections).
             String user = tx.getPrincipal(); // Using the principal lets different users use the default connection.
-            tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(_connections.getAll(user)));   
+            sendJSONResponse(tx, _connections.getAll(user));   
         }
         else
         {
@@ -505,7 +711,7 @@ public final class QpidServer implements Server
 
                                 _log.info("invokeMethod: {}", request);
                                 results = object.invokeMethod(method, inArgs);
-                                tx.sendResponse(HTTP_OK, "application/json", JSON.fromObject(results));
+                                sendJSONResponse(tx, results);
                             }
                             catch (QmfException qmfe)
                             {
@@ -0,0 +1,266 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.restapi;
+
+// Misc Imports
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.console.Console;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+
+/**
+ * A QueryCache holds the results of recent Console.getObjects() queries for a short period so that several clients
+ * repeatedly asking the same question, for example a number of dashboards viewing the same broker, share a single
+ * round trip to the broker rather than each causing their own.
+ * <p>
+ * Concurrent requests for a query that isn't cached are collapsed, the first performs the query and the others wait
+ * for its result. Each Result carries an ETag derived from its JSON encoding, so that clients can be told their
+ * copy of an unchanged object set is still valid with a 304 Not Modified rather than being sent it all again.
+ * <p>
+ * A cached Result is only used if it was obtained from the same Console that is asking, as ConnectionProxy creates
+ * a new Console when it reconnects, so the results obtained from a previous Console are never returned.
+ *
+ * @author Fraser Adams
+ */
+public final class QueryCache
+{
+    /**
+     * The result of a query, the List of QmfConsoleData together with the ETag of its JSON encoding.
+     */
+    public static final class Result
+    {
+        private final Console _console;
+        private final List<QmfConsoleData> _objects;
+        private final String _etag;
+        private final long _expiry;
+
+        /**
+         * Construct a Result.
+         * @param console the Console that performed the query.
+         * @param objects the List of QmfConsoleData returned by the query.
+         * @param ttl the time in milliseconds for which the Result is valid.
+         */
+        private Result(final Console console, final List<QmfConsoleData> objects, final long ttl)
+            throws IOException
+        {
+            _console = console;
+            _objects = objects;
+            _etag = computeETag(objects);
+            _expiry = System.currentTimeMillis() + ttl;
+        }
+
+        /**
+         * Return true if the Result can be returned to a query made via the specified Console.
+         */
+        private boolean isValid(final Console console, final long now)
+        {
+            return _console == console && now < _expiry;
+        }
+
+        /**
+         * Return the List of QmfConsoleData returned by the query.
+         * @return the List of QmfConsoleData returned by the query.
+         */
+        public List<QmfConsoleData> getObjects()
+        {
+            return _objects;
+        }
+
+        /**
+         * Return the ETag of the JSON encoding of the List of QmfConsoleData, including the enclosing quotes.
+         * @return the ETag of the JSON encoding of the List of QmfConsoleData.
+         */
+        public String getETag()
+        {
+            return _etag;
+        }
+    }
+
+    /**
+     * Compute an ETag by streaming the JSON encoding of the objects through an MD5 digest, so that the encoding is
+     * never held in memory. The encoding includes the _update_ts of each object, so any change to any property of
+     * any of the objects changes the ETag.
+     */
+    private static String computeETag(final List<QmfConsoleData> objects) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException nsae)
+        { // Can't happen, every Java platform is required to support MD5.
+            throw new IOException("MD5 MessageDigest not available");
+        }
+
+        OutputStream discard = new OutputStream()
+        {
+            public void write(final int b)
+            {
+            }
+
+            public void write(final byte[] b, final int off, final int len)
+            {
+            }
+        };
+
+        // Use the same (default) charset that QpidServer uses to send the response.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(discard, digest)));
+        JSON.writeList(writer, objects);
+        writer.close();
+
+        StringBuilder etag = new StringBuilder(34);
+        etag.append('"');
+        for (byte b : digest.digest())
+        {
+            etag.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        etag.append('"');
+        return etag.toString();
+    }
+
+    private final ConcurrentMap<String, FutureTask<Result>> _results = new ConcurrentHashMap<String, FutureTask<Result>>();
+    private final long _ttl;
+
+    /**
+     * Construct a QueryCache.
+     * @param ttl the time in milliseconds for which the result of a query is reused.
+     */
+    public QueryCache(final long ttl)
+    {
+        _ttl = ttl;
+    }
+
+    /**
+     * Return the Result of the query with the specified key. If there is a valid cached Result it is returned,
+     * if another thread is already performing the query this waits for and returns its Result, otherwise the query
+     * is performed on the calling thread and its Result is cached.
+     * @param key the key identifying the query, e.g. the connection name, package, class and agent.
+     * @param console the Console that the query is performed by.
+     * @param query performs the query, called at most once per TTL for a given key.
+     * @return the Result of the query.
+     */
+    public Result get(final String key, final Console console, final Callable<List<QmfConsoleData>> query)
+        throws IOException
+    {
+        while (true)
+        {
+            boolean performed = false;
+            FutureTask<Result> future = _results.get(key);
+            if (future == null)
+            {
+                FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>()
+                {
+                    public Result call() throws Exception
+                    {
+                        List<QmfConsoleData> objects = query.call();
+                        return new Result(console, objects, _ttl);
+                    }
+                });
+
+                future = _results.putIfAbsent(key, task);
+                if (future == null)
+                { // We won the race to perform the query, so do it and tidy up any expired results while we're here.
+                    future = task;
+                    performed = true;
+                    task.run();
+                    purge();
+                }
+            }
+
+            Result result;
+            try
+            {
+                result = future.get();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for query " + key);
+            }
+            catch (ExecutionException ee)
+            { // Don't cache failures, the next request for the key retries the query.
+                _results.remove(key, future);
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException)cause;
+                }
+                else if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException)cause;
+                }
+                else if (cause instanceof Error)
+                {
+                    throw (Error)cause;
+                }
+                throw new IOException("Query " + key + " failed: " + cause.getMessage());
+            }
+
+            if (performed || result.isValid(console, System.currentTimeMillis()))
+            {
+                return result;
+            }
+            _results.remove(key, future);
+        }
+    }
+
+    /**
+     * Remove the expired Results so that queries that are no longer being asked don't hold on to their objects.
+     */
+    private void purge()
+    {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, FutureTask<Result>> entry : _results.entrySet())
+        {
+            FutureTask<Result> future = entry.getValue();
+            if (future.isDone())
+            {
+                try
+                {
+                    if (now >= future.get()._expiry)
+                    {
+                        _results.remove(entry.getKey(), future);
+                    }
+                }
+                catch (Exception e)
+                { // A failed query, the thread that performed it removes it.
+                }
+            }
+        }
+    }
+}
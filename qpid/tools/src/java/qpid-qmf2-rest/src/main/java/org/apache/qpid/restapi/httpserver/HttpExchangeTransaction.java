@@ -21,6 +21,7 @@
 package org.apache.qpid.restapi.httpserver;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -183,6 +184,40 @@ public final class HttpExchangeTransaction implements HttpTransaction
         }
     }
 
+    /**
+     * Send the HTTP response headers back to the client and return a stream to which the response content may then
+     * be written using chunked transfer encoding. Closing the returned OutputStream completes the response.
+     * @param status the HTTP status code e.g. 200 for OK.
+     * @param mimeType the mimeType of the response content e.g. text/plain, text/xml, image/jpeg etc.
+     * @return the OutputStream to which the content of the response should be written.
+     */
+    public OutputStream getResponseStream(final int status, final String mimeType) throws IOException
+    {
+        _exchange.getResponseHeaders().set("Content-Type", mimeType);
+        _exchange.sendResponseHeaders(status, 0); // For a stream we set to zero to force chunked transfer encoding.
+        return new FilterOutputStream(_exchange.getResponseBody())
+        {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException
+            { // FilterOutputStream writes the array a byte at a time, so pass it straight through instead.
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    _exchange.close();
+                }
+            }
+        };
+    }
+
     /**
      * Returns the Internet Protocol (IP) address of the client or last proxy that sent the request.
      * @return the Internet Protocol (IP) address of the client or last proxy that sent the request.
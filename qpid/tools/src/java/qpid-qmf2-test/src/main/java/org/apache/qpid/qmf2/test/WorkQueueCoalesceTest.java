@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.test;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.Handle;
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.WorkItem;
+import org.apache.qpid.qmf2.common.WorkQueue;
+import org.apache.qpid.qmf2.console.Agent;
+import org.apache.qpid.qmf2.console.AgentHeartbeatWorkItem;
+import org.apache.qpid.qmf2.console.ObjectUpdateWorkItem;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+import org.apache.qpid.qmf2.console.SubscribeIndication;
+import org.apache.qpid.qmf2.console.SubscriptionIndicationWorkItem;
+
+/**
+ * This class checks that enabling coalescing of subscription indications on a WorkQueue, as the Console does for
+ * its subscriptionCoalesce option, only affects SubscriptionIndicationWorkItems. Heartbeats and object updates,
+ * which would coalesce with the COALESCE OverflowPolicy, must still be delivered in order one by one.
+ * <p>
+ * No broker connection is needed, the WorkItems are added to the WorkQueue directly.
+ *
+ * @author Fraser Adams
+ */
+public final class WorkQueueCoalesceTest
+{
+    private final Agent _agent;
+
+    public WorkQueueCoalesceTest()
+    {
+        Map<String, Object> agentMap = new HashMap<String, Object>();
+        agentMap.put("_name", "test-agent");
+        _agent = new Agent(agentMap, null);
+    }
+
+    private QmfConsoleData createObject(final String name)
+    {
+        Map<String, Object> objectMap = new HashMap<String, Object>();
+        objectMap.put("_object_id", new ObjectId("test-agent", name, 0).mapEncode());
+        objectMap.put("_values", new HashMap<String, Object>());
+        return new QmfConsoleData(objectMap, _agent);
+    }
+
+    private SubscriptionIndicationWorkItem createIndication(final String name)
+    {
+        List<QmfConsoleData> data = new ArrayList<QmfConsoleData>();
+        data.add(createObject(name));
+        return new SubscriptionIndicationWorkItem(new SubscribeIndication("subscription-1", data));
+    }
+
+    private void fail(final String message)
+    {
+        System.err.println(message + ": WorkQueueCoalesceTest failed");
+        System.exit(1);
+    }
+
+    public void runTest()
+    {
+        System.out.println("*** Starting WorkQueueCoalesceTest used to test subscription indication coalescing ***");
+
+        WorkQueue workQueue = new WorkQueue();
+        workQueue.setCoalescing(WorkItem.WorkItemType.SUBSCRIPTION_INDICATION, true);
+
+        workQueue.addWorkItem(new AgentHeartbeatWorkItem(_agent));
+        workQueue.addWorkItem(new ObjectUpdateWorkItem(new Handle("refresh-1"), createObject("queue-1")));
+        workQueue.addWorkItem(createIndication("queue-1"));
+        workQueue.addWorkItem(new AgentHeartbeatWorkItem(_agent));
+        workQueue.addWorkItem(new ObjectUpdateWorkItem(new Handle("refresh-1"), createObject("queue-1")));
+        workQueue.addWorkItem(createIndication("queue-2"));
+
+        // The second indication is absorbed by the first, everything else is queued in the order that it was added.
+        WorkItem.WorkItemType[] expected = {
+            WorkItem.WorkItemType.AGENT_HEARTBEAT,
+            WorkItem.WorkItemType.OBJECT_UPDATE,
+            WorkItem.WorkItemType.SUBSCRIPTION_INDICATION,
+            WorkItem.WorkItemType.AGENT_HEARTBEAT,
+            WorkItem.WorkItemType.OBJECT_UPDATE
+        };
+
+        List<WorkItem> items = new ArrayList<WorkItem>();
+        workQueue.drainTo(items, 100);
+        for (WorkItem item : items)
+        {
+            System.out.println("WorkItem " + item.getType());
+        }
+
+        if (items.size() != expected.length)
+        {
+            fail("Expected " + expected.length + " WorkItems but got " + items.size());
+        }
+
+        for (int i = 0; i < expected.length; i++)
+        {
+            if (items.get(i).getType() != expected[i])
+            {
+                fail("Expected WorkItem " + i + " to be " + expected[i] + " but got " + items.get(i).getType());
+            }
+        }
+
+        List<QmfConsoleData> data = ((SubscriptionIndicationWorkItem)items.get(2)).getSubscribeIndication().getData();
+        if (data.size() != 2)
+        {
+            fail("Expected the coalesced SubscriptionIndicationWorkItem to hold 2 objects but got " + data.size());
+        }
+
+        if (workQueue.getCoalescedCount() != 1)
+        {
+            fail("Expected 1 coalesced WorkItem but got " + workQueue.getCoalescedCount());
+        }
+
+        System.out.println("*** Ending WorkQueueCoalesceTest ***");
+    }
+
+    public static void main(String[] args)
+    {
+        //System.out.println ("Setting log level to FATAL");
+        System.setProperty("amqj.logging.level", "FATAL");
+
+        WorkQueueCoalesceTest test = new WorkQueueCoalesceTest();
+        test.runTest();
+    }
+}
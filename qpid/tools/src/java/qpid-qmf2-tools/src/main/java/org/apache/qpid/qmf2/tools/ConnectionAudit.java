@@ -26,22 +26,29 @@ import javax.jms.Connection;
 // Misc Imports
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 // For DOM parsing the whitelist
 import org.w3c.dom.*;
 import javax.xml.parsers.*;
 
 // QMF2 Imports
-import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
 import org.apache.qpid.qmf2.common.QmfException;
@@ -50,6 +57,7 @@ import org.apache.qpid.qmf2.console.Agent;
 import org.apache.qpid.qmf2.console.AgentRestartedWorkItem;
 import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.console.EventReceivedWorkItem;
+import org.apache.qpid.qmf2.console.ObjectGraph;
 import org.apache.qpid.qmf2.console.QmfConsoleData;
 import org.apache.qpid.qmf2.util.ConnectionHelper;
 import org.apache.qpid.qmf2.util.GetOpt;
@@ -98,9 +106,16 @@ import org.apache.qpid.qmf2.util.GetOpt;
  *    &lt;/exchangeWhitelist&gt;
  *    &lt;queueWhitelist&gt;
  *        &lt;queue&gt;testqueue&lt;/queue&gt;
+ *        &lt;queuePattern&gt;reply-.*&lt;/queuePattern&gt;
  *    &lt;/queueWhitelist&gt;
  *&lt;/whitelist&gt;
  * </pre>
+ * The exchangePattern and queuePattern elements hold regular expressions, which must match the whole of an exchange
+ * or queue name for it to be whitelisted. The whitelist is re-read when its modification time changes.
+ * <p>
+ * Existing subscriptions are validated from a single snapshot of the broker's objects when ConnectionAudit starts,
+ * after which the broker's subscribe, bind, unbind, queueDeclare, queueDelete and exchangeDelete events are used to
+ * keep track of the bindings of each queue, so validating a new subscription doesn't require querying the broker.
 
  * @author Fraser Adams
  */
@@ -139,14 +154,55 @@ public final class ConnectionAudit implements QmfEventListener
     "                        default is ./whitelist.xml\n";
 
 
+    /**
+     * A binding of a queue to an exchange, holding as much of the binding as is needed to validate the queue and
+     * report an alert.
+     */
+    private static final class Binding
+    {
+        private final String _exchangeName;
+        private final String _bindingKey;
+        private final Map _arguments;
+
+        /**
+         * Construct a Binding.
+         * @param exchangeName the name of the exchange.
+         * @param bindingKey the binding key.
+         * @param arguments the binding arguments, may be null.
+         */
+        public Binding(final String exchangeName, final String bindingKey, final Map arguments)
+        {
+            _exchangeName = exchangeName;
+            _bindingKey = bindingKey;
+            _arguments = arguments == null ? Collections.emptyMap() : arguments;
+        }
+    }
+
+    // Don't check the whitelist file for changes more often than this (in milliseconds), even during event storms.
+    private static final long WHITELIST_CHECK_INTERVAL = 1000l;
+
     private final String _url;
     private final String _whitelist;
     private long _whitelistLastModified = 0;
+    private long _whitelistLastChecked = 0;
     private Console _console;
 
-    // The sets to be used as the whitelists.
+    // The sets and precompiled patterns to be used as the whitelists.
     private Set<String> _exchangeWhitelist = new HashSet<String>();
     private Set<String> _queueWhitelist = new HashSet<String>();
+    private List<Pattern> _exchangePatterns = new ArrayList<Pattern>();
+    private List<Pattern> _queuePatterns = new ArrayList<Pattern>();
+
+    // The results of matching names against the whitelist patterns, cleared when the whitelist is re-read.
+    private Map<String, Boolean> _exchangeDecisions = new HashMap<String, Boolean>();
+    private Map<String, Boolean> _queueDecisions = new HashMap<String, Boolean>();
+
+    // The bindings of every queue keyed by queue name. This is built from a snapshot of the broker's queues and
+    // bindings when we start (or the broker restarts) then kept up to date from the broker's events.
+    private final Map<String, List<Binding>> _bindings = new HashMap<String, List<Binding>>();
+
+    // Alerts are written through a buffer and flushed after each batch as there may be very many at startup.
+    private final PrintStream _out = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
 
     /**
      * Basic constructor. Creates JMS Session, Initialises Destinations, Producers &amp; Consumers and starts connection.
@@ -172,116 +228,212 @@ public final class ConnectionAudit implements QmfEventListener
         }
     }
 
+    /**
+     * Return the object in an ObjectGraph referred to by a reference property, without querying the broker if it's
+     * missing, as by the time this is used anything still missing has gone away.
+     */
+    private static QmfConsoleData getReferenced(final ObjectGraph graph, final QmfConsoleData data, final String refName)
+    {
+        return data.hasValue(refName) ? graph.get(data.getRefValue(refName)) : null;
+    }
+
     /**
      * When we start up we need to check any subscriptions that already exist against the whitelist.
      * Subsequent checks are made only when we receive new subscribe events.
+     * <p>
+     * All of the objects needed are loaded into an ObjectGraph up front (with the queries for each class in flight
+     * at the same time) and the bindings are indexed by queue name, so validating each subscription doesn't cost a
+     * round trip to the broker. The index is then maintained from the bind, unbind, queueDeclare, queueDelete and
+     * exchangeDelete events so that subscribe events can be validated without querying the broker either.
+     * <p>
+     * This is synchronized with onEvent() so that events received while the snapshot is loaded are applied after it.
      */
-    private void checkExistingSubscriptions()
+    private synchronized void checkExistingSubscriptions()
     {
         readWhitelist();
-        List<QmfConsoleData> subscriptions = _console.getObjects("org.apache.qpid.broker", "subscription");
+        ObjectGraph graph = new ObjectGraph(_console);
+        graph.load("org.apache.qpid.broker", "subscription", "session", "connection", "queue", "binding", "exchange");
+
+        // Pick up any objects created between the queries for the different classes in one go.
+        List<QmfConsoleData> subscriptions = graph.getObjects("subscription");
+        graph.resolveReferences(subscriptions, "queueRef", "sessionRef");
+        graph.resolveReferences(graph.getObjects("session"), "connectionRef");
+        graph.resolveReferences(graph.getObjects("binding"), "queueRef", "exchangeRef");
+
+        _bindings.clear();
+        for (QmfConsoleData queue : graph.getObjects("queue"))
+        { // Every queue gets an entry, even if it has no bindings, so that subscriptions to it are recognised.
+            _bindings.put(queue.getStringValue("name"), new ArrayList<Binding>(1));
+        }
+
+        for (QmfConsoleData binding : graph.getObjects("binding"))
+        {
+            QmfConsoleData queue = getReferenced(graph, binding, "queueRef");
+            QmfConsoleData exchange = getReferenced(graph, binding, "exchangeRef");
+            if (queue != null && exchange != null)
+            {
+                addBinding(queue.getStringValue("name"), exchange.getStringValue("name"),
+                           binding.getStringValue("bindingKey"), (Map)binding.getValue("arguments"));
+            }
+        }
+
         for (QmfConsoleData subscription : subscriptions)
         {
-            QmfConsoleData queue = dereference(subscription.getRefValue("queueRef"));
-            QmfConsoleData session = dereference(subscription.getRefValue("sessionRef"));
-            QmfConsoleData connection = dereference(session.getRefValue("connectionRef"));
-            
-            String queueName = queue.getStringValue("name");
+            QmfConsoleData queue = getReferenced(graph, subscription, "queueRef");
+            QmfConsoleData session = getReferenced(graph, subscription, "sessionRef");
+            QmfConsoleData connection = session == null ? null : getReferenced(graph, session, "connectionRef");
+            if (queue == null || connection == null)
+            { // The subscription has gone away since the graph was loaded.
+                continue;
+            }
+
             String address = connection.getStringValue("address");
-            String timestamp = new Date(subscription.getCreateTime()/1000000l).toString();
-            validateQueue(queueName, address, timestamp);
+            validateQueue(queue.getStringValue("name"), address, subscription.getCreateTime());
+        }
+        _out.flush();
+    }
+
+    /**
+     * Add a binding to the index, ignoring it if the queue already has an identical binding, as the bind events
+     * received while the snapshot was being loaded may already be reflected in the snapshot.
+     * @param queueName the name of the queue.
+     * @param exchangeName the name of the exchange.
+     * @param bindingKey the binding key.
+     * @param arguments the binding arguments, may be null.
+     */
+    private void addBinding(final String queueName, final String exchangeName, final String bindingKey,
+                            final Map arguments)
+    {
+        List<Binding> bindings = _bindings.get(queueName);
+        if (bindings == null)
+        {
+            bindings = new ArrayList<Binding>(1);
+            _bindings.put(queueName, bindings);
+        }
+
+        for (Binding binding : bindings)
+        {
+            if (binding._exchangeName.equals(exchangeName) && binding._bindingKey.equals(bindingKey))
+            {
+                return;
+            }
         }
+        bindings.add(new Binding(exchangeName, bindingKey, arguments));
     }
 
     /**
-     * Dereferences an ObjectId returning a QmfConsoleData.
-     * @param ref the ObjectId to be dereferenced.
-     * @return the dereferenced QmfConsoleData object or null if the object can't be found.
+     * Remove a binding from the index.
+     * @param queueName the name of the queue.
+     * @param exchangeName the name of the exchange.
+     * @param bindingKey the binding key.
      */
-    private QmfConsoleData dereference(final ObjectId ref)
+    private void removeBinding(final String queueName, final String exchangeName, final String bindingKey)
     {
-        List<QmfConsoleData> data = _console.getObjects(ref);
-        if (data.size() == 1)
+        List<Binding> bindings = _bindings.get(queueName);
+        if (bindings != null)
+        {
+            for (Iterator<Binding> i = bindings.iterator(); i.hasNext();)
+            {
+                Binding binding = i.next();
+                if (binding._exchangeName.equals(exchangeName) && binding._bindingKey.equals(bindingKey))
+                {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Check a name against a whitelist set and its patterns, caching the result of matching the patterns.
+     * @param name the exchange or queue name.
+     * @param names the set of whitelisted names.
+     * @param patterns the whitelist patterns, which must match the whole name.
+     * @param decisions the cached results of matching names against the patterns.
+     * @return true if the name is whitelisted.
+     */
+    private static boolean isWhitelisted(final String name, final Set<String> names, final List<Pattern> patterns,
+                                         final Map<String, Boolean> decisions)
+    {
+        if (names.contains(name))
+        {
+            return true;
+        }
+
+        if (patterns.isEmpty())
+        {
+            return false;
+        }
+
+        Boolean decision = decisions.get(name);
+        if (decision == null)
         {
-            return data.get(0);
+            decision = Boolean.FALSE;
+            for (Pattern pattern : patterns)
+            {
+                if (pattern.matcher(name).matches())
+                {
+                    decision = Boolean.TRUE;
+                    break;
+                }
+            }
+            decisions.put(name, decision);
         }
-        return null;
+        return decision;
     }
 
     /**
-     * Looks up the exchange and binding information from the supplied queuename then calls the main validateQueue()
+     * Checks a queue binding against the whitelists and reports an alert if neither the queue nor the exchange are
+     * whitelisted.
      * @param queueName the name of the queue that we want to check against the whitelists.
-     * @param exchangeName the name of the exchange that the queue we want to check against the whitelists is bound to.
-     * @param binding the binding associating queue "queueName" with exchange "exchangeName".
+     * @param binding the binding of queue "queueName" to an exchange.
      * @param address the connection address information for the subscription.
-     * @param timestamp the timestamp of the subscription.
+     * @param timestamp the timestamp of the subscription in nanoseconds.
      */
-    private void validateQueue(final String queueName, String exchangeName, final QmfConsoleData binding,
-                               final String address, final String timestamp)
+    private void validateQueue(final String queueName, final Binding binding, final String address,
+                               final long timestamp)
     {
-        if (_exchangeWhitelist.contains(exchangeName))
+        if (isWhitelisted(binding._exchangeName, _exchangeWhitelist, _exchangePatterns, _exchangeDecisions))
         { // Check exchangeName against the exchangeWhitelist and if it's in there we simply return.
             return;
         }
 
-        if (_queueWhitelist.contains(queueName))
-        { // Check queueName against the queueWhitelist and if it's in there we simply return.
-            return;
-        }
-
+        String exchangeName = binding._exchangeName;
         if (exchangeName.equals(""))
         { // Make exchangeName render more prettily if necessary.
             exchangeName = "''";
         }
 
-        String bindingKey = binding.getStringValue("bindingKey");
-        Map arguments = (Map)binding.getValue("arguments");
-        if (arguments.isEmpty())
+        String connectionTimestamp = new Date(timestamp/1000000l).toString();
+        if (binding._arguments.isEmpty())
         {
-            System.out.printf("%s ALERT ConnectionAudit.validateQueue() validation failed for queue: %s with binding[%s] => %s from address: %s with connection timestamp %s\n\n", new Date().toString(), queueName, bindingKey, exchangeName, address, timestamp);
+            _out.printf("%s ALERT ConnectionAudit.validateQueue() validation failed for queue: %s with binding[%s] => %s from address: %s with connection timestamp %s\n\n", new Date().toString(), queueName, binding._bindingKey, exchangeName, address, connectionTimestamp);
         }
         else
         { // If there are binding arguments then it's a headers exchange so display accordimgly.
-            System.out.printf("%s ALERT ConnectionAudit.validateQueue() validation failed for queue: %s with binding[%s] => %s %s from address: %s with connection timestamp %s\n\n", new Date().toString(), queueName, bindingKey, exchangeName, arguments, address, timestamp);
+            _out.printf("%s ALERT ConnectionAudit.validateQueue() validation failed for queue: %s with binding[%s] => %s %s from address: %s with connection timestamp %s\n\n", new Date().toString(), queueName, binding._bindingKey, exchangeName, binding._arguments, address, connectionTimestamp);
         }
     }
 
     /**
-     * Looks up the exchange and binding information from the supplied queuename then calls the main validateQueue()
+     * Looks up the bindings of the supplied queue name in the binding index then calls the main validateQueue()
+     * for each of them.
      * @param queueName the name of the queue that we want to check against the whitelists.
      * @param address the connection address information for the subscription.
-     * @param timestamp the timestamp of the subscription.
+     * @param timestamp the timestamp of the subscription in nanoseconds.
      */
-    private void validateQueue(final String queueName, final String address, final String timestamp)
+    private void validateQueue(final String queueName, final String address, final long timestamp)
     {
-        ObjectId queueId = null;
-        List<QmfConsoleData> queues = _console.getObjects("org.apache.qpid.broker", "queue");
-        for (QmfConsoleData queue : queues)
-        { // We first have to find the ObjectId of the queue called queueName.
-            if (queue.getStringValue("name").equals(queueName))
-            {
-                queueId = queue.getObjectId();
-                break;
-            }
-        }
-
-        if (queueId == null)
+        List<Binding> bindings = _bindings.get(queueName);
+        if (bindings == null)
         {
-            System.out.printf("%s ERROR ConnectionAudit.validateQueue() %s reference couldn't be found\n",
-                              new Date().toString(), queueName);
+            _out.printf("%s ERROR ConnectionAudit.validateQueue() %s reference couldn't be found\n",
+                        new Date().toString(), queueName);
         }
-        else
-        { // If we've got the queue's ObjectId we then find the binding that references it.
-            List<QmfConsoleData> bindings = _console.getObjects("org.apache.qpid.broker", "binding");
-            for (QmfConsoleData binding : bindings)
+        else if (!isWhitelisted(queueName, _queueWhitelist, _queuePatterns, _queueDecisions))
+        { // If the queue is whitelisted none of its bindings need checking.
+            for (Binding binding : bindings)
             {
-                ObjectId queueRef = binding.getRefValue("queueRef");
-                if (queueRef.equals(queueId))
-                { // We've found a binding that matches queue queueName so look up the associated exchange and validate.
-                    QmfConsoleData exchange = dereference(binding.getRefValue("exchangeRef"));
-                    String exchangeName = exchange.getStringValue("name");
-                    validateQueue(queueName, exchangeName, binding, address, timestamp);
-                }
+                validateQueue(queueName, binding, address, timestamp);
             }
         }
     }
@@ -290,8 +442,9 @@ public final class ConnectionAudit implements QmfEventListener
      * Handles WorkItems delivered by the Console.
      * <p>
      * If we receive an EventReceivedWorkItem check if it is a subscribe event. If it is we check if the whitelist has 
-     * changed, and if it has we re-read it. We then extract the queue name, exchange name, binding, connection address
-     * and timestamp and validate with the whitelsist.
+     * changed, and if it has we re-read it. We then look up the bindings of the queue in the binding index and
+     * validate them with the whitelist. The bind, unbind, queueDeclare, queueDelete and exchangeDelete events are
+     * used to keep the binding index up to date.
      * <p>
      * If we receive an AgentRestartedWorkItem we revalidate all subscriptions as it's possible that a client connection
      * could have been made to the broker before ConnectionAudit has successfully re-established its own connections.
@@ -304,13 +457,55 @@ public final class ConnectionAudit implements QmfEventListener
             EventReceivedWorkItem item = (EventReceivedWorkItem)wi;
             QmfEvent event = item.getEvent();
             String className = event.getSchemaClassId().getClassName();
-            if (className.equals("subscribe"))
+            synchronized(this)
             {
-                readWhitelist();
-                String queueName = event.getStringValue("qName");
-                String address = event.getStringValue("rhost");
-                String timestamp = new Date(event.getTimestamp()/1000000l).toString();
-                validateQueue(queueName, address, timestamp);
+                if (className.equals("subscribe"))
+                {
+                    readWhitelist();
+                    String queueName = event.getStringValue("qName");
+                    String address = event.getStringValue("rhost");
+                    validateQueue(queueName, address, event.getTimestamp());
+                    _out.flush();
+                }
+                else if (className.equals("bind"))
+                {
+                    addBinding(event.getStringValue("qName"), event.getStringValue("exName"),
+                               event.getStringValue("key"), (Map)event.getValue("args"));
+                }
+                else if (className.equals("unbind"))
+                {
+                    removeBinding(event.getStringValue("qName"), event.getStringValue("exName"),
+                                  event.getStringValue("key"));
+                }
+                else if (className.equals("queueDeclare"))
+                { // The broker binds new queues to the default exchange without raising a bind event.
+                    String queueName = event.getStringValue("qName");
+                    if (!_bindings.containsKey(queueName))
+                    {
+                        addBinding(queueName, "", queueName, null);
+                    }
+                }
+                else if (className.equals("queueDelete"))
+                {
+                    String queueName = event.getStringValue("qName");
+                    _bindings.remove(queueName);
+                    _queueDecisions.remove(queueName);
+                }
+                else if (className.equals("exchangeDelete"))
+                { // Deleting an exchange deletes its bindings without raising unbind events.
+                    String exchangeName = event.getStringValue("exName");
+                    for (List<Binding> bindings : _bindings.values())
+                    {
+                        for (Iterator<Binding> i = bindings.iterator(); i.hasNext();)
+                        {
+                            if (i.next()._exchangeName.equals(exchangeName))
+                            {
+                                i.remove();
+                            }
+                        }
+                    }
+                    _exchangeDecisions.remove(exchangeName);
+                }
             }
         }
         else if (wi instanceof AgentRestartedWorkItem)
@@ -319,15 +514,58 @@ public final class ConnectionAudit implements QmfEventListener
         }
     }
 
+    /**
+     * Read the names and patterns of a whitelist element.
+     * @param list the exchangeWhitelist or queueWhitelist element.
+     * @param nameElement the name of the elements holding whitelisted names.
+     * @param patternElement the name of the elements holding whitelist regexes.
+     * @param allowEmpty true if an empty name element whitelists the empty name, i.e. the default exchange.
+     * @param names the set that the names are added to.
+     * @param patterns the list that the compiled patterns are added to.
+     */
+    private static void readNames(final Node list, final String nameElement, final String patternElement,
+                                  final boolean allowEmpty, final Set<String> names, final List<Pattern> patterns)
+    {
+        NodeList nodes = list.getChildNodes();
+        for (int j = 0; j < nodes.getLength(); j++)
+        {
+            Node node = nodes.item(j);
+            if (node.getNodeName().equals(nameElement))
+            {
+                if (node.hasChildNodes())
+                {
+                    names.add(node.getFirstChild().getNodeValue());
+                }
+                else if (allowEmpty)
+                {
+                    names.add("");
+                }
+            }
+            else if (node.getNodeName().equals(patternElement) && node.hasChildNodes())
+            {
+                patterns.add(Pattern.compile(node.getFirstChild().getNodeValue()));
+            }
+        }
+    }
+
     /**
      * This method first checks if the whitelist file exists, if not it clears the sets used as whitelists
      * so that no whitelisting is applied. If the whitelist file does exist it is parsed by a DOM parser.
      * <p>
      * We look for all exchange and queue elements and populate the respective whitelist sets with their
-     * contents. Note that we check the whitelist file update time to avoid reading it if it hasn't been changed
+     * contents, and compile the regexes of any exchangePattern and queuePattern elements. Note that we check the
+     * whitelist file update time to avoid reading it if it hasn't been changed, and check that at most once every
+     * WHITELIST_CHECK_INTERVAL. If the file can't be parsed the previous whitelist remains in use.
      */
     private void readWhitelist()
     {
+        long now = System.currentTimeMillis();
+        if (now - _whitelistLastChecked < WHITELIST_CHECK_INTERVAL)
+        {
+            return;
+        }
+        _whitelistLastChecked = now;
+
         File file = new File(_whitelist);
         if (file.exists())
         {
@@ -335,8 +573,10 @@ public final class ConnectionAudit implements QmfEventListener
             if (mtime != _whitelistLastModified)
             {
                 _whitelistLastModified = mtime;
-                _exchangeWhitelist.clear();
-                _queueWhitelist.clear();
+                Set<String> exchangeWhitelist = new HashSet<String>();
+                Set<String> queueWhitelist = new HashSet<String>();
+                List<Pattern> exchangePatterns = new ArrayList<Pattern>();
+                List<Pattern> queuePatterns = new ArrayList<Pattern>();
 
                 try
                 {
@@ -353,39 +593,12 @@ public final class ConnectionAudit implements QmfEventListener
                             Node child = children.item(i);
                             if (child.getNodeName().equals("exchangeWhitelist"))
                             {
-                                NodeList exchanges = child.getChildNodes();
-                                for (int j = 0; j < exchanges.getLength(); j++)
-                                {
-                                    Node node = exchanges.item(j);
-                                    if (node.getNodeName().equals("exchange"))
-                                    {
-                                        if (node.hasChildNodes())
-                                        {
-                                            String exchange = node.getFirstChild().getNodeValue();
-                                            _exchangeWhitelist.add(exchange);
-                                        }
-                                        else
-                                        {
-                                            _exchangeWhitelist.add("");
-                                        }
-                                    }
-                                }
+                                readNames(child, "exchange", "exchangePattern", true,
+                                          exchangeWhitelist, exchangePatterns);
                             }
                             else if (child.getNodeName().equals("queueWhitelist"))
                             {
-                                NodeList queues = child.getChildNodes();
-                                for (int j = 0; j < queues.getLength(); j++)
-                                {
-                                    Node node = queues.item(j);
-                                    if (node.getNodeName().equals("queue"))
-                                    {
-                                        if (node.hasChildNodes())
-                                        {
-                                            String queue = node.getFirstChild().getNodeValue();
-                                            _queueWhitelist.add(queue);
-                                        }
-                                    }
-                                }
+                                readNames(child, "queue", "queuePattern", false, queueWhitelist, queuePatterns);
                             }
                         }
                     }
@@ -397,14 +610,26 @@ public final class ConnectionAudit implements QmfEventListener
                                        _whitelist + " failed: " + e.getMessage());
                     return;
                 }
+
+                _exchangeWhitelist = exchangeWhitelist;
+                _queueWhitelist = queueWhitelist;
+                _exchangePatterns = exchangePatterns;
+                _queuePatterns = queuePatterns;
+                _exchangeDecisions.clear();
+                _queueDecisions.clear();
             }
         }
-        else 
-        { // If whitelist file doesn't exist log a warning and clear the whitelists.
+        else if (_whitelistLastModified != -1l)
+        { // If whitelist file doesn't exist log a warning (once) and clear the whitelists.
             System.out.println(new Date().toString() + " WARN ConnectionAudit.readWhitelist() " + 
                                _whitelist + " doesn't exist");
+            _whitelistLastModified = -1l;
             _exchangeWhitelist.clear();
             _queueWhitelist.clear();
+            _exchangePatterns.clear();
+            _queuePatterns.clear();
+            _exchangeDecisions.clear();
+            _queueDecisions.clear();
         }
     } // End of readWhitelist()
 
@@ -32,7 +32,6 @@ import java.util.List;
 import java.util.Map;
 
 // QMF2 Imports
-import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
 import org.apache.qpid.qmf2.common.QmfException;
@@ -42,6 +41,7 @@ import org.apache.qpid.qmf2.console.AgentHeartbeatWorkItem;
 import org.apache.qpid.qmf2.console.AgentRestartedWorkItem;
 import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.console.EventReceivedWorkItem;
+import org.apache.qpid.qmf2.console.ObjectGraph;
 import org.apache.qpid.qmf2.console.QmfConsoleData;
 import org.apache.qpid.qmf2.util.ConnectionHelper;
 import org.apache.qpid.qmf2.util.GetOpt;
@@ -124,103 +124,70 @@ public final class ConnectionLogger implements QmfEventListener
         }
     }
 
-    /**
-     * Finds a QmfConsoleData in a List of QMF Objects that matches a given ObjectID
-     *
-     * More or less a direct Java port of findById from qpid-config
-     *
-     * @param items the List of QMF Objects to search
-     * @param id the ObjectId we're searching the List for
-     * @return return the found object as a QmfConsoleData else return null
-     */
-    private QmfConsoleData findById(final List<QmfConsoleData> items, final ObjectId id)
-    {
-        for (QmfConsoleData item : items)
-        {
-            if (item.getObjectId().equals(id))
-            {
-                return item;
-            }
-        }
-
-        return null;
-    }
-
     /**
      * For every queue list the bindings (equivalent of qpid-config -b queues)
      *
      * More or less a direct Java port of QueueListRecurse in qpid-config, which handles qpid-config -b queues
      *
-     * @param ref If ref is null list info about all queues else list info about queue referenced by ObjectID
+     * @param graph the ObjectGraph containing the queue, binding and exchange objects.
+     * @param queue the queue to list the bindings of.
      */
-    private void logQueueInformation(final ObjectId ref)
+    private void logQueueInformation(final ObjectGraph graph, final QmfConsoleData queue)
     {
-        List<QmfConsoleData> queues = _console.getObjects("org.apache.qpid.broker", "queue");
-        List<QmfConsoleData> bindings = _console.getObjects("org.apache.qpid.broker", "binding");
-        List<QmfConsoleData> exchanges = _console.getObjects("org.apache.qpid.broker", "exchange");
+        System.out.printf("    Queue '%s'\n", queue.getStringValue("name"));
+        System.out.println("        arguments " + (Map)queue.getValue("arguments"));
 
-        for (QmfConsoleData queue : queues)
+        for (QmfConsoleData binding : graph.getReferrers(queue.getObjectId(), "binding", "queueRef"))
         {
-            ObjectId queueId = queue.getObjectId();
+            QmfConsoleData exchange = graph.get(binding.getRefValue("exchangeRef"));
 
-            if (ref == null || ref.equals(queueId))
+            String exchangeName = "<unknown>";
+            if (exchange != null)
             {
-                System.out.printf("    Queue '%s'\n", queue.getStringValue("name"));
-                System.out.println("        arguments " + (Map)queue.getValue("arguments"));
-
-                for (QmfConsoleData binding : bindings)
+                exchangeName = exchange.getStringValue("name");
+                if (exchangeName.equals(""))
                 {
-                    ObjectId queueRef = binding.getRefValue("queueRef");
-
-                    if (queueRef.equals(queueId))
-                    {
-                        ObjectId exchangeRef = binding.getRefValue("exchangeRef");
-                        QmfConsoleData exchange = findById(exchanges, exchangeRef);
-
-                        String exchangeName = "<unknown>";
-                        if (exchange != null)
-                        {
-                            exchangeName = exchange.getStringValue("name");
-                            if (exchangeName.equals(""))
-                            {
-                                exchangeName = "''";
-                            }
-                        }
-
-                        String bindingKey = binding.getStringValue("bindingKey");
-                        Map arguments = (Map)binding.getValue("arguments");
-                        if (arguments.isEmpty())
-                        {
-                            System.out.printf("        bind [%s] => %s\n", bindingKey, exchangeName);
-                        }
-                        else
-                        {
-                            // If there are binding arguments then it's a headers exchange
-                            System.out.printf("        bind [%s] => %s %s\n", bindingKey, exchangeName, arguments);
-                        }
-                    }
+                    exchangeName = "''";
                 }
             }
+
+            String bindingKey = binding.getStringValue("bindingKey");
+            Map arguments = (Map)binding.getValue("arguments");
+            if (arguments.isEmpty())
+            {
+                System.out.printf("        bind [%s] => %s\n", bindingKey, exchangeName);
+            }
+            else
+            {
+                // If there are binding arguments then it's a headers exchange
+                System.out.printf("        bind [%s] => %s %s\n", bindingKey, exchangeName, arguments);
+            }
         }
     }
 
     /**
      * Logs audit information about each connection made to the broker
      *
-     * Obtains connection, session and subscription objects and iterates in turn through these comparing
-     * references to find the subscriptions association with sessions and sessions associated with
-     * connections. Ultimately it then uses logQueueInformation to display the queues associated with
-     * each subscription.
+     * Loads the connection, session and subscription objects (and the queue, binding and exchange objects if
+     * queues are being logged) into an ObjectGraph, whose reverse reference indexes are then used to find the
+     * sessions associated with each connection and the subscriptions associated with each session. Ultimately it
+     * then uses logQueueInformation to display the queues associated with each subscription.
      */
     private void logConnectionInformation()
     {
         System.out.println("\n\n**** ConnectionLogger: Logging current connection information ****");
 
-        List<QmfConsoleData> connections = _console.getObjects("org.apache.qpid.broker", "connection");
-        List<QmfConsoleData> sessions = _console.getObjects("org.apache.qpid.broker", "session");
-        List<QmfConsoleData> subscriptions = _console.getObjects("org.apache.qpid.broker", "subscription");
+        ObjectGraph graph = new ObjectGraph(_console);
+        if (_logQueues)
+        {
+            graph.load("org.apache.qpid.broker", "connection", "session", "subscription", "queue", "binding", "exchange");
+        }
+        else
+        {
+            graph.load("org.apache.qpid.broker", "connection", "session", "subscription");
+        }
 
-        for (QmfConsoleData connection : connections)
+        for (QmfConsoleData connection : graph.getObjects("connection"))
         {
             System.out.printf("\nConnection '%s'\n", connection.getStringValue("address"));
 
@@ -232,33 +199,26 @@ public final class ConnectionLogger implements QmfEventListener
 
             System.out.println("createTimestamp: " + new Date(connection.getCreateTime()/1000000l));
 
-            ObjectId connectionId = connection.getObjectId();
-            for (QmfConsoleData session : sessions)
-            { // Iterate through all session objects
-                ObjectId connectionRef = session.getRefValue("connectionRef");
-                if (connectionRef.equals(connectionId))
-                { // But only select sessions that are associated with the connection under consideration.
-                    System.out.printf("Session '%s'\n", session.getStringValue("name"));
-                    int subscriptionCount = 0;
-                    ObjectId sessionId = session.getObjectId();
-                    for (QmfConsoleData subscription : subscriptions)
-                    { // Iterate through all subscription objects
-                        ObjectId sessionRef = subscription.getRefValue("sessionRef");
-                        if (sessionRef.equals(sessionId))
-                        { // But only select subscriptions that are associated with the session under consideration.
-                            subscriptionCount++;
-                            ObjectId queueRef = subscription.getRefValue("queueRef");
-                            if (_logQueues)
-                            {
-                                logQueueInformation(queueRef);
-                            }
-                        }
-                    }
-                    if (subscriptionCount == 0)
+            for (QmfConsoleData session : graph.getReferrers(connection.getObjectId(), "session", "connectionRef"))
+            { // Only select sessions that are associated with the connection under consideration.
+                System.out.printf("Session '%s'\n", session.getStringValue("name"));
+                List<QmfConsoleData> subscriptions =
+                    graph.getReferrers(session.getObjectId(), "subscription", "sessionRef");
+                for (QmfConsoleData subscription : subscriptions)
+                { // Only select subscriptions that are associated with the session under consideration.
+                    if (_logQueues)
                     {
-                        System.out.println("    ** No Subscriptions for this Session - probably a producer only Session **");
+                        QmfConsoleData queue = graph.get(subscription.getRefValue("queueRef"));
+                        if (queue != null)
+                        {
+                            logQueueInformation(graph, queue);
+                        }
                     }
                 }
+                if (subscriptions.size() == 0)
+                {
+                    System.out.println("    ** No Subscriptions for this Session - probably a producer only Session **");
+                }
             }
         }
     }
@@ -24,11 +24,14 @@ import javax.jms.Connection;
 
 // Misc Imports
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 import java.util.Collections;
 import java.util.Date;
@@ -45,6 +48,7 @@ import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfData;
 import org.apache.qpid.qmf2.common.QmfException;
 import org.apache.qpid.qmf2.console.Console;
+import org.apache.qpid.qmf2.console.ObjectGraph;
 import org.apache.qpid.qmf2.console.QmfConsoleData;
 import org.apache.qpid.qmf2.util.ConnectionHelper;
 import org.apache.qpid.qmf2.util.GetOpt;
@@ -402,25 +406,13 @@ public final class QpidConfig
     }
 
     /**
-     * Finds a QmfConsoleData instance in a List of QMF Objects that matches a given ObjectID.
-     *
-     * More or less a direct Java port of findById from qpid-config.
-     *
-     * @param items the List of QMF Objects to search.
-     * @param id the ObjectId we're searching the List for.
-     * @return return the found object as a QmfConsoleData else return null.
+     * Returns a PrintWriter that buffers output to System.out. The binding listings can run to hundreds of thousands
+     * of lines and System.out flushes on every newline, so they write through this instead and flush at the end.
+     * @return a PrintWriter that buffers output to System.out.
      */
-    private QmfConsoleData findById(final List<QmfConsoleData> items, final ObjectId id)
+    private PrintWriter bufferedOutput()
     {
-        for (QmfConsoleData item : items)
-        {
-            if (item.getObjectId().equals(id))
-            {
-                return item;
-            }
-        }
-
-        return null;
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 65536));
     }
 
     /**
@@ -479,7 +471,9 @@ public final class QpidConfig
      */
     private void exchangeList(final String filter)
     {
-        List<QmfConsoleData> exchanges = _console.getObjects("org.apache.qpid.broker", "exchange");
+        ObjectGraph graph = new ObjectGraph(_console);
+        graph.load("org.apache.qpid.broker", "exchange");
+        List<QmfConsoleData> exchanges = graph.getObjects("exchange");
 
         String caption1 = "Type      ";
         String caption2 = "Exchange Name";
@@ -533,8 +527,7 @@ public final class QpidConfig
 
                 if (exchange.hasValue("altExchange"))
                 {
-                    ObjectId altExchangeRef = exchange.getRefValue("altExchange");
-                    QmfConsoleData altExchange = findById(exchanges, altExchangeRef);
+                    QmfConsoleData altExchange = graph.get(exchange.getRefValue("altExchange"));
                     if (altExchange != null)
                     {
                         System.out.printf("--alternate-exchange=%s", altExchange.getStringValue("name"));
@@ -555,52 +548,46 @@ public final class QpidConfig
      */
     private void exchangeListRecurse(final String filter)
     {
-        List<QmfConsoleData> exchanges = _console.getObjects("org.apache.qpid.broker", "exchange");
-        List<QmfConsoleData> bindings = _console.getObjects("org.apache.qpid.broker", "binding");
-        List<QmfConsoleData> queues = _console.getObjects("org.apache.qpid.broker", "queue");
+        ObjectGraph graph = new ObjectGraph(_console);
+        graph.load("org.apache.qpid.broker", "exchange", "binding", "queue");
 
-        for (QmfConsoleData exchange : exchanges)
+        PrintWriter out = bufferedOutput();
+        for (QmfConsoleData exchange : graph.getObjects("exchange"))
         {
-            ObjectId exchangeId = exchange.getObjectId();
             String name = exchange.getStringValue("name");
 
             if (filter.equals("") || filter.equals(name))
             {
-                System.out.printf("Exchange '%s' (%s)\n", name, exchange.getStringValue("type"));
-                for (QmfConsoleData binding : bindings)
+                out.printf("Exchange '%s' (%s)\n", name, exchange.getStringValue("type"));
+                for (QmfConsoleData binding : graph.getReferrers(exchange.getObjectId(), "binding", "exchangeRef"))
                 {
-                    ObjectId exchangeRef = binding.getRefValue("exchangeRef");
+                    QmfConsoleData queue = graph.get(binding.getRefValue("queueRef"));
 
-                    if (exchangeRef.equals(exchangeId))
+                    String queueName = "<unknown>";
+                    if (queue != null)
                     {
-                        ObjectId queueRef = binding.getRefValue("queueRef");
-                        QmfConsoleData queue = findById(queues, queueRef);
-
-                        String queueName = "<unknown>";
-                        if (queue != null)
+                        queueName = queue.getStringValue("name");
+                        if (queueName.equals(""))
                         {
-                            queueName = queue.getStringValue("name");
-                            if (queueName.equals(""))
-                            {
-                                queueName = "''";
-                            }
+                            queueName = "''";
                         }
+                    }
 
-                        String bindingKey = binding.getStringValue("bindingKey");
-                        Map arguments = (Map)binding.getValue("arguments");
-                        if (arguments == null || arguments.isEmpty())
-                        {
-                            System.out.printf("    bind [%s] => %s\n", bindingKey, queueName);
-                        }
-                        else
-                        {
-                            // If there are binding arguments then it's a headers exchange
-                            System.out.printf("    bind [%s] => %s %s\n", bindingKey, queueName, arguments);
-                        }
+                    String bindingKey = binding.getStringValue("bindingKey");
+                    Map arguments = (Map)binding.getValue("arguments");
+                    if (arguments == null || arguments.isEmpty())
+                    {
+                        out.printf("    bind [%s] => %s\n", bindingKey, queueName);
+                    }
+                    else
+                    {
+                        // If there are binding arguments then it's a headers exchange
+                        out.printf("    bind [%s] => %s %s\n", bindingKey, queueName, arguments);
                     }
                 }
             }
         }
+        out.flush();
     }
 
     /**
@@ -612,7 +599,10 @@ public final class QpidConfig
      */
     private void queueList(final String filter)
     {
-        List<QmfConsoleData> queues = _console.getObjects("org.apache.qpid.broker", "queue");
+        // The exchanges are loaded too, so that alternate exchanges don't need a query per queue.
+        ObjectGraph graph = new ObjectGraph(_console);
+        graph.load("org.apache.qpid.broker", "queue", "exchange");
+        List<QmfConsoleData> queues = graph.getObjects("queue");
 
         String caption = "Queue Name";
         int maxNameLen = caption.length();
@@ -703,11 +693,9 @@ for (Map.Entry<String, Object> entry  : args.entrySet()) {
 
                 if (queue.hasValue("altExchange"))
                 {
-                    ObjectId altExchangeRef = queue.getRefValue("altExchange");
-                    List<QmfConsoleData> altExchanges = _console.getObjects(altExchangeRef);
-                    if (altExchanges.size() == 1)
+                    QmfConsoleData altExchange = graph.dereference(queue, "altExchange");
+                    if (altExchange != null)
                     {
-                        QmfConsoleData altExchange = altExchanges.get(0);
                         System.out.printf("--alternate-exchange=%s", altExchange.getStringValue("name"));
                     }
                 }
@@ -754,53 +742,47 @@ for (Map.Entry<String, Object> entry  : args.entrySet()) {
      */
     private void queueListRecurse(final String filter)
     {
-        List<QmfConsoleData> queues = _console.getObjects("org.apache.qpid.broker", "queue");
-        List<QmfConsoleData> bindings = _console.getObjects("org.apache.qpid.broker", "binding");
-        List<QmfConsoleData> exchanges = _console.getObjects("org.apache.qpid.broker", "exchange");
+        ObjectGraph graph = new ObjectGraph(_console);
+        graph.load("org.apache.qpid.broker", "queue", "binding", "exchange");
 
-        for (QmfConsoleData queue : queues)
+        PrintWriter out = bufferedOutput();
+        for (QmfConsoleData queue : graph.getObjects("queue"))
         {
-            ObjectId queueId = queue.getObjectId();
             String name = queue.getStringValue("name");
 
             if (filter.equals("") || filter.equals(name))
             {
-                System.out.printf("Queue '%s'\n", name);
+                out.printf("Queue '%s'\n", name);
 
-                for (QmfConsoleData binding : bindings)
+                for (QmfConsoleData binding : graph.getReferrers(queue.getObjectId(), "binding", "queueRef"))
                 {
-                    ObjectId queueRef = binding.getRefValue("queueRef");
+                    QmfConsoleData exchange = graph.get(binding.getRefValue("exchangeRef"));
 
-                    if (queueRef.equals(queueId))
+                    String exchangeName = "<unknown>";
+                    if (exchange != null)
                     {
-                        ObjectId exchangeRef = binding.getRefValue("exchangeRef");
-                        QmfConsoleData exchange = findById(exchanges, exchangeRef);
-
-                        String exchangeName = "<unknown>";
-                        if (exchange != null)
+                        exchangeName = exchange.getStringValue("name");
+                        if (exchangeName.equals(""))
                         {
-                            exchangeName = exchange.getStringValue("name");
-                            if (exchangeName.equals(""))
-                            {
-                                exchangeName = "''";
-                            }
+                            exchangeName = "''";
                         }
+                    }
 
-                        String bindingKey = binding.getStringValue("bindingKey");
-                        Map arguments = (Map)binding.getValue("arguments");
-                        if (arguments == null || arguments.isEmpty())
-                        {
-                            System.out.printf("    bind [%s] => %s\n", bindingKey, exchangeName);
-                        }
-                        else
-                        {
-                            // If there are binding arguments then it's a headers exchange
-                            System.out.printf("    bind [%s] => %s %s\n", bindingKey, exchangeName, arguments);
-                        }
+                    String bindingKey = binding.getStringValue("bindingKey");
+                    Map arguments = (Map)binding.getValue("arguments");
+                    if (arguments == null || arguments.isEmpty())
+                    {
+                        out.printf("    bind [%s] => %s\n", bindingKey, exchangeName);
+                    }
+                    else
+                    {
+                        // If there are binding arguments then it's a headers exchange
+                        out.printf("    bind [%s] => %s %s\n", bindingKey, exchangeName, arguments);
                     }
                 }
             }
         }
+        out.flush();
     }
 
     /**
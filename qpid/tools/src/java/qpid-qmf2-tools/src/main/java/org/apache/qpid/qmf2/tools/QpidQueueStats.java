@@ -25,13 +25,16 @@ import javax.jms.Connection;
 
 // Misc Imports
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,6 +62,12 @@ import org.apache.qpid.qmf2.util.GetOpt;
 
 /**
  * Collect and print queue statistics.
+ * <p>
+ * The statistics pushed by the broker are recorded by a QueueStatistics, which maintains one, five and fifteen
+ * minute moving averages of the enqueue and dequeue rates and the recent depth percentiles of every queue. By default
+ * the rates over the latest interval are printed as each queue's statistics arrive, with the --top option the queues
+ * with the greatest depth or rates are instead printed every broker heartbeat. Whether a queue passes the filter is
+ * decided once, when its properties are first seen, so the cost of the filter doesn't grow with the update rate.
  * <pre>
  * Usage: QpidQueueStats [options]
  * 
@@ -72,6 +81,13 @@ import org.apache.qpid.qmf2.util.GetOpt;
  *   -f &lt;filter&gt;, --filter=&lt;filter&gt;
  *                         a list of comma separated queue names (regex are
  *                         accepted) to show
+ *   -t &lt;count&gt;, --top=&lt;count&gt;
+ *                         periodically show the &lt;count&gt; busiest queues rather
+ *                         than showing each queue as its statistics arrive
+ *   -s &lt;key&gt;, --sort=&lt;key&gt;
+ *                         the statistic used to choose the busiest queues,
+ *                         depth, enq or deq (one minute average enqueue or
+ *                         dequeue rate). Default is depth
  *   --sasl-mechanism=&lt;mech&gt;
  *                         SASL mechanism for authentication (e.g. EXTERNAL,
  *                         ANONYMOUS, PLAIN, CRAM-MD5, DIGEST-MD5, GSSAPI). SASL
@@ -82,33 +98,6 @@ import org.apache.qpid.qmf2.util.GetOpt;
  */
 public final class QpidQueueStats implements QmfEventListener
 {
-    private final class Stats
-    {
-        private final String _name;
-        private QmfConsoleData _data;
-
-        public Stats(final String name, final QmfConsoleData data)
-        {
-            _name = name;
-            _data = data;
-        }
-
-        public String getName()
-        {
-            return _name;
-        }
-
-        public QmfConsoleData getData()
-        {
-            return _data;
-        }
-
-        public void setData(final QmfConsoleData data)
-        {
-            _data = data;
-        }
-    }
-
     private static final String _usage =
     "Usage: QpidQueueStats [options]\n";
 
@@ -123,17 +112,32 @@ public final class QpidQueueStats implements QmfEventListener
     "  -f <filter>, --filter=<filter>\n" +
     "                        a list of comma separated queue names (regex are\n" +
     "                        accepted) to show\n" +
+    "  -t <count>, --top=<count>\n" +
+    "                        periodically show the <count> busiest queues rather\n" +
+    "                        than showing each queue as its statistics arrive\n" +
+    "  -s <key>, --sort=<key>\n" +
+    "                        the statistic used to choose the busiest queues,\n" +
+    "                        depth, enq or deq (one minute average enqueue or\n" +
+    "                        dequeue rate). Default is depth\n" +
     "  --sasl-mechanism=<mech>\n" +
     "                        SASL mechanism for authentication (e.g. EXTERNAL,\n" +
     "                        ANONYMOUS, PLAIN, CRAM-MD5, DIGEST-MD5, GSSAPI). SASL\n" +
     "                        automatically picks the most secure available\n" +
     "                        mechanism - use this option to override.\n";
 
+    // The number of depth samples kept for each queue, about five minutes worth at the broker's default
+    // management publish interval of ten seconds.
+    private static final int DEPTH_WINDOW = 30;
+
     private final String _url;
     private final List<Pattern> _filter;
+    private final int _top;
+    private final QueueStatistics.Order _order;
+    private final PrintStream _out = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
     private Agent _broker;
     private Console _console;
-    private Map<ObjectId, Stats> _objects = new HashMap<ObjectId, Stats>();
+    private QueueStatistics _statistics = new QueueStatistics(DEPTH_WINDOW);
+    private Set<ObjectId> _excluded = new HashSet<ObjectId>();
     private String _subscriptionId = null;
     private long _subscriptionDuration;
     private long _startTime;
@@ -145,6 +149,20 @@ public final class QpidQueueStats implements QmfEventListener
      * @param filter a list of regex Patterns used to choose the queues we wish to display.
      */
     public QpidQueueStats(final String url, final String connectionOptions, final List<Pattern> filter)
+    {
+        this(url, connectionOptions, filter, 0, QueueStatistics.Order.DEPTH);
+    }
+
+    /**
+     * Constructor that periodically displays the busiest queues rather than each queue as its statistics arrive.
+     * @param url the connection URL.
+     * @param connectionOptions the options String to pass to ConnectionHelper.
+     * @param filter a list of regex Patterns used to choose the queues we wish to display.
+     * @param top the number of queues to display each heartbeat, zero displays each queue as its statistics arrive.
+     * @param order the statistic used to choose the busiest queues.
+     */
+    public QpidQueueStats(final String url, final String connectionOptions, final List<Pattern> filter,
+                          final int top, final QueueStatistics.Order order)
     {
         System.out.println("Connecting to " + url);
         if (filter.size() > 0)
@@ -153,6 +171,8 @@ public final class QpidQueueStats implements QmfEventListener
         }
         _url = url;
         _filter = filter;
+        _top = top;
+        _order = order;
         try
         {
             Connection connection = ConnectionHelper.createConnection(url, connectionOptions);        
@@ -167,10 +187,13 @@ public final class QpidQueueStats implements QmfEventListener
             }
 
             System.out.println("Hit Return to exit");
-            System.out.println(
-                "Queue Name                                          Sec       Depth     Enq Rate     Deq Rate");
-            System.out.println(
-                "=============================================================================================");
+            if (_top == 0)
+            {
+                System.out.println(
+                    "Queue Name                                          Sec       Depth     Enq Rate     Deq Rate");
+                System.out.println(
+                    "=============================================================================================");
+            }
         }
         catch (QmfException qmfe)
         {
@@ -197,12 +220,72 @@ public final class QpidQueueStats implements QmfEventListener
     }
 
     /**
-     * Main Event handler. Checks if the WorkItem is a SubscriptionIndicationWorkItem, if it is it stores the object
-     * in a Map and uses this to maintain state so we can record deltas such as enqueue and dequeue rates.
+     * Check whether a queue record holds the counters that the rates are calculated from. A missing counter would
+     * otherwise read as zero and the next delta would be the whole cumulative total.
+     * @param record the queue record.
+     * @return true if the record has both msgTotalEnqueues and msgTotalDequeues.
+     */
+    private boolean hasCounters(final QmfConsoleData record)
+    {
+        return record.hasValue("msgTotalEnqueues") && record.hasValue("msgTotalDequeues");
+    }
+
+    /**
+     * Check the queue name against the regexes in the filter List (if any).
+     * @param name the queue name.
+     * @return true if there's no filter enabled or the filter matches the queue name.
+     */
+    private boolean isSelected(final String name)
+    {
+        if (_filter.isEmpty())
+        {
+            return true;
+        }
+
+        for (Pattern x : _filter)
+        {
+            Matcher m = x.matcher(name);
+            if (m.find())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Print the busiest queues, as chosen by the sort order, with their moving average rates and depth percentiles.
+     */
+    private void printTop()
+    {
+        _out.printf("%n%s  %d of %d queues by %s%n", new Date(), Math.min(_top, _statistics.size()),
+                    _statistics.size(), _order.toString().toLowerCase());
+        _out.println(
+            "Queue Name                      Depth   p50 Depth   p95 Depth   Enq 1m   Enq 5m  Enq 15m   Deq 1m   Deq 5m  Deq 15m");
+        _out.println(
+            "=================================================================================================================");
+        for (ObjectId id : _statistics.top(_top, _order))
+        {
+            _out.printf("%-26s%11d%12d%12d%9.2f%9.2f%9.2f%9.2f%9.2f%9.2f%n", _statistics.getName(id),
+                        _statistics.getDepth(id),
+                        _statistics.getDepthPercentile(id, 50), _statistics.getDepthPercentile(id, 95),
+                        _statistics.getEnqueueRate(id, QueueStatistics.ONE_MINUTE),
+                        _statistics.getEnqueueRate(id, QueueStatistics.FIVE_MINUTES),
+                        _statistics.getEnqueueRate(id, QueueStatistics.FIFTEEN_MINUTES),
+                        _statistics.getDequeueRate(id, QueueStatistics.ONE_MINUTE),
+                        _statistics.getDequeueRate(id, QueueStatistics.FIVE_MINUTES),
+                        _statistics.getDequeueRate(id, QueueStatistics.FIFTEEN_MINUTES));
+        }
+        _out.flush();
+    }
+
+    /**
+     * Main Event handler. Checks if the WorkItem is a SubscriptionIndicationWorkItem, if it is it records the queue
+     * statistics in the QueueStatistics, which maintains the state needed to calculate enqueue and dequeue rates.
      * <p>
      * The AgentHeartbeatWorkItem is used to periodically compare the elapsed time against the Subscription duration
      * so that we can refresh the Subscription (or create a new one if necessary) in order to continue receiving
-     * queue Management Object data from the broker.
+     * queue Management Object data from the broker. It also triggers printing the busiest queues if --top was given.
      * <p>
      * When the AgentRestartedWorkItem is received we clear the state to remove any stale queue Management Objects.
      * @param wi a QMF2 WorkItem object
@@ -225,10 +308,16 @@ public final class QpidQueueStats implements QmfEventListener
                    createQueueSubscription();
                 }
             }
+
+            if (_top > 0)
+            {
+                printTop();
+            }
         }
         else if (wi instanceof AgentRestartedWorkItem)
         {
-            _objects.clear();
+            _statistics.clear();
+            _excluded.clear();
         }
         else if (wi instanceof SubscriptionIndicationWorkItem)
         {
@@ -242,62 +331,60 @@ public final class QpidQueueStats implements QmfEventListener
                 {
                     ObjectId id = record.getObjectId();
                     if (record.isDeleted())
-                    { // If the object was deleted by the Agent we remove it from out Map
-                        _objects.remove(id);
+                    { // If the object was deleted by the Agent we stop tracking it
+                        _statistics.remove(id);
+                        _excluded.remove(id);
                     }
-                    else
-                    {
-                        if (_objects.containsKey(id))
-                        { // If the object is already in the Map it's likely to be a statistics push from the broker.
-                            Stats stats = _objects.get(id);
-                            String name = stats.getName();
+                    else if (_statistics.contains(id))
+                    { // If the object is already known it's likely to be a statistics push from the broker.
+                        if (!hasCounters(record))
+                        { // A sample without the counters can't be used to calculate rates.
+                            continue;
+                        }
 
-                            boolean matches = false;
-                            for (Pattern x : _filter)
-                            { // Check the queue name against the regexes in the filter List (if any)
-                                Matcher m = x.matcher(name);
-                                if (m.find())
-                                {
-                                    matches = true;
-                                    break;
-                                }
+                        boolean updated = _statistics.update(id, record.getUpdateTime(),
+                                                             record.getLongValue("msgDepth"),
+                                                             record.getLongValue("msgTotalEnqueues"),
+                                                             record.getLongValue("msgTotalDequeues"));
+                        if (updated && _top == 0)
+                        {
+                            _out.printf("%-46s%10.2f%11d%13.2f%13.2f\n", _statistics.getName(id),
+                                        _statistics.getInterval(id), _statistics.getDepth(id),
+                                        _statistics.getEnqueueRate(id), _statistics.getDequeueRate(id));
+                            _out.flush();
+                        }
+                    }
+                    else if (!_excluded.contains(id))
+                    { // If the object isn't known it's likely to be a properties push from the broker.
+                        if (!record.hasValue("name"))
+                        { // This probably won't happen, but if it does we refresh the object to get its full state.
+                            try
+                            {
+                                record.refresh();
                             }
+                            catch (QmfException qmfe)
+                            {  
+                            } 
+                        }
 
-                            if (_filter.isEmpty() || matches)
-                            { // If there's no filter enabled or the filter matches the queue name we display statistics.
-                                QmfConsoleData lastSample = stats.getData();
-                                stats.setData(record);
-    
-                                float deltaTime = record.getUpdateTime() - lastSample.getUpdateTime();
-                                if (deltaTime > 1000000000.0f)
-                                {
-                                    float deltaEnqueues = record.getLongValue("msgTotalEnqueues") -
-                                                          lastSample.getLongValue("msgTotalEnqueues");
-                                    float deltaDequeues = record.getLongValue("msgTotalDequeues") -
-                                                          lastSample.getLongValue("msgTotalDequeues");
-                                    long msgDepth = record.getLongValue("msgDepth");
-                                    float enqueueRate = deltaEnqueues/(deltaTime/1000000000.0f);
-                                    float dequeueRate = deltaDequeues/(deltaTime/1000000000.0f);
-
-                                    System.out.printf("%-46s%10.2f%11d%13.2f%13.2f\n", 
-                                                      name, deltaTime/1000000000, msgDepth, enqueueRate, dequeueRate);
-                                }
+                        String queueName = record.getStringValue("name");
+                        if (queueName != null && isSelected(queueName))
+                        { // Only queues that pass the filter are tracked, the rest are remembered so they're skipped.
+                            if (hasCounters(record))
+                            {
+                                _statistics.add(id, queueName, record.getUpdateTime(),
+                                                record.getLongValue("msgDepth"),
+                                                record.getLongValue("msgTotalEnqueues"),
+                                                record.getLongValue("msgTotalDequeues"));
+                            }
+                            else
+                            { // The rates are calculated from the first statistics push that has the counters.
+                                _statistics.add(id, queueName, record.getLongValue("msgDepth"));
                             }
                         }
                         else
-                        { // If the object isn't in the Map it's likely to be a properties push from the broker.
-                            if (!record.hasValue("name"))
-                            { // This probably won't happen, but if it does we refresh the object to get its full state.
-                                try
-                                {
-                                    record.refresh();
-                                }
-                                catch (QmfException qmfe)
-                                {  
-                                } 
-                            }
-                            String queueName = record.getStringValue("name");
-                            _objects.put(id, new Stats(queueName, record));
+                        {
+                            _excluded.add(id);
                         }
                     }
                 }
@@ -315,13 +402,15 @@ public final class QpidQueueStats implements QmfEventListener
         logLevel = (logLevel == null) ? "FATAL" : logLevel; // Set default log level to FATAL rather than DEBUG.
         System.setProperty("amqj.logging.level", logLevel);
 
-        String[] longOpts = {"help", "broker-address=", "filter=", "sasl-mechanism="};
+        String[] longOpts = {"help", "broker-address=", "filter=", "top=", "sort=", "sasl-mechanism="};
         try
         {
             String host = "localhost";
             String connectionOptions = "{reconnect: true}";
             List<Pattern> filter = new ArrayList<Pattern>();
-            GetOpt getopt = new GetOpt(args, "ha:f:", longOpts);
+            int top = 0;
+            QueueStatistics.Order order = QueueStatistics.Order.DEPTH;
+            GetOpt getopt = new GetOpt(args, "ha:f:t:s:", longOpts);
             List<String[]> optList = getopt.getOptList();
 
             for (String[] opt : optList)
@@ -345,13 +434,21 @@ public final class QpidQueueStats implements QmfEventListener
                         filter.add(p);
                     }
                 }
+                else if (opt[0].equals("-t") || opt[0].equals("--top"))
+                {
+                    top = Integer.parseInt(opt[1]);
+                }
+                else if (opt[0].equals("-s") || opt[0].equals("--sort"))
+                {
+                    order = QueueStatistics.Order.fromName(opt[1]);
+                }
                 else if (opt[0].equals("--sasl-mechanism"))
                 {
                     connectionOptions = "{reconnect: true, sasl_mechs: " + opt[1] + "}";
                 }
             }
 
-            QpidQueueStats queueStats = new QpidQueueStats(host, connectionOptions, filter);
+            QpidQueueStats queueStats = new QpidQueueStats(host, connectionOptions, filter, top, order);
         }
         catch (IllegalArgumentException e)
         {
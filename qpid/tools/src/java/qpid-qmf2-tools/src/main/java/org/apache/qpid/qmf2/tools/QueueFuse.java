@@ -32,6 +32,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,7 +50,10 @@ import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.console.Agent;
 import org.apache.qpid.qmf2.console.Console;
 import org.apache.qpid.qmf2.console.EventReceivedWorkItem;
+import org.apache.qpid.qmf2.console.MethodResult;
 import org.apache.qpid.qmf2.console.QmfConsoleData;
+import org.apache.qpid.qmf2.console.QmfFuture;
+import org.apache.qpid.qmf2.console.QmfFutureListener;
 
 import org.apache.qpid.qmf2.util.ConnectionHelper;
 import org.apache.qpid.qmf2.util.GetOpt;
@@ -72,6 +79,14 @@ import org.apache.qpid.qmf2.util.GetOpt;
  * in the flowStopped state and producers will eventually time out and throw an exception if this is not cleared.
  * So all in all simply purging each time we cross the threshold is simpler and has the additional advantage that
  * if and when the consumer speeds up message delivery will eventually return to normal. 
+ * <p>
+ * As the whole point is to react before producers time out the Console's notifier thread does no more than decide
+ * (once per queue name) whether the queue is protected and note that it needs purging. A dispatcher thread then
+ * issues the purge with invokeMethodAsync() so that a storm of events across many queues is handled concurrently,
+ * with at most --concurrency purges in flight at once. Further events for a queue that arrive while its purge is
+ * waiting to be issued are coalesced into it, using the latest msgDepth, and each queue is purged at most once
+ * every --interval milliseconds. The time from receiving the (first coalesced) event to the purge completing is
+ * reported for each purge, along with how much of that was spent waiting to be issued.
  * 
  * <pre>
  * Usage: QueueFuse [options] [broker-addr]...
@@ -104,6 +119,12 @@ import org.apache.qpid.qmf2.util.GetOpt;
  *                         The percentage of messages to purge when the queue\n" +
  *                         threshold gets exceeded (default = 20%).\n" +
  *                         N.B. if this gets set too low the fuse may not blow.\n" +
+ *   -c &lt;count&gt;, --concurrency=&lt;count&gt;
+ *                         The maximum number of purges in flight at once
+ *                         (default = 10).
+ *   -i &lt;ms&gt;, --interval=&lt;ms&gt;
+ *                         The minimum interval in milliseconds between purges
+ *                         of the same queue (default = 1000).
  *   --sasl-mechanism=&lt;mech&gt;
  *                         SASL mechanism for authentication (e.g. EXTERNAL,
  *                         ANONYMOUS, PLAIN, CRAM-MD5, DIGEST-MD5, GSSAPI). SASL
@@ -147,18 +168,61 @@ public final class QueueFuse implements QmfEventListener
     "                        The percentage of messages to purge when the queue\n" +
     "                        threshold gets exceeded (default = 20%).\n" +
     "                        N.B. if this gets set too low the fuse may not blow.\n" +
+    "  -c <count>, --concurrency=<count>\n" +
+    "                        The maximum number of purges in flight at once\n" +
+    "                        (default = 10).\n" +
+    "  -i <ms>, --interval=<ms>\n" +
+    "                        The minimum interval in milliseconds between purges\n" +
+    "                        of the same queue (default = 1000).\n" +
     "  --sasl-mechanism=<mech>\n" +
     "                        SASL mechanism for authentication (e.g. EXTERNAL,\n" +
     "                        ANONYMOUS, PLAIN, CRAM-MD5, DIGEST-MD5, GSSAPI). SASL\n" +
     "                        automatically picks the most secure available\n" +
     "                        mechanism - use this option to override.\n";
 
+    /**
+     * A purge that is waiting to be issued, further events for the queue update it rather than causing more purges.
+     */
+    private static final class PendingPurge
+    {
+        private final long _received;
+        private long _msgDepth;
+        private int _events = 1;
+
+        /**
+         * Construct a PendingPurge.
+         * @param received the System.nanoTime() at which the first event was received.
+         * @param msgDepth the msgDepth of the queue reported by the event.
+         */
+        public PendingPurge(final long received, final long msgDepth)
+        {
+            _received = received;
+            _msgDepth = msgDepth;
+        }
+    }
+
+    // The timeout in seconds of the purge method invocations.
+    private static final int PURGE_TIMEOUT = 10;
+
     private final String _url;
     private final List<Pattern> _filter;
     private final float _purge;
-    private Map<String, QmfConsoleData> _queueCache = new HashMap<String, QmfConsoleData>(50);
+    private final long _interval;
+    private volatile Map<String, QmfConsoleData> _queueCache = new HashMap<String, QmfConsoleData>(50);
     private Console _console;
 
+    // The filter decision for each queue name, only used on the Console's notifier thread.
+    private final Map<String, Boolean> _protected = new HashMap<String, Boolean>();
+
+    // The purges waiting to be issued keyed by queue name, guarded by its own lock.
+    private final Map<String, PendingPurge> _pending = new HashMap<String, PendingPurge>();
+
+    // The System.nanoTime() before which each queue may not be purged again, only used on the dispatcher thread.
+    private final Map<String, Long> _nextPurge = new HashMap<String, Long>();
+
+    private final Semaphore _permits;
+    private final ScheduledExecutorService _dispatcher = Executors.newSingleThreadScheduledExecutor();
+
     /**
      * Basic constructor. Creates JMS Session, Initialises Destinations, Producers &amp; Consumers and starts connection.
      * @param url the connection URL.
@@ -167,6 +231,21 @@ public final class QueueFuse implements QmfEventListener
      * @param purge the ratio of messages that we wish to purge if the threshold gets exceeded.
      */
     public QueueFuse(final String url, final String connectionOptions, final List<Pattern> filter, final float purge)
+    {
+        this(url, connectionOptions, filter, purge, 10, 1000l);
+    }
+
+    /**
+     * Constructor that also specifies how purges are issued.
+     * @param url the connection URL.
+     * @param connectionOptions the options String to pass to ConnectionHelper.
+     * @param filter a list of regex Patterns used to choose the queues we wish to protect.
+     * @param purge the ratio of messages that we wish to purge if the threshold gets exceeded.
+     * @param concurrency the maximum number of purges in flight at once.
+     * @param interval the minimum interval in milliseconds between purges of the same queue.
+     */
+    public QueueFuse(final String url, final String connectionOptions, final List<Pattern> filter, final float purge,
+                     final int concurrency, final long interval)
     {
         System.out.println("QueueFuse Connecting to " + url);
         if (filter.size() > 0)
@@ -176,6 +255,8 @@ public final class QueueFuse implements QmfEventListener
         _url = url;
         _filter = filter;
         _purge = purge;
+        _interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        _permits = new Semaphore(concurrency);
         try
         {
             Connection connection = ConnectionHelper.createConnection(url, connectionOptions);        
@@ -190,25 +271,129 @@ public final class QueueFuse implements QmfEventListener
     }
 
     /**
-     * Looks up queue objects and stores them in _queueCache keyed by the queue name
+     * Looks up queue objects and stores them in _queueCache keyed by the queue name. The Map is replaced rather than
+     * updated as it's read by the dispatcher thread.
      */
     private void updateQueueCache()
     {
-        _queueCache.clear();
         List<QmfConsoleData> queues = _console.getObjects("org.apache.qpid.broker", "queue");
+        Map<String, QmfConsoleData> queueCache = new HashMap<String, QmfConsoleData>(queues.size()*2);
         for (QmfConsoleData queue : queues)
         {
             String queueName = queue.getStringValue("name");
-            _queueCache.put(queueName, queue);
+            queueCache.put(queueName, queue);
         }
+        _queueCache = queueCache;
     }
 
     /**
-     * Look up a queue object with the given name and if it's not a ring queue invoke the queue's purge method.
-     * @param queueName the name of the queue to purge
+     * Check the queue name against the regexes in the filter List (if any), the result is cached for each name.
+     * @param queueName the name of the queue.
+     * @return true if there's no filter enabled or the filter matches the queue name.
+     */
+    private boolean isProtected(final String queueName)
+    {
+        Boolean cached = _protected.get(queueName);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        boolean matches = _filter.isEmpty();
+        for (Pattern x : _filter)
+        {
+            Matcher m = x.matcher(queueName);
+            if (m.find())
+            {
+                matches = true;
+                break;
+            }
+        }
+        _protected.put(queueName, matches);
+        return matches;
+    }
+
+    /**
+     * Note that a queue needs purging. If a purge of the queue is already waiting to be issued it's updated with the
+     * latest msgDepth, otherwise a new purge is handed to the dispatcher thread.
+     * @param queueName the name of the queue to purge.
      * @param msgDepth the number of messages on the queue, used to determine how many messages to purge.
+     * @param received the System.nanoTime() at which the event was received.
+     */
+    private void submit(final String queueName, final long msgDepth, final long received)
+    {
+        synchronized(_pending)
+        {
+            PendingPurge pending = _pending.get(queueName);
+            if (pending != null)
+            {
+                pending._msgDepth = msgDepth;
+                pending._events++;
+                return;
+            }
+            _pending.put(queueName, new PendingPurge(received, msgDepth));
+        }
+
+        _dispatcher.execute(new Runnable()
+        {
+            public void run()
+            {
+                dispatch(queueName, this);
+            }
+        });
+    }
+
+    /**
+     * Called on the dispatcher thread to issue the pending purge of a queue. If the queue was purged less than
+     * _interval ago the dispatch is rescheduled for when it may next be purged, any events received in the meantime
+     * are coalesced into the pending purge. Otherwise this waits until fewer than the maximum number of purges are
+     * in flight before issuing it.
+     * @param queueName the name of the queue to purge.
+     * @param task the task running this dispatch, used to reschedule it.
      */
-    private void purgeQueue(final String queueName, long msgDepth)
+    private void dispatch(final String queueName, final Runnable task)
+    {
+        Long nextPurge = _nextPurge.get(queueName);
+        long delay = nextPurge == null ? 0 : nextPurge - System.nanoTime();
+        if (delay > 0)
+        {
+            _dispatcher.schedule(task, delay, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        try
+        {
+            _permits.acquire();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        PendingPurge pending;
+        synchronized(_pending)
+        {
+            pending = _pending.remove(queueName);
+        }
+
+        long issued = System.nanoTime();
+        _nextPurge.put(queueName, issued + _interval);
+        if (!purgeQueue(queueName, pending, issued))
+        {
+            _permits.release();
+        }
+    }
+
+    /**
+     * Look up a queue object with the given name and if it's not a ring queue asynchronously invoke the queue's purge
+     * method, releasing the permit and reporting the latency when it completes.
+     * @param queueName the name of the queue to purge
+     * @param pending the pending purge holding the msgDepth used to determine how many messages to purge.
+     * @param issued the System.nanoTime() at which the purge was issued.
+     * @return true if the purge method was invoked, false if it wasn't so the caller still holds the permit.
+     */
+    private boolean purgeQueue(final String queueName, final PendingPurge pending, final long issued)
     {
         QmfConsoleData queue = _queueCache.get(queueName);
 
@@ -224,20 +409,48 @@ public final class QueueFuse implements QmfEventListener
             String policyType = (String)args.get("qpid.policy_type");
             if (policyType != null && policyType.equals("ring"))
             {  // If qpid.policy_type=ring we return.
-                return;
+                return false;
             }
 
             try
             {
+                final long request = (long)(_purge*pending._msgDepth);
                 QmfData arguments = new QmfData();
-                arguments.setValue("request", (long)(_purge*msgDepth));
-                queue.invokeMethod("purge", arguments);
+                arguments.setValue("request", request);
+                QmfFuture<MethodResult> future = queue.invokeMethodAsync("purge", arguments, PURGE_TIMEOUT);
+                future.addListener(new QmfFutureListener<MethodResult>()
+                {
+                    public void onSuccess(final MethodResult result)
+                    {
+                        _permits.release();
+                        if (result.succeeded())
+                        {
+                            long completed = System.nanoTime();
+                            System.out.printf("%s QueueFuse purged %d messages from %s in %.2fms " +
+                                              "(%.2fms waiting, %d events)\n", new Date().toString(), request,
+                                              queueName, (completed - pending._received)/1000000.0,
+                                              (issued - pending._received)/1000000.0, pending._events);
+                        }
+                        else
+                        {
+                            System.out.println(result.getQmfException().getMessage());
+                        }
+                    }
+
+                    public void onFailure(final Throwable cause)
+                    {
+                        _permits.release();
+                        System.out.println(cause.getMessage());
+                    }
+                });
+                return true;
             }
             catch (QmfException e)
             {
                 System.out.println(e.getMessage());
             }    
         }
+        return false;
     }
 
     /**
@@ -248,6 +461,7 @@ public final class QueueFuse implements QmfEventListener
     {
         if (wi instanceof EventReceivedWorkItem)
         {
+            long received = System.nanoTime();
             EventReceivedWorkItem item = (EventReceivedWorkItem)wi;
             Agent agent = item.getAgent();
             QmfEvent event = item.getEvent();
@@ -260,21 +474,10 @@ public final class QueueFuse implements QmfEventListener
             else if (className.equals("queueThresholdExceeded"))
             {
                 String queueName = event.getStringValue("qName");
-                boolean matches = false;
-                for (Pattern x : _filter)
-                { // Check the queue name against the regexes in the filter List (if any)
-                    Matcher m = x.matcher(queueName);
-                    if (m.find())
-                    {
-                        matches = true;
-                        break;
-                    }
-                }
-
-                if (_filter.isEmpty() || matches)
-                { // If there's no filter enabled or the filter matches the queue name we call purgeQueue().
+                if (isProtected(queueName))
+                { // If there's no filter enabled or the filter matches the queue name we submit a purge.
                     long msgDepth = event.getLongValue("msgDepth");
-                    purgeQueue(queueName, msgDepth);
+                    submit(queueName, msgDepth, received);
                 }
             }
         }
@@ -290,14 +493,16 @@ public final class QueueFuse implements QmfEventListener
         logLevel = (logLevel == null) ? "FATAL" : logLevel; // Set default log level to FATAL rather than DEBUG.
         System.setProperty("amqj.logging.level", logLevel);
 
-        String[] longOpts = {"help", "filter=", "purge=", "sasl-mechanism="};
+        String[] longOpts = {"help", "filter=", "purge=", "concurrency=", "interval=", "sasl-mechanism="};
         try
         {
             boolean includeRingQueues = false;
             String connectionOptions = "{reconnect: true}";
             List<Pattern> filter = new ArrayList<Pattern>();
             float purge = 0.2f;
-            GetOpt getopt = new GetOpt(args, "hf:p:", longOpts);
+            int concurrency = 10;
+            long interval = 1000l;
+            GetOpt getopt = new GetOpt(args, "hf:p:c:i:", longOpts);
             List<String[]> optList = getopt.getOptList();
             String[] cargs = {};
             cargs = getopt.getEncArgs().toArray(cargs);
@@ -329,6 +534,19 @@ public final class QueueFuse implements QmfEventListener
                     }
                     purge = percent/100.0f;
                 }
+                else if (opt[0].equals("-c") || opt[0].equals("--concurrency"))
+                {
+                    concurrency = Integer.parseInt(opt[1]);
+                    if (concurrency < 1)
+                    {
+                        System.out.println(_usage);
+                        System.exit(1);
+                    }
+                }
+                else if (opt[0].equals("-i") || opt[0].equals("--interval"))
+                {
+                    interval = Long.parseLong(opt[1]);
+                }
                 else if (opt[0].equals("--sasl-mechanism"))
                 {
                     connectionOptions = "{reconnect: true, sasl_mechs: " + opt[1] + "}";
@@ -343,7 +561,7 @@ public final class QueueFuse implements QmfEventListener
 
             for (String url : cargs)
             {
-                QueueFuse queueFuse = new QueueFuse(url, connectionOptions, filter, purge);
+                QueueFuse queueFuse = new QueueFuse(url, connectionOptions, filter, purge, concurrency, interval);
             }
         }
         catch (IllegalArgumentException e)
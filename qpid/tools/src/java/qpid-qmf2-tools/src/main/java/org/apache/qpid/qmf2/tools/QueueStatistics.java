@@ -0,0 +1,560 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.tools;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+
+/**
+ * Maintains rolling statistics for a (potentially very large) number of queues from the samples pushed by the broker.
+ * <p>
+ * For each queue this keeps the enqueue and dequeue rates over the most recent sample interval, exponentially
+ * weighted moving averages of the rates over one, five and fifteen minutes (computed in the same way as the Unix load
+ * average, so they are correct however irregularly the samples arrive) and a ring buffer of the most recent depth
+ * samples from which depth percentiles are calculated.
+ * <p>
+ * So that tens of thousands of queues can be tracked without noticeable GC load the statistics are held in primitive
+ * arrays indexed by a slot number allocated to each queue, rather than in an Object (or the last QmfConsoleData) per
+ * queue, so recording a sample doesn't allocate anything. The slots of removed queues are reused.
+ * <p>
+ * QueueStatistics is not thread safe, it's intended to be updated and read from the Console's notifier thread.
+ *
+ * @author Fraser Adams
+ */
+public final class QueueStatistics
+{
+    /**
+     * The statistics that queues may be ordered by in top().
+     */
+    public enum Order
+    {
+        DEPTH,
+        ENQUEUE_RATE,
+        DEQUEUE_RATE;
+
+        /**
+         * Parse an Order from one of the names "depth", "enq" or "deq".
+         * @param name the name of the Order.
+         * @return the Order with the specified name.
+         */
+        public static Order fromName(final String name)
+        {
+            if (name.equals("depth"))
+            {
+                return DEPTH;
+            }
+            else if (name.equals("enq"))
+            {
+                return ENQUEUE_RATE;
+            }
+            else if (name.equals("deq"))
+            {
+                return DEQUEUE_RATE;
+            }
+            throw new IllegalArgumentException("Invalid sort order " + name + ", must be one of depth, enq or deq");
+        }
+    }
+
+    /**
+     * The index of the one minute moving average.
+     */
+    public static final int ONE_MINUTE = 0;
+
+    /**
+     * The index of the five minute moving average.
+     */
+    public static final int FIVE_MINUTES = 1;
+
+    /**
+     * The index of the fifteen minute moving average.
+     */
+    public static final int FIFTEEN_MINUTES = 2;
+
+    // The periods in seconds of the moving averages.
+    private static final double[] PERIODS = {60.0, 300.0, 900.0};
+    private static final int AVERAGES = PERIODS.length;
+
+    // Samples less than a second apart (e.g. a properties push shortly followed by a statistics push) aren't used
+    // to calculate rates as the rates would be dominated by rounding.
+    private static final long MIN_INTERVAL = 1000000000l;
+
+    private final int _window;
+    private final Map<ObjectId, Integer> _slots = new HashMap<ObjectId, Integer>();
+    private int[] _free = new int[16];
+    private int _freeCount = 0;
+    private int _capacity = 0;
+
+    // The per queue statistics, indexed by slot.
+    private ObjectId[] _ids = new ObjectId[0];
+    private String[] _names = new String[0];
+    private long[] _timestamps = new long[0];
+    private long[] _enqueues = new long[0];
+    private long[] _dequeues = new long[0];
+    private long[] _depths = new long[0];
+    private double[] _interval = new double[0];
+    private double[] _enqueueRates = new double[0];
+    private double[] _dequeueRates = new double[0];
+    private boolean[] _baselined = new boolean[0];
+    private boolean[] _seeded = new boolean[0];
+
+    // The moving averages of slot n are at [n*AVERAGES + ONE_MINUTE] etc.
+    private double[] _enqueueAverages = new double[0];
+    private double[] _dequeueAverages = new double[0];
+
+    // The depth ring buffer of slot n occupies [n*_window, (n + 1)*_window).
+    private long[] _depthSamples = new long[0];
+    private int[] _depthCount = new int[0];
+    private int[] _depthNext = new int[0];
+
+    // Scratch space for calculating percentiles.
+    private final long[] _sorted;
+
+    /**
+     * Construct a QueueStatistics.
+     * @param window the number of depth samples kept for each queue to calculate depth percentiles from.
+     */
+    public QueueStatistics(final int window)
+    {
+        _window = window;
+        _sorted = new long[window];
+    }
+
+    /**
+     * Grow the per queue arrays to accommodate at least the specified number of slots.
+     */
+    private void grow(final int slots)
+    {
+        int capacity = Math.max(slots, Math.max(16, _capacity*2));
+        _ids = Arrays.copyOf(_ids, capacity);
+        _names = Arrays.copyOf(_names, capacity);
+        _timestamps = Arrays.copyOf(_timestamps, capacity);
+        _enqueues = Arrays.copyOf(_enqueues, capacity);
+        _dequeues = Arrays.copyOf(_dequeues, capacity);
+        _depths = Arrays.copyOf(_depths, capacity);
+        _interval = Arrays.copyOf(_interval, capacity);
+        _enqueueRates = Arrays.copyOf(_enqueueRates, capacity);
+        _dequeueRates = Arrays.copyOf(_dequeueRates, capacity);
+        _baselined = Arrays.copyOf(_baselined, capacity);
+        _seeded = Arrays.copyOf(_seeded, capacity);
+        _enqueueAverages = Arrays.copyOf(_enqueueAverages, capacity*AVERAGES);
+        _dequeueAverages = Arrays.copyOf(_dequeueAverages, capacity*AVERAGES);
+        _depthSamples = Arrays.copyOf(_depthSamples, capacity*_window);
+        _depthCount = Arrays.copyOf(_depthCount, capacity);
+        _depthNext = Arrays.copyOf(_depthNext, capacity);
+        _capacity = capacity;
+    }
+
+    /**
+     * Start tracking a queue, replacing any statistics previously held for it. The sample is used as the baseline
+     * that the rates of the next sample are calculated from.
+     * @param id the ObjectId of the queue.
+     * @param name the name of the queue.
+     * @param timestamp the update timestamp of the sample in nanoseconds.
+     * @param depth the msgDepth of the queue.
+     * @param enqueues the msgTotalEnqueues of the queue.
+     * @param dequeues the msgTotalDequeues of the queue.
+     */
+    public void add(final ObjectId id, final String name, final long timestamp,
+                    final long depth, final long enqueues, final long dequeues)
+    {
+        int slot = allocate(id, name, depth);
+        _timestamps[slot] = timestamp;
+        _enqueues[slot] = enqueues;
+        _dequeues[slot] = dequeues;
+        _baselined[slot] = true;
+    }
+
+    /**
+     * Start tracking a queue whose enqueue and dequeue counters aren't yet known, replacing any statistics previously
+     * held for it. The next sample passed to update() becomes the baseline that rates are calculated from.
+     * @param id the ObjectId of the queue.
+     * @param name the name of the queue.
+     * @param depth the msgDepth of the queue.
+     */
+    public void add(final ObjectId id, final String name, final long depth)
+    {
+        allocate(id, name, depth);
+    }
+
+    /**
+     * Allocate and reset the slot of a queue, returning the slot.
+     */
+    private int allocate(final ObjectId id, final String name, final long depth)
+    {
+        Integer existing = _slots.get(id);
+        int slot;
+        if (existing != null)
+        {
+            slot = existing;
+        }
+        else if (_freeCount > 0)
+        {
+            slot = _free[--_freeCount];
+            _slots.put(id, slot);
+        }
+        else
+        {
+            slot = _slots.size();
+            if (slot == _capacity)
+            {
+                grow(slot + 1);
+            }
+            _slots.put(id, slot);
+        }
+
+        _ids[slot] = id;
+        _names[slot] = name;
+        _timestamps[slot] = 0l;
+        _enqueues[slot] = 0l;
+        _dequeues[slot] = 0l;
+        _depths[slot] = depth;
+        _interval[slot] = 0.0;
+        _enqueueRates[slot] = 0.0;
+        _dequeueRates[slot] = 0.0;
+        _baselined[slot] = false;
+        _seeded[slot] = false;
+        Arrays.fill(_enqueueAverages, slot*AVERAGES, (slot + 1)*AVERAGES, 0.0);
+        Arrays.fill(_dequeueAverages, slot*AVERAGES, (slot + 1)*AVERAGES, 0.0);
+        _depthCount[slot] = 0;
+        _depthNext[slot] = 0;
+        addDepthSample(slot, depth);
+        return slot;
+    }
+
+    /**
+     * Record a depth sample in a slot's ring buffer.
+     */
+    private void addDepthSample(final int slot, final long depth)
+    {
+        _depthSamples[slot*_window + _depthNext[slot]] = depth;
+        _depthNext[slot] = (_depthNext[slot] + 1) % _window;
+        if (_depthCount[slot] < _window)
+        {
+            _depthCount[slot]++;
+        }
+    }
+
+    /**
+     * Record a new sample for a queue that is being tracked.
+     * @param id the ObjectId of the queue.
+     * @param timestamp the update timestamp of the sample in nanoseconds.
+     * @param depth the msgDepth of the queue.
+     * @param enqueues the msgTotalEnqueues of the queue.
+     * @param dequeues the msgTotalDequeues of the queue.
+     * @return true if the sample was far enough from the previous one to update the rates, false if it wasn't, if
+     * it only established the baseline for the next sample (the first sample of a queue whose counters weren't known
+     * or a sample whose counters went backwards) or if the queue isn't being tracked.
+     */
+    public boolean update(final ObjectId id, final long timestamp,
+                          final long depth, final long enqueues, final long dequeues)
+    {
+        Integer index = _slots.get(id);
+        if (index == null)
+        {
+            return false;
+        }
+
+        int slot = index;
+        _depths[slot] = depth;
+        long enqueueDelta = enqueues - _enqueues[slot];
+        long dequeueDelta = dequeues - _dequeues[slot];
+        if (!_baselined[slot] || enqueueDelta < 0 || dequeueDelta < 0)
+        { // Without a valid previous sample the delta would be the whole cumulative total, and a negative delta means
+          // the counters were reset or the queue re-created, so either way the sample only becomes the new baseline.
+            _timestamps[slot] = timestamp;
+            _enqueues[slot] = enqueues;
+            _dequeues[slot] = dequeues;
+            _baselined[slot] = true;
+            addDepthSample(slot, depth);
+            return false;
+        }
+
+        long deltaTime = timestamp - _timestamps[slot];
+        if (deltaTime <= MIN_INTERVAL)
+        {
+            return false;
+        }
+
+        double seconds = deltaTime/1000000000.0;
+        double enqueueRate = enqueueDelta/seconds;
+        double dequeueRate = dequeueDelta/seconds;
+        _timestamps[slot] = timestamp;
+        _enqueues[slot] = enqueues;
+        _dequeues[slot] = dequeues;
+        _interval[slot] = seconds;
+        _enqueueRates[slot] = enqueueRate;
+        _dequeueRates[slot] = dequeueRate;
+
+        int base = slot*AVERAGES;
+        if (_seeded[slot])
+        {
+            for (int i = 0; i < AVERAGES; i++)
+            { // The weight of the new rate depends on the interval, so irregular samples are handled correctly.
+                double alpha = 1.0 - Math.exp(-seconds/PERIODS[i]);
+                _enqueueAverages[base + i] += alpha*(enqueueRate - _enqueueAverages[base + i]);
+                _dequeueAverages[base + i] += alpha*(dequeueRate - _dequeueAverages[base + i]);
+            }
+        }
+        else
+        { // The first rate between two valid samples seeds the averages, otherwise they'd take several periods to
+          // climb from zero.
+            for (int i = 0; i < AVERAGES; i++)
+            {
+                _enqueueAverages[base + i] = enqueueRate;
+                _dequeueAverages[base + i] = dequeueRate;
+            }
+            _seeded[slot] = true;
+        }
+
+        addDepthSample(slot, depth);
+        return true;
+    }
+
+    /**
+     * Stop tracking a queue.
+     * @param id the ObjectId of the queue.
+     */
+    public void remove(final ObjectId id)
+    {
+        Integer slot = _slots.remove(id);
+        if (slot != null)
+        {
+            _ids[slot] = null;
+            _names[slot] = null;
+            if (_freeCount == _free.length)
+            {
+                _free = Arrays.copyOf(_free, _freeCount*2);
+            }
+            _free[_freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Stop tracking all queues.
+     */
+    public void clear()
+    {
+        _slots.clear();
+        Arrays.fill(_ids, null);
+        Arrays.fill(_names, null);
+        _freeCount = 0;
+        for (int slot = _capacity - 1; slot >= 0; slot--)
+        {
+            if (_freeCount == _free.length)
+            {
+                _free = Arrays.copyOf(_free, _freeCount*2);
+            }
+            _free[_freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Return true if the queue is being tracked.
+     * @param id the ObjectId of the queue.
+     * @return true if the queue is being tracked.
+     */
+    public boolean contains(final ObjectId id)
+    {
+        return _slots.containsKey(id);
+    }
+
+    /**
+     * Return the number of queues being tracked.
+     * @return the number of queues being tracked.
+     */
+    public int size()
+    {
+        return _slots.size();
+    }
+
+    /**
+     * Return the slot of a queue, throwing IllegalArgumentException if it isn't being tracked.
+     */
+    private int slot(final ObjectId id)
+    {
+        Integer slot = _slots.get(id);
+        if (slot == null)
+        {
+            throw new IllegalArgumentException("Queue " + id + " is not being tracked");
+        }
+        return slot;
+    }
+
+    /**
+     * Return the name of a queue.
+     * @param id the ObjectId of the queue.
+     * @return the name of the queue.
+     */
+    public String getName(final ObjectId id)
+    {
+        return _names[slot(id)];
+    }
+
+    /**
+     * Return the latest depth of a queue.
+     * @param id the ObjectId of the queue.
+     * @return the latest msgDepth of the queue.
+     */
+    public long getDepth(final ObjectId id)
+    {
+        return _depths[slot(id)];
+    }
+
+    /**
+     * Return the interval over which the latest rates of a queue were calculated.
+     * @param id the ObjectId of the queue.
+     * @return the interval in seconds between the latest two samples used to calculate rates.
+     */
+    public double getInterval(final ObjectId id)
+    {
+        return _interval[slot(id)];
+    }
+
+    /**
+     * Return the enqueue rate of a queue over the latest sample interval.
+     * @param id the ObjectId of the queue.
+     * @return the enqueue rate in messages per second.
+     */
+    public double getEnqueueRate(final ObjectId id)
+    {
+        return _enqueueRates[slot(id)];
+    }
+
+    /**
+     * Return the dequeue rate of a queue over the latest sample interval.
+     * @param id the ObjectId of the queue.
+     * @return the dequeue rate in messages per second.
+     */
+    public double getDequeueRate(final ObjectId id)
+    {
+        return _dequeueRates[slot(id)];
+    }
+
+    /**
+     * Return a moving average of the enqueue rate of a queue.
+     * @param id the ObjectId of the queue.
+     * @param average one of ONE_MINUTE, FIVE_MINUTES or FIFTEEN_MINUTES.
+     * @return the moving average of the enqueue rate in messages per second.
+     */
+    public double getEnqueueRate(final ObjectId id, final int average)
+    {
+        return _enqueueAverages[slot(id)*AVERAGES + average];
+    }
+
+    /**
+     * Return a moving average of the dequeue rate of a queue.
+     * @param id the ObjectId of the queue.
+     * @param average one of ONE_MINUTE, FIVE_MINUTES or FIFTEEN_MINUTES.
+     * @return the moving average of the dequeue rate in messages per second.
+     */
+    public double getDequeueRate(final ObjectId id, final int average)
+    {
+        return _dequeueAverages[slot(id)*AVERAGES + average];
+    }
+
+    /**
+     * Return a percentile of the recent depth samples of a queue, using the nearest rank method.
+     * @param id the ObjectId of the queue.
+     * @param percentile the percentile, between 0 and 100.
+     * @return the depth at the specified percentile.
+     */
+    public long getDepthPercentile(final ObjectId id, final double percentile)
+    {
+        int slot = slot(id);
+        int count = _depthCount[slot];
+        System.arraycopy(_depthSamples, slot*_window, _sorted, 0, count);
+        Arrays.sort(_sorted, 0, count);
+        int rank = (int)Math.ceil(percentile/100.0*count);
+        return _sorted[Math.min(Math.max(rank - 1, 0), count - 1)];
+    }
+
+    /**
+     * Return the value of the statistic used for ordering a slot.
+     */
+    private double value(final int slot, final Order order)
+    {
+        switch (order)
+        {
+            case ENQUEUE_RATE:
+                return _enqueueAverages[slot*AVERAGES + ONE_MINUTE];
+            case DEQUEUE_RATE:
+                return _dequeueAverages[slot*AVERAGES + ONE_MINUTE];
+            default:
+                return _depths[slot];
+        }
+    }
+
+    /**
+     * Return the n queues with the highest depth, or one minute average enqueue or dequeue rate. This uses a heap of
+     * size n so it takes time proportional to the number of queues and is cheap even with many thousands of queues.
+     * @param n the maximum number of queues to return.
+     * @param order the statistic to order the queues by.
+     * @return the ObjectIds of the queues, highest first.
+     */
+    public List<ObjectId> top(final int n, final Order order)
+    {
+        if (n <= 0)
+        {
+            return Collections.emptyList();
+        }
+
+        Comparator<Integer> ascending = new Comparator<Integer>()
+        {
+            public int compare(final Integer lhs, final Integer rhs)
+            {
+                return Double.compare(value(lhs, order), value(rhs, order));
+            }
+        };
+
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(n + 1, ascending);
+        for (Integer slot : _slots.values())
+        {
+            if (heap.size() < n)
+            {
+                heap.add(slot);
+            }
+            else if (value(slot, order) > value(heap.peek(), order))
+            {
+                heap.poll();
+                heap.add(slot);
+            }
+        }
+
+        List<Integer> slots = new ArrayList<Integer>(heap);
+        Collections.sort(slots, Collections.reverseOrder(ascending));
+        List<ObjectId> ids = new ArrayList<ObjectId>(slots.size());
+        for (Integer slot : slots)
+        {
+            ids.add(_ids[slot]);
+        }
+        return ids;
+    }
+}
@@ -37,13 +37,12 @@ import org.slf4j.LoggerFactory;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -175,9 +174,9 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     private static final Logger _log = LoggerFactory.getLogger(Agent.class);
 
     /** 
-     * This TimerTask causes the Agent to sent a Hearbeat when it gets scheduled
+     * This task causes the Agent to sent a Hearbeat when it gets scheduled
      */
-    private final class Heartbeat extends TimerTask
+    private final class Heartbeat implements Runnable
     {
         public void run()
         {
@@ -188,7 +187,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 String instanceKey = _instance.replace(".", "_");
                 String subject = "agent.ind.heartbeat." + vendorKey + "." + productKey + "." + instanceKey;
 
-                MapMessage response = _syncSession.createMapMessage();
+                MapMessage response = createMapMessage();
                 response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
                 response.setStringProperty("method", "indication");
                 response.setStringProperty("qmf.opcode", "_agent_heartbeat_indication");
@@ -199,26 +198,28 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             
                 // Send heartbeat messages with a Time To Live (in msecs) set to two times the _heartbeatInterval
                 // to prevent stale heartbeats from getting to the consoles.
-                _producer.send(_topicAddress, response, Message.DEFAULT_DELIVERY_MODE,
-                               Message.DEFAULT_PRIORITY, _heartbeatInterval*2000);
+                synchronized (_sessionLock)
+                {
+                    _producer.send(_topicAddress, response, Message.DEFAULT_DELIVERY_MODE,
+                                   Message.DEFAULT_PRIORITY, _heartbeatInterval*2000);
+                }
             }
             catch (JMSException jmse)
             {
                 _log.info("JMSException {} caught in sendHeartbeat()", jmse.getMessage());
             }
+        }
+    }
 
-            // Reap any QmfAgentData Objects that have been marked as Deleted
-            // Use the iterator approach rather than foreach as we may want to call iterator.remove() to zap an entry
-            Iterator<QmfAgentData> i = _objectIndex.values().iterator();
-            while (i.hasNext())
-            {
-                QmfAgentData object = i.next();
-                if (object.isDeleted())
-                {
-                    _log.debug("Removing deleted QmfAgentData Object from store");
-                    i.remove();
-                }
-            }
+    /** 
+     * This task reaps any QmfAgentData Objects that have been marked as Deleted. It runs on the AgentScheduler's
+     * worker pool so that reaping a large object store doesn't delay heartbeats.
+     */
+    private final class Reaper implements Runnable
+    {
+        public void run()
+        {
+            _objectIndex.removeDeleted();
         }
     }
 
@@ -239,16 +240,23 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     private Map<SchemaClassId, SchemaClass> _schemaCache = new ConcurrentHashMap<SchemaClassId, SchemaClass>();
 
     /**
-     * _objectIndex is the global index of QmfAgentData objects registered with this Agent.
-     * The capacity of 100 is pretty arbitrary but the default of 16 seems too low for most Agents.
+     * _objectIndex is the global index of QmfAgentData objects registered with this Agent. As well as looking
+     * objects up by ObjectId it maintains secondary indexes by class and id property values that are used to
+     * narrow down the objects that a query needs to be evaluated against.
      */
-    private Map<ObjectId, QmfAgentData> _objectIndex = new ConcurrentHashMap<ObjectId, QmfAgentData>(100);
+    private ObjectStore _objectIndex = new ObjectStore();
 
     /**
      * This Map is used to look up Subscriptions by SubscriptionId
      */
     private Map<String, Subscription> _subscriptions = new ConcurrentHashMap<String, Subscription>();
 
+    /**
+     * The running SubscriptionGroups, Subscriptions with an equal query and publish interval share a group so
+     * that the query gets evaluated and the results encoded once per interval however many Consoles subscribe.
+     */
+    private List<SubscriptionGroup> _subscriptionGroups = new ArrayList<SubscriptionGroup>();
+
     /**
      * Used to implement a thread safe queue of WorkItem objects used to implement the Notifier API
      */
@@ -297,9 +305,14 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     private String _domain;
 
     /**
-     * This timer is used to schedule periodic events such as sending Heartbeats and subscription updates
+     * The number of worker threads the AgentScheduler uses to run subscription updates.
      */
-    private Timer _timer;
+    private int _schedulerThreads = 2;
+
+    /**
+     * This scheduler is used to schedule periodic events such as sending Heartbeats and subscription updates
+     */
+    private AgentScheduler _scheduler;
 
     /**
      * Various JMS related fields
@@ -314,6 +327,13 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 
     private MessageProducer _producer;
 
+    /**
+     * A JMS Session is single threaded, but the Agent creates and sends Messages on the JMS MessageListener thread,
+     * the AgentScheduler's worker threads and application threads, so _sessionLock serialises all use of
+     * _syncSession and _producer.
+     */
+    private final Object _sessionLock = new Object();
+
     private String _quotedDirectBase;
     private Destination _directAddress;
 
@@ -324,6 +344,30 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     // ********************************************************************************************************
 
 
+    /**
+     * Create a MapMessage on _syncSession, holding _sessionLock as the Session is shared between threads.
+     * @return a new MapMessage.
+     */
+    private final MapMessage createMapMessage() throws JMSException
+    {
+        synchronized (_sessionLock)
+        {
+            return _syncSession.createMapMessage();
+        }
+    }
+
+    /**
+     * Create an amqp/list Message on _syncSession, holding _sessionLock as the Session is shared between threads.
+     * @return a new amqp/list Message.
+     */
+    private final Message createListMessage() throws JMSException
+    {
+        synchronized (_sessionLock)
+        {
+            return AMQPMessage.createListMessage(_syncSession);
+        }
+    }
+
     /**
      * There's some slight "hackery" below. The Agent clearly needs to respond
      * to requests and quite possibly using the JMS replyTo is the correct thing
@@ -342,17 +386,52 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         // main topic or direct Destinations, if not fall back to using the real
         // replyTo Destination. TODO check if original replyTo issue still exists.
         String replyTo = handle.getReplyTo().toString();
-        if (replyTo.startsWith(_quotedTopicBase))
+        synchronized (_sessionLock)
         {
-            _producer.send(_topicAddress, message);
-        }
-        else if (replyTo.startsWith(_quotedDirectBase))
-        {
-            _producer.send(_directAddress, message);
+            if (replyTo.startsWith(_quotedTopicBase))
+            {
+                _producer.send(_topicAddress, message);
+            }
+            else if (replyTo.startsWith(_quotedDirectBase))
+            {
+                _producer.send(_directAddress, message);
+            }
+            else
+            {
+                _producer.send(handle.getReplyTo(), message);
+            }
         }
-        else
+    }
+
+    /**
+     * Schedule a new Subscription. If a running SubscriptionGroup has an equal query and the same publish interval
+     * the Subscription joins that group and shares its publications, otherwise the Subscription's own group gets
+     * scheduled and becomes available for subsequent Subscriptions to join.
+     *
+     * @param subscription the new Subscription.
+     */
+    private final void schedule(final Subscription subscription)
+    {
+        synchronized (_subscriptionGroups)
         {
-            _producer.send(handle.getReplyTo(), message);
+            for (Iterator<SubscriptionGroup> i = _subscriptionGroups.iterator(); i.hasNext();)
+            {
+                SubscriptionGroup group = i.next();
+                if (group.isCancelled())
+                {
+                    i.remove();
+                }
+                else if (group.matches(subscription.getQuery(), subscription.getInterval()) &&
+                         subscription.join(group))
+                {
+                    _log.debug("Subscription {} shares an existing SubscriptionGroup", subscription.getSubscriptionId());
+                    return;
+                }
+            }
+
+            SubscriptionGroup group = subscription.getGroup();
+            _subscriptionGroups.add(group);
+            _scheduler.schedule(group);
         }
     }
 
@@ -364,7 +443,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
+            MapMessage response = createMapMessage();
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "indication");
             response.setStringProperty("qmf.opcode", "_agent_locate_response");
@@ -416,7 +495,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         {
             List<Map> results = new ArrayList<Map>(_objectIndex.size());
             // Look up all ObjectId objects
-            for (ObjectId objectId : _objectIndex.keySet())
+            for (ObjectId objectId : _objectIndex.keys())
             {
                 results.add(objectId.mapEncode());
             }
@@ -447,11 +526,9 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 }
                 else
                 {
-                    // Look up QmfAgentData objects by the SchemaClassId obtained from the query
-                    // This is implemented by a linear search and allows searches with only the className specified.
-                    // Linear searches clearly don't scale brilliantly, but the number of QmfAgentData objects managed
-                    // by an Agent is generally fairly small, so it should be OK. Note that this is the same approach
-                    // taken by the C++ broker ManagementAgent, so if it's a problem here........
+                    // Look up QmfAgentData objects by the SchemaClassId or predicate obtained from the query.
+                    // The ObjectStore's class and id property indexes are used to find the candidate objects, so
+                    // class scoped and id equality queries only evaluate the query against a subset of the objects.
 
                     // N.B. the results list declared here is a generic List of Objects. We *must* only pass a List of
                     // Map to queryResponse(), but conversely if the response items are sortable we need to sort them
@@ -459,13 +536,14 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                     // we either add a Map or we add a QmfAgentData, then sort then mapEncode() each item. I'm not
                     // sure of a more elegant way to do this without creating two lists, which might not be so bad
                     // but we don't know the size of the list a priori either.
-                    List results = new ArrayList(_objectIndex.size());
+                    Collection<QmfAgentData> candidates = _objectIndex.candidates(query);
+                    List results = new ArrayList(candidates.size());
                     // It's unlikely that evaluating this query will return a mixture of sortable and notSortable 
                     // QmfAgentData objects, but it's best to check if that has occurred as accidentally passing a
                     // List of QmfAgentData instead of a List of Map to queryResponse() will break things.
                     boolean sortable = false;
                     boolean notSortable = false;
-                    for (QmfAgentData object : _objectIndex.values())
+                    for (QmfAgentData object : candidates)
                     {
                         if (!object.isDeleted() && query.evaluate(object))
                         {
@@ -538,7 +616,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
+            MapMessage response = createMapMessage();
             response.setJMSCorrelationID(handle.getCorrelationId());
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "response");
@@ -570,7 +648,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            Message response = AMQPMessage.createListMessage(_syncSession);
+            Message response = createListMessage();
             response.setJMSCorrelationID(handle.getCorrelationId());
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "indication");
@@ -587,6 +665,38 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         }
     }
 
+    /**
+     * Send the same list of updated subscribed data to a number of Consoles. The results are only encoded once,
+     * the Message is then addressed to and sent to each Console in turn. This isn't part of the SubscribableAgent
+     * interface, SubscriptionGroup uses it when the SubscribableAgent is an Agent.
+     *
+     * @param handles the console reply handles.
+     * @param results a list of subscribed data in Map encoded form.
+     */
+    final void sendSubscriptionIndicate(final List<Handle> handles, final List<Map> results)
+    {
+        try
+        {
+            Message response = createListMessage();
+            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+            response.setStringProperty("method", "indication");
+            response.setStringProperty("qmf.opcode", "_data_indication");
+            response.setStringProperty("qmf.content", "_data");
+            response.setStringProperty("qmf.agent", _name);
+            AMQPMessage.setList(response, results);
+            for (Handle handle : handles)
+            {
+                response.setJMSCorrelationID(handle.getCorrelationId());
+                response.setStringProperty("qpid.subject", handle.getRoutingKey());
+                sendResponse(handle, response);
+            }
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in sendSubscriptionIndicate()", jmse.getMessage());
+        }
+    }
+
     /**
      * This method evaluates a QmfQuery over the Agent's data on behalf of a Subscription.
      *
@@ -595,7 +705,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     public final List<QmfAgentData> evaluateQuery(final QmfQuery query)
     {
-        List<QmfAgentData> results = new ArrayList<QmfAgentData>(_objectIndex.size());
+        List<QmfAgentData> results = new ArrayList<QmfAgentData>();
         if (query.getTarget() == QmfQueryTarget.OBJECT)
         { // Note that we don't include objects marked as deleted in the results here, because if an object gets
           // destroyed we asynchronously publish its new state to subscribers, see QmfAgentData.destroy() method.
@@ -611,8 +721,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             }
             else
             {
-                // Look up QmfAgentData objects evaluating the query
-                for (QmfAgentData object : _objectIndex.values())
+                // Look up QmfAgentData objects evaluating the query against the candidates from the ObjectStore indexes
+                for (QmfAgentData object : _objectIndex.candidates(query))
                 {
                     if (!object.isDeleted() && query.evaluate(object))
                     {
@@ -715,7 +825,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                             Subscription subscription = new Subscription(this, subscriptionParams);
                             String subscriptionId = subscription.getSubscriptionId();
                             _subscriptions.put(subscriptionId, subscription);
-                            _timer.schedule(subscription, 0, subscriptionParams.getPublishInterval());
+                            schedule(subscription);
                             subscriptionResponse(handle, subscription.getConsoleHandle(), subscriptionId, 
                                                  subscription.getDuration(), subscription.getInterval(), null);
                         }
@@ -953,6 +1063,41 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         _epoch = epoch;
     }
 
+    /**
+     * Bound the number of WorkItems that may be pending when a Notifier is used, by default the work queue is
+     * unbounded, so an application that is slow to retrieve its WorkItems can cause unbounded heap growth.
+     * @param capacity the maximum number of pending WorkItems, zero means unbounded.
+     * @param policy the policy applied when a WorkItem arrives and the work queue is full.
+     */
+    public final void setWorkQueueCapacity(final int capacity, final WorkQueue.OverflowPolicy policy)
+    {
+        _workQueue.setCapacity(capacity, policy);
+    }
+
+    /**
+     * Set the number of worker threads used to run subscription updates, must be called before setConnection().
+     * Heartbeats are always sent from their own thread so are not delayed by slow subscriptions.
+     * @param threads the number of worker threads, the default is 2.
+     */
+    public final void setSchedulerThreads(final int threads)
+    {
+        if (threads > 0)
+        {
+            _schedulerThreads = threads;
+        }
+    }
+
+    /**
+     * Return the Subscriptions currently running on this Agent. Subscription provides timing statistics such as
+     * getTotalRunTime() and getLastRunTime() that may be used to find out which Subscriptions are using most of
+     * the Agent's publishing time.
+     * @return the Subscriptions currently running on this Agent.
+     */
+    public final List<Subscription> getSubscriptions()
+    {
+        return new ArrayList<Subscription>(_subscriptions.values());
+    }
+
     /**
      * Releases Agent's resources.
      */
@@ -1069,9 +1214,11 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 
             _connection.start();
 
-            // Schedule a Heartbeat every _heartbeatInterval seconds sending the first one immediately
-            _timer = new Timer(true);
-            _timer.schedule(new Heartbeat(), 0, _heartbeatInterval*1000);
+            // Schedule a Heartbeat every _heartbeatInterval seconds sending the first one immediately, deleted
+            // objects get reaped on the same interval.
+            _scheduler = new AgentScheduler("qmf2-agent", _schedulerThreads);
+            _scheduler.scheduleHeartbeat(new Heartbeat(), _heartbeatInterval*1000);
+            _scheduler.schedule(new Reaper(), "Reaper", _heartbeatInterval*1000);
         }
         catch (JMSException jmse)
         {
@@ -1095,7 +1242,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 
         try
         {
-            _timer.cancel();
+            _scheduler.shutdown();
             _connection.close();
         }
         catch (JMSException jmse)
@@ -1150,7 +1297,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             String subject = "agent.ind.event." + packageKey + "." + nameKey + "." + severity + "." + vendorKey + "." + 
                               productKey + "." + instanceKey;
 
-            Message response = AMQPMessage.createListMessage(_syncSession);
+            Message response = createListMessage();
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "indication");
             response.setStringProperty("qmf.opcode", "_data_indication");
@@ -1161,7 +1308,10 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             List<Map> results = new ArrayList<Map>();
             results.add(event.mapEncode());
             AMQPMessage.setList(response, results);
-            _producer.send(_topicAddress, response);
+            synchronized (_sessionLock)
+            {
+                _producer.send(_topicAddress, response);
+            }
         }
         catch (JMSException jmse)
         {
@@ -1231,7 +1381,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             }
         }
 
-        _objectIndex.put(addr, object);
+        SchemaClassId classId = object.getSchemaClassId();
+        _objectIndex.put(addr, object, (classId == null) ? null : _schemaCache.get(classId));
 
         // Does the new object match any Subscriptions? If so add a reference to the matching Subscription and publish.
         for (Subscription subscription : _subscriptions.values())
@@ -1316,6 +1467,35 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         return _workQueue.getNextWorkitem(timeout);
     }
 
+    /**
+     * Retrieves up to max pending work items in a single operation - non-blocking version.
+     * <p>
+     * This is <b>not</b> an official method specified in the QMF2 API, it allows Agents that receive a lot of
+     * requests to process them in batches rather than one getNextWorkitem() call at a time.
+     *
+     * @param items the Collection that the WorkItems are added to, oldest first.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @return the number of WorkItems added to items.
+     */
+    public final int drainWorkitems(final Collection<? super WorkItem> items, final int max)
+    {
+        return _workQueue.drainTo(items, max);
+    }
+
+    /**
+     * Retrieves up to max pending work items in a single operation, waiting for up to timeout seconds if there are
+     * no work items pending.
+     *
+     * @param items the Collection that the WorkItems are added to, oldest first.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of WorkItems added to items, zero if none were available.
+     */
+    public final int drainWorkitems(final Collection<? super WorkItem> items, final int max, final long timeout)
+    {
+        return _workQueue.drainTo(items, max, timeout);
+    }
+
     /**
      * Releases a WorkItem instance obtained by getNextWorkItem(). Called when the application has finished
      * processing the WorkItem.
@@ -1348,7 +1528,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
+            MapMessage response = createMapMessage();
             response.setJMSCorrelationID(handle.getCorrelationId());
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "response");
@@ -1393,7 +1573,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            Message response = AMQPMessage.createListMessage(_syncSession);
+            Message response = createListMessage();
             response.setJMSCorrelationID(handle.getCorrelationId());
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "response");
@@ -1433,7 +1613,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
+            MapMessage response = createMapMessage();
             response.setJMSCorrelationID(handle.getCorrelationId());
             response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             response.setStringProperty("method", "response");
@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AgentScheduler runs the periodic tasks of an Agent, such as sending heartbeats, publishing Subscriptions and
+ * reaping deleted objects.
+ * <p>
+ * Running these on a single java.util.Timer thread would mean that an expensive Subscription delays heartbeats and
+ * every other Subscription, and that a RuntimeException thrown by any task kills the Timer, so the AgentScheduler
+ * runs heartbeats on their own high priority thread and everything else on a bounded pool of worker threads. Each
+ * task is wrapped so that an exception is logged rather than cancelling the task.
+ * <p>
+ * Tasks are scheduled with a fixed delay, as they were with the Timer, so a run of a given task never overlaps
+ * with the previous run of the same task.
+ *
+ * @author Fraser Adams
+ */
+final class AgentScheduler
+{
+    private static final Logger _log = LoggerFactory.getLogger(AgentScheduler.class);
+
+    /**
+     * Creates daemon threads with a given name prefix and priority.
+     */
+    private static final class AgentThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger _count = new AtomicInteger();
+        private final String _prefix;
+        private final int _priority;
+
+        public AgentThreadFactory(final String prefix, final int priority)
+        {
+            _prefix = prefix;
+            _priority = priority;
+        }
+
+        public Thread newThread(final Runnable r)
+        {
+            Thread thread = new Thread(r, _prefix + "-" + _count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(_priority);
+            return thread;
+        }
+    }
+
+    /**
+     * Wraps a scheduled task so that any RuntimeException it throws is logged rather than suppressing all of the
+     * subsequent executions of the task.
+     */
+    private static final class Task implements Runnable
+    {
+        private final Runnable _task;
+        private final String _name;
+
+        public Task(final Runnable task, final String name)
+        {
+            _task = task;
+            _name = name;
+        }
+
+        public void run()
+        {
+            try
+            {
+                _task.run();
+            }
+            catch (RuntimeException re)
+            {
+                _log.info("RuntimeException {} caught in scheduled task {}", re.getMessage(), _name);
+            }
+        }
+    }
+
+    private final ScheduledExecutorService _heartbeatExecutor;
+    private final ScheduledThreadPoolExecutor _workerExecutor;
+
+    /**
+     * Construct an AgentScheduler.
+     *
+     * @param name the name used as the prefix of the scheduler's thread names.
+     * @param workerThreads the number of worker threads used to run Subscriptions and other non heartbeat tasks.
+     */
+    AgentScheduler(final String name, final int workerThreads)
+    {
+        _heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(
+            new AgentThreadFactory(name + "-heartbeat", Thread.MAX_PRIORITY)
+        );
+        _workerExecutor = new ScheduledThreadPoolExecutor(workerThreads,
+            new AgentThreadFactory(name + "-worker", Thread.NORM_PRIORITY)
+        );
+        _workerExecutor.setRemoveOnCancelPolicy(true); // Don't retain cancelled Subscriptions in the work queue.
+    }
+
+    /**
+     * Schedule the heartbeat task on the dedicated heartbeat thread, the first run is immediate.
+     *
+     * @param heartbeat the heartbeat task.
+     * @param period the time in milliseconds between heartbeats.
+     * @return the ScheduledFuture that may be used to cancel the heartbeat.
+     */
+    ScheduledFuture<?> scheduleHeartbeat(final Runnable heartbeat, final long period)
+    {
+        return _heartbeatExecutor.scheduleWithFixedDelay(new Task(heartbeat, "Heartbeat"), 0, period,
+                                                         TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule a periodic task on the worker pool, the first run is immediate.
+     *
+     * @param task the task to run.
+     * @param name the name of the task, used when logging any exceptions thrown by the task.
+     * @param period the time in milliseconds between runs.
+     * @return the ScheduledFuture that may be used to cancel the task.
+     */
+    ScheduledFuture<?> schedule(final Runnable task, final String name, final long period)
+    {
+        return _workerExecutor.scheduleWithFixedDelay(new Task(task, name), 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule a SubscriptionGroup on the worker pool to be run every publish interval. The ScheduledFuture is
+     * passed to the group so that it stops being scheduled when its last Subscription is cancelled.
+     *
+     * @param group the SubscriptionGroup to schedule.
+     */
+    void schedule(final SubscriptionGroup group)
+    {
+        group.setScheduledFuture(schedule(group, "SubscriptionGroup", group.getInterval()));
+    }
+
+    /**
+     * Stop all scheduled tasks and release the scheduler's threads.
+     */
+    void shutdown()
+    {
+        _heartbeatExecutor.shutdownNow();
+        _workerExecutor.shutdownNow();
+    }
+}
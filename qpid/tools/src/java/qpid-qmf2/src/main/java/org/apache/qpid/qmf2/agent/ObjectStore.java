@@ -0,0 +1,410 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.SchemaClass;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+import org.apache.qpid.qmf2.common.SchemaObjectClass;
+
+/**
+ * The ObjectStore holds the QmfAgentData objects registered with an Agent, indexed by ObjectId and with secondary
+ * indexes that allow queries to be answered without evaluating them against every object in the store.
+ * <p>
+ * The secondary indexes are:
+ * <ul>
+ *  <li>By package and class name, so ID queries by SchemaClassId (including the wildcarded package or class name
+ *      forms) only need to look at the objects of the matching classes.</li>
+ *  <li>Within each class, by the value of each of the id properties declared by the class's SchemaObjectClass. The
+ *      id properties are used to construct the object's name, so their values don't change once the object has
+ *      been added.</li>
+ * </ul>
+ * candidates() uses these to return the objects that <i>might</i> match a QmfQuery. PREDICATE queries that are an
+ * "eq" test, or an "and" containing an "eq" test, on an id property or on _package_name/_class_name are narrowed
+ * using the indexes, otherwise all objects are returned. The caller must still evaluate the query against each
+ * candidate, the indexes only ever reduce the number of objects that need to be evaluated.
+ * <p>
+ * Lookups by ObjectId are lock free, updates to the store and index lookups are synchronized on the ObjectStore.
+ *
+ * @author Fraser Adams
+ */
+final class ObjectStore
+{
+    /**
+     * The objects of a single class along with the id property indexes for that class.
+     */
+    private static final class ClassEntry
+    {
+        private final String _packageName;
+        private final String _className;
+        private final Set<ObjectId> _objects = new HashSet<ObjectId>();
+
+        /**
+         * Maps id property name to a Map of property value to the objects having that value. Objects that don't
+         * have a value for the property are held under the null key.
+         */
+        private final Map<String, Map<String, Set<ObjectId>>> _idIndexes = new HashMap<String, Map<String, Set<ObjectId>>>();
+
+        ClassEntry(final String packageName, final String className, final String[] idNames)
+        {
+            _packageName = packageName;
+            _className = className;
+            for (String idName : idNames)
+            {
+                _idIndexes.put(idName, new HashMap<String, Set<ObjectId>>());
+            }
+        }
+
+        /**
+         * Returns true if this class matches an ID query's package and class name, using the same wildcarding rules
+         * as QmfQuery.evaluate(), i.e. an empty package or class name matches any package or class.
+         */
+        boolean matches(final String packageName, final String className)
+        {
+            if (className.equals(_className) && (packageName.length() == 0 || packageName.equals(_packageName)))
+            {
+                return true;
+            }
+            return packageName.equals(_packageName) && (className.length() == 0 || className.equals(_className));
+        }
+
+        void add(final ObjectId objectId, final QmfAgentData object)
+        {
+            _objects.add(objectId);
+            for (Map.Entry<String, Map<String, Set<ObjectId>>> index : _idIndexes.entrySet())
+            {
+                String value = getIdValue(object, index.getKey());
+                Set<ObjectId> objects = index.getValue().get(value);
+                if (objects == null)
+                {
+                    objects = new HashSet<ObjectId>();
+                    index.getValue().put(value, objects);
+                }
+                objects.add(objectId);
+            }
+        }
+
+        void remove(final ObjectId objectId, final QmfAgentData object)
+        {
+            _objects.remove(objectId);
+            for (Map.Entry<String, Map<String, Set<ObjectId>>> index : _idIndexes.entrySet())
+            {
+                String value = getIdValue(object, index.getKey());
+                Set<ObjectId> objects = index.getValue().get(value);
+                if (objects != null)
+                {
+                    objects.remove(objectId);
+                    if (objects.size() == 0)
+                    {
+                        index.getValue().remove(value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add the objects of this class that might have property == value to the candidates.
+         */
+        void addCandidates(final String property, final String value, final Collection<ObjectId> candidates)
+        {
+            Map<String, Set<ObjectId>> index = _idIndexes.get(property);
+            if (index == null)
+            { // Not an id property of this class, so any of its objects might match.
+                candidates.addAll(_objects);
+            }
+            else
+            {
+                Set<ObjectId> objects = index.get(value);
+                if (objects != null)
+                {
+                    candidates.addAll(objects);
+                }
+
+                // An object without the property may still match via the query's fallback lookups.
+                objects = index.get(null);
+                if (objects != null)
+                {
+                    candidates.addAll(objects);
+                }
+            }
+        }
+
+        private static String getIdValue(final QmfAgentData object, final String property)
+        {
+            return object.hasValue(property) ? object.getStringValue(property) : null;
+        }
+    }
+
+    private final Map<ObjectId, QmfAgentData> _objects = new ConcurrentHashMap<ObjectId, QmfAgentData>(100);
+    private final Map<String, ClassEntry> _classes = new HashMap<String, ClassEntry>();
+
+    /**
+     * Return the QmfAgentData with the given ObjectId.
+     * @param objectId the ObjectId of the object.
+     * @return the QmfAgentData with the given ObjectId or null if there is no such object.
+     */
+    QmfAgentData get(final ObjectId objectId)
+    {
+        return _objects.get(objectId);
+    }
+
+    /**
+     * Return the number of objects in the store.
+     * @return the number of objects in the store.
+     */
+    int size()
+    {
+        return _objects.size();
+    }
+
+    /**
+     * Return the ObjectIds of all of the objects in the store.
+     * @return the ObjectIds of all of the objects in the store.
+     */
+    Collection<ObjectId> keys()
+    {
+        return _objects.keySet();
+    }
+
+    /**
+     * Return all of the objects in the store.
+     * @return all of the objects in the store.
+     */
+    Collection<QmfAgentData> values()
+    {
+        return _objects.values();
+    }
+
+    /**
+     * Add an object to the store, replacing any existing object with the same ObjectId.
+     *
+     * @param objectId the ObjectId of the object.
+     * @param object the QmfAgentData object being added.
+     * @param schema the SchemaClass of the object, used to find its id properties, may be null.
+     */
+    synchronized void put(final ObjectId objectId, final QmfAgentData object, final SchemaClass schema)
+    {
+        QmfAgentData existing = _objects.put(objectId, object);
+        if (existing != null)
+        {
+            getClassEntry(existing, null).remove(objectId, existing);
+        }
+        getClassEntry(object, schema).add(objectId, object);
+    }
+
+    /**
+     * Remove any objects that have been marked as deleted from the store.
+     */
+    synchronized void removeDeleted()
+    {
+        // Use the iterator approach rather than foreach as we want to call iterator.remove() to zap an entry
+        Iterator<Map.Entry<ObjectId, QmfAgentData>> i = _objects.entrySet().iterator();
+        while (i.hasNext())
+        {
+            Map.Entry<ObjectId, QmfAgentData> entry = i.next();
+            QmfAgentData object = entry.getValue();
+            if (object.isDeleted())
+            {
+                i.remove();
+                getClassEntry(object, null).remove(entry.getKey(), object);
+            }
+        }
+    }
+
+    /**
+     * Return the objects that might match a QmfQuery. The query must still be evaluated against each object returned.
+     *
+     * @param query the QmfQuery being evaluated.
+     * @return a Collection of the QmfAgentData objects that might match the query.
+     */
+    Collection<QmfAgentData> candidates(final QmfQuery query)
+    {
+        String packageName = null;
+        String className = null;
+        String property = null;
+        String value = null;
+
+        List predicate = query.getPredicate();
+        if (predicate == null)
+        {
+            SchemaClassId classId = query.getSchemaClassId();
+            if (classId == null)
+            { // ObjectId queries are done directly with get() so this shouldn't really occur.
+                return values();
+            }
+            packageName = classId.getPackageName();
+            className = classId.getClassName();
+        }
+        else
+        {
+            String[] equality = findEquality(predicate);
+            if (equality == null)
+            {
+                return values();
+            }
+            else if (equality[0].equals("_package_name"))
+            {
+                packageName = equality[1];
+                className = "";
+            }
+            else if (equality[0].equals("_class_name"))
+            {
+                packageName = "";
+                className = equality[1];
+            }
+            else
+            {
+                property = equality[0];
+                value = equality[1];
+            }
+        }
+
+        List<ObjectId> objectIds = new ArrayList<ObjectId>();
+        synchronized(this)
+        {
+            for (ClassEntry entry : _classes.values())
+            {
+                if (property != null)
+                {
+                    entry.addCandidates(property, value, objectIds);
+                }
+                else if (entry.matches(packageName, className))
+                {
+                    objectIds.addAll(entry._objects);
+                }
+            }
+        }
+
+        List<QmfAgentData> results = new ArrayList<QmfAgentData>(objectIds.size());
+        for (ObjectId objectId : objectIds)
+        {
+            QmfAgentData object = _objects.get(objectId);
+            if (object != null)
+            {
+                results.add(object);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Look for an "eq" test between a property name and a literal value that must be true for the predicate to be
+     * true, i.e. the predicate itself or one of the terms of a top level "and".
+     *
+     * @param predicate the query predicate in List form.
+     * @return a two element array holding the property name and value or null if there is no usable "eq" test.
+     */
+    private static String[] findEquality(final List predicate)
+    {
+        if (predicate.size() == 0)
+        {
+            return null;
+        }
+
+        Object op = predicate.get(0);
+        if ("and".equals(op))
+        {
+            for (Object term : predicate.subList(1, predicate.size()))
+            {
+                if (term instanceof List)
+                {
+                    String[] equality = findEquality((List)term);
+                    if (equality != null)
+                    {
+                        return equality;
+                    }
+                }
+            }
+        }
+        else if ("eq".equals(op) && predicate.size() == 3)
+        {
+            Object lhs = predicate.get(1);
+            Object rhs = predicate.get(2);
+            if (lhs instanceof String && !(rhs instanceof String))
+            {
+                String literal = getLiteral(rhs);
+                return (literal == null) ? null : new String[] {(String)lhs, literal};
+            }
+            else if (rhs instanceof String && !(lhs instanceof String))
+            {
+                String literal = getLiteral(lhs);
+                return (literal == null) ? null : new String[] {(String)rhs, literal};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the String form of a literal operand in the same way that BooleanExpression does, i.e. the value
+     * of a ['quote', value] List or the toString() of any other non String object.
+     */
+    private static String getLiteral(final Object operand)
+    {
+        if (operand instanceof List)
+        {
+            List quote = (List)operand;
+            if (quote.size() == 2 && "quote".equals(quote.get(0)) && quote.get(1) != null)
+            {
+                return quote.get(1).toString();
+            }
+            return null;
+        }
+        return (operand == null) ? null : operand.toString();
+    }
+
+    /**
+     * Return the ClassEntry for an object, creating it if necessary.
+     *
+     * @param object the QmfAgentData object.
+     * @param schema the SchemaClass of the object, used to find the id properties when a new entry is created.
+     * @return the ClassEntry for the object's class.
+     */
+    private ClassEntry getClassEntry(final QmfAgentData object, final SchemaClass schema)
+    {
+        SchemaClassId classId = object.getSchemaClassId();
+        String packageName = (classId == null) ? "" : classId.getPackageName();
+        String className = (classId == null) ? "" : classId.getClassName();
+        String key = packageName + ":" + className;
+
+        ClassEntry entry = _classes.get(key);
+        if (entry == null)
+        {
+            String[] idNames = (schema instanceof SchemaObjectClass) ? ((SchemaObjectClass)schema).getIdNames() :
+                                                                       new String[0];
+            entry = new ClassEntry(packageName, className, idNames);
+            _classes.put(key, entry);
+        }
+        return entry;
+    }
+}
@@ -21,10 +21,8 @@
 package org.apache.qpid.qmf2.agent;
 
 // Misc Imports
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -247,6 +245,35 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
         _updateTimestamp = System.currentTimeMillis()*1000000l;
     }
 
+    /**
+     * Set the value of a property only if it differs from the current value.
+     * <p>
+     * This is intended for Agents that refresh an object's statistics when it is serialised, as it allows them to
+     * only call update() when a statistic has actually changed, e.g.
+     * <pre>
+     * boolean changed = updateValue("msgDepth", queue.getQueueDepthMessages());
+     * changed |= updateValue("byteDepth", queue.getQueueDepthBytes());
+     * if (changed)
+     * {
+     *     update();
+     * }
+     * </pre>
+     *
+     * @param name the name of the property being modified.
+     * @param value the new value of the property.
+     * @return true if the value of the property has changed.
+     */
+    public final boolean updateValue(final String name, final Object value)
+    {
+        Object current = getValue(name);
+        if (value == null ? current == null && hasValue(name) : value.equals(current))
+        {
+            return false;
+        }
+        setValue(name, value);
+        return true;
+    }
+
     /**
      * Iterate through any Subscriptions associated with this Object and force them to republish the Object's new state.
      * <p>
@@ -259,6 +286,8 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      * is possible that an update indication could get sent part way through setting an object's overall state.
      * Similarly calling the publish() method directly from setValue() would force an update indication on partial
      * changes of state, which is generally not the desired behaviour.
+     * <p>
+     * Each Subscription only sends the properties that have changed since it last published this object.
      */
     public final void publish()
     {
@@ -268,12 +297,10 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
             return;
         }
 
-        List<Map> results = new ArrayList<Map>();
-        results.add(mapEncode());
         for (Map.Entry<String, Subscription> entry : _subscriptions.entrySet())
         {
             Subscription subscription = entry.getValue();
-            subscription.publish(results);
+            subscription.publish(this);
         }
     }
 
@@ -24,9 +24,7 @@ package org.apache.qpid.qmf2.agent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.TimerTask;
 import java.util.UUID;
 
@@ -34,7 +32,6 @@ import java.util.UUID;
 import org.apache.qpid.qmf2.common.Handle;
 import org.apache.qpid.qmf2.common.QmfException;
 import org.apache.qpid.qmf2.common.QmfQuery;
-import org.apache.qpid.qmf2.common.QmfQueryTarget;
 
 /** 
  * This TimerTask represents a running Subscription on the Agent.
@@ -43,6 +40,20 @@ import org.apache.qpid.qmf2.common.QmfQueryTarget;
  * the _subscriptions Map when the Subscription expires. The timer also causes QmfAgenData that have been updated
  * since the last interval to be published.
  * <p>
+ * The evaluation of the Subscription's query and the publication of the results is actually done by the
+ * SubscriptionGroup that the Subscription belongs to. The Agent places Subscriptions that have an equal QmfQuery
+ * and the same publish interval in the same SubscriptionGroup, which it runs on the worker pool of its
+ * AgentScheduler, so any number of identical Subscriptions share a single query evaluation and encoding of the
+ * results on each interval. Applications using the AgentExternal model may still schedule Subscriptions on a
+ * java.util.Timer of their own, in which case each Subscription runs its own group.
+ * <p>
+ * If the Console asked for partial values in its subscribe request only the properties of an object that have
+ * changed since it was last published are sent, otherwise changed objects are sent in full. In either case objects
+ * whose properties are all unchanged are not sent at all, see SubscriptionGroup for details.
+ * <p>
+ * Each Subscription reports how long the runs of its group take and how many objects they publish, so that the
+ * Subscriptions that are using most of the Agent's publishing time can be identified via Agent.getSubscriptions().
+ * <p>
  * The following diagram illustrates the Subscription relationships with the Agent and QmfAgentData.
  * <p>
  * <img alt="" src="doc-files/Subscriptions.png">
@@ -63,23 +74,23 @@ public final class Subscription extends TimerTask
 
     private SubscribableAgent _agent;
     private long _startTime = System.currentTimeMillis();
-    private long _lastUpdate = _startTime*1000000l;
     private String _subscriptionId;
     private Handle _consoleHandle;
+    private boolean _partialValues;
     private QmfQuery _query;
     private long _duration = 0;
     private long _interval = 0;
+    private volatile SubscriptionGroup _group;
 
     /**
-     * Tells the SubscribableAgent to send the results to the Console via a subscription indicate message.
+     * Immediately publish any properties of the specified object that have changed since they were last published
+     * by this Subscription's group. Called by QmfAgentData.publish().
      *
-     * @param results the list of mapEncoded QmfAgentData that currently match the query associated with this
-     * Subscription.
+     * @param object the QmfAgentData being published.
      */
-    protected void publish(List<Map> results)
+    void publish(QmfAgentData object)
     {
-        _agent.sendSubscriptionIndicate(_consoleHandle, results);
-        _lastUpdate = System.currentTimeMillis()*1000000l;
+        _group.publish(object);
     }
 
     /**
@@ -92,22 +103,66 @@ public final class Subscription extends TimerTask
         _agent = agent;
         _subscriptionId = UUID.randomUUID().toString();
         _consoleHandle = params.getConsoleHandle();
+        _partialValues = params.getPartialValues();
         _query = params.getQuery();
         setDuration(params.getLifetime());
         setInterval(params.getPublishInterval());
 
+        // Initially the Subscription has a group of its own, the Agent may move it into a shared group.
+        _group = new SubscriptionGroup(_agent, _query, _interval);
+        _group.add(this);
+
         _log.debug("Creating Subscription {}, duration = {}, interval = {}", new Object[] {_subscriptionId, _duration, _interval});
     }
 
     /**
-     * This method gets called periodically by the Timer scheduling this TimerTask.
+     * Move this Subscription from the group it was created with into a group shared with other Subscriptions
+     * with an equal query and interval.
+     *
+     * @param group the SubscriptionGroup to join.
+     * @return false if the group has been cancelled, in which case this Subscription remains in its own group.
+     */
+    boolean join(final SubscriptionGroup group)
+    {
+        if (!group.add(this))
+        {
+            return false;
+        }
+        SubscriptionGroup previous = _group;
+        _group = group;
+        previous.remove(this);
+        return true;
+    }
+
+    /**
+     * Return the SubscriptionGroup that this Subscription belongs to.
+     * @return the SubscriptionGroup that this Subscription belongs to.
+     */
+    SubscriptionGroup getGroup()
+    {
+        return _group;
+    }
+
+    /**
+     * This method gets called periodically by the Timer scheduling this TimerTask, it simply runs the
+     * Subscription's group.
      * <p>
      * First a check is made to see if the Subscription has expired, if it has then it is cancelled.
      * <p>
      * If the Subscription isn't cancelled the Query gets evaluated against all registered objects and any that match
-     * which are new to the Subscription or have changed since the last update get published.
+     * which are new to the Subscription or have changed since the last update get published. If the Console asked
+     * for partial values only the properties of an object that have actually changed since it was last published
+     * are sent.
      */
     public void run()
+    {
+        _group.run();
+    }
+
+    /**
+     * Check if the Subscription has expired and if it has cancel it. Called by the group on each run.
+     */
+    void expire()
     {
         long elapsed = (long)Math.round((System.currentTimeMillis() - _startTime)/1000.0f);
         if (elapsed >= _duration)
@@ -116,36 +171,6 @@ public final class Subscription extends TimerTask
             // The Subscription has expired so cancel it
             cancel();
         }
-        else
-        {
-            List<QmfAgentData> objects = _agent.evaluateQuery(_query);
-            List<Map> results = new ArrayList<Map>(objects.size());
-            for (QmfAgentData object : objects)
-            {
-                if (object.getSubscription(_subscriptionId) == null)
-                {
-                    // The object is new to this Subscription so publish it
-                    object.addSubscription(_subscriptionId, this);
-                    results.add(object.mapEncode());
-                }
-                else
-                {
-                    // If the object has had update() called since last Subscription update publish it.
-                    // Note that in many cases an Agent might call publish() on a managed object rather than
-                    // update() which immediately forces a data indication to be sent to the subscriber on
-                    // the Console.
-                    if (object.getUpdateTime() > _lastUpdate)
-                    {
-                        results.add(object.mapEncode());
-                    }
-                }
-            }
-
-            if (results.size() > 0)
-            {
-                publish(results);
-            }
-        }
     }
 
     /**
@@ -176,9 +201,65 @@ public final class Subscription extends TimerTask
         }
 
         _agent.removeSubscription(this);
+        _group.remove(this); // The group gets cancelled when its last member is removed.
         return super.cancel(); // Cancel the TimerTask
     }
 
+    /**
+     * Return the number of Subscriptions, including this one, that share this Subscription's query evaluation and
+     * publication. The timing statistics are those of the shared group.
+     * @return the number of Subscriptions that share this Subscription's query evaluation and publication.
+     */
+    public int getSharedCount()
+    {
+        return _group.size();
+    }
+
+    /**
+     * Return the number of times that this Subscription has been run.
+     * @return the number of times that this Subscription has been run.
+     */
+    public long getRunCount()
+    {
+        return _group.getRunCount();
+    }
+
+    /**
+     * Return the time in milliseconds taken by the most recent run of this Subscription.
+     * @return the time in milliseconds taken by the most recent run of this Subscription.
+     */
+    public long getLastRunTime()
+    {
+        return _group.getLastRunTime();
+    }
+
+    /**
+     * Return the longest time in milliseconds taken by any run of this Subscription.
+     * @return the longest time in milliseconds taken by any run of this Subscription.
+     */
+    public long getMaxRunTime()
+    {
+        return _group.getMaxRunTime();
+    }
+
+    /**
+     * Return the total time in milliseconds spent evaluating, encoding and publishing this Subscription.
+     * @return the total time in milliseconds spent evaluating, encoding and publishing this Subscription.
+     */
+    public long getTotalRunTime()
+    {
+        return _group.getTotalRunTime();
+    }
+
+    /**
+     * Return the total number of objects published by the periodic runs of this Subscription.
+     * @return the total number of objects published by the periodic runs of this Subscription.
+     */
+    public long getPublishedCount()
+    {
+        return _group.getPublishedCount();
+    }
+
     /**
      * Return the SubscriptionId of this subscription.
      * @return the SubscriptionId of this subscription.
@@ -197,6 +278,15 @@ public final class Subscription extends TimerTask
         return _consoleHandle;
     }
 
+    /**
+     * Return true if the Console has asked to be sent only the changed properties of objects it already holds.
+     * @return true if the Console has asked to be sent only the changed properties of objects it already holds.
+     */
+    boolean getPartialValues()
+    {
+        return _partialValues;
+    }
+
     /**
      * Set the Subscription lifetime in seconds. If the value passed to this method is zero the duration gets
      * set to the Agent's DEFAULT_DURATION is the duration has not already been set, if the duration has already
@@ -0,0 +1,502 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.Handle;
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.QmfQuery;
+
+/**
+ * A SubscriptionGroup is the set of Subscriptions that share a single evaluation of the same QmfQuery.
+ * <p>
+ * When many Consoles subscribe to the same thing, for example every instance of a dashboard subscribing to queue
+ * objects, the Agent places Subscriptions that have an equal QmfQuery and the same publish interval in the same
+ * SubscriptionGroup. On each interval the group evaluates the query and encodes the matching objects once then
+ * sends the same payload to the consoleHandle of each member, so the cost of N identical Subscriptions is close to
+ * the cost of one.
+ * <p>
+ * The group remembers the property values it last published for each object, and objects whose properties are all
+ * unchanged since they were last published are not sent at all. Members whose Console asked for partial values in
+ * its subscribe request are sent only the properties of a changed object whose values differ from those last
+ * published, along with the object's _object_id, _schema_id and timestamps, and that Console merges these partial
+ * updates with the state it already holds. All other members are sent changed objects in full, as Consoles that
+ * don't understand partial updates would otherwise replace their objects with incomplete ones. Objects new to the
+ * group and deleted objects are always sent in full, as is every matching object the first time the group runs
+ * after a new member has joined it. Note that values are compared using equals() so Agents should replace rather
+ * than modify in place any mutable property values.
+ * <p>
+ * A Subscription that isn't scheduled by the Agent, as in the AgentExternal model, has a group of its own.
+ *
+ * @author Fraser Adams
+ */
+final class SubscriptionGroup implements Runnable
+{
+    private static final Logger _log = LoggerFactory.getLogger(SubscriptionGroup.class);
+
+    private final SubscribableAgent _agent;
+    private final QmfQuery _query;
+    private final long _interval;
+    private final List<Subscription> _members = new CopyOnWriteArrayList<Subscription>();
+
+    // Members that have joined since the group last ran and so need to be sent every object in full.
+    private final Set<Subscription> _joining =
+        Collections.newSetFromMap(new ConcurrentHashMap<Subscription, Boolean>());
+
+    // The property values last published for each object, used to work out which properties have changed.
+    private final Map<ObjectId, Map<String, Object>> _published = new HashMap<ObjectId, Map<String, Object>>();
+
+    // The deleted objects that have already been published, so that each deletion is only published once.
+    private final Set<ObjectId> _deleted = new HashSet<ObjectId>();
+
+    private boolean _cancelled = false;
+    private volatile ScheduledFuture<?> _future = null;
+
+    // Timing statistics, only modified by the thread running the group.
+    private volatile long _runCount = 0;
+    private volatile long _lastRunTime = 0;
+    private volatile long _totalRunTime = 0;
+    private volatile long _maxRunTime = 0;
+    private volatile long _publishedCount = 0;
+
+    /**
+     * Construct a SubscriptionGroup.
+     *
+     * @param agent the SubscribableAgent whose data the group's query is evaluated against.
+     * @param query the QmfQuery shared by the members of the group.
+     * @param interval the time in milliseconds between publications.
+     */
+    SubscriptionGroup(final SubscribableAgent agent, final QmfQuery query, final long interval)
+    {
+        _agent = agent;
+        _query = query;
+        _interval = interval;
+    }
+
+    /**
+     * Return true if a Subscription with the specified query and interval may share this group's publications.
+     *
+     * @param query the QmfQuery of the Subscription.
+     * @param interval the publish interval of the Subscription.
+     * @return true if a Subscription with the specified query and interval may join this group.
+     */
+    boolean matches(final QmfQuery query, final long interval)
+    {
+        return interval == _interval && query.mapEncode().equals(_query.mapEncode());
+    }
+
+    /**
+     * Add a Subscription to this group. The new member is sent every matching object in full the next time that
+     * the group runs.
+     *
+     * @param subscription the Subscription joining the group.
+     * @return false if the group has been cancelled, in which case the Subscription hasn't been added.
+     */
+    synchronized boolean add(final Subscription subscription)
+    {
+        if (_cancelled)
+        {
+            return false;
+        }
+        _joining.add(subscription);
+        _members.add(subscription);
+        return true;
+    }
+
+    /**
+     * Remove a Subscription from this group, the group is cancelled when its last member has been removed.
+     *
+     * @param subscription the Subscription leaving the group.
+     */
+    synchronized void remove(final Subscription subscription)
+    {
+        _members.remove(subscription);
+        _joining.remove(subscription);
+        if (_members.size() == 0)
+        {
+            _log.debug("Cancelling SubscriptionGroup with interval {}", _interval);
+            _cancelled = true;
+            _published.clear();
+            _deleted.clear();
+            ScheduledFuture<?> future = _future;
+            if (future != null)
+            { // Stop the AgentScheduler from running this group.
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Return true if this group has been cancelled because its last member has been removed.
+     * @return true if this group has been cancelled.
+     */
+    synchronized boolean isCancelled()
+    {
+        return _cancelled;
+    }
+
+    /**
+     * Set the ScheduledFuture returned when the AgentScheduler scheduled this group, so that the group can stop
+     * being run when it is cancelled.
+     *
+     * @param future the ScheduledFuture of this group.
+     */
+    void setScheduledFuture(final ScheduledFuture<?> future)
+    {
+        _future = future;
+        if (isCancelled())
+        {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Return the time in milliseconds between publications.
+     * @return the time in milliseconds between publications.
+     */
+    long getInterval()
+    {
+        return _interval;
+    }
+
+    /**
+     * Return the number of Subscriptions in this group.
+     * @return the number of Subscriptions in this group.
+     */
+    int size()
+    {
+        return _members.size();
+    }
+
+    /**
+     * This method gets called periodically by whatever is scheduling the group.
+     * <p>
+     * First any members that have expired are cancelled, then the query gets evaluated against all registered
+     * objects and any that are new to the group or have changed since the last update get published to the members,
+     * members that asked for partial values get only the changed properties. Members that have joined since the
+     * last update get every matching object in full.
+     */
+    public void run()
+    {
+        for (Subscription subscription : _members)
+        {
+            subscription.expire();
+        }
+
+        long startTime = System.nanoTime();
+        int published = 0;
+        synchronized (this)
+        {
+            if (_cancelled)
+            {
+                return;
+            }
+
+            List<Subscription> joining = new ArrayList<Subscription>(_joining);
+            boolean full = joining.size() > 0;
+
+            List<QmfAgentData> objects = _agent.evaluateQuery(_query);
+            List<Map> changes = new ArrayList<Map>();
+            List<Map> updates = new ArrayList<Map>();
+            List<Map> results = full ? new ArrayList<Map>(objects.size()) : null;
+            Set<ObjectId> deleted = new HashSet<ObjectId>();
+            for (QmfAgentData object : objects)
+            {
+                ObjectId objectId = object.getObjectId();
+                boolean known = _published.containsKey(objectId);
+
+                // Add references to the members to the object so that QmfAgentData.publish() and destroy() reach
+                // them, objects already known to the group only need references to the joining members.
+                for (Subscription subscription : known ? joining : _members)
+                {
+                    if (object.getSubscription(subscription.getSubscriptionId()) == null)
+                    {
+                        object.addSubscription(subscription.getSubscriptionId(), subscription);
+                    }
+                }
+
+                // Every matching object is encoded on each run rather than only those that have had update() called,
+                // as some Agents, such as the broker, only refresh an object's statistics when it is encoded, and
+                // encodeChanges() holds back any objects whose properties are unchanged. Note that in many cases an
+                // Agent might call publish() on a managed object which immediately forces a data indication to be
+                // sent to the subscribers on the Console.
+                Map<String, Object> map = object.mapEncode();
+                if (object.isDeleted())
+                {
+                    deleted.add(objectId);
+                }
+
+                Map<String, Object> changed = encodeChanges(object, map);
+                if (changed != null)
+                {
+                    changes.add(changed);
+                    updates.add(map);
+                }
+
+                if (full)
+                {
+                    results.add(map);
+                }
+            }
+
+            // Forget the deleted objects that the Agent has reaped.
+            _deleted.retainAll(deleted);
+
+            if (changes.size() > 0)
+            {
+                published += changes.size();
+                send(current(true), changes);
+                send(current(false), updates);
+            }
+
+            if (full)
+            {
+                published += results.size();
+                List<Handle> handles = new ArrayList<Handle>(joining.size());
+                for (Subscription subscription : joining)
+                {
+                    handles.add(subscription.getConsoleHandle());
+                }
+                send(handles, results);
+                _joining.removeAll(joining);
+            }
+        }
+
+        long runTime = (System.nanoTime() - startTime)/1000000l;
+        _runCount++;
+        _lastRunTime = runTime;
+        _totalRunTime += runTime;
+        _maxRunTime = (runTime > _maxRunTime) ? runTime : _maxRunTime;
+        _publishedCount += published;
+        if (runTime > _interval)
+        {
+            _log.info("Subscription to {} took {}ms which exceeds its publish interval of {}ms",
+                      new Object[] {_query.getTarget(), runTime, _interval});
+        }
+    }
+
+    /**
+     * Immediately publish the specified object if any of its properties have changed since they were last published
+     * by this group, members that asked for partial values get only the changed properties. Called by
+     * QmfAgentData.publish() via each of the group's members that reference the object, the first call publishes to
+     * all of the members so subsequent calls find nothing has changed.
+     *
+     * @param object the QmfAgentData being published.
+     */
+    synchronized void publish(final QmfAgentData object)
+    {
+        if (_cancelled)
+        {
+            return;
+        }
+
+        Map<String, Object> map = object.mapEncode();
+        Map<String, Object> changed = encodeChanges(object, map);
+        if (changed != null)
+        {
+            List<Map> changes = new ArrayList<Map>(1);
+            changes.add(changed);
+            send(current(true), changes);
+
+            List<Map> updates = new ArrayList<Map>(1);
+            updates.add(map);
+            send(current(false), updates);
+        }
+    }
+
+    /**
+     * Return the consoleHandles of the members that are up to date with the group's published state and either did
+     * or didn't ask for partial values.
+     *
+     * @param partialValues true to return the members that asked for partial values, false for the others.
+     * @return the consoleHandles of the members that are up to date with the group's published state.
+     */
+    private List<Handle> current(final boolean partialValues)
+    {
+        List<Handle> handles = new ArrayList<Handle>(_members.size());
+        for (Subscription subscription : _members)
+        {
+            if (subscription.getPartialValues() == partialValues && !_joining.contains(subscription))
+            {
+                handles.add(subscription.getConsoleHandle());
+            }
+        }
+        return handles;
+    }
+
+    /**
+     * Send the results to each of the specified Consoles. An Agent encodes the results once for all of the Consoles,
+     * other SubscribableAgents are asked to send the results to each Console in turn.
+     *
+     * @param handles the consoleHandles to send the results to.
+     * @param results the list of mapEncoded QmfAgentData to send.
+     */
+    private void send(final List<Handle> handles, final List<Map> results)
+    {
+        if (handles.size() == 0)
+        {
+            return;
+        }
+
+        if (_agent instanceof Agent)
+        {
+            ((Agent)_agent).sendSubscriptionIndicate(handles, results);
+        }
+        else
+        {
+            for (Handle handle : handles)
+            {
+                _agent.sendSubscriptionIndicate(handle, results);
+            }
+        }
+    }
+
+    /**
+     * Work out which properties of an encoded object have changed since the group last published it and update
+     * the group's record of the published state.
+     *
+     * @param object the QmfAgentData being published.
+     * @param map the mapEncoded object, this isn't modified.
+     * @return the encoded object with _values replaced by only the changed properties, the encoded object itself if
+     * it is new to the group or has been deleted, or null if none of its properties have changed or its deletion has
+     * already been published.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> encodeChanges(final QmfAgentData object, final Map<String, Object> map)
+    {
+        ObjectId objectId = object.getObjectId();
+        // Deleted objects are sent in full, but only once as each member referencing the object publishes it. This
+        // includes objects that were created and deleted since the group last ran, so subscribers still see them.
+        if (object.isDeleted())
+        {
+            _published.remove(objectId);
+            return _deleted.add(objectId) ? map : null;
+        }
+
+        Map<String, Object> values = (Map<String, Object>)map.get("_values");
+        Map<String, Object> last = _published.get(objectId);
+        if (last == null)
+        { // The object is new to this group so publish it in full.
+            _published.put(objectId, new HashMap<String, Object>(values));
+            return map;
+        }
+
+        Map<String, Object> changed = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : values.entrySet())
+        {
+            String name = entry.getKey();
+            Object value = entry.getValue();
+            if (!last.containsKey(name) || !equalValues(value, last.get(name)))
+            {
+                changed.put(name, value);
+                last.put(name, value);
+            }
+        }
+
+        if (changed.size() == 0)
+        {
+            return null;
+        }
+
+        // Don't modify the original map as QmfAgentData.mapEncode() returns its underlying _values.
+        Map<String, Object> delta = new HashMap<String, Object>(map);
+        delta.put("_values", changed);
+        return delta;
+    }
+
+    /**
+     * Compare two property values, QMF strings are often held as byte[] so these are compared by content.
+     *
+     * @param lhs the left hand side of the comparison.
+     * @param rhs the right hand side of the comparison.
+     * @return true if the values are equal.
+     */
+    private static boolean equalValues(final Object lhs, final Object rhs)
+    {
+        if (lhs instanceof byte[] && rhs instanceof byte[])
+        {
+            return Arrays.equals((byte[])lhs, (byte[])rhs);
+        }
+        return lhs == null ? rhs == null : lhs.equals(rhs);
+    }
+
+    /**
+     * Return the number of times that this group has been run.
+     * @return the number of times that this group has been run.
+     */
+    long getRunCount()
+    {
+        return _runCount;
+    }
+
+    /**
+     * Return the time in milliseconds taken by the most recent run of this group.
+     * @return the time in milliseconds taken by the most recent run of this group.
+     */
+    long getLastRunTime()
+    {
+        return _lastRunTime;
+    }
+
+    /**
+     * Return the longest time in milliseconds taken by any run of this group.
+     * @return the longest time in milliseconds taken by any run of this group.
+     */
+    long getMaxRunTime()
+    {
+        return _maxRunTime;
+    }
+
+    /**
+     * Return the total time in milliseconds spent evaluating, encoding and publishing this group.
+     * @return the total time in milliseconds spent evaluating, encoding and publishing this group.
+     */
+    long getTotalRunTime()
+    {
+        return _totalRunTime;
+    }
+
+    /**
+     * Return the total number of objects published by the periodic runs of this group.
+     * @return the total number of objects published by the periodic runs of this group.
+     */
+    long getPublishedCount()
+    {
+        return _publishedCount;
+    }
+}
@@ -88,6 +88,16 @@ public final class SubscriptionParams extends QmfData
         return getLongValue("_duration");
     }
 
+    /**
+     * Return true if the Console has asked to be sent only the changed properties of objects it already holds.
+     * @return true if the Console has asked to be sent only the changed properties of objects it already holds.
+     * Consoles that don't set _partial_values in their subscribe request are always sent objects in full.
+     */
+    public boolean getPartialValues()
+    {
+        return hasValue("_partial_values") && getBooleanValue("_partial_values");
+    }
+
     /**
      * Return authenticated user id of caller if present, else null.
      * @return authenticated user id of caller if present, else null.
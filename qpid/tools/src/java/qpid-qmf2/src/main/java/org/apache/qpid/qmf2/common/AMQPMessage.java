@@ -70,13 +70,27 @@ public final class AMQPMessage
      * This method exposes the AMQP Content-Type from a JMS Message. This has been put into an accessor
      * method because some evil hackery has to take place to set the Content-Type as no pure JMS API
      * property currently gets mapped to Content-Type, so we have to cast to AbstractJMSMessage.
+     * <p>
+     * Messages that implement ContentTypeMessage carry their own Content-Type, for any other Message that isn't a
+     * Qpid AbstractJMSMessage an empty String is returned.
      *
      * @param message a JMS Message.
      * @return the AMQP Content-Type e.g. amqp/list, amqp/map etc.
      */
     public static String getContentType(final Message message)
     {
-        return ((org.apache.qpid.client.message.AbstractJMSMessage)message).getContentType();
+        if (message instanceof org.apache.qpid.client.message.AbstractJMSMessage)
+        {
+            return ((org.apache.qpid.client.message.AbstractJMSMessage)message).getContentType();
+        }
+        else if (message instanceof ContentTypeMessage)
+        {
+            return ((ContentTypeMessage)message).getContentType();
+        }
+        else
+        {
+            return "";
+        }
     }
 
     /**
@@ -89,7 +103,14 @@ public final class AMQPMessage
      */
     public static void setContentType(final Message message, String contentType)
     {
-        ((org.apache.qpid.client.message.AbstractJMSMessage)message).setContentType(contentType);
+        if (message instanceof ContentTypeMessage)
+        {
+            ((ContentTypeMessage)message).setContentType(contentType);
+        }
+        else
+        {
+            ((org.apache.qpid.client.message.AbstractJMSMessage)message).setContentType(contentType);
+        }
     }
 
     /**
@@ -177,13 +198,20 @@ public final class AMQPMessage
                 object.put(prop, QmfData.getString(msg.getObjectProperty(prop)));
             }
 
-            // Should be msg.getStringProperty("JMSXUserID"). See comments above for the reason behind this evil hack.
-            org.apache.qpid.client.message.AMQMessageDelegate_0_10 delegate = (org.apache.qpid.client.message.AMQMessageDelegate_0_10)(((org.apache.qpid.client.message.AbstractJMSMessage)msg).getDelegate());
-            byte[] rawUserId = delegate.getMessageProperties().getUserId();
-            if (rawUserId != null)
+            if (msg instanceof org.apache.qpid.client.message.AbstractJMSMessage)
+            {
+                // Should be msg.getStringProperty("JMSXUserID"). See comments above for the reason behind this evil hack.
+                org.apache.qpid.client.message.AMQMessageDelegate_0_10 delegate = (org.apache.qpid.client.message.AMQMessageDelegate_0_10)(((org.apache.qpid.client.message.AbstractJMSMessage)msg).getDelegate());
+                byte[] rawUserId = delegate.getMessageProperties().getUserId();
+                if (rawUserId != null)
+                {
+                    String userId = new String(rawUserId);
+                    object.put("_user_id", userId);
+                }
+            }
+            else if (msg.propertyExists("JMSXUserID"))
             {
-                String userId = new String(rawUserId);
-                object.put("_user_id", userId);
+                object.put("_user_id", msg.getStringProperty("JMSXUserID"));
             }
 
             return object;
@@ -214,13 +242,8 @@ public final class AMQPMessage
         }
         else if (message instanceof BytesMessage)
         {
-            BytesMessage msg = (BytesMessage)message;
-
-            //only handles responses up to 2^31-1 bytes long
-            byte[] data = new byte[(int) msg.getBodyLength()];
-            msg.readBytes(data);
             BBDecoder decoder = new BBDecoder();
-            decoder.init(ByteBuffer.wrap(data));
+            decoder.init(getBody((BytesMessage)message));
             return (List<T>)decoder.readList();
         }
         else if (message instanceof MapMessage)
@@ -248,6 +271,35 @@ public final class AMQPMessage
         }
     }
 
+    /**
+     * Returns a ByteBuffer view of the body of a BytesMessage.
+     * <p>
+     * More evil hackery, as far as possible this avoids copying the body by returning a view of the ByteBuffer
+     * that backs the Qpid AbstractJMSMessage. A QMF _query_response for many thousands of objects may be many
+     * megabytes long, so decoding straight from the Message's buffer saves a full size allocation and copy each
+     * time such a response is received. The view has its own position and limit so the Message itself is left
+     * untouched. If the Message isn't a Qpid AbstractJMSMessage we fall back to copying the body.
+     *
+     * @param message a JMS BytesMessage.
+     * @return a ByteBuffer containing the body of the Message.
+     */
+    private static ByteBuffer getBody(final BytesMessage message) throws JMSException
+    {
+        if (message instanceof org.apache.qpid.client.message.AbstractJMSMessage)
+        {
+            ByteBuffer data = ((org.apache.qpid.client.message.AbstractJMSMessage)message).getData();
+            if (data != null)
+            {
+                return data.duplicate();
+            }
+        }
+
+        //only handles responses up to 2^31-1 bytes long
+        byte[] data = new byte[(int) message.getBodyLength()];
+        message.readBytes(data);
+        return ByteBuffer.wrap(data);
+    }
+
     /**
      * Creates an amqp/list encoded Message out of a BytesMessage.
      * <p>
@@ -29,14 +29,28 @@ import java.util.Map;
 
 /**
  * This class represents the base class for all Boolean Expressions created by expanding the Query predicate.
+ * <p>
+ * The operands are "compiled" when the expression is created. Literal operands are parsed once into their numeric
+ * forms and property operands are looked up at evaluation time as their raw values (e.g. a Long) rather than being
+ * converted to Strings, so evaluating an expression against an object doesn't allocate per operand. Expressions hold
+ * no per-evaluation state so a single QmfQuery may safely be evaluated by a number of threads at once.
  *
  * @author Fraser Adams
  */
 public abstract class BooleanExpression extends Expression
 {
     private static Map<String, BooleanExpression> _factories = new HashMap<String, BooleanExpression>();
-    protected String[] _operands;
+    /**
+     * Returned by compareOperands() if either operand is missing or is NaN, in which case all comparisons are false.
+     */
+    protected static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    protected String[] _operands; // The literal operands, null where an operand is a property key.
     private String[] _keys;
+    private double[] _numbers;
+    private boolean[] _isNumber;
+    private long[] _longs;
+    private boolean[] _isLong;
 
     /**
      * Initialise the _factories Map, which contains the prototype instances of each concrete BooleanExpression
@@ -155,60 +169,193 @@ public abstract class BooleanExpression extends Expression
         {
             throw new QmfException("Too many operands for operation: " + op);
         }
+
+        compileOperands();
     }
 
     /**
-     * Populates operands that are obtained at evaluation time. In other words operands that are obtained by using
-     * the key obtained from the static operand evaluation to look up an associated property from the QmfData object.
-     * @param data the object to extract the operand(s) from
+     * Parse the literal operands once, so that evaluating the expression needn't repeatedly parse them. An integer
+     * literal is only treated as a long if it is in canonical form, so that numerically comparing it with integral
+     * property values gives the same answer as comparing their String forms.
      */
-    protected void populateOperands(final QmfData data)
+    private void compileOperands()
     {
-        for (int i = 0; i < _operands.length; i++)
+        int operandCount = _operands.length;
+        _numbers = new double[operandCount];
+        _isNumber = new boolean[operandCount];
+        _longs = new long[operandCount];
+        _isLong = new boolean[operandCount];
+
+        for (int i = 0; i < operandCount; i++)
         {
-            String key = _keys[i];
-            if (key != null)
+            String literal = _operands[i];
+            if (literal != null)
             {
-                String value = null;
-
-                if (data.hasValue(key))
-                { // If there's a property of the data object named key look it up as a String
-                    value = data.getStringValue(key);
+                try
+                {
+                    _numbers[i] = Double.parseDouble(literal);
+                    _isNumber[i] = true;
+                    _longs[i] = Long.parseLong(literal);
+                    _isLong[i] = Long.toString(_longs[i]).equals(literal);
                 }
-                else
-                { // If there's no property of the data object named key look up its Described/Managed metadata
-                    if (data instanceof QmfManaged)
-                    {
-                        QmfManaged managedData = (QmfManaged)data;
-                        if (key.equals("_schema_id"))
-                        {
-                            value = managedData.getSchemaClassId().toString();
-                        }
-                        else if (key.equals("_object_id"))
-                        {
-                            value = managedData.getObjectId().toString();
-                        }
-                        else if (managedData.getSchemaClassId().hasValue(key))
-                        { // If it's not _schema_id or _object_id check the SchemaClassId properties e.g. 
-                          // _package_name, _class_name, _type or _hash
-                            value = managedData.getSchemaClassId().getStringValue(key);
-                        }
-                    }
-
-                    if (value == null)
-                    { // If a value still can't be found for the key check if it's available in the mapEncoded form
-                        Map m = data.mapEncode();
-                        if (m.containsKey(key))
-                        {
-                            value = QmfData.getString(m.get(key));
-                        }
-                    }
+                catch (NumberFormatException nfe)
+                { // Not a (long) number, _isNumber and _isLong are left set as appropriate.
                 }
+            }
+        }
+    }
 
-                _operands[i] = value;
+    /**
+     * Returns the value of an operand for a given QmfData instance. Literal operands return their String value, key
+     * operands use the key to look up the raw value of the associated property from the QmfData object, so no String
+     * conversion takes place.
+     *
+     * @param data the object to extract the operand from.
+     * @param index the index of the operand.
+     * @return the value of the operand or null if there is no value for the key.
+     */
+    protected final Object getOperand(final QmfData data, final int index)
+    {
+        String key = _keys[index];
+        if (key == null)
+        {
+            return _operands[index];
+        }
+
+        if (data.hasValue(key))
+        { // If there's a property of the data object named key use its value, a null value is treated as "".
+            Object value = data.getValue(key);
+            return (value == null) ? "" : value;
+        }
+
+        // If there's no property of the data object named key look up its Described/Managed metadata
+        if (data instanceof QmfManaged)
+        {
+            QmfManaged managedData = (QmfManaged)data;
+            if (key.equals("_schema_id"))
+            {
+                return managedData.getSchemaClassId().toString();
             }
-//System.out.println("key: " + key + ", operand = " + _operands[i]);
+            else if (key.equals("_object_id"))
+            {
+                return managedData.getObjectId().toString();
+            }
+            else if (managedData.getSchemaClassId().hasValue(key))
+            { // If it's not _schema_id or _object_id check the SchemaClassId properties e.g. 
+              // _package_name, _class_name, _type or _hash
+                return managedData.getSchemaClassId().getStringValue(key);
+            }
+        }
+
+        // If a value still can't be found for the key check if it's available in the mapEncoded form
+        Map m = data.mapEncode();
+        if (m.containsKey(key))
+        {
+            Object value = m.get(key);
+            return (value == null) ? "" : value;
         }
+        return null;
+    }
+
+    /**
+     * Returns the value of an operand as a String.
+     *
+     * @param data the object to extract the operand from.
+     * @param index the index of the operand.
+     * @return the String value of the operand or null if there is no value for the key.
+     */
+    protected final String getStringOperand(final QmfData data, final int index)
+    {
+        Object value = getOperand(data, index);
+        return (value == null) ? null : QmfData.getString(value);
+    }
+
+    /**
+     * Tests the two operands for equality. Integral property values are compared numerically with integer literals,
+     * other values are compared using their String forms.
+     *
+     * @param data the object to extract the operands from.
+     * @return Boolean.TRUE or Boolean.FALSE, or null if either operand has no value.
+     */
+    protected final Boolean equalOperands(final QmfData data)
+    {
+        Object l = getOperand(data, 0);
+        Object r = getOperand(data, 1);
+        if (l == null || r == null)
+        {
+            return null;
+        }
+
+        if (_isLong[1] && isIntegral(l))
+        {
+            return Boolean.valueOf(((Number)l).longValue() == _longs[1]);
+        }
+        else if (_isLong[0] && isIntegral(r))
+        {
+            return Boolean.valueOf(((Number)r).longValue() == _longs[0]);
+        }
+        return Boolean.valueOf(QmfData.getString(l).equals(QmfData.getString(r)));
+    }
+
+    /**
+     * Compares the two operands. If both operands are numeric they are compared as doubles, otherwise a
+     * lexicographic comparison of their String forms is performed.
+     *
+     * @param data the object to extract the operands from.
+     * @return a negative integer, zero, or a positive integer as the first operand is less than, equal to, or greater
+     *         than the second, or INCOMPARABLE if either operand has no value or is NaN.
+     */
+    protected final int compareOperands(final QmfData data)
+    {
+        Object l = getOperand(data, 0);
+        Object r = getOperand(data, 1);
+        if (l == null || r == null)
+        {
+            return INCOMPARABLE;
+        }
+
+        // Literals that aren't numbers go straight to the lexicographic comparison.
+        if ((_keys[0] != null || _isNumber[0]) && (_keys[1] != null || _isNumber[1]))
+        {
+            try
+            {
+                double ld = getDouble(l, 0);
+                double rd = getDouble(r, 1);
+                if (Double.isNaN(ld) || Double.isNaN(rd))
+                {
+                    return INCOMPARABLE;
+                }
+                return (ld < rd) ? -1 : ((ld > rd) ? 1 : 0);
+            }
+            catch (NumberFormatException nfe)
+            { // If converting to double fails fall back to a lexicographic comparison
+            }
+        }
+        return QmfData.getString(l).compareTo(QmfData.getString(r));
+    }
+
+    /**
+     * Returns an operand value as a double, only property values held as Strings actually need parsing.
+     */
+    private double getDouble(final Object value, final int index)
+    {
+        if (value instanceof Number)
+        {
+            return ((Number)value).doubleValue();
+        }
+        else if (_keys[index] == null)
+        {
+            return _numbers[index];
+        }
+        return Double.parseDouble(QmfData.getString(value));
+    }
+
+    /**
+     * Returns true if the value is one of the integral Number types.
+     */
+    private static boolean isIntegral(final Object value)
+    {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
     }
 
     /**
@@ -22,7 +22,6 @@ package org.apache.qpid.qmf2.common;
 
 // Misc Imports
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -73,23 +72,20 @@ public final class BooleanRegexMatch extends BooleanExpression
     
     /**
      * Evaluate "regex match" expression against a QmfData instance.
-     * N.B. to avoid complexities with types this class treats operands as Strings performing an appropriate evaluation
-     * of the String that makes sense for a given expression e.g. parsing as a double for {@literal >, >=, <, <= }
+     * N.B. the regular expression is compiled once when the expression is created.
      *
      * @param data the object to evaluate the expression against
      * @return true if query matches the QmfData instance, else false.
      */
     public boolean evaluate(final QmfData data)
     {
-        populateOperands(data);
-
-        if (_operands[0] == null || _operands[1] == null || _pattern == null)
+        if (_pattern == null)
         {
             return false;
         }
 
-        Matcher matcher = _pattern.matcher(_operands[0]);
-        return matcher.find();
+        String value = getStringOperand(data, 0);
+        return value != null && _pattern.matcher(value).find();
     }
 }
 
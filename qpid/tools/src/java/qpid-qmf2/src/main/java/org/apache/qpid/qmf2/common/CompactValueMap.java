@@ -0,0 +1,528 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compact java.util.Map used to hold the property values of QmfData that is described by a Schema.
+ * <p>
+ * A Console may hold many thousands of objects of the same class (Queues, Sessions, Subscriptions....) and holding
+ * each of these in a HashMap means paying for a table, an Entry per property, a copy of every property name decoded
+ * from each message and a boxed Long or Double for every statistic. Objects of the same class however all have
+ * (more or less) the same property names, so this class holds the names once per SchemaClassId in a shared, append
+ * only Layout that maps each name to a slot, and each instance simply holds a type tag and a value per slot.
+ * <p>
+ * Long, Integer, Short, Boolean, Double and Float values are held unboxed in a long[] (floating point values by their
+ * raw bits) and everything else (Strings, Maps, byte[], ObjectId Maps, UUIDs....) is held in an Object[]. The type
+ * tag records the original type, so get() returns a value of the same type that was put() and the getLong(),
+ * getDouble() and getBoolean() methods give exactly the same results as the QmfData static helpers of the same name,
+ * without boxing.
+ * <p>
+ * Properties that aren't yet in the Layout, for example properties added by a newer version of an Agent, are simply
+ * added to it. This class isn't thread safe in itself any more than HashMap is, but the shared Layout is.
+ * <p>
+ * The table of shared Layouts only holds them weakly, so the Layout of a class lives exactly as long as there are
+ * CompactValueMaps using it. Each version of a schema (the SchemaClassId includes its hash) from each Agent would
+ * otherwise add a Layout that lives as long as the JVM.
+ *
+ * @author Fraser Adams
+ */
+final class CompactValueMap extends AbstractMap<String, Object>
+{
+    /**
+     * The property names of a given class of object and the slot that holds each in a CompactValueMap.
+     */
+    private static final class Layout
+    {
+        private final ConcurrentMap<String, Integer> _slots = new ConcurrentHashMap<String, Integer>();
+        private volatile String[] _names = new String[0];
+
+        /**
+         * Return the slot of the named property.
+         * @param name the property name.
+         * @return the slot of the named property or -1 if the name isn't in this Layout.
+         */
+        int slot(final Object name)
+        {
+            Integer slot = (name == null) ? null : _slots.get(name);
+            return (slot == null) ? -1 : slot.intValue();
+        }
+
+        /**
+         * Return the slot of the named property, adding the name to this Layout if it isn't already present.
+         * @param name the property name.
+         * @return the slot of the named property.
+         */
+        int addSlot(final String name)
+        {
+            int slot = slot(name);
+            if (slot >= 0)
+            {
+                return slot;
+            }
+
+            synchronized(this)
+            {
+                slot = slot(name);
+                if (slot < 0)
+                {
+                    slot = _names.length;
+                    String[] names = Arrays.copyOf(_names, slot + 1);
+                    names[slot] = name;
+                    _names = names;
+                    _slots.put(name, slot);
+                }
+                return slot;
+            }
+        }
+
+        /**
+         * Return the name held in the specified slot.
+         * @param slot the slot.
+         * @return the name held in the specified slot.
+         */
+        String name(final int slot)
+        {
+            return _names[slot];
+        }
+
+        /**
+         * Return the number of slots in this Layout.
+         * @return the number of slots in this Layout.
+         */
+        int size()
+        {
+            return _names.length;
+        }
+    }
+
+    /**
+     * A weak reference to a shared Layout that remembers its SchemaClassId, so that its entry can be removed from
+     * _layouts once the Layout has been garbage collected.
+     */
+    private static final class LayoutReference extends WeakReference<Layout>
+    {
+        private final SchemaClassId _classId;
+
+        LayoutReference(final SchemaClassId classId, final Layout layout)
+        {
+            super(layout, _collected);
+            _classId = classId;
+        }
+    }
+
+    private static final ReferenceQueue<Layout> _collected = new ReferenceQueue<Layout>();
+    private static final ConcurrentMap<SchemaClassId, LayoutReference> _layouts =
+        new ConcurrentHashMap<SchemaClassId, LayoutReference>();
+
+    private static final byte ABSENT = 0;
+    private static final byte OBJECT = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte SHORT = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte FLOAT = 7;
+
+    private final Layout _layout;
+    private byte[] _types;
+    private long[] _primitives;
+    private Object[] _objects;
+    private int _size = 0;
+
+    /**
+     * Return a CompactValueMap holding the supplied values using the shared Layout for the specified class.
+     * <p>
+     * If values is already a CompactValueMap or classId doesn't identify a class then values is returned unchanged.
+     *
+     * @param classId the SchemaClassId describing the object that the values belong to.
+     * @param values the property values.
+     * @return a CompactValueMap holding the supplied values.
+     */
+    static Map<String, Object> create(final SchemaClassId classId, final Map<String, Object> values)
+    {
+        if (values == null || values instanceof CompactValueMap ||
+            classId == null || classId.getClassName() == null || classId.getClassName().length() == 0)
+        {
+            return values;
+        }
+
+        Layout layout = getLayout(classId);
+        CompactValueMap map = new CompactValueMap(layout, Math.max(layout.size(), values.size()));
+        map.putAll(values);
+        return map;
+    }
+
+    /**
+     * Return the shared Layout for the specified class, creating it if there are no CompactValueMaps using it.
+     * @param classId the SchemaClassId identifying the class.
+     * @return the shared Layout for the specified class.
+     */
+    private static Layout getLayout(final SchemaClassId classId)
+    {
+        // Remove the entries of any Layouts that have been garbage collected.
+        for (Reference<? extends Layout> ref = _collected.poll(); ref != null; ref = _collected.poll())
+        {
+            LayoutReference collected = (LayoutReference)ref;
+            _layouts.remove(collected._classId, collected);
+        }
+
+        while (true)
+        {
+            LayoutReference ref = _layouts.get(classId);
+            Layout layout = (ref == null) ? null : ref.get();
+            if (layout != null)
+            {
+                return layout;
+            }
+
+            layout = new Layout();
+            LayoutReference newRef = new LayoutReference(classId, layout);
+            if (ref == null ? _layouts.putIfAbsent(classId, newRef) == null : _layouts.replace(classId, ref, newRef))
+            {
+                return layout;
+            }
+        }
+    }
+
+    /**
+     * Construct an empty CompactValueMap.
+     * @param layout the shared Layout of the class of object that this map holds the values for.
+     * @param capacity the initial number of slots.
+     */
+    private CompactValueMap(final Layout layout, final int capacity)
+    {
+        _layout = layout;
+        _types = new byte[capacity];
+        _primitives = new long[capacity];
+        _objects = new Object[capacity];
+    }
+
+    /**
+     * Return the slot holding a value for the named property.
+     * @param name the property name.
+     * @return the slot holding a value for the named property, or -1 if there is no such property.
+     */
+    private int find(final Object name)
+    {
+        int slot = _layout.slot(name);
+        return (slot < 0 || slot >= _types.length || _types[slot] == ABSENT) ? -1 : slot;
+    }
+
+    /**
+     * Return the value held in the specified slot boxed as the type it was put as.
+     * @param slot the slot.
+     * @return the value held in the specified slot.
+     */
+    private Object box(final int slot)
+    {
+        long bits = _primitives[slot];
+        switch (_types[slot])
+        {
+            case LONG:    return Long.valueOf(bits);
+            case INTEGER: return Integer.valueOf((int)bits);
+            case SHORT:   return Short.valueOf((short)bits);
+            case BOOLEAN: return Boolean.valueOf(bits != 0);
+            case DOUBLE:  return Double.valueOf(Double.longBitsToDouble(bits));
+            case FLOAT:   return Float.valueOf(Float.intBitsToFloat((int)bits));
+            case OBJECT:  return _objects[slot];
+            default:      return null;
+        }
+    }
+
+    /**
+     * Set the value held in the specified slot to the supplied value.
+     * @param slot the slot.
+     * @param value the new value.
+     */
+    private void store(final int slot, final Object value)
+    {
+        if (slot >= _types.length)
+        {
+            int capacity = Math.max(slot + 1, _layout.size());
+            _types = Arrays.copyOf(_types, capacity);
+            _primitives = Arrays.copyOf(_primitives, capacity);
+            _objects = Arrays.copyOf(_objects, capacity);
+        }
+
+        if (_types[slot] == ABSENT)
+        {
+            _size++;
+        }
+
+        byte type = OBJECT;
+        long bits = 0;
+        if (value instanceof Long)
+        {
+            type = LONG;
+            bits = ((Long)value).longValue();
+        }
+        else if (value instanceof Integer)
+        {
+            type = INTEGER;
+            bits = ((Integer)value).intValue();
+        }
+        else if (value instanceof Short)
+        {
+            type = SHORT;
+            bits = ((Short)value).shortValue();
+        }
+        else if (value instanceof Boolean)
+        {
+            type = BOOLEAN;
+            bits = ((Boolean)value).booleanValue() ? 1 : 0;
+        }
+        else if (value instanceof Double)
+        {
+            type = DOUBLE;
+            bits = Double.doubleToRawLongBits(((Double)value).doubleValue());
+        }
+        else if (value instanceof Float)
+        {
+            type = FLOAT;
+            bits = Float.floatToRawIntBits(((Float)value).floatValue());
+        }
+
+        _types[slot] = type;
+        _primitives[slot] = bits;
+        _objects[slot] = (type == OBJECT) ? value : null;
+    }
+
+    /**
+     * Clear the specified slot.
+     * @param slot the slot.
+     */
+    private void erase(final int slot)
+    {
+        _types[slot] = ABSENT;
+        _primitives[slot] = 0;
+        _objects[slot] = null;
+        _size--;
+    }
+
+    /**
+     * Return the named property as a long without boxing, as per QmfData.getLong().
+     *
+     * @param name the property name.
+     * @return the long representation of the named property.
+     */
+    long getLong(final String name)
+    {
+        int slot = find(name);
+        if (slot < 0)
+        {
+            return 0;
+        }
+
+        switch (_types[slot])
+        {
+            case LONG:
+            case INTEGER:
+            case SHORT:   return _primitives[slot];
+            case OBJECT:  return QmfData.getLong(_objects[slot]);
+            default:      return 0;
+        }
+    }
+
+    /**
+     * Return the named property as a double without boxing, as per QmfData.getDouble().
+     *
+     * @param name the property name.
+     * @return the double representation of the named property.
+     */
+    double getDouble(final String name)
+    {
+        int slot = find(name);
+        if (slot < 0)
+        {
+            return 0.0d;
+        }
+
+        switch (_types[slot])
+        {
+            case DOUBLE:  return Double.longBitsToDouble(_primitives[slot]);
+            case FLOAT:   return Float.intBitsToFloat((int)_primitives[slot]);
+            case OBJECT:  return QmfData.getDouble(_objects[slot]);
+            default:      return 0.0d;
+        }
+    }
+
+    /**
+     * Return the named property as a boolean without boxing, as per QmfData.getBoolean().
+     *
+     * @param name the property name.
+     * @return the boolean representation of the named property.
+     */
+    boolean getBoolean(final String name)
+    {
+        int slot = find(name);
+        if (slot < 0)
+        {
+            return false;
+        }
+
+        switch (_types[slot])
+        {
+            case BOOLEAN: return _primitives[slot] != 0;
+            case LONG:
+            case INTEGER:
+            case SHORT:   return _primitives[slot] > 0;
+            case OBJECT:  return QmfData.getBoolean(_objects[slot]);
+            default:      return false;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        int slot = find(key);
+        return (slot < 0) ? null : box(slot);
+    }
+
+    @Override
+    public Object put(final String key, final Object value)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException("CompactValueMap doesn't support null keys");
+        }
+
+        int slot = _layout.addSlot(key);
+        Object previous = (slot < _types.length && _types[slot] != ABSENT) ? box(slot) : null;
+        store(slot, value);
+        return previous;
+    }
+
+    @Override
+    public Object remove(final Object key)
+    {
+        int slot = find(key);
+        if (slot < 0)
+        {
+            return null;
+        }
+
+        Object previous = box(slot);
+        erase(slot);
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(_types, ABSENT);
+        Arrays.fill(_primitives, 0);
+        Arrays.fill(_objects, null);
+        _size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<String, Object>>()
+        {
+            @Override
+            public int size()
+            {
+                return _size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator()
+            {
+                return new Iterator<Map.Entry<String, Object>>()
+                {
+                    private int _next = advance(0);
+                    private int _current = -1;
+
+                    private int advance(int slot)
+                    {
+                        while (slot < _types.length && _types[slot] == ABSENT)
+                        {
+                            slot++;
+                        }
+                        return slot;
+                    }
+
+                    public boolean hasNext()
+                    {
+                        return _next < _types.length;
+                    }
+
+                    public Map.Entry<String, Object> next()
+                    {
+                        if (!hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+
+                        _current = _next;
+                        _next = advance(_next + 1);
+                        final int slot = _current;
+                        return new AbstractMap.SimpleEntry<String, Object>(_layout.name(slot), box(slot))
+                        {
+                            @Override
+                            public Object setValue(final Object value)
+                            {
+                                store(slot, value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+
+                    public void remove()
+                    {
+                        if (_current < 0 || _types[_current] == ABSENT)
+                        {
+                            throw new IllegalStateException();
+                        }
+                        erase(_current);
+                    }
+                };
+            }
+        };
+    }
+}
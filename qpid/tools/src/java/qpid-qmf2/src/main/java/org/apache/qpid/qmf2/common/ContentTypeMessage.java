@@ -0,0 +1,49 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// JMS Imports
+import javax.jms.Message;
+
+/**
+ * A JMS Message that carries its own AMQP Content-Type.
+ * <p>
+ * No JMS API property is mapped to the AMQP Content-Type, so AMQPMessage has to resort to casting Messages from the
+ * Qpid client to AbstractJMSMessage. JMS providers other than the Qpid client, such as in-process transports used
+ * for testing and benchmarking, can implement this interface so that AMQPMessage can get and set the Content-Type
+ * of their Messages without depending on them.
+ *
+ * @author Fraser Adams
+ */
+public interface ContentTypeMessage extends Message
+{
+    /**
+     * Return the AMQP Content-Type of the Message.
+     * @return the AMQP Content-Type of the Message e.g. amqp/list, amqp/map etc.
+     */
+    public String getContentType();
+
+    /**
+     * Set the AMQP Content-Type of the Message.
+     * @param contentType the AMQP Content-Type of the Message e.g. amqp/list, amqp/map etc.
+     */
+    public void setContentType(String contentType);
+}
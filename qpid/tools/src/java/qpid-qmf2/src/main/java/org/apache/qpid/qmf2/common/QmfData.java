@@ -83,6 +83,21 @@ public class QmfData
         }   
     }
 
+    /**
+     * Replace the underlying Map of property values with a compact Map whose property names are shared by all the
+     * objects described by the specified SchemaClassId and which holds numeric and boolean values unboxed.
+     * <p>
+     * This is worthwhile for objects that are held for a long time in large numbers, such as the QmfConsoleData
+     * cached by a Console, the Map behaves exactly like the original as far as getValue(), setValue() and
+     * mapEncode() are concerned.
+     *
+     * @param classId the SchemaClassId describing this object, if null the values are left as they are.
+     */
+    protected final void compactValues(final SchemaClassId classId)
+    {
+        _values = CompactValueMap.create(classId, _values);
+    }
+
     /**
      * Get the state of the _subtypes Map, (generally used when serialising method request/response arguments.
      *
@@ -324,6 +339,10 @@ public class QmfData
      */
     public final boolean getBooleanValue(final String name)
     {
+        if (_values instanceof CompactValueMap)
+        { // Avoid boxing the value just to unbox it again.
+            return ((CompactValueMap)_values).getBoolean(name);
+        }
         return getBoolean(getValue(name));
     }
 
@@ -335,6 +354,10 @@ public class QmfData
      */
     public final long getLongValue(final String name)
     {
+        if (_values instanceof CompactValueMap)
+        { // Avoid boxing the value just to unbox it again.
+            return ((CompactValueMap)_values).getLong(name);
+        }
         return getLong(getValue(name));
     }
 
@@ -346,6 +369,10 @@ public class QmfData
      */
     public final double getDoubleValue(final String name)
     {
+        if (_values instanceof CompactValueMap)
+        { // Avoid boxing the value just to unbox it again.
+            return ((CompactValueMap)_values).getDouble(name);
+        }
         return getDouble(getValue(name));
     }
 
@@ -84,6 +84,10 @@ import org.apache.qpid.messaging.util.AddressParser;
  * <p>
  * The Expression structure is illustrated below in the context of its relationship with QmfQuery. 
  * <img alt="" src="doc-files/QmfQuery.png">
+ * <p>
+ * The predicate is compiled into its Expression tree once, when the QmfQuery is constructed. Literal operands are
+ * parsed into their numeric forms and regular expressions are compiled at that point, so evaluate() may be called
+ * repeatedly (and concurrently) against large numbers of objects without re-parsing anything.
  *
  *
  * @author Fraser Adams
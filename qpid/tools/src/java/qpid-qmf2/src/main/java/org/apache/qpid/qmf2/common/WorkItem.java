@@ -365,6 +365,31 @@ public class WorkItem
         return _handle;
     }
 
+    /**
+     * Return the identity of the object that this WorkItem refers to if a newer WorkItem of the same type referring
+     * to the same object makes this one redundant, for example a newer heartbeat from the same Agent. A WorkQueue
+     * using the COALESCE OverflowPolicy, or with coalescing enabled for this WorkItem's type via
+     * WorkQueue.setCoalescing(), holds at most one pending WorkItem per type and coalesce key.
+     *
+     * @return the coalesce key, or null (the default) if this WorkItem may not be replaced by a newer one.
+     */
+    public Object getCoalesceKey()
+    {
+        return null;
+    }
+
+    /**
+     * Combine this pending WorkItem with a newer WorkItem that has the same type and coalesce key, called by a
+     * WorkQueue that coalesces this WorkItem's type whilst this WorkItem is still pending.
+     *
+     * @param newer the newer WorkItem.
+     * @return the WorkItem to hold on the WorkQueue in place of this one, by default simply the newer WorkItem.
+     */
+    protected WorkItem coalesce(final WorkItem newer)
+    {
+        return newer;
+    }
+
     /**              
      * Return the payload of the work item.
      * @return the payload of the work item.
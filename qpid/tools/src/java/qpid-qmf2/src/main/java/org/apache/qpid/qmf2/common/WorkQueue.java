@@ -21,21 +21,311 @@
 package org.apache.qpid.qmf2.common;
 
 // Misc Imports
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This is an implementation of a QMF2 WorkQueue. In practice this is likely to be used by an Agent or Console.
+ * <p>
+ * By default the WorkQueue is unbounded, which is fine for applications that retrieve their WorkItems promptly, but
+ * an application that is slow to do so, or that doesn't retrieve them at all, can cause the WorkQueue to grow without
+ * limit. Calling setCapacity() bounds the WorkQueue and selects what happens when a WorkItem is added to a full
+ * WorkQueue, see OverflowPolicy.
+ * <p>
+ * WorkItems may be retrieved one at a time via getNextWorkitem() or in batches via drainTo(), which retrieves
+ * all the available WorkItems (up to a maximum) whilst taking the WorkQueue's lock only once.
+ * <p>
+ * Coalescing may also be enabled for particular types of WorkItem via setCoalescing(), independently of the
+ * capacity and OverflowPolicy, in which case all other types of WorkItem are still queued in order.
  *
  * @author Fraser Adams
  */
 public class WorkQueue
 {
     /**
-     * Used to implement a thread safe queue of WorkItem objects
+     * The policy applied when a WorkItem is added to a WorkQueue that has reached its capacity.
      */
-    private BlockingQueue<WorkItem> _workQueue = new LinkedBlockingQueue<WorkItem>();
+    public enum OverflowPolicy
+    {
+        /**
+         * Block the thread adding the WorkItem until there is space. N.B. the thread adding WorkItems is usually
+         * the JMS MessageListener thread, so blocking it will hold up all the Console's or Agent's asynchronous
+         * processing until the application catches up.
+         */
+        BLOCK,
+        /**
+         * Discard the oldest WorkItem on the WorkQueue to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the new WorkItem.
+         */
+        DROP_NEWEST,
+        /**
+         * Replace any WorkItem already on the WorkQueue that refers to the same object as the new one (see
+         * WorkItem.getCoalesceKey()) with the new WorkItem, or with the two combined (see WorkItem.coalesce()), so
+         * there is at most one pending WorkItem of a given type per object. This applies whether or not the
+         * WorkQueue is full. If there is no such WorkItem and the WorkQueue is full the oldest WorkItem is discarded
+         * as per DROP_OLDEST.
+         */
+        COALESCE;
+    }
+
+    /**
+     * Identifies the object that a coalescable WorkItem refers to, WorkItems only coalesce with WorkItems of the
+     * same type.
+     */
+    private static final class CoalesceKey
+    {
+        private final WorkItem.WorkItemType _type;
+        private final Object _key;
+
+        CoalesceKey(final WorkItem.WorkItemType type, final Object key)
+        {
+            _type = type;
+            _key = key;
+        }
+
+        @Override
+        public boolean equals(final Object rhs)
+        {
+            if (rhs instanceof CoalesceKey)
+            {
+                CoalesceKey that = (CoalesceKey)rhs;
+                return _type == that._type && _key.equals(that._key);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _type.hashCode()*31 + _key.hashCode();
+        }
+    }
+
+    /**
+     * Holds a WorkItem on the WorkQueue, the WorkItem held is replaced when a newer WorkItem coalesces with it.
+     */
+    private static final class Slot
+    {
+        private WorkItem _item;
+        private final CoalesceKey _key;
+
+        Slot(final WorkItem item, final CoalesceKey key)
+        {
+            _item = item;
+            _key = key;
+        }
+    }
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _notEmpty = _lock.newCondition();
+    private final Condition _notFull = _lock.newCondition();
+
+    /**
+     * Used to implement a thread safe queue of WorkItem objects, guarded by _lock.
+     */
+    private final Deque<Slot> _workQueue = new ArrayDeque<Slot>();
+
+    /**
+     * The Slots on the WorkQueue holding coalescable WorkItems, only used for the types of WorkItem that coalesce.
+     */
+    private final Map<CoalesceKey, Slot> _coalescable = new HashMap<CoalesceKey, Slot>();
+
+    /**
+     * The types of WorkItem that coalesce whatever the OverflowPolicy, see setCoalescing().
+     */
+    private final Set<WorkItem.WorkItemType> _coalescing = EnumSet.noneOf(WorkItem.WorkItemType.class);
+
+    private int _capacity = 0; // Zero means unbounded.
+    private OverflowPolicy _policy = OverflowPolicy.BLOCK;
+    private long _droppedCount = 0;
+    private long _coalescedCount = 0;
+
+    /**
+     * Set the maximum number of WorkItems that may be pending on the WorkQueue and the policy to apply when a
+     * WorkItem is added to a full WorkQueue. If the WorkQueue currently holds more than capacity WorkItems then
+     * the oldest are discarded, unless the policy is BLOCK.
+     *
+     * @param capacity the maximum number of pending WorkItems, zero (the default) means unbounded.
+     * @param policy the OverflowPolicy to apply when the WorkQueue is full.
+     */
+    public void setCapacity(final int capacity, final OverflowPolicy policy)
+    {
+        _lock.lock();
+        try
+        {
+            _capacity = (capacity < 0) ? 0 : capacity;
+            _policy = (policy == null) ? OverflowPolicy.BLOCK : policy;
+            pruneCoalescable();
+
+            if (_policy != OverflowPolicy.BLOCK)
+            {
+                while (isFull())
+                {
+                    dequeue();
+                    _droppedCount++;
+                }
+            }
+            _notFull.signalAll();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Enable or disable coalescing of the specified type of WorkItem whatever the OverflowPolicy. A newer WorkItem
+     * of that type replaces, or is combined with, a pending WorkItem of the same type with the same coalesce key (see
+     * WorkItem.getCoalesceKey()) as per the COALESCE OverflowPolicy, whilst other types of WorkItem are unaffected.
+     *
+     * @param type the type of WorkItem.
+     * @param coalesce true to coalesce WorkItems of the specified type.
+     */
+    public void setCoalescing(final WorkItem.WorkItemType type, final boolean coalesce)
+    {
+        _lock.lock();
+        try
+        {
+            if (coalesce)
+            {
+                _coalescing.add(type);
+            }
+            else
+            {
+                _coalescing.remove(type);
+                pruneCoalescable();
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Return true if WorkItems of the specified type coalesce, either because the OverflowPolicy is COALESCE or
+     * because coalescing has been enabled for the type via setCoalescing().
+     *
+     * @param type the type of WorkItem.
+     * @return true if WorkItems of the specified type coalesce.
+     */
+    public boolean isCoalescing(final WorkItem.WorkItemType type)
+    {
+        _lock.lock();
+        try
+        {
+            return coalesces(type);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Return true if WorkItems of the specified type coalesce, must be called with _lock held.
+     *
+     * @param type the type of WorkItem.
+     * @return true if WorkItems of the specified type coalesce.
+     */
+    private boolean coalesces(final WorkItem.WorkItemType type)
+    {
+        return _policy == OverflowPolicy.COALESCE || _coalescing.contains(type);
+    }
+
+    /**
+     * Stop tracking the pending WorkItems of types that no longer coalesce, must be called with _lock held.
+     */
+    private void pruneCoalescable()
+    {
+        for (Iterator<CoalesceKey> i = _coalescable.keySet().iterator(); i.hasNext();)
+        {
+            if (!coalesces(i.next()._type))
+            {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Return the maximum number of WorkItems that may be pending on the WorkQueue.
+     * @return the maximum number of WorkItems that may be pending on the WorkQueue, zero means unbounded.
+     */
+    public int getCapacity()
+    {
+        _lock.lock();
+        try
+        {
+            return _capacity;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Return the policy applied when a WorkItem is added to a full WorkQueue.
+     * @return the policy applied when a WorkItem is added to a full WorkQueue.
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        _lock.lock();
+        try
+        {
+            return _policy;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of WorkItems that have been discarded because the WorkQueue was full.
+     * @return the number of WorkItems that have been discarded because the WorkQueue was full.
+     */
+    public long getDroppedCount()
+    {
+        _lock.lock();
+        try
+        {
+            return _droppedCount;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of WorkItems that have been replaced by a newer WorkItem referring to the same object.
+     * @return the number of WorkItems that have been replaced by a newer WorkItem referring to the same object.
+     */
+    public long getCoalescedCount()
+    {
+        _lock.lock();
+        try
+        {
+            return _coalescedCount;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
 
     /**
      * Return the count of pending WorkItems that can be retrieved.
@@ -43,7 +333,39 @@ public class WorkQueue
      */
     public int size()
     {
-        return _workQueue.size();
+        _lock.lock();
+        try
+        {
+            return _workQueue.size();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Return true if the WorkQueue has reached its capacity, must be called with _lock held.
+     * @return true if the WorkQueue has reached its capacity.
+     */
+    private boolean isFull()
+    {
+        return _capacity > 0 && _workQueue.size() >= _capacity;
+    }
+
+    /**
+     * Remove the WorkItem at the head of the WorkQueue, must be called with _lock held and the WorkQueue non-empty.
+     * @return the WorkItem at the head of the WorkQueue.
+     */
+    private WorkItem dequeue()
+    {
+        Slot slot = _workQueue.removeFirst();
+        if (slot._key != null && _coalescable.get(slot._key) == slot)
+        { // The key may now map to a newer Slot if coalescing was disabled then enabled again.
+            _coalescable.remove(slot._key);
+        }
+        _notFull.signal();
+        return slot._item;
     }
 
     /**
@@ -53,14 +375,23 @@ public class WorkQueue
      */
     public WorkItem getNextWorkitem()
     {
+        _lock.lock();
         try
         {
-            return _workQueue.take();
+            while (_workQueue.isEmpty())
+            {
+                _notEmpty.await();
+            }
+            return dequeue();
         }
         catch (InterruptedException ie)
         {
             return null;
         }
+        finally
+        {
+            _lock.unlock();
+        }
     }
 
     /**
@@ -71,36 +402,168 @@ public class WorkQueue
      */
     public WorkItem getNextWorkitem(long timeout)
     {
+        _lock.lock();
         try
         {
-            return _workQueue.poll(timeout, TimeUnit.SECONDS);
+            long nanos = TimeUnit.SECONDS.toNanos(timeout);
+            while (_workQueue.isEmpty())
+            {
+                if (nanos <= 0)
+                {
+                    return null;
+                }
+                nanos = _notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
         }
         catch (InterruptedException ie)
         {
             return null;
         }
+        finally
+        {
+            _lock.unlock();
+        }
     }
 
     /**
-     * Adds a WorkItem to the WorkQueue. 
+     * Removes up to max pending WorkItems from the WorkQueue and adds them, oldest first, to the supplied Collection.
+     * This method doesn't block, if there are no pending WorkItems it returns zero immediately.
+     *
+     * @param items the Collection to add the WorkItems to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @return the number of WorkItems added to items.
+     */
+    public int drainTo(final Collection<? super WorkItem> items, final int max)
+    {
+        return drainTo(items, max, 0);
+    }
+
+    /**
+     * Removes up to max pending WorkItems from the WorkQueue and adds them, oldest first, to the supplied Collection,
+     * waiting for up to timeout seconds for a WorkItem to become available if there are none pending.
+     *
+     * @param items the Collection to add the WorkItems to.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of WorkItems added to items, zero if the timeout expired or the wait was interrupted.
+     */
+    public int drainTo(final Collection<? super WorkItem> items, final int max, final long timeout)
+    {
+        _lock.lock();
+        try
+        {
+            long nanos = TimeUnit.SECONDS.toNanos(timeout);
+            while (_workQueue.isEmpty())
+            {
+                if (nanos <= 0)
+                {
+                    return 0;
+                }
+                nanos = _notEmpty.awaitNanos(nanos);
+            }
+
+            int count = 0;
+            while (count < max && !_workQueue.isEmpty())
+            {
+                items.add(dequeue());
+                count++;
+            }
+            return count;
+        }
+        catch (InterruptedException ie)
+        {
+            return 0;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Coalesce a WorkItem with the pending WorkItem that has the same CoalesceKey, if there is one, must be called
+     * with _lock held. The pending WorkItem is replaced in place, there's no need to notify as nothing has been added.
+     *
+     * @param key the CoalesceKey of the WorkItem.
+     * @param item the WorkItem being added.
+     * @return true if the WorkItem was coalesced, false if there is no pending WorkItem with the same CoalesceKey.
+     */
+    private boolean coalesce(final CoalesceKey key, final WorkItem item)
+    {
+        Slot slot = _coalescable.get(key);
+        if (slot == null)
+        {
+            return false;
+        }
+
+        slot._item = slot._item.coalesce(item);
+        _coalescedCount++;
+        return true;
+    }
+
+    /**
+     * Adds a WorkItem to the WorkQueue, applying the OverflowPolicy if the WorkQueue is full.
      *
      * @param item the WorkItem passed to the WorkQueue
      */
     public void addWorkItem(WorkItem item)
     {
-        // We wrap the blocking put() method in a loop "just in case" InterruptedException occurs
-        // if it does we retry the put otherwise we carry on, notify then exit.
-        while (true)
+        _lock.lock();
+        try
         {
-            try
+            CoalesceKey key = null;
+            if (coalesces(item.getType()) && item.getCoalesceKey() != null)
             {
-                _workQueue.put(item);
-                break;
+                key = new CoalesceKey(item.getType(), item.getCoalesceKey());
+                if (coalesce(key, item))
+                {
+                    return;
+                }
             }
-            catch (InterruptedException ie)
+
+            if (isFull())
+            {
+                if (_policy == OverflowPolicy.BLOCK)
+                { // As with the previous put() based implementation we carry on waiting if we get interrupted.
+                    while (isFull())
+                    {
+                        _notFull.awaitUninterruptibly();
+                        if (key != null && coalesce(key, item))
+                        { // A WorkItem for the same object was queued while we were blocked, so pass on the space
+                          // that we may have been woken for to another blocked producer.
+                            _notFull.signal();
+                            return;
+                        }
+                    }
+                }
+                else if (_policy == OverflowPolicy.DROP_NEWEST)
+                {
+                    _droppedCount++;
+                    return;
+                }
+                else
+                {
+                    dequeue();
+                    _droppedCount++;
+                }
+            }
+
+            Slot slot = new Slot(item, key);
+            _workQueue.addLast(slot);
+            if (key != null)
             {
-                continue;
+                _coalescable.put(key, slot);
+                if (_policy == OverflowPolicy.BLOCK)
+                { // Wake any blocked producers so those with WorkItems for the same object can coalesce with it.
+                    _notFull.signalAll();
+                }
             }
+            _notEmpty.signal();
+        }
+        finally
+        {
+            _lock.unlock();
         }
     }
 }
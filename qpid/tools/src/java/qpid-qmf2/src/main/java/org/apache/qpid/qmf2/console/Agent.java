@@ -63,6 +63,7 @@ public final class Agent extends QmfData
     private long                            _timestamp;
     private boolean                         _eventsEnabled = true;
     private boolean                         _isActive = true;
+    private int                             _schemaFetches = 0;
 
     /**
      * The main constructor, taking a java.util.Map as a parameter. In essence it "deserialises" its state from the Map.
@@ -217,6 +218,25 @@ public final class Agent extends QmfData
         }
     }
 
+    /**
+     * Request that the Agent updates the value of this object's contents without blocking the caller.
+     *
+     * @param objectId the ObjectId being queried for.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that completes with the refreshed object, or null if the object no longer exists.
+     */
+    public QmfFuture<QmfConsoleData> refreshAsync(final ObjectId objectId, final int timeout) throws QmfException
+    {
+        if (isActive())
+        {
+            return _proxy.refreshAsync(this, objectId, timeout);
+        }
+        else
+        {
+            throw new QmfException("Agent.refreshAsync() called from deactivated Agent");
+        }
+    }
+
     /**
      * Helper method to create a Map containing a QMF method request.
      *
@@ -330,6 +350,55 @@ public final class Agent extends QmfData
         invokeMethod(null, name, inArgs, replyHandle);
     }
 
+    /**
+     * Sends a method request to the Agent returning a QmfFuture for the MethodResult rather than blocking the caller.
+     * Delegates to the AgentProxy to actually send the method as it's the AgentProxy that knows about connections,
+     * sessions and messages.
+     *
+     * @param objectId the objectId of the remote object.
+     * @param name the remote method name.
+     * @param inArgs the formal parameters of the remote method name.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that completes with the MethodResult.
+     */
+    protected QmfFuture<MethodResult> invokeMethodAsync(final ObjectId objectId, final String name,
+                                                        final QmfData inArgs, final int timeout) throws QmfException
+    {
+        if (isActive())
+        {
+            return _proxy.invokeMethodAsync(this, createRequest(objectId, name, inArgs), timeout);
+        }
+        else
+        {
+            throw new QmfException("Agent.invokeMethodAsync() called from deactivated Agent");
+        }
+    }
+
+    /**
+     * Sends a method request to the Agent returning a QmfFuture for the MethodResult rather than blocking the caller.
+     *
+     * @param name the remote method name.
+     * @param inArgs the formal parameters of the remote method name.
+     * @return a QmfFuture that completes with the MethodResult.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final String name, final QmfData inArgs) throws QmfException
+    {
+        return invokeMethodAsync(null, name, inArgs, -1);
+    }
+
+    /**
+     * Sends a method request to the Agent returning a QmfFuture for the MethodResult rather than blocking the caller.
+     *
+     * @param name the remote method name.
+     * @param inArgs the formal parameters of the remote method name.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that completes with the MethodResult.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final String name, final QmfData inArgs, final int timeout) throws QmfException
+    {
+        return invokeMethodAsync(null, name, inArgs, timeout);
+    }
+
     /**
      * Remove a Subscription. Delegates to the AgentProxy to actually remove the Subscription as it's the AgentProxy
      * that really knows about subscriptions.
@@ -366,6 +435,73 @@ public final class Agent extends QmfData
         _proxy.destroy(this);
     }
 
+    /**
+     * Called by the Console when it starts fetching this Agent's schema in the background.
+     */
+    synchronized void beginSchemaFetch()
+    {
+        _schemaFetches++;
+    }
+
+    /**
+     * Called by the Console when a background fetch of this Agent's schema has completed, whether or not it
+     * succeeded. Any threads blocked in awaitSchema() are woken up once no fetches remain outstanding.
+     */
+    synchronized void endSchemaFetch()
+    {
+        _schemaFetches--;
+        if (_schemaFetches <= 0)
+        {
+            _schemaFetches = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Return true if the Console is still fetching this Agent's schema.
+     * <p>
+     * The Console makes newly discovered and restarted Agents available immediately and fetches their schema in the
+     * background, so the schema cache of an Agent may be incomplete while it is pending. Calls to Console getClasses()
+     * and getSchema() still work while the schema is pending, but they may have to query the Agent directly.
+     *
+     * @return true if the Console is still fetching this Agent's schema.
+     */
+    public synchronized boolean isSchemaPending()
+    {
+        return _schemaFetches > 0;
+    }
+
+    /**
+     * Wait until the Console has finished fetching this Agent's schema.
+     *
+     * @param timeout the maximum time in milliseconds to wait.
+     * @return true if the schema is no longer pending, false if the wait timed out.
+     */
+    public synchronized boolean awaitSchema(final long timeout)
+    {
+        long endTime = System.currentTimeMillis() + timeout;
+        while (_schemaFetches > 0)
+        {
+            // Measure remaining time to test against spurious wakeups and ensure we really have timed out
+            long remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                return false;
+            }
+
+            try
+            {
+                wait(remaining);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Clears the internally cached schema. Generally done when we wich to refresh the schema information from the
      * remote Agent.
@@ -430,7 +566,7 @@ public final class Agent extends QmfData
     public List<SchemaClass> getSchema(final SchemaClassId classId)
     {
         SchemaClass schema = _schemaCache.get(classId);
-        if (schema == SchemaClass.EMPTY_SCHEMA)
+        if (schema == null || schema == SchemaClass.EMPTY_SCHEMA)
         {
             return Collections.emptyList();
         }
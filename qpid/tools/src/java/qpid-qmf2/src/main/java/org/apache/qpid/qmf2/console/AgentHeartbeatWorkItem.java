@@ -44,5 +44,15 @@ public final class AgentHeartbeatWorkItem extends AgentAccessWorkItem
     {
         super(WorkItemType.AGENT_HEARTBEAT, null, newParams(agent, null));
     }
+
+    /**
+     * A newer heartbeat from the same Agent makes a pending heartbeat redundant.
+     * @return the Agent that sent the heartbeat.
+     */
+    @Override
+    public Object getCoalesceKey()
+    {
+        return getAgent();
+    }
 }
 
@@ -75,6 +75,26 @@ public interface AgentProxy
      */
     public MethodResult invokeMethod(Agent agent, Map<String, Object> content, String replyHandle, int timeout) throws QmfException;
 
+    /**
+     * Request that the Agent update the value of an object's contents without blocking the caller.
+     *
+     * @param agent the Agent to get the refresh from.
+     * @param objectId the ObjectId being queried for.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that completes with the refreshed object, or null if the object no longer exists.
+     */
+    public QmfFuture<QmfConsoleData> refreshAsync(Agent agent, ObjectId objectId, int timeout);
+
+    /**
+     * Invoke the named method on the named Agent without blocking the caller.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @param timeout the maximum time to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that completes with the MethodResult.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(Agent agent, Map<String, Object> content, int timeout) throws QmfException;
+
     /**
      * Remove a Subscription.
      *
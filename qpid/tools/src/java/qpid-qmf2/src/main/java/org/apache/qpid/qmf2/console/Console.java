@@ -39,15 +39,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 // Misc Imports
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.AMQPMessage;
@@ -65,8 +73,6 @@ import org.apache.qpid.qmf2.common.QmfQuery;
 import org.apache.qpid.qmf2.common.QmfQueryTarget;
 import org.apache.qpid.qmf2.common.SchemaClass;
 import org.apache.qpid.qmf2.common.SchemaClassId;
-import org.apache.qpid.qmf2.common.SchemaEventClass;
-import org.apache.qpid.qmf2.common.SchemaObjectClass;
 import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.common.WorkQueue;
 
@@ -92,7 +98,20 @@ import org.apache.qpid.messaging.util.AddressParser;
  * <img alt="" src="doc-files/Console.png">
  * <p>
  * All blocking calls are considered thread safe - it is possible to have a multi-threaded implementation
- * have multiple blocking calls in flight simultaneously.
+ * have multiple blocking calls in flight simultaneously. Each synchronous request is sent with a unique
+ * correlationId and its responses are routed back to the waiting thread via a table of pending requests, so a slow
+ * Agent only delays the threads that are actually waiting on it. Interrupting a thread blocked on a request cancels
+ * that request and removeConnection() cancels all outstanding requests.
+ * <p>
+ * The getObjectsAsync(), getSchemaAsync(), refreshAsync() and invokeMethodAsync() methods (and their counterparts on
+ * Agent) send the same requests without blocking the caller, returning a QmfFuture instead. The QmfFuture completes
+ * on the Console's reply thread as the response(s) arrive, so any number of requests may be in flight without a
+ * thread being tied up for each of them. QmfFutureListeners may be supplied with an Executor to run them elsewhere.
+ * <p>
+ * For very large queries getObjectsIterator() returns a QueryResultIterator that decodes the responses lazily as the
+ * application iterates, optionally retaining only a subset of each object's properties. Only a few undecoded
+ * responses are queued for the iterator at a time, so the Agents' responses are held back by JMS flow control
+ * whilst the application is behind.
  * <p>
  * <h3>Subscriptions</h3>
  * This implementation of the QMF2 API has full support for QMF2 Subscriptions where they are supported by an Agent.
@@ -196,6 +215,11 @@ public final class Console implements MessageListener, AgentProxy
 {
     private static final Logger _log = LoggerFactory.getLogger(Console.class);
 
+    /**
+     * The maximum number of undecoded responses queued for a QueryResultIterator.
+     */
+    private static final int ITERATOR_CAPACITY = 4;
+
     //                                             Attributes
     // ********************************************************************************************************
 
@@ -221,6 +245,13 @@ public final class Console implements MessageListener, AgentProxy
      */
     private Map<String, SubscriptionManager> _subscriptionById = new ConcurrentHashMap<String, SubscriptionManager>();
 
+    /**
+     * This Map is the table of synchronous requests that are awaiting responses, keyed by JMS correlationId.
+     * Responses arriving on the _replyAddress are routed to the PendingRequest by the ResponseListener, which means
+     * that many threads can have requests in flight at once without serialising on a Console wide lock.
+     */
+    private Map<String, PendingRequest> _pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+
     /**
      * Used to implement a thread safe queue of WorkItem objects used to implement the Notifier API
      */
@@ -279,10 +310,17 @@ public final class Console implements MessageListener, AgentProxy
      * replyTimeout is the default maximum time we wait for synchronous responses
      * agentTimeout is the maximum time we wait for any Agent activity before expiring the Agent
      * subscriptionDuration is the default maximum time we keep a subscription active
+     * schemaFetchThreads is the maximum number of Agents whose schema may be fetched concurrently
      */
     private int _replyTimeout = 10;
     private int _agentTimeout = 60; // 1 minute
     private int _subscriptionDuration = 300; // 5 minutes
+    private int _schemaFetchThreads = 4;
+
+    /**
+     * The optional persistent cache of SchemaClass shared by all Agents, enabled by the schemaCacheDir option.
+     */
+    private DiskSchemaCache _diskSchemaCache = null;
 
     /**
      * This timer is used tidy up Subscription references where a Subscription has expired. Ideally a client should
@@ -290,12 +328,19 @@ public final class Console implements MessageListener, AgentProxy
      */
     private Timer _timer;
 
+    /**
+     * This executor fetches the schema of newly discovered and restarted Agents in the background so that the
+     * JMS MessageListener thread isn't blocked by schema queries when many Agents appear at once.
+     */
+    private ExecutorService _schemaExecutor;
+
     /**
      * Various JMS related fields
      */
     private Connection      _connection = null;
     private Session         _asyncSession;
     private Session         _syncSession; 
+    private Session         _replySession;
     private MessageConsumer _eventConsumer;
     private MessageConsumer _responder; 
     private MessageConsumer _asyncResponder;
@@ -304,9 +349,418 @@ public final class Console implements MessageListener, AgentProxy
     private Destination     _replyAddress;
     private Destination     _asyncReplyAddress;
 
+    /**
+     * A JMS Session is single threaded, but requests are created and sent by any number of application threads
+     * concurrently, so _sessionLock serialises all use of _syncSession and its MessageProducers.
+     */
+    private final Object _sessionLock = new Object();
+
+    /**
+     * MessageListener for the synchronous _replyAddress. Each response is routed by its JMS correlationId to
+     * the PendingRequest that is waiting for it.
+     */
+    private final class ResponseListener implements MessageListener
+    {
+        public void onMessage(final Message message)
+        {
+            try
+            {
+                String correlationId = message.getJMSCorrelationID();
+                PendingRequest request = (correlationId == null) ? null : _pendingRequests.get(correlationId);
+                if (request == null)
+                { // Most likely a late response to an earlier request that timed out, so we simply drop it.
+                    _log.debug("Ignoring response with unknown correlationId {}", correlationId);
+                }
+                else
+                {
+                    request.deliver(message);
+                }
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in ResponseListener.onMessage()", jmse.getMessage());
+            }
+        }
+    }
+
+    /**
+     * An AsyncRequest is the PendingRequest used by the QmfFuture based asynchronous API. Rather than being queued for
+     * a blocked thread each response is passed to onResponse() on the ResponseListener thread as it arrives, and once
+     * the last response has arrived (or the request has timed out) the QmfFuture is completed with the value returned
+     * by getResult(). As with the blocking calls the timeout applies to each response in turn.
+     * <p>
+     * However the QmfFuture completes, the request's correlationIds are released and its timeout is cancelled.
+     */
+    private abstract class AsyncRequest<T> extends PendingRequest
+    {
+        private final QmfFuture<T> _future = new QmfFuture<T>();
+        private final long _timeout;
+        private TimerTask _timeoutTask = null;
+        private boolean _finished = false;
+
+        /**
+         * Create an AsyncRequest.
+         * @param timeout the time in seconds to wait for each response, a value of -1 means use the default timeout.
+         */
+        AsyncRequest(final int timeout)
+        {
+            _timeout = ((timeout < 1) ? _replyTimeout : timeout)*1000l;
+            _future.addListener(new QmfFutureListener<T>()
+            {
+                public void onSuccess(final T result)
+                {
+                    cancel();
+                }
+
+                public void onFailure(final Throwable cause)
+                {
+                    cancel();
+                }
+            });
+        }
+
+        /**
+         * Handle a response Message. Called with the AsyncRequest lock held.
+         *
+         * @param response the response Message.
+         * @return true if this was the last response expected by the request.
+         */
+        abstract boolean onResponse(Message response) throws JMSException;
+
+        /**
+         * Return the result used to complete the QmfFuture. Called with the AsyncRequest lock held.
+         *
+         * @param timedOut true if the request timed out before its last response arrived.
+         * @return the result of the request.
+         */
+        abstract T getResult(boolean timedOut) throws QmfException;
+
+        /**
+         * Return the QmfFuture representing the result of this request.
+         * @return the QmfFuture representing the result of this request.
+         */
+        QmfFuture<T> getFuture()
+        {
+            return _future;
+        }
+
+        /**
+         * Start the timeout for the first response, called once the request has been sent.
+         */
+        void start()
+        {
+            armTimeout();
+        }
+
+        /**
+         * (Re)start the timeout for the next response.
+         */
+        private void armTimeout()
+        {
+            synchronized(this)
+            {
+                if (_timeoutTask != null)
+                {
+                    _timeoutTask.cancel();
+                    _timeoutTask = null;
+                }
+
+                if (_finished || isCancelled())
+                {
+                    return;
+                }
+
+                _timeoutTask = new TimerTask()
+                {
+                    public void run()
+                    {
+                        finish(true);
+                    }
+                };
+
+                try
+                {
+                    _timer.schedule(_timeoutTask, _timeout);
+                    return;
+                }
+                catch (IllegalStateException ise)
+                { // The Timer gets cancelled by removeConnection()
+                    _timeoutTask = null;
+                }
+            }
+            fail(new QmfException("Console connection has been removed"));
+        }
+
+        /**
+         * Pass a response Message to onResponse() and complete the QmfFuture if it was the last one expected.
+         *
+         * @param response the response Message.
+         */
+        @Override
+        void deliver(final Message response)
+        {
+            try
+            {
+                if (accept(response))
+                {
+                    finish(false);
+                }
+                else
+                {
+                    armTimeout();
+                }
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in AsyncRequest.deliver()", jmse.getMessage());
+                fail(new QmfException(jmse.getMessage()));
+            }
+        }
+
+        private synchronized boolean accept(final Message response) throws JMSException
+        {
+            return !_finished && onResponse(response);
+        }
+
+        /**
+         * Complete the QmfFuture with the value returned by getResult(), only the first call has any effect.
+         * The QmfFuture is completed without holding the AsyncRequest lock as it calls the QmfFutureListeners.
+         *
+         * @param timedOut true if the request timed out before its last response arrived.
+         */
+        void finish(final boolean timedOut)
+        {
+            T result = null;
+            QmfException failure = null;
+            synchronized(this)
+            {
+                if (_finished)
+                {
+                    return;
+                }
+                _finished = true;
+
+                try
+                {
+                    result = getResult(timedOut);
+                }
+                catch (QmfException qmfe)
+                {
+                    failure = qmfe;
+                }
+            }
+
+            if (failure == null)
+            {
+                _future.complete(result);
+            }
+            else
+            {
+                _future.fail(failure);
+            }
+        }
+
+        /**
+         * Complete the QmfFuture with a failure.
+         *
+         * @param cause the reason the request failed.
+         */
+        void fail(final QmfException cause)
+        {
+            synchronized(this)
+            {
+                _finished = true;
+            }
+            _future.fail(cause);
+        }
+
+        /**
+         * Cancel the request, releasing its correlationIds so that any late responses are dropped and cancelling
+         * the QmfFuture if it hasn't already completed.
+         */
+        @Override
+        void cancel()
+        {
+            synchronized(this)
+            {
+                if (isCancelled())
+                {
+                    return;
+                }
+                super.cancel();
+                _finished = true;
+                if (_timeoutTask != null)
+                {
+                    _timeoutTask.cancel();
+                    _timeoutTask = null;
+                }
+            }
+            releaseRequest(this);
+            _future.cancel(false);
+        }
+    }
+
+    /**
+     * A QueryRequest is an AsyncRequest that sends a _query_request to a number of Agents in a "scatter-gather"
+     * fashion, collecting their responses (including any "partial" continuations) until every Agent has sent its
+     * last response.
+     */
+    private abstract class QueryRequest<T> extends AsyncRequest<T>
+    {
+        private final Map<String, Agent> _outstanding = new HashMap<String, Agent>();
+
+        /**
+         * Create a QueryRequest.
+         * @param timeout the time in seconds to wait for each response, a value of -1 means use the default timeout.
+         */
+        QueryRequest(final int timeout)
+        {
+            super(timeout);
+        }
+
+        /**
+         * Create the _query_request Message to send to the specified Agent.
+         *
+         * @param agent the Agent being queried.
+         * @return the _query_request Message.
+         */
+        abstract MapMessage createRequest(Agent agent) throws JMSException;
+
+        /**
+         * Add the results from a _query_response Message. Called with the AsyncRequest lock held.
+         *
+         * @param response the _query_response Message.
+         * @param agent the Agent that sent the response.
+         */
+        abstract void addResults(Message response, Agent agent) throws JMSException;
+
+        /**
+         * Send the query to each of the Agents in the list.
+         *
+         * @param agentList the Agents being queried.
+         * @return the QmfFuture representing the result of the query.
+         */
+        QmfFuture<T> send(final List<Agent> agentList)
+        {
+            try
+            {
+                synchronized(this)
+                { // Hold the lock whilst scattering so that no response is handled before _outstanding is populated.
+                    for (Agent agent : agentList)
+                    {
+                        _outstanding.put(sendRequest(this, createRequest(agent)), agent);
+                    }
+                }
+
+                if (agentList.size() == 0)
+                {
+                    finish(false);
+                }
+                else
+                {
+                    start();
+                }
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in QueryRequest.send()", jmse.getMessage());
+                fail(new QmfException(jmse.getMessage()));
+            }
+            return getFuture();
+        }
+
+        @Override
+        boolean onResponse(final Message response) throws JMSException
+        {
+            String correlationId = response.getJMSCorrelationID();
+            Agent agent = _outstanding.get(correlationId);
+            if (agent != null)
+            {
+                if (!response.propertyExists("partial"))
+                {
+                    _outstanding.remove(correlationId);
+                }
+                addResults(response, agent);
+            }
+            return _outstanding.size() == 0;
+        }
+    }
+
     //                                  private implementation methods
     // ********************************************************************************************************
 
+    /**
+     * Send a synchronous request, registering a new correlationId for it in the pending request table so that
+     * the ResponseListener can route its response(s) back to the supplied PendingRequest.
+     *
+     * @param pending the PendingRequest that will receive the response(s).
+     * @param request the request Message to send.
+     * @return the correlationId allocated to the request.
+     */
+    private String sendRequest(final PendingRequest pending, final Message request) throws JMSException
+    {
+        String correlationId = pending.createCorrelationId();
+        request.setJMSReplyTo(_replyAddress);
+        request.setJMSCorrelationID(correlationId);
+        _pendingRequests.put(correlationId, pending);
+        sendRequest(request);
+        return correlationId;
+    }
+
+    /**
+     * Send a request Message to the QMF direct address. Only the send itself is serialised, which is much
+     * shorter than the request/response round trip.
+     *
+     * @param request the request Message to send.
+     */
+    private void sendRequest(final Message request) throws JMSException
+    {
+        synchronized(_sessionLock)
+        {
+            _requester.send(request);
+        }
+    }
+
+    /**
+     * Create a MapMessage on _syncSession, holding _sessionLock as the Session is shared between threads.
+     *
+     * @return a new MapMessage.
+     */
+    private MapMessage createMapMessage() throws JMSException
+    {
+        synchronized(_sessionLock)
+        {
+            return _syncSession.createMapMessage();
+        }
+    }
+
+    /**
+     * Create an amqp/list Message on _syncSession, holding _sessionLock as the Session is shared between threads.
+     *
+     * @return a new amqp/list Message.
+     */
+    private Message createListMessage() throws JMSException
+    {
+        synchronized(_sessionLock)
+        {
+            return AMQPMessage.createListMessage(_syncSession);
+        }
+    }
+
+    /**
+     * Remove all of the correlationIds owned by a PendingRequest from the pending request table. This must be
+     * called once the caller has finished with the PendingRequest, whether or not it completed successfully.
+     *
+     * @param pending the PendingRequest being released.
+     */
+    private void releaseRequest(final PendingRequest pending)
+    {
+        for (String correlationId : pending.getCorrelationIds())
+        {
+            _pendingRequests.remove(correlationId);
+        }
+    }
+
     /**
      * Send an asynchronous _agent_locate_request to the topic broadcast address with the subject
      * "console.request.agent_locate". This should cause all active Agents to respond on the async
@@ -316,14 +770,17 @@ public final class Console implements MessageListener, AgentProxy
     {
         try
         {
-            Message request = AMQPMessage.createListMessage(_syncSession);
+            Message request = createListMessage();
             request.setJMSReplyTo(_asyncReplyAddress);
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_agent_locate_request");
             request.setStringProperty("qpid.subject", "console.request.agent_locate");
             AMQPMessage.setList(request, Collections.emptyList());
-            _broadcaster.send(request);
+            synchronized(_sessionLock)
+            {
+                _broadcaster.send(request);
+            }
         }
         catch (JMSException jmse)
         {
@@ -365,6 +822,47 @@ public final class Console implements MessageListener, AgentProxy
         }
     }
 
+    /**
+     * Fetch the schema of a newly discovered or restarted Agent in the background and cache it in the Agent.
+     * <p>
+     * Schema discovery needs a number of request/response round trips to the Agent, so doing it on the JMS
+     * MessageListener thread would stall the delivery of heartbeats, events and data indications from every other
+     * Agent, which is particularly bad when a large number of Agents start at once. Instead the Agent is marked as
+     * "schema pending" and made available immediately while the schema is fetched by a bounded pool of threads.
+     *
+     * @param agent the Agent whose schema is to be fetched.
+     */
+    private void fetchSchema(final Agent agent)
+    {
+        agent.beginSchemaFetch();
+        try
+        {
+            _schemaExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        List<SchemaClassId> classes = getClasses(agent);
+                        getSchema(classes, agent); // Discover the schema for this Agent and cache it
+                    }
+                    catch (RuntimeException re)
+                    {
+                        _log.info("RuntimeException {} caught in fetchSchema()", re.getMessage());
+                    }
+                    finally
+                    {
+                        agent.endSchemaFetch();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException ree)
+        { // The Console has been disconnected.
+            agent.endSchemaFetch();
+        }
+    }
+
     /**
      * MessageListener for QMF2 Agent Events, Hearbeats and Asynchronous data indications
      *
@@ -401,8 +899,7 @@ public final class Console implements MessageListener, AgentProxy
                     if (agent.getEpoch() != originalEpoch)
                     {
                         agent.clearSchemaCache(); // Clear cache to force a lookup
-                        List<SchemaClassId> classes = getClasses(agent);
-                        getSchema(classes, agent); // Discover the schema for this Agent and cache it
+                        fetchSchema(agent); // Rediscover the schema for this Agent in the background
                         _log.info("Agent {} has been restarted", agentName);
                         if (_discoverAgents && (_agentQuery == null || _agentQuery.evaluate(agent)))
                         {
@@ -421,8 +918,7 @@ public final class Console implements MessageListener, AgentProxy
                 else
                 { // This block handles Agents that haven't already been registered
                     Agent agent = new Agent(AMQPMessage.getMap(message), this);
-                    List<SchemaClassId> classes = getClasses(agent);
-                    getSchema(classes, agent); // Discover the schema for this Agent and cache it
+                    fetchSchema(agent); // Discover the schema for this Agent and cache it in the background
                     _agents.put(agentName, agent);
                     _log.info("Adding Agent {}", agentName);
 
@@ -561,13 +1057,16 @@ public final class Console implements MessageListener, AgentProxy
                 if (AMQPMessage.isAMQPList(message))
                 {
                     String consoleHandle = handle.getCorrelationId();
-                    if (consoleHandle != null && _subscriptionByHandle.containsKey(consoleHandle))
+                    SubscriptionManager manager = (consoleHandle == null) ? null :
+                                                  _subscriptionByHandle.get(consoleHandle);
+                    if (manager != null)
                     { // If we have a valid consoleHandle the data has come from a "real" Subscription.
+                        // Agents only send the properties that have changed so merge with the previous values.
                         List<Map> list = AMQPMessage.getList(message);
                         List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>(list.size());
                         for (Map m : list)
                         {
-                            resultList.add(new QmfConsoleData(m, agent));
+                            resultList.add(manager.merge(m, agent));
                         }
                         _eventListener.onEvent(
                             new SubscriptionIndicationWorkItem(new SubscribeIndication(consoleHandle, resultList))
@@ -611,8 +1110,7 @@ public final class Console implements MessageListener, AgentProxy
                                     {
                                         agent.setEpoch(objectEpoch);
                                         agent.clearSchemaCache(); // Clear cache to force a lookup
-                                        List<SchemaClassId> classes = getClasses(agent);
-                                        getSchema(classes, agent); // Discover the schema for this Agent and cache it
+                                        fetchSchema(agent); // Rediscover the schema in the background
                                         _log.info("Agent {} has been restarted", agentName);
                                         if (_discoverAgents && (_agentQuery == null || _agentQuery.evaluate(agent)))
                                         {
@@ -697,66 +1195,101 @@ public final class Console implements MessageListener, AgentProxy
     private List<QmfConsoleData> getObjects(final Agent agent, final QmfData query,
                                             final String replyHandle, int timeout)
     {
-        String agentName = agent.getName();
         timeout = (timeout < 1) ? _replyTimeout : timeout;
         List<QmfConsoleData> results = Collections.emptyList();
         try
         {
-            Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_query_request");
-            request.setStringProperty("qpid.subject", agentName);
+            MapMessage request = createObjectQuery(agent, query);
+            if (replyHandle != null)
+            { // If this is an asynchronous request send it and return without waiting for a response
+                request.setJMSReplyTo(_asyncReplyAddress);
+                request.setJMSCorrelationID(replyHandle);
+                sendRequest(request);
+                return results;
+            }
 
-            // Create a QMF Query for an "OBJECT" target using either a schema ID or object ID
-            String queryType = (query instanceof SchemaClassId) ? "_schema_id" : "_object_id";
-            request.setObject("_what", "OBJECT");
-            request.setObject(queryType, query.mapEncode());
+            PendingRequest pending = new PendingRequest();
+            try
+            {
+                sendRequest(pending, request);
+                boolean lastResult = true;
+                ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
+                do
+                { // Wrap in a do/while loop to cater for the case where the Agent may send partial results.
+                    Message response = pending.receive(timeout*1000);
+                    if (response == null)
+                    {
+                        _log.info("No response received in getObjects()");
+                        return partials;
+                    }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
+                    lastResult = !response.propertyExists("partial");
+                    addQueryResults(response, agent, partials);
+                } while (!lastResult);
+                results = partials;
+            }
+            finally
             {
-                _requester.send(request);
-                if (replyHandle == null)
-                {
-                    boolean lastResult = true;
-                    ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
-                    do
-                    { // Wrap in a do/while loop to cater for the case where the Agent may send partial results.
-                        Message response = _responder.receive(timeout*1000);
-                        if (response == null)
-                        {
-                            _log.info("No response received in getObjects()");
-                            return partials;
-                        }
+                releaseRequest(pending);
+            }
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in getObjects()", jmse.getMessage());
+        }
+        return results;
+    }
 
-                        lastResult = !response.propertyExists("partial");
+    /**
+     * Perform a blocking query for QmfConsoleData objects across a number of Agents in a "scatter-gather" fashion.
+     * <p>
+     * Rather than doing a full request/response round trip to each Agent in turn this method sends all of the
+     * _query_request messages up front, each with its own correlationId, then demultiplexes the responses (including
+     * any "partial" continuations) by correlationId as they arrive. The query therefore takes about as long as the
+     * slowest Agent rather than the sum of all of the Agents' response times.
+     * <p>
+     * As with the single Agent version of getObjects() the timeout is the maximum time we wait for the next response
+     * message, if that expires all data retrieved to date is returned.
+     *
+     * @param agentList the Agents being queried.
+     * @param query the ObjectId or SchemaClassId being queried for.
+     * @param timeout the time to wait for a reply from the Agents, a value of -1 means use the default timeout
+     * @return a Map of the (possibly empty) Lists of QMF Objects returned by each Agent, keyed by Agent.
+     */
+    private Map<Agent, List<QmfConsoleData>> getObjects(final List<Agent> agentList, final QmfData query, int timeout)
+    {
+        timeout = (timeout < 1) ? _replyTimeout : timeout;
+        Map<Agent, List<QmfConsoleData>> results = new LinkedHashMap<Agent, List<QmfConsoleData>>(agentList.size());
+        Map<String, Agent> outstanding = new HashMap<String, Agent>(agentList.size());
+        PendingRequest pending = new PendingRequest();
+        try
+        {
+            // Scatter the requests, one per Agent, each with a unique correlationId owned by the same PendingRequest.
+            for (Agent agent : agentList)
+            {
+                results.put(agent, new ArrayList<QmfConsoleData>());
+                outstanding.put(sendRequest(pending, createObjectQuery(agent, query)), agent);
+            }
 
-                        if (AMQPMessage.isAMQPList(response))
-                        {
-                            List<Map> mapResults = AMQPMessage.getList(response);
-                            partials.ensureCapacity(partials.size() + mapResults.size());
-                            for (Map content : mapResults)
-                            {
-                                partials.add(new QmfConsoleData(content, agent));
-                            }
-                        }
-                        else if (AMQPMessage.isAMQPMap(response))
-                        {
-                            // Error responses are returned as MapMessages, though they are being ignored here.
-                            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                        }
-                        else
-                        {
-                            _log.info("getObjects() Received response message in incorrect format");
-                        }
-                    } while (!lastResult);
-                    results = partials;
+            // Gather the responses, until all Agents have sent their last (non partial) response or we time out.
+            while (outstanding.size() > 0)
+            {
+                Message response = pending.receive(timeout*1000);
+                if (response == null)
+                {
+                    _log.info("No response received in getObjects() from {} Agents", outstanding.size());
+                    break;
+                }
+
+                String correlationId = response.getJMSCorrelationID();
+                Agent agent = outstanding.get(correlationId);
+                if (agent != null)
+                {
+                    if (!response.propertyExists("partial"))
+                    {
+                        outstanding.remove(correlationId);
+                    }
+                    addQueryResults(response, agent, results.get(agent));
                 }
             }
         }
@@ -764,9 +1297,164 @@ public final class Console implements MessageListener, AgentProxy
         {
             _log.info("JMSException {} caught in getObjects()", jmse.getMessage());
         }
+        finally
+        {
+            releaseRequest(pending);
+        }
+        return results;
+    }
+
+    /**
+     * Create a _query_request Message for an "OBJECT" target using either a SchemaClassId or an ObjectId.
+     *
+     * @param agent the Agent being queried.
+     * @param query the ObjectId or SchemaClassId being queried for.
+     * @return the _query_request Message.
+     */
+    private MapMessage createObjectQuery(final Agent agent, final QmfData query) throws JMSException
+    {
+        MapMessage request = createMapMessage();
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_query_request");
+        request.setStringProperty("qpid.subject", agent.getName());
+
+        String queryType = (query instanceof SchemaClassId) ? "_schema_id" : "_object_id";
+        request.setObject("_what", "OBJECT");
+        request.setObject(queryType, query.mapEncode());
+        return request;
+    }
+
+    /**
+     * Decode the QmfConsoleData objects from a _query_response Message and append them to the supplied List.
+     *
+     * @param response the _query_response Message.
+     * @param agent the Agent that sent the response.
+     * @param results the List of QmfConsoleData that the decoded objects are added to.
+     */
+    private void addQueryResults(final Message response, final Agent agent,
+                                 final List<QmfConsoleData> results) throws JMSException
+    {
+        if (AMQPMessage.isAMQPList(response))
+        {
+            List<Map> mapResults = AMQPMessage.getList(response);
+            for (Map content : mapResults)
+            {
+                results.add(new QmfConsoleData(content, agent));
+            }
+        }
+        else if (AMQPMessage.isAMQPMap(response))
+        {
+            // Error responses are returned as MapMessages, though they are being ignored here.
+            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+        }
+        else
+        {
+            _log.info("getObjects() Received response message in incorrect format");
+        }
+    }
+
+    /**
+     * Look up a schema in the Agent's schema cache, falling back to the persistent schema cache if one is enabled.
+     * The persistent cache is only used if the Agent's class list advertises the schema's class and hash, and a
+     * schema found there is added to the Agent's schema cache.
+     *
+     * @param schemaClassId the SchemaClassId we wish to return schema information for.
+     * @param agent the Agent the schema belongs to.
+     * @return the cached schema, or an empty List if the schema isn't cached.
+     */
+    private List<SchemaClass> getCachedSchema(final SchemaClassId schemaClassId, final Agent agent)
+    {
+        List<SchemaClass> results = agent.getSchema(schemaClassId);
+        if (results.size() == 0 && _diskSchemaCache != null)
+        {
+            SchemaClass schema = _diskSchemaCache.get(schemaClassId, getClasses(agent));
+            if (schema != null)
+            {
+                results = Collections.singletonList(schema);
+                agent.setSchema(schemaClassId, results);
+            }
+        }
         return results;
     }
 
+    /**
+     * Create a _query_request Message for a "SCHEMA" target.
+     *
+     * @param agent the Agent being queried.
+     * @param schemaClassId the SchemaClassId being queried for.
+     * @return the _query_request Message.
+     */
+    private MapMessage createSchemaQuery(final Agent agent, final SchemaClassId schemaClassId) throws JMSException
+    {
+        MapMessage request = createMapMessage();
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_query_request");
+        request.setStringProperty("qpid.subject", agent.getName());
+
+        request.setObject("_what", "SCHEMA");
+        request.setObject("_schema_id", schemaClassId.mapEncode());
+        return request;
+    }
+
+    /**
+     * Decode the SchemaClass objects from a _query_response Message and append them to the supplied List.
+     *
+     * @param response the _query_response Message.
+     * @param results the List of SchemaClass that the decoded schema are added to.
+     */
+    private void addSchemaResults(final Message response, final List<SchemaClass> results) throws JMSException
+    {
+        if (AMQPMessage.isAMQPList(response))
+        {
+            List<Map> mapResults = AMQPMessage.getList(response);
+            for (Map content : mapResults)
+            {
+                SchemaClass schema = DiskSchemaCache.createSchema(content);
+//schema.listValues();
+                results.add(schema);
+                if (_diskSchemaCache != null)
+                {
+                    _diskSchemaCache.put(schema);
+                }
+            }
+        }
+        else if (AMQPMessage.isAMQPMap(response))
+        {
+            // Error responses are returned as MapMessages, though they are being ignored here.
+            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+        }
+        else
+        {
+            _log.info("getSchema() Received response message in incorrect format");
+        }
+    }
+
+    /**
+     * Create a _method_request Message.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @return the _method_request Message.
+     */
+    private MapMessage createMethodRequest(final Agent agent, final Map<String, Object> content) throws JMSException
+    {
+        MapMessage request = createMapMessage();
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_method_request");
+        request.setStringProperty("qpid.subject", agent.getName());
+
+        for (Map.Entry<String, Object> entry : content.entrySet())
+        {
+            request.setObject(entry.getKey(), entry.getValue());
+        }
+        return request;
+    }
+
     //                                methods implementing AgentProxy interface
     // ********************************************************************************************************
 
@@ -818,48 +1506,41 @@ public final class Console implements MessageListener, AgentProxy
         {
             throw new QmfException("Called invokeMethod() with inactive agent");
         }
-        String agentName = agent.getName();
         timeout = (timeout < 1) ? _replyTimeout : timeout;
         try
         {
-            Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_method_request");
-            request.setStringProperty("qpid.subject", agentName);
-
-            for (Map.Entry<String, Object> entry : content.entrySet())
-            {
-                request.setObject(entry.getKey(), entry.getValue());
+            MapMessage request = createMethodRequest(agent, content);
+            if (replyHandle != null)
+            { // If this is an asynchronous request return without waiting for a response
+                request.setJMSReplyTo(_asyncReplyAddress);
+                request.setJMSCorrelationID(replyHandle);
+                sendRequest(request);
+                return null;
             }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
+            // If this is a synchronous request get the response
+            PendingRequest pending = new PendingRequest();
+            try
             {
-                _requester.send(request);
-                if (replyHandle == null)
-                { // If this is a synchronous request get the response
-                    Message response = _responder.receive(timeout*1000);
-                    if (response == null)
-                    {
-                        _log.info("No response received in invokeMethod()");
-                        throw new QmfException("No response received for Console.invokeMethod()");
-                    }
-                    MethodResult result = new MethodResult(AMQPMessage.getMap(response));
-                    QmfException exception = result.getQmfException();
-                    if (exception != null)
-                    {
-                        throw exception;
-                    }
-                    return result;
+                sendRequest(pending, request);
+                Message response = pending.receive(timeout*1000);
+                if (response == null)
+                {
+                    _log.info("No response received in invokeMethod()");
+                    throw new QmfException("No response received for Console.invokeMethod()");
                 }
+                MethodResult result = new MethodResult(AMQPMessage.getMap(response));
+                QmfException exception = result.getQmfException();
+                if (exception != null)
+                {
+                    throw exception;
+                }
+                return result;
+            }
+            finally
+            {
+                releaseRequest(pending);
             }
-            // If this is an asynchronous request return without waiting for a response
-            return null;
         }
         catch (JMSException jmse)
         {
@@ -868,6 +1549,100 @@ public final class Console implements MessageListener, AgentProxy
         }
     }
 
+    /**
+     * Request that the Agent update the value of an object's contents without blocking the caller.
+     * <p>
+     * Intended to by called by the AgentProxy. Shouldn't generally be called directly by Console applications.
+     *
+     * @param agent the Agent to get the refresh from.
+     * @param objectId the ObjectId being queried for
+     * @param timeout the time to wait for a reply from the Agent, a value of -1 means use the default timeout
+     * @return a QmfFuture that completes with the refreshed object, or null if the object no longer exists.
+     */
+    public QmfFuture<QmfConsoleData> refreshAsync(final Agent agent, final ObjectId objectId, final int timeout)
+    {
+        final List<QmfConsoleData> results = new ArrayList<QmfConsoleData>(1);
+        return new QueryRequest<QmfConsoleData>(timeout)
+        {
+            MapMessage createRequest(final Agent agent) throws JMSException
+            {
+                return createObjectQuery(agent, objectId);
+            }
+
+            void addResults(final Message response, final Agent agent) throws JMSException
+            {
+                addQueryResults(response, agent, results);
+            }
+
+            QmfConsoleData getResult(final boolean timedOut)
+            {
+                if (timedOut)
+                {
+                    _log.info("No response received in refreshAsync()");
+                }
+                return (results.size() == 0) ? null : results.get(0);
+            }
+        }.send(Collections.singletonList(agent));
+    }
+
+    /**
+     * Invoke the named method on the named Agent without blocking the caller.
+     * <p>
+     * Intended to by called by the AgentProxy. Shouldn't generally be called directly by Console applications.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @param timeout the time to wait for a reply from the Agent, a value of -1 means use the default timeout
+     * @return a QmfFuture that completes with the MethodResult, or fails with the QmfException returned by the Agent.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final Agent agent, final Map<String, Object> content,
+                                                     final int timeout) throws QmfException
+    {
+        if (!agent.isActive())
+        {
+            throw new QmfException("Called invokeMethodAsync() with inactive agent");
+        }
+
+        AsyncRequest<MethodResult> pending = new AsyncRequest<MethodResult>(timeout)
+        {
+            private MethodResult _result = null;
+
+            boolean onResponse(final Message response) throws JMSException
+            {
+                _result = new MethodResult(AMQPMessage.getMap(response));
+                return true;
+            }
+
+            MethodResult getResult(final boolean timedOut) throws QmfException
+            {
+                if (timedOut)
+                {
+                    _log.info("No response received in invokeMethodAsync()");
+                    throw new QmfException("No response received for Console.invokeMethodAsync()");
+                }
+
+                QmfException exception = _result.getQmfException();
+                if (exception != null)
+                {
+                    throw exception;
+                }
+                return _result;
+            }
+        };
+
+        try
+        {
+            sendRequest(pending, createMethodRequest(agent, content));
+            pending.start();
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in invokeMethodAsync()", jmse.getMessage());
+            pending.fail(new QmfException(jmse.getMessage()));
+        }
+        return pending.getFuture();
+    }
+
     /**
      * Remove a Subscription.
      *
@@ -943,7 +1718,19 @@ public final class Console implements MessageListener, AgentProxy
      *         <b>replyTimeout</b>=&lt;default for all blocking calls&gt;
      *         <b>agentTimeout</b>=&lt;default timeout for agent heartbeat&gt;,
      *         <b>subscriptionDuration</b>=&lt;default lifetime of a subscription&gt;
+     *         <b>schemaFetchThreads</b>=&lt;maximum number of Agent schemas fetched concurrently, default 4&gt;
+     *         <b>schemaCacheDir</b>=&lt;directory used to persist schema between Console instances&gt;
+     *         <b>workQueueCapacity</b>=&lt;maximum number of pending WorkItems, default 0 (unbounded)&gt;
+     *         <b>workQueueOverflow</b>=&lt;block|drop_oldest|drop_newest|coalesce, default block&gt;
+     *         <b>subscriptionCoalesce</b>=&lt;true to coalesce pending subscription indications, default false&gt;
      * </pre>
+     *        If schemaCacheDir isn't set the qpid.qmf2.schemaCacheDir system property is used, if neither is set
+     *        schema are only cached in memory. The workQueue options only apply when a Notifier is used, see
+     *        WorkQueue.OverflowPolicy for a description of the overflow policies. Setting subscriptionCoalesce
+     *        coalesces pending subscription indications, whatever the overflow policy, so that there is at most one
+     *        pending update per object per Subscription, bounding the work queue by the number of objects rather
+     *        than by how long the application has been falling behind. All other WorkItems are still delivered in
+     *        order.
      */
     public Console(String name, final String domain,
                    final QmfCallback notifier, final String options) throws QmfException
@@ -986,24 +1773,64 @@ public final class Console implements MessageListener, AgentProxy
             throw new QmfException("QmfCallback listener must be either a Notifier or QmfEventListener");
         }
 
+        // The schema cache may also be enabled for tools that use the default constructor via a system property.
+        String schemaCacheDir = System.getProperty("qpid.qmf2.schemaCacheDir");
         if (options != null)
         { // We wrap the Map in a QmfData object to avoid potential class cast issues with the parsed options
             QmfData optMap = new QmfData(new AddressParser(options).map());
             if (optMap.hasValue("replyTimeout"))
             {
-                _replyTimeout = (int)optMap.getLongValue("replyTimeout");
+                _replyTimeout = (int)optMap.getLongValue("replyTimeout");
+            }
+
+            if (optMap.hasValue("agentTimeout"))
+            {
+                _agentTimeout = (int)optMap.getLongValue("agentTimeout");
+            }
+
+            if (optMap.hasValue("subscriptionDuration"))
+            {
+                _subscriptionDuration = (int)optMap.getLongValue("subscriptionDuration");
+            }
+
+            if (optMap.hasValue("schemaFetchThreads") && optMap.getLongValue("schemaFetchThreads") > 0)
+            {
+                _schemaFetchThreads = (int)optMap.getLongValue("schemaFetchThreads");
+            }
+
+            if (optMap.hasValue("schemaCacheDir"))
+            {
+                schemaCacheDir = optMap.getStringValue("schemaCacheDir");
             }
 
-            if (optMap.hasValue("agentTimeout"))
+            if (optMap.hasValue("workQueueCapacity") || optMap.hasValue("workQueueOverflow"))
             {
-                _agentTimeout = (int)optMap.getLongValue("agentTimeout");
+                WorkQueue.OverflowPolicy policy = WorkQueue.OverflowPolicy.BLOCK;
+                if (optMap.hasValue("workQueueOverflow"))
+                {
+                    try
+                    {
+                        policy = WorkQueue.OverflowPolicy.valueOf(optMap.getStringValue("workQueueOverflow").toUpperCase());
+                    }
+                    catch (IllegalArgumentException iae)
+                    {
+                        throw new QmfException("Invalid workQueueOverflow option " + optMap.getStringValue("workQueueOverflow"));
+                    }
+                }
+                _workQueue.setCapacity((int)optMap.getLongValue("workQueueCapacity"), policy);
             }
 
-            if (optMap.hasValue("subscriptionDuration"))
+            if (optMap.hasValue("subscriptionCoalesce"))
             {
-                _subscriptionDuration = (int)optMap.getLongValue("subscriptionDuration");
+                _workQueue.setCoalescing(WorkItem.WorkItemType.SUBSCRIPTION_INDICATION,
+                                         optMap.getBooleanValue("subscriptionCoalesce"));
             }
         }
+
+        if (schemaCacheDir != null && schemaCacheDir.length() > 0)
+        {
+            _diskSchemaCache = new DiskSchemaCache(new File(schemaCacheDir));
+        }
     }
 
     /**
@@ -1090,6 +1917,19 @@ public final class Console implements MessageListener, AgentProxy
             Destination topicAddress = _syncSession.createQueue(topicBase);
             _broadcaster = _syncSession.createProducer(topicAddress);
 
+            // Executor used to fetch the schema of discovered Agents, created before any heartbeats can arrive.
+            _schemaExecutor = Executors.newFixedThreadPool(_schemaFetchThreads, new ThreadFactory()
+            {
+                private int _count = 0;
+
+                public synchronized Thread newThread(final Runnable r)
+                {
+                    Thread thread = new Thread(r, "qmf2-console-schema-" + (++_count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
             // If Asynchronous Behaviour is enabled we create the Queues used to receive async responses
             // Data Indications, QMF Events, Heartbeats etc. from the broker (or other Agents).
             if (!_disableEvents)
@@ -1119,9 +1959,12 @@ public final class Console implements MessageListener, AgentProxy
                 Destination directAddress = _syncSession.createQueue("qmf." + _domain + ".direct");
                 _requester = _syncSession.createProducer(directAddress);
 
-                // Create the JMSReplyTo _replyAddress and MessageConsumer
-                _replyAddress = _syncSession.createQueue(_address + syncReplyAddressOptions);
-                _responder = _syncSession.createConsumer(_replyAddress);
+                // Create the JMSReplyTo _replyAddress and MessageConsumer. The responses are dispatched by
+                // correlationId to the PendingRequest table, so the _responder gets its own Session and listener.
+                _replySession = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                _replyAddress = _replySession.createQueue(_address + syncReplyAddressOptions);
+                _responder = _replySession.createConsumer(_replyAddress);
+                _responder.setMessageListener(new ResponseListener());
 
                 _connection.start();
 
@@ -1191,9 +2034,17 @@ public final class Console implements MessageListener, AgentProxy
             throw new QmfException("Attempt to delete unknown connection");
         }
 
+        // Unblock any threads waiting on synchronous requests, they will be given a null (failure) response.
+        for (PendingRequest pending : _pendingRequests.values())
+        {
+            pending.cancel();
+        }
+        _pendingRequests.clear();
+
         try
         {
             _timer.cancel();
+            _schemaExecutor.shutdownNow();
             _connection.close(); // Should we close() the connection here or just stop() it ???
         }
         catch (JMSException jmse)
@@ -1402,6 +2253,47 @@ public final class Console implements MessageListener, AgentProxy
         return _workQueue.getNextWorkitem(timeout);
     }
 
+    /**
+     * Retrieves up to max pending work items in a single operation - non-blocking version.
+     * <p>
+     * This is <b>not</b> an official method specified in the QMF2 API, it allows applications that receive a lot of
+     * WorkItems to process them in batches e.g. the following usage pattern.
+     * <pre>
+     *   List&lt;WorkItem&gt; batch = new ArrayList&lt;WorkItem&gt;();
+     *   while (true)
+     *   {
+     *       notifier.waitForWorkItem(); // Assuming a BlockingNotifier has been used here
+     *       while (console.drainWorkitems(batch, 100) &gt; 0)
+     *       {
+     *           process(batch);
+     *           batch.clear();
+     *       }
+     *   }
+     * </pre>
+     *
+     * @param items the Collection that the WorkItems are added to, oldest first.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @return the number of WorkItems added to items.
+     */
+    public int drainWorkitems(final Collection<? super WorkItem> items, final int max)
+    {
+        return _workQueue.drainTo(items, max);
+    }
+
+    /**
+     * Retrieves up to max pending work items in a single operation, waiting for up to timeout seconds if there are
+     * no work items pending.
+     *
+     * @param items the Collection that the WorkItems are added to, oldest first.
+     * @param max the maximum number of WorkItems to retrieve.
+     * @param timeout the timeout in seconds. If timeout = 0 it returns immediately.
+     * @return the number of WorkItems added to items, zero if none were available.
+     */
+    public int drainWorkitems(final Collection<? super WorkItem> items, final int max, final long timeout)
+    {
+        return _workQueue.drainTo(items, max, timeout);
+    }
+
     /**
      * Releases a WorkItem instance obtained by getNextWorkItem(). Called when the application has finished
      * processing the WorkItem.
@@ -1531,8 +2423,7 @@ public final class Console implements MessageListener, AgentProxy
         results = new ArrayList<SchemaClassId>();
         try
         {
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(_replyAddress);
+            MapMessage request = createMapMessage();
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_query_request");
@@ -1540,12 +2431,11 @@ public final class Console implements MessageListener, AgentProxy
 
             // Create a QMF Query for an "SCHEMA_ID" target
             request.setObject("_what", "SCHEMA_ID");
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this) 
+            PendingRequest pending = new PendingRequest();
+            try
             {
-                _requester.send(request);
-                Message response = _responder.receive(_replyTimeout*1000);
+                sendRequest(pending, request);
+                Message response = pending.receive(_replyTimeout*1000);
                 if (response == null)
                 {
                     _log.info("No response received in getClasses()");
@@ -1573,6 +2463,10 @@ public final class Console implements MessageListener, AgentProxy
                     _log.info("getClasses() Received response message in incorrect format");
                 }
             }
+            finally
+            {
+                releaseRequest(pending);
+            }
         }
         catch (JMSException jmse)
         {
@@ -1616,65 +2510,31 @@ public final class Console implements MessageListener, AgentProxy
     public List<SchemaClass> getSchema(final SchemaClassId schemaClassId, final Agent agent)
     {
         // First look to see if there are cached results and if there are return those.
-        List<SchemaClass> results = agent.getSchema(schemaClassId);
+        List<SchemaClass> results = getCachedSchema(schemaClassId, agent);
         if (results.size() > 0)
         {
             return results;
         }
 
-        String agentName = agent.getName();
-//System.out.println("getSchema for agent " + agentName);
+//System.out.println("getSchema for agent " + agent.getName());
         results = new ArrayList<SchemaClass>();
         try
         {
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(_replyAddress);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_query_request");
-            request.setStringProperty("qpid.subject", agentName);
-
-            // Create a QMF Query for an "SCHEMA" target
-            request.setObject("_what", "SCHEMA");
-            request.setObject("_schema_id", schemaClassId.mapEncode());
-
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
+            PendingRequest pending = new PendingRequest();
+            try
             {
-                _requester.send(request);
-                Message response = _responder.receive(_replyTimeout*1000);
+                sendRequest(pending, createSchemaQuery(agent, schemaClassId));
+                Message response = pending.receive(_replyTimeout*1000);
                 if (response == null)
                 {
                     _log.info("No response received in getSchema()");
                     return Collections.emptyList();
                 }
-
-                if (AMQPMessage.isAMQPList(response))
-                {
-                    List<Map> mapResults = AMQPMessage.getList(response);
-                    for (Map content : mapResults)
-                    {
-                        SchemaClass schema = new SchemaObjectClass(content);
-                        if (schema.getClassId().getType().equals("_event"))
-                        {
-                            schema = new SchemaEventClass(content);
-                        }
-//schema.listValues();
-                        results.add(schema);
-                    }
-                }
-                else if (AMQPMessage.isAMQPMap(response))
-                {
-                    // Error responses are returned as MapMessages, though they are being ignored here.
-                    //System.out.println("Console.getSchema() no results for " + agentName);
-                    //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                    //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                }
-                else
-                {
-                    _log.info("getSchema() Received response message in incorrect format");
-                }
+                addSchemaResults(response, results);
+            }
+            finally
+            {
+                releaseRequest(pending);
             }
         }
         catch (JMSException jmse)
@@ -1685,6 +2545,85 @@ public final class Console implements MessageListener, AgentProxy
         return results;
     }
 
+    /**
+     * Return a QmfFuture for the list of all available class SchemaClass across all known Agents.
+     * <p>
+     * Cached schema are used where available. The remaining Agents are queried at the same time and the QmfFuture
+     * completes once they have all responded, or the default replyTimeout expires.
+     *
+     * @param schemaClassId the SchemaClassId we wish to return schema information for.
+     * @return a QmfFuture that completes with the List of SchemaClass.
+     */
+    public QmfFuture<List<SchemaClass>> getSchemaAsync(final SchemaClassId schemaClassId)
+    {
+        return getSchemaAsync(schemaClassId, getAgents());
+    }
+
+    /**
+     * Return a QmfFuture for the list of all available class SchemaClass from a specified Agent.
+     * <p>
+     * If the schema is cached the QmfFuture has already completed when it is returned.
+     *
+     * @param schemaClassId the SchemaClassId we wish to return schema information for.
+     * @param agent the Agent we want to retrieve the schema from
+     * @return a QmfFuture that completes with the List of SchemaClass.
+     */
+    public QmfFuture<List<SchemaClass>> getSchemaAsync(final SchemaClassId schemaClassId, final Agent agent)
+    {
+        return getSchemaAsync(schemaClassId, Collections.singletonList(agent));
+    }
+
+    /**
+     * Return a QmfFuture for the list of all available class SchemaClass from the specified Agents, querying only
+     * those Agents that don't already have the schema cached.
+     *
+     * @param schemaClassId the SchemaClassId we wish to return schema information for.
+     * @param agentList the Agents we want to retrieve the schema from
+     * @return a QmfFuture that completes with the List of SchemaClass.
+     */
+    private QmfFuture<List<SchemaClass>> getSchemaAsync(final SchemaClassId schemaClassId, final List<Agent> agentList)
+    {
+        final List<SchemaClass> results = new ArrayList<SchemaClass>();
+        List<Agent> uncached = new ArrayList<Agent>(agentList.size());
+        for (Agent agent : agentList)
+        { // First look to see if there are cached results and if there are use those.
+            List<SchemaClass> cached = getCachedSchema(schemaClassId, agent);
+            if (cached.size() > 0)
+            {
+                results.addAll(cached);
+            }
+            else
+            {
+                uncached.add(agent);
+            }
+        }
+
+        return new QueryRequest<List<SchemaClass>>(_replyTimeout)
+        {
+            MapMessage createRequest(final Agent agent) throws JMSException
+            {
+                return createSchemaQuery(agent, schemaClassId);
+            }
+
+            void addResults(final Message response, final Agent agent) throws JMSException
+            {
+                List<SchemaClass> schema = new ArrayList<SchemaClass>();
+                addSchemaResults(response, schema);
+                agent.setSchema(schemaClassId, schema);
+                results.addAll(schema);
+            }
+
+            List<SchemaClass> getResult(final boolean timedOut)
+            {
+                if (timedOut)
+                {
+                    _log.info("No response received in getSchemaAsync()");
+                }
+                return results;
+            }
+        }.send(uncached);
+    }
+
     /**
      * Perform a blocking query for QmfConsoleData objects. Returns a list (possibly empty) of matching objects
      * This method will block until all known Agents reply, or the timeout expires. Once the timeout expires, all
@@ -1855,14 +2794,151 @@ public final class Console implements MessageListener, AgentProxy
      */
     public List<QmfConsoleData> getObjects(final QmfData query, final int timeout, final List<Agent> agentList)
     {
+        if (agentList.size() == 1)
+        {
+            return getObjects(agentList.get(0), query, null, timeout);
+        }
+
+        // With multiple Agents scatter the requests to all of them at once then gather the responses.
         List<QmfConsoleData> results = new ArrayList<QmfConsoleData>();
-        for (Agent agent : agentList)
+        for (List<QmfConsoleData> agentResults : getObjects(agentList, query, timeout).values())
         {
-            results.addAll(getObjects(agent, query, null, timeout));
+            results.addAll(agentResults);
         }
         return results;
     }
 
+    /**
+     * Perform a non-blocking query for QmfConsoleData objects across all known Agents. The returned QmfFuture
+     * completes with a list (possibly empty) of matching objects once all of the Agents have replied, or the
+     * timeout expires, in which case it completes with all data retrieved to date.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @return a QmfFuture that completes with a List of QMF Objects describing that class.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final QmfData query)
+    {
+        return getObjectsAsync(query, _replyTimeout, getAgents());
+    }
+
+    /**
+     * Perform a non-blocking query for QmfConsoleData objects across all known Agents. The returned QmfFuture
+     * completes with a list (possibly empty) of matching objects once all of the Agents have replied, or the
+     * timeout expires, in which case it completes with all data retrieved to date.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param timeout overrides the default replyTimeout.
+     * @return a QmfFuture that completes with a List of QMF Objects describing that class.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final QmfData query, final int timeout)
+    {
+        return getObjectsAsync(query, timeout, getAgents());
+    }
+
+    /**
+     * Perform a non-blocking query for QmfConsoleData objects. The returned QmfFuture completes with a list
+     * (possibly empty) of matching objects once all of the Agents have replied, or the timeout expires, in which
+     * case it completes with all data retrieved to date.
+     * <p>
+     * The query is sent to all of the Agents at once, so this only occupies the Console's reply thread for as
+     * long as it takes to decode each response and never blocks the calling thread.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param timeout overrides the default replyTimeout.
+     * @param agentList if this parameter is supplied then the query is sent to only those Agents.
+     * @return a QmfFuture that completes with a List of QMF Objects describing that class.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final QmfData query, final int timeout,
+                                                           final List<Agent> agentList)
+    {
+        final List<QmfConsoleData> results = new ArrayList<QmfConsoleData>();
+        return new QueryRequest<List<QmfConsoleData>>(timeout)
+        {
+            MapMessage createRequest(final Agent agent) throws JMSException
+            {
+                return createObjectQuery(agent, query);
+            }
+
+            void addResults(final Message response, final Agent agent) throws JMSException
+            {
+                addQueryResults(response, agent, results);
+            }
+
+            List<QmfConsoleData> getResult(final boolean timedOut)
+            {
+                if (timedOut)
+                {
+                    _log.info("No response received in getObjectsAsync()");
+                }
+                return results;
+            }
+        }.send(agentList);
+    }
+
+    /**
+     * Perform a query for QmfConsoleData objects across all known Agents, returning the results as they are consumed
+     * rather than as a fully materialised List.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @return a QueryResultIterator over the QMF Objects describing that class.
+     */
+    public QueryResultIterator getObjectsIterator(final QmfData query)
+    {
+        return getObjectsIterator(query, _replyTimeout, getAgents(), null);
+    }
+
+    /**
+     * Perform a query for QmfConsoleData objects across all known Agents, returning the results as they are consumed
+     * rather than as a fully materialised List.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param properties the names of the properties to retain in each QmfConsoleData, if null retain them all.
+     * @return a QueryResultIterator over the QMF Objects describing that class.
+     */
+    public QueryResultIterator getObjectsIterator(final QmfData query, final List<String> properties)
+    {
+        return getObjectsIterator(query, _replyTimeout, getAgents(), properties);
+    }
+
+    /**
+     * Perform a query for QmfConsoleData objects, returning the results as they are consumed rather than as a fully
+     * materialised List.
+     * <p>
+     * The query is sent to all of the Agents at once and the responses are queued in their encoded form. Each
+     * response is only decoded when the QueryResultIterator reaches it, so the application never holds more than
+     * one decoded response at a time. At most a few responses are queued, once the queue is full the Console's reply
+     * thread stops receiving until the application iterates, so the remaining responses are held back by JMS flow
+     * control rather than accumulating on the heap. This also delays the responses to other requests made by this
+     * Console, so applications should iterate promptly or call close(). The timeout applies to each response in
+     * turn, if it expires the iterator simply finishes with the data retrieved to date, and if the application
+     * doesn't iterate within the timeout the query is cancelled.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param timeout overrides the default replyTimeout.
+     * @param agentList the query is sent to only those Agents.
+     * @param properties the names of the properties to retain in each QmfConsoleData, if null retain them all.
+     * @return a QueryResultIterator over the QMF Objects describing that class.
+     */
+    public QueryResultIterator getObjectsIterator(final QmfData query, int timeout,
+                                                  final List<Agent> agentList, final List<String> properties)
+    {
+        timeout = (timeout < 1) ? _replyTimeout : timeout;
+        PendingRequest pending = new PendingRequest(ITERATOR_CAPACITY, timeout*1000l);
+        Map<String, Agent> outstanding = new HashMap<String, Agent>(agentList.size());
+        try
+        {
+            for (Agent agent : agentList)
+            {
+                outstanding.put(sendRequest(pending, createObjectQuery(agent, query)), agent);
+            }
+        }
+        catch (JMSException jmse)
+        { // Any Agents that we've already sent the query to will still return their results.
+            _log.info("JMSException {} caught in getObjectsIterator()", jmse.getMessage());
+        }
+        return new QueryResultIterator(_pendingRequests, pending, outstanding, timeout*1000l, properties);
+    }
+
     /**
      * Creates a subscription to the agent using the given Query.
      * <p>
@@ -1915,17 +2991,13 @@ public final class Console implements MessageListener, AgentProxy
      *        <b>timeout</b> the time to wait for a reply from the Agent.
      * </pre>
      */
-    public synchronized SubscribeParams createSubscription(final Agent agent, final QmfQuery query,
-                                                final String consoleHandle, final String options) throws QmfException
+    public SubscribeParams createSubscription(final Agent agent, final QmfQuery query,
+                                              final String consoleHandle, final String options) throws QmfException
     {
         if (consoleHandle == null)
         {
             throw new QmfException("Called createSubscription() with null consoleHandle");
         }
-        if (_subscriptionByHandle.get(consoleHandle) != null)
-        {
-            throw new QmfException("Called createSubscription() with a consoleHandle that is already in use");
-        }
         if (agent == null)
         {
             throw new QmfException("Called createSubscription() with null agent");
@@ -1969,7 +3041,7 @@ public final class Console implements MessageListener, AgentProxy
 
         try
         {
-            MapMessage request = _syncSession.createMapMessage();
+            MapMessage request = createMapMessage();
             request.setJMSReplyTo(_asyncReplyAddress);  // Deliberately forcing all replies to the _asyncReplyAddress
             request.setJMSCorrelationID(consoleHandle); // Deliberately using consoleHandle not replyHandle here
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
@@ -1980,10 +3052,21 @@ public final class Console implements MessageListener, AgentProxy
             request.setObject("_query", query.mapEncode());
             request.setObject("_interval", publishInterval);
             request.setObject("_duration", lifetime);
+            request.setObject("_partial_values", Boolean.TRUE); // SubscriptionManager.merge() completes the objects
 
             SubscriptionManager subscription =
                 new SubscriptionManager(agent, query, consoleHandle, replyHandle, publishInterval, lifetime);
-            _subscriptionByHandle.put(consoleHandle, subscription);
+
+            // Only the check and set of the consoleHandle needs to be atomic, we deliberately don't hold the
+            // Console lock whilst waiting for the subscription response.
+            synchronized(this)
+            {
+                if (_subscriptionByHandle.get(consoleHandle) != null)
+                {
+                    throw new QmfException("Called createSubscription() with a consoleHandle that is already in use");
+                }
+                _subscriptionByHandle.put(consoleHandle, subscription);
+            }
             _timer.schedule(subscription, 0, publishInterval);
 
             if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
@@ -2011,7 +3094,7 @@ public final class Console implements MessageListener, AgentProxy
                 return null;
             }
 
-            _requester.send(request);
+            sendRequest(request);
             if (replyHandle == null)
             { // If this is an synchronous request get the response
                 subscription.await(timeout*1000);
@@ -2111,10 +3194,7 @@ public final class Console implements MessageListener, AgentProxy
 
         try
         {
-            Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
+            MapMessage request = createMapMessage();
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_subscribe_refresh_indication");
@@ -2126,59 +3206,66 @@ public final class Console implements MessageListener, AgentProxy
                 request.setObject("_duration", lifetime);
             }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
-            {
-                if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
-                { // If the Agent is the broker Agent we emulate the Subscription on the Console
-                    subscription.refresh();
-                    final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
-                    if (replyHandle == null)
-                    {
-                        return params;
-                    }
-                    else
+            if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
+            { // If the Agent is the broker Agent we emulate the Subscription on the Console
+                subscription.refresh();
+                final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
+                if (replyHandle == null)
+                {
+                    return params;
+                }
+                else
+                {
+                    final String handle = replyHandle;
+                    Thread thread = new Thread()
                     {
-                        final String handle = replyHandle;
-                        Thread thread = new Thread()
+                        public void run()
                         {
-                            public void run()
-                            {
-                                _eventListener.onEvent(new SubscribeResponseWorkItem(new Handle(handle), params));
-                            }
-                        };
-                        thread.start();
-                    }
-                    return null;
+                            _eventListener.onEvent(new SubscribeResponseWorkItem(new Handle(handle), params));
+                        }
+                    };
+                    thread.start();
                 }
+                return null;
+            }
 
-                _requester.send(request);
-                if (replyHandle == null)
-                { // If this is an synchronous request get the response
-                    Message response = _responder.receive(timeout*1000);
-                    if (response == null)
-                    {
-                        subscription.cancel();
-                        _log.info("No response received in refreshSubscription()");
-                        throw new QmfException("No response received for Console.refreshSubscription()");
-                    }
-                    SubscribeParams result = new SubscribeParams(consoleHandle, AMQPMessage.getMap(response));
-                    subscriptionId = result.getSubscriptionId();
-                    if (subscriptionId == null)
-                    {
-                        subscription.cancel();
-                    }
-                    else
-                    {
-                        subscription.setDuration(result.getLifetime());
-                        subscription.refresh();
-                    }
-                    return result;
+            if (replyHandle != null)
+            { // If this is an asynchronous request return without waiting for a response
+                request.setJMSReplyTo(_asyncReplyAddress);
+                request.setJMSCorrelationID(replyHandle);
+                sendRequest(request);
+                return null;
+            }
+
+            // If this is an synchronous request get the response
+            PendingRequest pending = new PendingRequest();
+            try
+            {
+                sendRequest(pending, request);
+                Message response = pending.receive(timeout*1000);
+                if (response == null)
+                {
+                    subscription.cancel();
+                    _log.info("No response received in refreshSubscription()");
+                    throw new QmfException("No response received for Console.refreshSubscription()");
+                }
+                SubscribeParams result = new SubscribeParams(consoleHandle, AMQPMessage.getMap(response));
+                subscriptionId = result.getSubscriptionId();
+                if (subscriptionId == null)
+                {
+                    subscription.cancel();
+                }
+                else
+                {
+                    subscription.setDuration(result.getLifetime());
+                    subscription.refresh();
                 }
+                return result;
+            }
+            finally
+            {
+                releaseRequest(pending);
             }
-            // If this is an asynchronous request return without waiting for a response
-            return null;
         }
         catch (JMSException jmse)
         {
@@ -2213,19 +3300,16 @@ public final class Console implements MessageListener, AgentProxy
 
         try
         {
-            MapMessage request = _syncSession.createMapMessage();
+            MapMessage request = createMapMessage();
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_subscribe_cancel_indication");
             request.setStringProperty("qpid.subject", agentName);
             request.setObject("_subscription_id", subscriptionId);
 
-            synchronized(this)
+            if (!_subscriptionEmulationEnabled || !agentName.equals(_brokerAgentName))
             {
-                if (!_subscriptionEmulationEnabled || !agentName.equals(_brokerAgentName))
-                {
-                    _requester.send(request);
-                }
+                sendRequest(request);
             }
             subscription.cancel();
         }
@@ -0,0 +1,470 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.SchemaClass;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+import org.apache.qpid.qmf2.common.SchemaEventClass;
+import org.apache.qpid.qmf2.common.SchemaObjectClass;
+
+/**
+ * A DiskSchemaCache is an optional cache of SchemaClass shared by all of the Agents known to a Console and
+ * persisted to a directory so that it survives across Console instances.
+ * <p>
+ * Short-lived tools such as qpid-config spend much of their run time downloading the schema of every Agent, even
+ * though the schema rarely changes. A schema is identified by the hash in its SchemaClassId, so when an Agent
+ * advertises a SchemaClassId via getClasses() whose hash has already been seen the schema can be taken from this
+ * cache rather than being fetched from the Agent. Schema whose SchemaClassId has no hash are never cached.
+ * <p>
+ * Each schema is stored in its own file named after its hash, using a compact binary encoding of its Map form.
+ * Files are written to a temporary file then renamed, so a concurrent reader never sees a partial file. A cached
+ * schema is only used for an Agent whose class list advertises its package, class and hash, and when an Agent
+ * advertises the same class with a different hash the cached schema is stale and is evicted. When a schema is first
+ * read from disk it is also checked against the SchemaClassId it was looked up by, and files that fail to decode or
+ * validate are deleted so that the schema gets fetched from the Agent again.
+ *
+ * @author Fraser Adams
+ */
+final class DiskSchemaCache
+{
+    private static final Logger _log = LoggerFactory.getLogger(DiskSchemaCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x514d4653; // "QMFS"
+    private static final int VERSION = 1;
+
+    // Type codes used by the binary encoding.
+    private static final int NULL = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int STRING = 8;
+    private static final int BINARY = 9;
+    private static final int UUID_TYPE = 10;
+    private static final int MAP = 11;
+    private static final int LIST = 12;
+
+    // Schema Maps are only nested a few levels deep, anything deeper than this is treated as a corrupt file.
+    private static final int MAX_DEPTH = 32;
+
+    private final File _directory;
+    private final Map<SchemaClassId, SchemaClass> _schema = new ConcurrentHashMap<SchemaClassId, SchemaClass>();
+
+    /**
+     * Create a DiskSchemaCache persisted in the specified directory, the directory is created if it doesn't exist.
+     *
+     * @param directory the directory holding the cached schema.
+     */
+    DiskSchemaCache(final File directory)
+    {
+        _directory = directory;
+        if (!_directory.isDirectory() && !_directory.mkdirs())
+        {
+            _log.info("Unable to create schema cache directory {}", _directory);
+        }
+    }
+
+    /**
+     * Create a SchemaClass from its Map encoding.
+     *
+     * @param content the Map encoded schema.
+     * @return a SchemaEventClass if the schema is for an event otherwise a SchemaObjectClass.
+     */
+    static SchemaClass createSchema(final Map content)
+    {
+        SchemaClass schema = new SchemaObjectClass(content);
+        if (schema.getClassId().getType().equals("_event"))
+        {
+            schema = new SchemaEventClass(content);
+        }
+        return schema;
+    }
+
+    /**
+     * Look up a schema for an Agent, first in memory then on disk. The schema is only returned if the Agent's class
+     * list advertises the SchemaClassId being looked up.
+     *
+     * @param classId the SchemaClassId of the schema being looked up.
+     * @param classes the List of SchemaClassId advertised by the Agent.
+     * @return the cached SchemaClass or null if the schema isn't cached or the Agent doesn't advertise it.
+     */
+    SchemaClass get(final SchemaClassId classId, final List<SchemaClassId> classes)
+    {
+        UUID hash = classId.getHashString();
+        if (hash == null)
+        {
+            return null;
+        }
+
+        if (!classes.contains(classId))
+        {
+            for (SchemaClassId advertised : classes)
+            { // The Agent has a different version of the class, so the cached schema is stale.
+                if (advertised.getPackageName().equals(classId.getPackageName()) &&
+                    advertised.getClassName().equals(classId.getClassName()))
+                {
+                    _log.info("Discarding cached schema {}:{} as the Agent advertises a different hash",
+                              classId.getPackageName(), classId.getClassName());
+                    _schema.remove(classId);
+                    getFile(hash).delete();
+                    break;
+                }
+            }
+            return null;
+        }
+
+        SchemaClass schema = _schema.get(classId);
+        if (schema != null)
+        {
+            return schema;
+        }
+
+        File file = getFile(hash);
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION)
+                {
+                    throw new IOException("unrecognised file format");
+                }
+                schema = createSchema((Map)readValue(in, file.length(), 0));
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ioe)
+        {
+            _log.info("Discarding cached schema {} : {}", file, ioe.getMessage());
+            file.delete();
+            return null;
+        }
+        catch (RuntimeException re)
+        { // The file decoded but didn't contain a valid schema.
+            _log.info("Discarding cached schema {} : {}", file, re.getMessage());
+            file.delete();
+            return null;
+        }
+
+        // Validate the schema read from disk against the SchemaClassId advertised by the Agent.
+        if (!classId.equals(schema.getClassId()))
+        {
+            _log.info("Discarding cached schema {} as it doesn't match {}:{}",
+                      new Object[] {file, classId.getPackageName(), classId.getClassName()});
+            file.delete();
+            return null;
+        }
+
+        _schema.put(classId, schema);
+        return schema;
+    }
+
+    /**
+     * Add a schema fetched from an Agent to the cache, writing it to disk if it isn't there already.
+     *
+     * @param schema the SchemaClass to cache.
+     */
+    void put(final SchemaClass schema)
+    {
+        SchemaClassId classId = schema.getClassId();
+        UUID hash = classId.getHashString();
+        if (hash == null || _schema.containsKey(classId))
+        {
+            return;
+        }
+        _schema.put(classId, schema);
+
+        File file = getFile(hash);
+        if (file.isFile())
+        {
+            return;
+        }
+
+        File temp = new File(_directory, hash + "." + UUID.randomUUID() + ".tmp");
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                writeValue(out, schema.mapEncode());
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if (!temp.renameTo(file))
+            {
+                temp.delete();
+            }
+        }
+        catch (IOException ioe)
+        {
+            _log.info("IOException {} caught in DiskSchemaCache.put()", ioe.getMessage());
+            temp.delete();
+        }
+    }
+
+    /**
+     * Return the file used to hold the schema with the specified hash.
+     *
+     * @param hash the schema hash.
+     * @return the file used to hold the schema with the specified hash.
+     */
+    private File getFile(final UUID hash)
+    {
+        return new File(_directory, hash + ".schema");
+    }
+
+    /**
+     * Write a value in the compact binary encoding.
+     *
+     * @param out the stream to write to.
+     * @param value the value to write.
+     */
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        }
+        else if (value instanceof Byte)
+        {
+            out.writeByte(BYTE);
+            out.writeByte((Byte)value);
+        }
+        else if (value instanceof Short)
+        {
+            out.writeByte(SHORT);
+            out.writeShort((Short)value);
+        }
+        else if (value instanceof Integer)
+        {
+            out.writeByte(INT);
+            out.writeInt((Integer)value);
+        }
+        else if (value instanceof Long)
+        {
+            out.writeByte(LONG);
+            out.writeLong((Long)value);
+        }
+        else if (value instanceof Float)
+        {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float)value);
+        }
+        else if (value instanceof Double)
+        {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else if (value instanceof String)
+        {
+            byte[] bytes = ((String)value).getBytes(UTF8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (value instanceof byte[])
+        {
+            byte[] bytes = (byte[])value;
+            out.writeByte(BINARY);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (value instanceof UUID)
+        {
+            UUID uuid = (UUID)value;
+            out.writeByte(UUID_TYPE);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+        else if (value instanceof Map)
+        {
+            Map<?, ?> map = (Map<?, ?>)value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                writeValue(out, entry.getKey().toString());
+                writeValue(out, entry.getValue());
+            }
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List<?>)value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list)
+            {
+                writeValue(out, item);
+            }
+        }
+        else
+        {
+            throw new IOException("unsupported type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Read a value in the compact binary encoding. The lengths and sizes read are checked against the size of the
+     * file before anything is allocated, so a corrupt file causes an IOException rather than a huge allocation.
+     *
+     * @param in the stream to read from.
+     * @param limit the size of the file being read, no length or size may exceed this.
+     * @param depth the nesting depth of the value being read.
+     * @return the value read.
+     */
+    private static Object readValue(final DataInputStream in, final long limit, final int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+        {
+            throw new IOException("values nested more than " + MAX_DEPTH + " deep");
+        }
+
+        int type = in.readUnsignedByte();
+        switch (type)
+        {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return new String(readBytes(in, limit), UTF8);
+            case BINARY:
+                return readBytes(in, limit);
+            case UUID_TYPE:
+                return new UUID(in.readLong(), in.readLong());
+            case MAP:
+            {
+                int size = readSize(in, limit, 2); // Each entry has at least a key and a value type code.
+                Map<String, Object> map = new HashMap<String, Object>(size*2);
+                for (int i = 0; i < size; i++)
+                {
+                    Object key = readValue(in, limit, depth + 1);
+                    if (!(key instanceof String))
+                    {
+                        throw new IOException("invalid map key");
+                    }
+                    map.put((String)key, readValue(in, limit, depth + 1));
+                }
+                return map;
+            }
+            case LIST:
+            {
+                int size = readSize(in, limit, 1); // Each item has at least a type code.
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    list.add(readValue(in, limit, depth + 1));
+                }
+                return list;
+            }
+            default:
+                throw new IOException("unknown type code " + type);
+        }
+    }
+
+    /**
+     * Read the number of entries in a Map or List, or the length of a byte array.
+     *
+     * @param in the stream to read from.
+     * @param limit the size of the file being read.
+     * @param entryBytes the minimum number of bytes taken by each entry.
+     * @return the size read.
+     */
+    private static int readSize(final DataInputStream in, final long limit, final int entryBytes) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0 || (long)size*entryBytes > limit)
+        {
+            throw new IOException("invalid size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Read a length prefixed byte array.
+     *
+     * @param in the stream to read from.
+     * @param limit the size of the file being read.
+     * @return the bytes read.
+     */
+    private static byte[] readBytes(final DataInputStream in, final long limit) throws IOException
+    {
+        byte[] bytes = new byte[readSize(in, limit, 1)];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
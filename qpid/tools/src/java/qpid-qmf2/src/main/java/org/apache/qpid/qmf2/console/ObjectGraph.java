@@ -0,0 +1,428 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+
+/**
+ * An ObjectGraph is a Console side snapshot of a set of QmfConsoleData, indexed so that the references between the
+ * objects can be followed without going back to the Agents.
+ * <p>
+ * Tools such as ConnectionAudit and ConnectionLogger need to relate subscriptions to their sessions, queues and
+ * connections. Doing that by calling Console.getObjects(ObjectId) for each reference costs a blocking round trip per
+ * reference and comparing the getRefValue() results of every pair of objects in nested loops is quadratic. Instead
+ * an application can load() all of the classes it's interested in, the queries for which are all in flight at once,
+ * then follow references in constant time, e.g.
+ * <pre>
+ *   ObjectGraph graph = new ObjectGraph(console);
+ *   graph.load("org.apache.qpid.broker", "connection", "session", "subscription", "queue");
+ *   for (QmfConsoleData session : graph.getReferrers(connection.getObjectId(), "session", "connectionRef"))
+ *   {
+ *       for (QmfConsoleData subscription : graph.getReferrers(session.getObjectId(), "subscription", "sessionRef"))
+ *       {
+ *           QmfConsoleData queue = graph.dereference(subscription, "queueRef");
+ *       }
+ *   }
+ * </pre>
+ * Objects are indexed by ObjectId as they are added, the reverse reference indexes used by getReferrers() are
+ * built the first time they are used for a given class and reference property and are then updated as each object
+ * is subsequently added or replaced, so adding an object costs the same however large the graph is. References to objects that aren't in the graph, for example objects created after the graph
+ * was loaded or of classes that weren't loaded, may be looked up together with resolve() or resolveReferences(),
+ * which send all of the necessary queries at once rather than one at a time.
+ * <p>
+ * An ObjectGraph is a snapshot, it doesn't track subsequent changes on the Agents, and isn't thread safe.
+ *
+ * @author Fraser Adams
+ */
+public final class ObjectGraph
+{
+    private static final Logger _log = LoggerFactory.getLogger(ObjectGraph.class);
+
+    private final Console _console;
+
+    /**
+     * Every object in the graph keyed by its ObjectId.
+     */
+    private final Map<ObjectId, QmfConsoleData> _objects = new HashMap<ObjectId, QmfConsoleData>();
+
+    /**
+     * The objects in the graph keyed by their schema class name.
+     */
+    private final Map<String, List<QmfConsoleData>> _classes = new HashMap<String, List<QmfConsoleData>>();
+
+    /**
+     * The position of every object in the graph in its class's List in _classes, keyed by its ObjectId.
+     */
+    private final Map<ObjectId, Integer> _positions = new HashMap<ObjectId, Integer>();
+
+    /**
+     * The reverse reference indexes, keyed by className then refName, each of which maps the ObjectId of an object
+     * to the objects of class className whose refName property refers to it.
+     */
+    private final Map<String, Map<String, Map<ObjectId, List<QmfConsoleData>>>> _referrers =
+        new HashMap<String, Map<String, Map<ObjectId, List<QmfConsoleData>>>>();
+
+    /**
+     * Construct an empty ObjectGraph.
+     * @param console the Console used to query for the objects.
+     */
+    public ObjectGraph(final Console console)
+    {
+        _console = console;
+    }
+
+    /**
+     * Wait for a query to complete, returning an empty List if it fails.
+     */
+    private List<QmfConsoleData> await(final QmfFuture<List<QmfConsoleData>> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ee)
+        {
+            _log.info("ExecutionException {} caught in ObjectGraph", ee.getMessage());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Query for all objects of the specified classes and add them to the graph. The queries for all of the classes
+     * are sent at once so this takes about as long as the slowest of them rather than the sum of them all.
+     * @param packageName the schema package name of the classes.
+     * @param classNames the schema class names of the objects to load.
+     */
+    public void load(final String packageName, final String... classNames)
+    {
+        List<QmfFuture<List<QmfConsoleData>>> futures = new ArrayList<QmfFuture<List<QmfConsoleData>>>(classNames.length);
+        for (String className : classNames)
+        {
+            futures.add(_console.getObjectsAsync(new SchemaClassId(packageName, className)));
+        }
+
+        for (QmfFuture<List<QmfConsoleData>> future : futures)
+        {
+            addAll(await(future));
+        }
+    }
+
+    /**
+     * Add an object to the graph, replacing any object already in the graph with the same ObjectId.
+     * @param data the object to add.
+     */
+    public void add(final QmfConsoleData data)
+    {
+        ObjectId objectId = data.getObjectId();
+        String className = getClassName(data);
+        List<QmfConsoleData> objects = _classes.get(className);
+        if (objects == null)
+        {
+            objects = new ArrayList<QmfConsoleData>();
+            _classes.put(className, objects);
+        }
+
+        QmfConsoleData previous = _objects.put(objectId, data);
+        if (previous != null && getClassName(previous).equals(className))
+        {
+            objects.set(_positions.get(objectId), data);
+            updateReferrers(className, previous, data);
+        }
+        else
+        {
+            if (previous != null)
+            { // The ObjectId has been re-registered under a different class so move it to the new class's list.
+                String previousClassName = getClassName(previous);
+                List<QmfConsoleData> previousObjects = _classes.get(previousClassName);
+                int position = _positions.get(objectId);
+                previousObjects.remove(position);
+                for (int i = position; i < previousObjects.size(); i++)
+                {
+                    _positions.put(previousObjects.get(i).getObjectId(), i);
+                }
+                updateReferrers(previousClassName, previous, null);
+            }
+            _positions.put(objectId, objects.size());
+            objects.add(data);
+            updateReferrers(className, null, data);
+        }
+    }
+
+    /**
+     * Update the reverse reference indexes that have been built for a class when one of its objects is added,
+     * replaced or removed. An object whose reference is unchanged by a replacement keeps its place among the
+     * referrers.
+     * @param className the schema class name of the object.
+     * @param previous the object being replaced or removed, or null if an object is being added.
+     * @param data the object being added or replacing previous, or null if previous is being removed.
+     */
+    private void updateReferrers(final String className, final QmfConsoleData previous, final QmfConsoleData data)
+    {
+        Map<String, Map<ObjectId, List<QmfConsoleData>>> indexes = _referrers.get(className);
+        if (indexes == null)
+        {
+            return;
+        }
+
+        for (Map.Entry<String, Map<ObjectId, List<QmfConsoleData>>> entry : indexes.entrySet())
+        {
+            String refName = entry.getKey();
+            Map<ObjectId, List<QmfConsoleData>> index = entry.getValue();
+            ObjectId previousRef = previous == null ? null : getRef(previous, refName);
+            ObjectId ref = data == null ? null : getRef(data, refName);
+            if (previousRef != null && previousRef.equals(ref))
+            {
+                List<QmfConsoleData> referrers = index.get(ref);
+                referrers.set(referrers.indexOf(previous), data);
+            }
+            else
+            {
+                if (previousRef != null)
+                {
+                    List<QmfConsoleData> referrers = index.get(previousRef);
+                    referrers.remove(previous);
+                    if (referrers.isEmpty())
+                    {
+                        index.remove(previousRef);
+                    }
+                }
+
+                if (ref != null)
+                {
+                    addReferrer(index, ref, data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an object to the referrers of the object with the specified ObjectId in a reverse reference index.
+     */
+    private static void addReferrer(final Map<ObjectId, List<QmfConsoleData>> index, final ObjectId ref,
+                                    final QmfConsoleData data)
+    {
+        List<QmfConsoleData> referrers = index.get(ref);
+        if (referrers == null)
+        {
+            referrers = new ArrayList<QmfConsoleData>(1);
+            index.put(ref, referrers);
+        }
+        referrers.add(data);
+    }
+
+    /**
+     * Return the name of the class of an object, used as the key of _classes.
+     * @param data the object.
+     * @return the name of the class of the object, or an empty String if the object has no SchemaClassId.
+     */
+    private static String getClassName(final QmfConsoleData data)
+    {
+        return data.getSchemaClassId() == null ? "" : data.getSchemaClassId().getClassName();
+    }
+
+    /**
+     * Add a number of objects to the graph, replacing any objects already in the graph with the same ObjectIds.
+     * @param objects the objects to add.
+     */
+    public void addAll(final Collection<QmfConsoleData> objects)
+    {
+        for (QmfConsoleData data : objects)
+        {
+            add(data);
+        }
+    }
+
+    /**
+     * Return the number of objects in the graph.
+     * @return the number of objects in the graph.
+     */
+    public int size()
+    {
+        return _objects.size();
+    }
+
+    /**
+     * Return the object in the graph with the specified ObjectId.
+     * @param objectId the ObjectId of the object.
+     * @return the object with the specified ObjectId or null if it isn't in the graph.
+     */
+    public QmfConsoleData get(final ObjectId objectId)
+    {
+        return _objects.get(objectId);
+    }
+
+    /**
+     * Return the objects in the graph of the specified schema class.
+     * @param className the schema class name.
+     * @return a read only view of the objects of the specified class, in the order that they were added, so it
+     * mustn't be iterated while adding objects of the same class.
+     */
+    public List<QmfConsoleData> getObjects(final String className)
+    {
+        List<QmfConsoleData> objects = _classes.get(className);
+        return objects == null ? Collections.<QmfConsoleData>emptyList() : Collections.unmodifiableList(objects);
+    }
+
+    /**
+     * Return the ObjectId held in a reference property, or null if the object doesn't have the property.
+     */
+    private static ObjectId getRef(final QmfConsoleData data, final String refName)
+    {
+        return data.hasValue(refName) ? data.getRefValue(refName) : null;
+    }
+
+    /**
+     * Return the object referred to by a reference property of an object. If the referenced object isn't in the
+     * graph it is queried for and added to the graph. Where a number of references may be missing from the graph
+     * it's much faster to call resolveReferences() for all of them first.
+     * @param data the object containing the reference property.
+     * @param refName the name of the reference property, e.g. "queueRef".
+     * @return the referenced object, or null if the property isn't set or the object no longer exists.
+     */
+    public QmfConsoleData dereference(final QmfConsoleData data, final String refName)
+    {
+        ObjectId ref = getRef(data, refName);
+        if (ref == null)
+        {
+            return null;
+        }
+
+        QmfConsoleData referenced = _objects.get(ref);
+        if (referenced == null)
+        {
+            resolve(Collections.singletonList(ref));
+            referenced = _objects.get(ref);
+        }
+        return referenced;
+    }
+
+    /**
+     * Return the objects of the specified class whose reference property refers to the specified object, e.g. the
+     * sessions of a connection are getReferrers(connection.getObjectId(), "session", "connectionRef").
+     * @param objectId the ObjectId of the referenced object.
+     * @param className the schema class name of the referring objects.
+     * @param refName the name of the reference property of the referring objects.
+     * @return the referring objects, in the order that they were added to the graph.
+     */
+    public List<QmfConsoleData> getReferrers(final ObjectId objectId, final String className, final String refName)
+    {
+        Map<String, Map<ObjectId, List<QmfConsoleData>>> indexes = _referrers.get(className);
+        if (indexes == null)
+        {
+            indexes = new HashMap<String, Map<ObjectId, List<QmfConsoleData>>>();
+            _referrers.put(className, indexes);
+        }
+
+        Map<ObjectId, List<QmfConsoleData>> index = indexes.get(refName);
+        if (index == null)
+        { // Built on first use, after which add() keeps it up to date.
+            index = new HashMap<ObjectId, List<QmfConsoleData>>();
+            for (QmfConsoleData data : getObjects(className))
+            {
+                ObjectId ref = getRef(data, refName);
+                if (ref != null)
+                {
+                    addReferrer(index, ref, data);
+                }
+            }
+            indexes.put(refName, index);
+        }
+
+        List<QmfConsoleData> referrers = index.get(objectId);
+        return referrers == null ? Collections.<QmfConsoleData>emptyList() : Collections.unmodifiableList(referrers);
+    }
+
+    /**
+     * Add the objects with the specified ObjectIds that aren't already in the graph. The queries for all of the
+     * missing objects are sent at once, so resolving any number of references takes about one round trip.
+     * @param refs the ObjectIds of the objects.
+     * @return the number of objects added to the graph.
+     */
+    public int resolve(final Collection<ObjectId> refs)
+    {
+        Set<ObjectId> missing = new LinkedHashSet<ObjectId>();
+        for (ObjectId ref : refs)
+        {
+            if (ref != null && !_objects.containsKey(ref))
+            {
+                missing.add(ref);
+            }
+        }
+
+        List<QmfFuture<List<QmfConsoleData>>> futures = new ArrayList<QmfFuture<List<QmfConsoleData>>>(missing.size());
+        for (ObjectId ref : missing)
+        {
+            futures.add(_console.getObjectsAsync(ref));
+        }
+
+        int size = _objects.size();
+        for (QmfFuture<List<QmfConsoleData>> future : futures)
+        {
+            addAll(await(future));
+        }
+        return _objects.size() - size;
+    }
+
+    /**
+     * Add the objects referred to by the specified reference properties of a number of objects that aren't
+     * already in the graph, querying for all of them at once.
+     * @param objects the objects containing the reference properties.
+     * @param refNames the names of the reference properties, e.g. "sessionRef", "queueRef".
+     * @return the number of objects added to the graph.
+     */
+    public int resolveReferences(final Collection<QmfConsoleData> objects, final String... refNames)
+    {
+        List<ObjectId> refs = new ArrayList<ObjectId>();
+        for (QmfConsoleData data : objects)
+        {
+            for (String refName : refNames)
+            {
+                ObjectId ref = getRef(data, refName);
+                if (ref != null && !_objects.containsKey(ref))
+                {
+                    refs.add(ref);
+                }
+            }
+        }
+        return refs.isEmpty() ? 0 : resolve(refs);
+    }
+}
@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.qmf2.console;
 
+// Misc Imports
+import java.util.Arrays;
 import java.util.Map;
 
 // QMF2 Imports
@@ -61,5 +63,19 @@ public final class ObjectUpdateWorkItem extends WorkItem
     {
         return (QmfConsoleData)getParams();
     }
+
+    /**
+     * A newer update of the same object in response to the same refresh request makes a pending update redundant.
+     * The reply handle is part of the key so that an update awaited by one caller is never replaced by an update
+     * intended for a different caller.
+     * @return the ObjectId of the updated object and the correlationId of the reply handle.
+     */
+    @Override
+    public Object getCoalesceKey()
+    {
+        Handle handle = getHandle();
+        String correlationId = (handle == null) ? null : handle.getCorrelationId();
+        return Arrays.asList(getQmfConsoleData().getObjectId(), correlationId);
+    }
 }
 
@@ -0,0 +1,198 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// JMS Imports
+import javax.jms.Message;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A PendingRequest represents a request that the Console has sent to one or more Agents and which is waiting for
+ * its response(s).
+ * <p>
+ * The Console holds its PendingRequests in a table keyed by JMS correlationId. A single MessageListener on the
+ * Console's reply queue looks up the PendingRequest using the correlationId of each response and delivers the
+ * response to it, which wakes up the thread blocked in receive(). This means that any number of threads may have
+ * requests in flight at the same time without their responses getting interleaved and without having to serialise
+ * the whole request/response exchange behind a single lock.
+ * <p>
+ * A PendingRequest may own several correlationIds, which is used to implement "scatter-gather" style requests where
+ * the same request is sent to a number of Agents at once and the responses get collected as they arrive.
+ * <p>
+ * Requests made via the QmfFuture based asynchronous API override deliver() and cancel() so that responses are
+ * handled as they arrive rather than being queued for a blocked thread.
+ * <p>
+ * By default any number of responses may be queued. A PendingRequest may instead be given a capacity, in which case
+ * deliver() blocks the Console's reply thread whilst the queue is full. The reply thread then stops consuming from
+ * the reply queue, so the JMS client stops granting message credit and the Agents' responses wait on the broker
+ * rather than on the Console's heap. As this holds up the responses to every other request too, deliver() only
+ * waits for up to the request's timeout, after which the request is cancelled.
+ *
+ * @author Fraser Adams
+ */
+class PendingRequest
+{
+    private final LinkedList<Message> _responses = new LinkedList<Message>();
+    private final List<String> _correlationIds = new ArrayList<String>(1);
+    private final int _capacity;
+    private final long _timeout;
+    private boolean _cancelled = false;
+
+    /**
+     * Create a PendingRequest that may queue any number of responses.
+     */
+    PendingRequest()
+    {
+        this(0, 0);
+    }
+
+    /**
+     * Create a PendingRequest that queues at most capacity responses.
+     *
+     * @param capacity the maximum number of queued responses, zero means unbounded.
+     * @param timeout the maximum time in milliseconds that deliver() waits for space before cancelling the request.
+     */
+    PendingRequest(final int capacity, final long timeout)
+    {
+        _capacity = capacity;
+        _timeout = timeout;
+    }
+
+    /**
+     * Create a new unique correlationId owned by this PendingRequest.
+     * @return the new correlationId.
+     */
+    synchronized String createCorrelationId()
+    {
+        String correlationId = UUID.randomUUID().toString();
+        _correlationIds.add(correlationId);
+        return correlationId;
+    }
+
+    /**
+     * Return the correlationIds owned by this PendingRequest.
+     * @return the correlationIds owned by this PendingRequest.
+     */
+    synchronized List<String> getCorrelationIds()
+    {
+        return new ArrayList<String>(_correlationIds);
+    }
+
+    /**
+     * Deliver a response Message to this PendingRequest, waking up any thread blocked in receive(). If this
+     * PendingRequest has a capacity and is full this blocks until receive() makes room, or cancels the request if
+     * the timeout expires first. Responses delivered after the request has been cancelled are discarded.
+     *
+     * @param response the response Message.
+     */
+    synchronized void deliver(final Message response)
+    {
+        if (_capacity > 0)
+        {
+            long endTime = System.currentTimeMillis() + _timeout;
+            while (_responses.size() >= _capacity && !_cancelled)
+            {
+                long remaining = endTime - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    cancel();
+                    break;
+                }
+
+                try
+                {
+                    wait(remaining);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                }
+            }
+        }
+
+        if (!_cancelled)
+        {
+            _responses.add(response);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the next response Message.
+     *
+     * @param timeout the maximum time in milliseconds to wait for a response.
+     * @return the next response Message or null if the request timed out or was cancelled.
+     */
+    synchronized Message receive(final long timeout)
+    {
+        long endTime = System.currentTimeMillis() + timeout;
+        while (_responses.size() == 0 && !_cancelled)
+        {
+            // Measure remaining time to test against spurious wakeups and ensure we really have timed out
+            long remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                return null;
+            }
+
+            try
+            {
+                wait(remaining);
+            }
+            catch (InterruptedException ie)
+            { // Treat interrupting a thread blocked on a request as cancelling that request.
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+        if (_cancelled)
+        {
+            return null;
+        }
+        notifyAll(); // Wake up the reply thread if it is blocked in deliver() waiting for space.
+        return _responses.removeFirst();
+    }
+
+    /**
+     * Cancel this request, any thread blocked in receive() is woken up and given a null response.
+     */
+    synchronized void cancel()
+    {
+        _cancelled = true;
+        _responses.clear();
+        notifyAll();
+    }
+
+    /**
+     * Return true if this request has been cancelled.
+     * @return true if this request has been cancelled.
+     */
+    synchronized boolean isCancelled()
+    {
+        return _cancelled;
+    }
+}
@@ -69,6 +69,7 @@ public class QmfConsoleData extends QmfManaged
         _createTimestamp = m.containsKey("_create_ts") ? getLong(m.get("_create_ts")) : currentTime;
         _deleteTimestamp = m.containsKey("_delete_ts") ? getLong(m.get("_delete_ts")) : currentTime;
         _agent = a;
+        compactValues(getSchemaClassId());
     }
 
     /**
@@ -87,6 +88,7 @@ public class QmfConsoleData extends QmfManaged
 
         setSchemaClassId(new SchemaClassId((Map)m.get("_schema_id")));
         setObjectId(new ObjectId((Map)m.get("_object_id")));
+        compactValues(getSchemaClassId());
 
         long currentTime = System.currentTimeMillis()*1000000l;
         _updateTimestamp = m.containsKey("_update_ts") ? getLong(m.get("_update_ts")) : currentTime;
@@ -262,6 +264,24 @@ public class QmfConsoleData extends QmfManaged
         _agent.invokeMethod(getObjectId(), name, inArgs, replyHandle);
     }
 
+    /**
+     * Invoke the named method asynchronously on this instance, returning a QmfFuture for the MethodResult.
+     *
+     * @param name name of the method to invoke.
+     * @param inArgs inArgs an unordered set of key/value pairs comprising the method arguments.
+     * @param timeout the maximum time in seconds to wait for a response, overrides default replyTimeout.
+     * @return a QmfFuture that completes with the MethodResult.
+     */
+    public final QmfFuture<MethodResult> invokeMethodAsync(final String name, final QmfData inArgs,
+                                                           final int timeout) throws QmfException
+    {
+        if (_agent == null)
+        {
+            throw new QmfException("QmfConsoleData.invokeMethodAsync() called with null Agent");
+        }
+        return _agent.invokeMethodAsync(getObjectId(), name, inArgs, timeout);
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
@@ -0,0 +1,292 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A QmfFuture represents the result of an asynchronous Console request such as Console.getObjectsAsync() or
+ * Agent.invokeMethodAsync().
+ * <p>
+ * Unlike the replyHandle style asynchronous calls, whose results are delivered as WorkItems on the Console's work
+ * queue, a QmfFuture allows an application to have thousands of requests in flight without dedicating a thread to
+ * each of them and without having to correlate the responses itself. The result may be retrieved by blocking in
+ * get(), or more usefully by adding a QmfFutureListener which is called as soon as the request completes.
+ * <p>
+ * A request that fails or times out completes with an ExecutionException whose cause is a QmfException. Cancelling a
+ * QmfFuture cancels the underlying request so any responses that subsequently arrive are discarded.
+ *
+ * @author Fraser Adams
+ */
+public final class QmfFuture<T> implements Future<T>
+{
+    private static final Logger _log = LoggerFactory.getLogger(QmfFuture.class);
+
+    private enum State { PENDING, SUCCEEDED, FAILED, CANCELLED }
+
+    /**
+     * Holds a QmfFutureListener along with the (possibly null) Executor used to call it.
+     */
+    private static final class Registration<T>
+    {
+        private final QmfFutureListener<? super T> _listener;
+        private final Executor _executor;
+
+        Registration(final QmfFutureListener<? super T> listener, final Executor executor)
+        {
+            _listener = listener;
+            _executor = executor;
+        }
+    }
+
+    private State _state = State.PENDING;
+    private T _result = null;
+    private Throwable _cause = null;
+    private List<Registration<T>> _listeners = new ArrayList<Registration<T>>(1);
+
+    /**
+     * Create a QmfFuture. QmfFutures are only created by the Console.
+     */
+    QmfFuture()
+    {
+    }
+
+    /**
+     * Complete this QmfFuture successfully.
+     *
+     * @param result the result of the request.
+     * @return true if this call completed the QmfFuture, false if it had already completed.
+     */
+    boolean complete(final T result)
+    {
+        return setState(State.SUCCEEDED, result, null);
+    }
+
+    /**
+     * Complete this QmfFuture with a failure.
+     *
+     * @param cause the reason the request failed.
+     * @return true if this call completed the QmfFuture, false if it had already completed.
+     */
+    boolean fail(final Throwable cause)
+    {
+        return setState(State.FAILED, null, cause);
+    }
+
+    /**
+     * Move this QmfFuture from PENDING to its completed state then notify the listeners, which is done without
+     * holding the lock so that listeners are free to call back into the Console.
+     */
+    private boolean setState(final State state, final T result, final Throwable cause)
+    {
+        List<Registration<T>> listeners;
+        synchronized(this)
+        {
+            if (_state != State.PENDING)
+            {
+                return false;
+            }
+            _state = state;
+            _result = result;
+            _cause = cause;
+            listeners = _listeners;
+            _listeners = null;
+            notifyAll();
+        }
+
+        for (Registration<T> registration : listeners)
+        {
+            notify(registration);
+        }
+        return true;
+    }
+
+    /**
+     * Call a single listener, either directly or via its Executor.
+     */
+    private void notify(final Registration<T> registration)
+    {
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    if (_state == State.SUCCEEDED)
+                    {
+                        registration._listener.onSuccess(_result);
+                    }
+                    else
+                    {
+                        registration._listener.onFailure(_cause);
+                    }
+                }
+                catch (RuntimeException re)
+                {
+                    _log.info("RuntimeException {} caught in QmfFutureListener", re.getMessage());
+                }
+            }
+        };
+
+        if (registration._executor == null)
+        {
+            task.run();
+        }
+        else
+        {
+            try
+            {
+                registration._executor.execute(task);
+            }
+            catch (RuntimeException re)
+            { // Most likely a RejectedExecutionException, we can't do much more than log it.
+                _log.info("RuntimeException {} caught executing QmfFutureListener", re.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Add a QmfFutureListener that is called on the thread that completes this QmfFuture, which is generally the
+     * Console's reply MessageListener thread. If the QmfFuture has already completed the listener is called
+     * immediately on the calling thread.
+     *
+     * @param listener the QmfFutureListener to be notified when the request completes.
+     */
+    public void addListener(final QmfFutureListener<? super T> listener)
+    {
+        addListener(listener, null);
+    }
+
+    /**
+     * Add a QmfFutureListener that is called by the supplied Executor when this QmfFuture completes.
+     *
+     * @param listener the QmfFutureListener to be notified when the request completes.
+     * @param executor the Executor used to call the listener, if null the listener is called on the completing thread.
+     */
+    public void addListener(final QmfFutureListener<? super T> listener, final Executor executor)
+    {
+        Registration<T> registration = new Registration<T>(listener, executor);
+        synchronized(this)
+        {
+            if (_state == State.PENDING)
+            {
+                _listeners.add(registration);
+                return;
+            }
+        }
+        notify(registration);
+    }
+
+    /**
+     * Attempt to cancel the request. Any responses that subsequently arrive for the request are discarded.
+     *
+     * @param mayInterruptIfRunning ignored, there is no thread running the request to interrupt.
+     * @return false if the request had already completed, true otherwise.
+     */
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        return setState(State.CANCELLED, null, new CancellationException("QmfFuture cancelled"));
+    }
+
+    /**
+     * Return true if the request was cancelled before it completed.
+     * @return true if the request was cancelled before it completed.
+     */
+    public synchronized boolean isCancelled()
+    {
+        return _state == State.CANCELLED;
+    }
+
+    /**
+     * Return true if the request has completed, whether successfully, by failing or by being cancelled.
+     * @return true if the request has completed.
+     */
+    public synchronized boolean isDone()
+    {
+        return _state != State.PENDING;
+    }
+
+    /**
+     * Wait if necessary for the request to complete, then return its result.
+     *
+     * @return the result of the request.
+     */
+    public synchronized T get() throws InterruptedException, ExecutionException
+    {
+        while (_state == State.PENDING)
+        {
+            wait();
+        }
+        return getResult();
+    }
+
+    /**
+     * Wait if necessary for at most the given time for the request to complete, then return its result.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the time unit of the timeout argument.
+     * @return the result of the request.
+     */
+    public synchronized T get(final long timeout, final TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        long endTime = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (_state == State.PENDING)
+        {
+            // Measure remaining time to test against spurious wakeups and ensure we really have timed out
+            long remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                throw new TimeoutException("QmfFuture.get() timed out");
+            }
+            wait(remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * Return the result of a completed request or throw the appropriate exception.
+     */
+    private T getResult() throws ExecutionException
+    {
+        if (_state == State.CANCELLED)
+        {
+            throw (CancellationException)_cause;
+        }
+        else if (_state == State.FAILED)
+        {
+            throw new ExecutionException(_cause);
+        }
+        return _result;
+    }
+}
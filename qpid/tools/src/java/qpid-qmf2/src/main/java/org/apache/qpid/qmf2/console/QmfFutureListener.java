@@ -0,0 +1,49 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+/**
+ * A QmfFutureListener is notified when the asynchronous request represented by a QmfFuture completes.
+ * <p>
+ * Exactly one of onSuccess() or onFailure() is called for each listener. The listener is called either on the thread
+ * that completed the QmfFuture (generally the Console's reply MessageListener thread or its Timer thread if the
+ * request timed out) or by the Executor supplied when the listener was added, so listeners that do significant work
+ * or block should be added with an Executor.
+ *
+ * @author Fraser Adams
+ */
+public interface QmfFutureListener<T>
+{
+    /**
+     * Called when the request completes successfully.
+     *
+     * @param result the result of the request.
+     */
+    public void onSuccess(T result);
+
+    /**
+     * Called when the request fails. The cause is a QmfException if the request failed or timed out and a
+     * java.util.concurrent.CancellationException if it was cancelled.
+     *
+     * @param cause the reason that the request failed.
+     */
+    public void onFailure(Throwable cause);
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// JMS Imports
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.AMQPMessage;
+
+/**
+ * A QueryResultIterator returns the results of a Console.getObjectsIterator() query one QmfConsoleData at a time.
+ * <p>
+ * Console.getObjects() has to decode every response, including all "partial" continuations, and build a
+ * QmfConsoleData for every object before it can return. For very large queries (say the sessions on a broker with
+ * 100k connections) that means holding the whole decoded result set on the heap at once. A QueryResultIterator
+ * instead leaves the responses in their compact encoded form until the application actually iterates over them.
+ * Each response is then decoded on the application's thread as the previous one is used up, and its entries are
+ * released as the corresponding QmfConsoleData are returned. So at most one decoded response is held at a time, and
+ * the decoding happens at the rate that the application consumes the results.
+ * <p>
+ * Only a few encoded responses are queued for the iterator. Whilst that queue is full the Console stops receiving
+ * from its reply queue, so the JMS client stops granting credit and the remaining responses wait on the broker. If
+ * the application doesn't iterate within the timeout the query is cancelled, so as not to hold up the responses to
+ * the Console's other requests indefinitely.
+ * <p>
+ * If a list of property names is supplied only those properties are kept in the _values of each QmfConsoleData,
+ * which can dramatically reduce the footprint of the results where an application only needs a few properties.
+ * <p>
+ * The iterator finishes once every Agent has sent its last response, or when the timeout expires waiting for the
+ * next response. An application that stops iterating before the end should call close() so that any remaining
+ * responses are discarded.
+ *
+ * @author Fraser Adams
+ */
+public final class QueryResultIterator implements Iterator<QmfConsoleData>
+{
+    private static final Logger _log = LoggerFactory.getLogger(QueryResultIterator.class);
+
+    private final Map<String, PendingRequest> _pendingRequests;
+    private final PendingRequest _pending;
+    private final Map<String, Agent> _outstanding;
+    private final long _timeout;
+    private final Set<String> _properties;
+
+    private List<Map> _batch = null;
+    private Agent _batchAgent = null;
+    private int _index = 0;
+    private boolean _closed = false;
+
+    /**
+     * Create a QueryResultIterator. QueryResultIterators are only created by the Console.
+     *
+     * @param pendingRequests the Console's pending request table, used to release the request when we're finished.
+     * @param pending the PendingRequest that the query responses are delivered to.
+     * @param outstanding the Agents that were queried keyed by the correlationId of their request.
+     * @param timeout the maximum time in milliseconds to wait for each response.
+     * @param properties the names of the properties to retain in each QmfConsoleData, if null retain them all.
+     */
+    QueryResultIterator(final Map<String, PendingRequest> pendingRequests, final PendingRequest pending,
+                        final Map<String, Agent> outstanding, final long timeout, final List<String> properties)
+    {
+        _pendingRequests = pendingRequests;
+        _pending = pending;
+        _outstanding = outstanding;
+        _timeout = timeout;
+        _properties = (properties == null) ? null : new HashSet<String>(properties);
+    }
+
+    /**
+     * Returns true if there are more results, which may block waiting for the next response from the Agent(s).
+     *
+     * @return true if there are more results.
+     */
+    public boolean hasNext()
+    {
+        while (_batch == null || _index == _batch.size())
+        {
+            _batch = null;
+            if (_closed || _outstanding.size() == 0)
+            {
+                close();
+                return false;
+            }
+
+            Message response = _pending.receive(_timeout);
+            if (response == null)
+            {
+                _log.info("No response received in getObjectsIterator() from {} Agents", _outstanding.size());
+                close();
+                return false;
+            }
+
+            try
+            {
+                String correlationId = response.getJMSCorrelationID();
+                Agent agent = _outstanding.get(correlationId);
+                if (agent != null)
+                {
+                    if (!response.propertyExists("partial"))
+                    {
+                        _outstanding.remove(correlationId);
+                    }
+
+                    // Error responses are returned as MapMessages, though they are being ignored here.
+                    if (AMQPMessage.isAMQPList(response))
+                    {
+                        _batch = AMQPMessage.getList(response);
+                        _batchAgent = agent;
+                        _index = 0;
+                    }
+                    else if (!AMQPMessage.isAMQPMap(response))
+                    {
+                        _log.info("getObjectsIterator() Received response message in incorrect format");
+                    }
+                }
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in QueryResultIterator.hasNext()", jmse.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next QmfConsoleData, which may block waiting for the next response from the Agent(s).
+     *
+     * @return the next QmfConsoleData.
+     */
+    @SuppressWarnings("unchecked")
+    public QmfConsoleData next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        Map content = _batch.get(_index);
+        _batch.set(_index++, null); // Release the decoded entry as soon as we've built the QmfConsoleData from it.
+
+        if (_properties != null)
+        {
+            Map<String, Object> values = (Map<String, Object>)content.get("_values");
+            if (values != null)
+            {
+                Map<String, Object> projection = new HashMap<String, Object>();
+                for (String property : _properties)
+                {
+                    Object value = values.get(property);
+                    if (value != null)
+                    {
+                        projection.put(property, value);
+                    }
+                }
+                content.put("_values", projection);
+            }
+        }
+        return new QmfConsoleData(content, _batchAgent);
+    }
+
+    /**
+     * Not supported, the results of a query can't be removed.
+     */
+    public void remove()
+    {
+        throw new UnsupportedOperationException("QueryResultIterator does not support remove()");
+    }
+
+    /**
+     * Stop the query, discarding any results that haven't yet been returned. It is only necessary to call this
+     * if the application stops iterating before hasNext() has returned false.
+     */
+    public void close()
+    {
+        if (!_closed)
+        {
+            _closed = true;
+            _batch = null;
+            _pending.cancel();
+            for (String correlationId : _pending.getCorrelationIds())
+            {
+                _pendingRequests.remove(correlationId);
+            }
+        }
+    }
+}
@@ -20,10 +20,14 @@
  */
 package org.apache.qpid.qmf2.console;
 
+// Misc Imports
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 // QMF2 Imports
-import org.apache.qpid.qmf2.common.Handle;
+import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.WorkItem;
 
 /**
@@ -35,6 +39,10 @@ import org.apache.qpid.qmf2.common.WorkItem;
  *                          The getParams() method of a SUBSCRIPTION_INDICATION  WorkItem will return an instance
  *                          of the SubscribeIndication class. The getHandle() method returns null.
  * </pre>
+ * If the Console's subscriptionCoalesce option is set, or its work queue uses the COALESCE overflow policy, a
+ * SubscriptionIndicationWorkItem that is still pending when the next indication for the same Subscription arrives
+ * absorbs the newer indication, so there is at most one pending SubscriptionIndicationWorkItem per Subscription
+ * holding the newest state of each object.
  * @author Fraser Adams
  */
 
@@ -58,5 +66,46 @@ public final class SubscriptionIndicationWorkItem extends WorkItem
     {
         return (SubscribeIndication)getParams();
     }
+
+    /**
+     * A pending indication for a Subscription can absorb newer indications for the same Subscription.
+     * @return the consoleHandle of the Subscription.
+     */
+    @Override
+    public Object getCoalesceKey()
+    {
+        return getSubscribeIndication().getConsoleHandle();
+    }
+
+    /**
+     * Combine this pending indication with a newer indication for the same Subscription. Objects in the newer
+     * indication replace the same objects (by ObjectId) in place and any other objects are appended, so only the
+     * newest state of each object is delivered.
+     *
+     * @param newer the newer SubscriptionIndicationWorkItem.
+     * @return a SubscriptionIndicationWorkItem holding the newest state of the objects from both indications.
+     */
+    @Override
+    protected WorkItem coalesce(final WorkItem newer)
+    {
+        List<QmfConsoleData> pending = getSubscribeIndication().getData();
+        List<QmfConsoleData> updates = ((SubscriptionIndicationWorkItem)newer).getSubscribeIndication().getData();
+
+        Map<ObjectId, QmfConsoleData> objects = new LinkedHashMap<ObjectId, QmfConsoleData>(pending.size() + updates.size());
+        for (QmfConsoleData object : pending)
+        {
+            objects.put(object.getObjectId(), object);
+        }
+
+        for (QmfConsoleData object : updates)
+        {
+            objects.put(object.getObjectId(), object);
+        }
+
+        String consoleHandle = getSubscribeIndication().getConsoleHandle();
+        return new SubscriptionIndicationWorkItem(
+            new SubscribeIndication(consoleHandle, new ArrayList<QmfConsoleData>(objects.values()))
+        );
+    }
 }
 
@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.TimerTask;
 
 // QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfQuery;
 
 /** 
@@ -50,6 +51,12 @@ import org.apache.qpid.qmf2.common.QmfQuery;
  * the QmfConsoleData returned by the _data indication. Any QmfConsoleData that match the query are passed to the
  * client application with the consoleHandle of the matching Subscription.
  * <p>
+ * The Console sets _partial_values in its subscribe requests, which asks Agents that support it to publish only the
+ * properties of an object that have changed since they last published it. So for "real" Subscriptions the
+ * SubscriptionManager holds the most recently received property values of each object and merges each update with
+ * them, which means that the QmfConsoleData passed to the client application are always complete whether or not the
+ * Agent sent partial values.
+ * <p>
  * The following diagram illustrates the Subscription relationships with the Console and local Agent proxy.
  * <p>
  * <img alt="" src="doc-files/Subscriptions.png">
@@ -70,6 +77,9 @@ public final class SubscriptionManager extends TimerTask
     private long     _interval = 0;
     private boolean  _waiting = true;
 
+    // The most recently received property values of each object published by this Subscription.
+    private final Map<ObjectId, Map<String, Object>> _objectValues = new HashMap<ObjectId, Map<String, Object>>();
+
     /**
      * Construct a Console side proxy of a Subscription. Primarily to manage references to the Subscription.
      *
@@ -107,6 +117,45 @@ public final class SubscriptionManager extends TimerTask
         }
     }
 
+    /**
+     * Create a QmfConsoleData from an object pushed by a Subscription _data indication, merging any properties that
+     * the Agent hasn't sent because they haven't changed with the values previously received for the same object.
+     *
+     * @param m the Map containing the encoded object.
+     * @param agent the Agent that published the object.
+     * @return the complete QmfConsoleData.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized QmfConsoleData merge(final Map m, final Agent agent)
+    {
+        Map<String, Object> values = (Map<String, Object>)m.get("_values");
+        Object objectId = m.get("_object_id");
+        if (values == null || !(objectId instanceof Map))
+        {
+            return new QmfConsoleData(m, agent);
+        }
+
+        ObjectId key = new ObjectId((Map)objectId);
+        Map<String, Object> last = _objectValues.get(key);
+        if (last != null)
+        {
+            Map<String, Object> merged = new HashMap<String, Object>(last);
+            merged.putAll(values);
+            m.put("_values", merged);
+        }
+
+        QmfConsoleData object = new QmfConsoleData(m, agent);
+        if (object.isDeleted())
+        {
+            _objectValues.remove(key);
+        }
+        else
+        {
+            _objectValues.put(key, object.mapEncode()); // Hold the object's compact copy of the values.
+        }
+        return object;
+    }
+
     /**
      * Causes the current thread to wait until it is signalled or times out.
      * <p>
@@ -168,6 +217,10 @@ public final class SubscriptionManager extends TimerTask
     {
         _log.debug("Cancelling Subscription {}, {}", _consoleHandle, _subscriptionId);
         _agent.removeSubscription(this);
+        synchronized (this)
+        {
+            _objectValues.clear();
+        }
         signal(); // Just in case anything is blocking on this Subscription.
         return super.cancel(); // Cancel the TimerTask
     }